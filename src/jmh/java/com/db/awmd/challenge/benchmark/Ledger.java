@@ -0,0 +1,95 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.engine.OptimisticTransferExecutor;
+import com.db.awmd.challenge.engine.ShardedTransferExecutor;
+import com.db.awmd.challenge.engine.TransferExecutor;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.repository.AccountsRepositoryOffHeap;
+import com.db.awmd.challenge.service.FundTransferService;
+import com.db.awmd.challenge.service.IdempotencyCache;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+/**
+ * Builds the repository and transfer engine variants a benchmark runs against,
+ * named like the {@code accounts.repository} and {@code transfer.mode}
+ * properties, so results of different implementations line up. Metrics are
+ * either {@code off} (recorded into a registry without backends) or recorded
+ * into a {@code prometheus} registry as in the application.
+ */
+final class Ledger {
+
+	static final BigDecimal OPENING_BALANCE = new BigDecimal(1_000_000_000);
+
+	private Ledger() {
+	}
+
+	static AccountsRepository repository(String kind) {
+		switch (kind) {
+		case "in-memory":
+			return new AccountsRepositoryInMemory();
+		case "off-heap":
+			return new AccountsRepositoryOffHeap();
+		default:
+			throw new IllegalArgumentException("Unknown repository " + kind);
+		}
+	}
+
+	static TransferMetrics metrics(String kind) {
+		switch (kind) {
+		case "off":
+			return TransferMetrics.noop();
+		case "prometheus":
+			return new TransferMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+		default:
+			throw new IllegalArgumentException("Unknown metrics " + kind);
+		}
+	}
+
+	static TransferExecutor executor(String mode, TransferMetrics metrics) {
+		switch (mode) {
+		case "locking":
+			return new LockingTransferExecutor(lockManager(metrics));
+		case "optimistic":
+			return new OptimisticTransferExecutor(lockManager(metrics), OptimisticTransferExecutor.DEFAULT_MAX_ATTEMPTS,
+					OptimisticTransferExecutor.DEFAULT_BACKOFF_NANOS, metrics);
+		case "sharded":
+			return new ShardedTransferExecutor(0, 4096);
+		default:
+			throw new IllegalArgumentException("Unknown transfer mode " + mode);
+		}
+	}
+
+	private static AccountLockManager lockManager(TransferMetrics metrics) {
+		return new AccountLockManager(AccountLockManager.DEFAULT_STRIPES, AccountLockManager.DEFAULT_TIMEOUT_MILLIS,
+				metrics);
+	}
+
+	static FundTransferService transferService(AccountsRepository repository, TransferExecutor executor,
+			TransferMetrics metrics) {
+		return new FundTransferService(repository, executor, Collections.emptyList(), new IdempotencyCache(),
+				metrics);
+	}
+
+	static String[] createAccounts(AccountsRepository repository, int count) {
+		String[] accountIds = new String[count];
+		for (int i = 0; i < count; i++) {
+			accountIds[i] = accountId(i);
+			repository.createAccount(new Account(accountIds[i], OPENING_BALANCE));
+		}
+		return accountIds;
+	}
+
+	static String accountId(int number) {
+		return "Id-" + number;
+	}
+}
@@ -0,0 +1,108 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.math.BigDecimal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Account lookups in a populated repository and bursts of account creation into
+ * an empty one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RepositoryBenchmark {
+
+	private static final int BURST = 10_000;
+
+	@Param({ "in-memory", "off-heap" })
+	public String repository;
+
+	@Param({ "1000000" })
+	public int accounts;
+
+	private AccountsRepository populated;
+
+	private String[] lookups;
+
+	private Account[] burst;
+
+	@Setup(Level.Trial)
+	public void populate() {
+		populated = Ledger.repository(repository);
+		Ledger.createAccounts(populated, accounts);
+		Zipf uniform = new Zipf(accounts, 0, 42);
+		lookups = new String[1 << 16];
+		for (int i = 0; i < lookups.length; i++) {
+			lookups[i] = Ledger.accountId(uniform.next());
+		}
+		burst = new Account[BURST];
+		for (int i = 0; i < BURST; i++) {
+			burst[i] = new Account("New-" + i, BigDecimal.ONE);
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Account getAccount(Lookups state) {
+		return populated.getAccount(lookups[state.next()]);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 20)
+	@Measurement(iterations = 50)
+	@OperationsPerInvocation(BURST)
+	public AccountsRepository createAccountBurst(Empty state) {
+		for (Account account : burst) {
+			state.empty.createAccount(account);
+		}
+		return state.empty;
+	}
+
+	/**
+	 * A new repository for every burst. Kept apart from the benchmark's own
+	 * state so that only {@link #createAccountBurst(Empty)}, a single shot,
+	 * pays for the setup before each invocation.
+	 */
+	@State(Scope.Thread)
+	public static class Empty {
+
+		private AccountsRepository empty;
+
+		@Setup(Level.Invocation)
+		public void emptyRepository(RepositoryBenchmark benchmark) {
+			empty = Ledger.repository(benchmark.repository);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Lookups {
+
+		private int next;
+
+		int next() {
+			next = (next + 1) & ((1 << 16) - 1);
+			return next;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.engine.ShardedTransferExecutor;
+import com.db.awmd.challenge.engine.TransferExecutor;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.FundTransferService;
+
+/**
+ * End-to-end {@link FundTransferService#transferFund(FundTransfer)} through
+ * validation, lookups and the transfer engine. {@code skew} is the Zipf exponent
+ * of the account selection: 0 spreads transfers uniformly, around 1 a few hot
+ * accounts take part in most of them and at 2 nearly every transfer touches
+ * one of a handful of accounts. Comparing {@code metrics=off} with
+ * {@code metrics=prometheus} gives the cost of the instrumentation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TransferBenchmark {
+
+	private static final int SEQUENCE_LENGTH = 1 << 16;
+
+	private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+	@Param({ "in-memory", "off-heap" })
+	public String repository;
+
+	@Param({ "locking", "optimistic", "sharded" })
+	public String mode;
+
+	@Param({ "100000" })
+	public int accounts;
+
+	@Param({ "0", "1.1", "2" })
+	public double skew;
+
+	@Param({ "off", "prometheus" })
+	public String metrics;
+
+	private TransferExecutor executor;
+
+	private FundTransferService service;
+
+	private String[] accountIds;
+
+	@Setup(Level.Trial)
+	public void createLedger() {
+		AccountsRepository accountsRepository = Ledger.repository(repository);
+		accountIds = Ledger.createAccounts(accountsRepository, accounts);
+		TransferMetrics transferMetrics = Ledger.metrics(metrics);
+		executor = Ledger.executor(mode, transferMetrics);
+		service = Ledger.transferService(accountsRepository, executor, transferMetrics);
+	}
+
+	@TearDown(Level.Trial)
+	public void stopExecutor() throws InterruptedException {
+		if (executor instanceof ShardedTransferExecutor) {
+			((ShardedTransferExecutor) executor).destroy();
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String transferSingleThread(Transfers transfers) {
+		return service.transferFund(transfers.next());
+	}
+
+	@Benchmark
+	@Threads(8)
+	public String transferMultiThread(Transfers transfers) {
+		return service.transferFund(transfers.next());
+	}
+
+	/**
+	 * Per-thread, precomputed sequence of transfers between distinct accounts.
+	 */
+	@State(Scope.Thread)
+	public static class Transfers {
+
+		private FundTransfer[] sequence;
+
+		private int next;
+
+		@Setup(Level.Trial)
+		public void drawTransfers(TransferBenchmark benchmark) {
+			Zipf zipf = new Zipf(benchmark.accounts, benchmark.skew, ThreadLocalRandom.current().nextLong());
+			sequence = new FundTransfer[SEQUENCE_LENGTH];
+			for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+				int from = zipf.next();
+				int to = zipf.next();
+				while (to == from) {
+					to = zipf.next();
+				}
+				sequence[i] = FundTransfer.builder().accountFrom(benchmark.accountIds[from])
+						.accountTo(benchmark.accountIds[to]).amount(AMOUNT).build();
+			}
+		}
+
+		FundTransfer next() {
+			FundTransfer transfer = sequence[next];
+			next = (next + 1) & (SEQUENCE_LENGTH - 1);
+			return transfer;
+		}
+	}
+}
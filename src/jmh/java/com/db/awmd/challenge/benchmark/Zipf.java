@@ -0,0 +1,43 @@
+package com.db.awmd.challenge.benchmark;
+
+import java.util.Random;
+
+/**
+ * Draws indexes in {@code [0, n)} where index {@code k} has a probability
+ * proportional to {@code 1 / (k + 1)^exponent}, so a handful of accounts
+ * receive most of the traffic. An exponent of 0 gives a uniform distribution.
+ */
+final class Zipf {
+
+	private final double[] cumulative;
+
+	private final Random random;
+
+	Zipf(int n, double exponent, long seed) {
+		this.cumulative = new double[n];
+		this.random = new Random(seed);
+		double sum = 0;
+		for (int k = 0; k < n; k++) {
+			sum += 1 / Math.pow(k + 1, exponent);
+			cumulative[k] = sum;
+		}
+		for (int k = 0; k < n; k++) {
+			cumulative[k] /= sum;
+		}
+	}
+
+	int next() {
+		double u = random.nextDouble();
+		int low = 0;
+		int high = cumulative.length - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (cumulative[middle] < u) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,103 @@
+package com.db.awmd.challenge.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bound on the number of requests in flight that adapts to how long requests
+ * take. Latency above the target means requests are queueing (on account
+ * locks, the database of a downstream, the CPU), so the limit shrinks and the
+ * excess is rejected up front instead of joining the queue; while requests are
+ * fast the limit grows back towards its maximum.
+ * <p>
+ * Completions are counted in windows of {@value #WINDOW_MILLIS} ms. At the end
+ * of a window, if more than a tenth of the requests were slower than the
+ * target, the limit is cut by a quarter, otherwise raised by a twentieth.
+ */
+public final class AdaptiveConcurrencyLimit {
+
+	private static final long WINDOW_MILLIS = 100;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final long targetNanos;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private final LongAdder completed = new LongAdder();
+
+	private final LongAdder slow = new LongAdder();
+
+	private final AtomicLong windowStart;
+
+	private volatile int limit;
+
+	public AdaptiveConcurrencyLimit(int minLimit, int maxLimit, long targetLatencyMillis) {
+		if (minLimit <= 0 || maxLimit < minLimit) {
+			throw new IllegalArgumentException("Limits must satisfy 0 < min <= max");
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+		this.windowStart = new AtomicLong(System.nanoTime());
+		this.limit = maxLimit;
+	}
+
+	/**
+	 * Counts a request in if fewer than the current limit are in flight.
+	 */
+	public boolean tryAcquire() {
+		int current;
+		do {
+			current = inFlight.get();
+			if (current >= limit) {
+				return false;
+			}
+		} while (!inFlight.compareAndSet(current, current + 1));
+		return true;
+	}
+
+	/**
+	 * Counts out a request admitted by {@link #tryAcquire()} that took
+	 * {@code latencyNanos}.
+	 */
+	public void release(long latencyNanos) {
+		release(latencyNanos, System.nanoTime());
+	}
+
+	void release(long latencyNanos, long nowNanos) {
+		inFlight.decrementAndGet();
+		completed.increment();
+		if (latencyNanos > targetNanos) {
+			slow.increment();
+		}
+		long start = windowStart.get();
+		if (nowNanos - start >= TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS)
+				&& windowStart.compareAndSet(start, nowNanos)) {
+			adjust();
+		}
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	private void adjust() {
+		long total = completed.sumThenReset();
+		long late = slow.sumThenReset();
+		int current = limit;
+		if (late * 10 > total) {
+			limit = Math.max(minLimit, current - current / 4);
+		} else {
+			limit = Math.min(maxLimit, current + Math.max(1, current / 20));
+		}
+	}
+}
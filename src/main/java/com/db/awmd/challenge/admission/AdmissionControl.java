@@ -0,0 +1,125 @@
+package com.db.awmd.challenge.admission;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+
+/**
+ * Decides whether a transfer request may run at all, before it reaches a
+ * transfer service and queues on account locks. A request must get a token
+ * from its client's bucket and from its source account's bucket, and fit under
+ * the adaptive limit of requests in flight; otherwise it is rejected with
+ * {@link TooManyRequestsException}. A rate or limit of 0 disables that check.
+ * <p>
+ * {@link #admit(String, String)} returns the admission time, which the caller
+ * hands back to {@link #release(long)} when the request is done, so admitting
+ * a request allocates nothing. A batch is admitted as one request of its
+ * client, then charged one token per transfer out of each source account by
+ * {@link #admitDebits(Map)}.
+ */
+@Component
+public class AdmissionControl {
+
+	private final TokenBucketTable clients;
+
+	private final TokenBucketTable accounts;
+
+	private final AdaptiveConcurrencyLimit concurrencyLimit;
+
+	private final TransferMetrics metrics;
+
+	@Autowired
+	public AdmissionControl(@Value("${admission.buckets:1048576}") int buckets,
+			@Value("${admission.client.rate:0}") double clientRate,
+			@Value("${admission.client.burst:1000}") int clientBurst,
+			@Value("${admission.account.rate:0}") double accountRate,
+			@Value("${admission.account.burst:500}") int accountBurst,
+			@Value("${admission.min-in-flight:16}") int minInFlight,
+			@Value("${admission.max-in-flight:1024}") int maxInFlight,
+			@Value("${admission.target-latency-ms:100}") long targetLatencyMillis, TransferMetrics metrics) {
+		this.clients = clientRate > 0 ? new TokenBucketTable(buckets, clientRate, clientBurst) : null;
+		this.accounts = accountRate > 0 ? new TokenBucketTable(buckets, accountRate, accountBurst) : null;
+		this.concurrencyLimit = maxInFlight > 0
+				? new AdaptiveConcurrencyLimit(Math.min(minInFlight, maxInFlight), maxInFlight, targetLatencyMillis)
+				: null;
+		this.metrics = metrics;
+		if (concurrencyLimit != null) {
+			metrics.bindAdmissionLimit(concurrencyLimit::getLimit, concurrencyLimit::getInFlight);
+		}
+	}
+
+	/**
+	 * Admits a request of {@code clientId} debiting {@code accountId}; either may
+	 * be {@code null} to skip its bucket.
+	 *
+	 * @return the admission time to pass to {@link #release(long)}
+	 * @throws TooManyRequestsException if the request is rejected
+	 */
+	public long admit(String clientId, String accountId) {
+		if (clients != null && clientId != null && !clients.tryAcquire(clientId)) {
+			throw reject(TooManyRequestsException.CLIENT_RATE);
+		}
+		if (accounts != null && accountId != null && !accounts.tryAcquire(accountId)) {
+			throw reject(TooManyRequestsException.ACCOUNT_RATE);
+		}
+		if (concurrencyLimit != null && !concurrencyLimit.tryAcquire()) {
+			throw reject(TooManyRequestsException.OVERLOADED);
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Takes from the bucket of every source account of a batch admitted by
+	 * {@link #admit(String, String)} one token per transfer out of it. Either
+	 * all accounts are charged or none: tokens taken from some accounts are put
+	 * back if another one is rejected.
+	 *
+	 * @param debits number of transfers per source account
+	 * @throws IllegalOperationException if an account has more transfers than
+	 *                                   its burst, which no retry could admit
+	 * @throws TooManyRequestsException  if a bucket holds fewer tokens
+	 */
+	public void admitDebits(Map<String, Integer> debits) {
+		if (accounts == null) {
+			return;
+		}
+		for (Map.Entry<String, Integer> entry : debits.entrySet()) {
+			if (entry.getValue() > accounts.getBurst()) {
+				throw new IllegalOperationException("A batch can contain at most " + accounts.getBurst()
+						+ " transfers from one account, got " + entry.getValue() + " from " + entry.getKey() + ".");
+			}
+		}
+		List<Map.Entry<String, Integer>> charged = new ArrayList<>(debits.size());
+		for (Map.Entry<String, Integer> entry : debits.entrySet()) {
+			if (!accounts.tryAcquireTokens(entry.getKey(), entry.getValue())) {
+				for (Map.Entry<String, Integer> refund : charged) {
+					accounts.release(refund.getKey(), refund.getValue());
+				}
+				throw reject(TooManyRequestsException.ACCOUNT_RATE);
+			}
+			charged.add(entry);
+		}
+	}
+
+	/**
+	 * Ends a request admitted at {@code admittedNanos}, whatever its outcome.
+	 */
+	public void release(long admittedNanos) {
+		if (concurrencyLimit != null) {
+			concurrencyLimit.release(System.nanoTime() - admittedNanos);
+		}
+	}
+
+	private TooManyRequestsException reject(TooManyRequestsException rejection) {
+		metrics.recordAdmissionRejected(rejection);
+		return rejection;
+	}
+}
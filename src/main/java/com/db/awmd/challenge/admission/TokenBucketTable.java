@@ -0,0 +1,190 @@
+package com.db.awmd.challenge.admission;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token buckets for any number of keys (clients, accounts) in a fixed table of
+ * {@code long} slots, updated by compare-and-set only.
+ * <p>
+ * A bucket is kept in the form of the generic cell rate algorithm: instead of a
+ * token count it stores the theoretical arrival time (TAT) at which it is full
+ * again. A request at {@code now} is admitted if {@code max(TAT, now) - now}
+ * leaves room for one more token within the burst, and moves TAT one emission
+ * interval further. A slot packs a 16-bit tag of the key and a 48-bit TAT in
+ * microseconds, so one CAS updates a bucket.
+ * <p>
+ * Keys are placed by open addressing over {@value #PROBES} slots. A bucket
+ * whose TAT has passed is full, i.e. no different from a bucket never used, so
+ * its slot is free for another key: idle buckets are evicted by being
+ * overwritten and memory stays at 8 bytes per slot however many keys come and
+ * go. If all probed slots hold active buckets of other keys, the request is
+ * admitted untracked rather than rejecting a client for others' traffic. Keys
+ * whose hashes share both the home slot and the tag share a bucket.
+ */
+public final class TokenBucketTable {
+
+	private static final int PROBES = 8;
+
+	private static final int TIME_BITS = 48;
+
+	private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+	private final AtomicLongArray slots;
+
+	private final int mask;
+
+	private final long intervalMicros;
+
+	private final long toleranceMicros;
+
+	private final int burst;
+
+	private final long originNanos = System.nanoTime();
+
+	/**
+	 * @param slots          number of buckets, rounded up to a power of two
+	 * @param ratePerSecond  sustained requests per second of every key
+	 * @param burst          requests a key may make at once after being idle
+	 */
+	public TokenBucketTable(int slots, double ratePerSecond, int burst) {
+		if (ratePerSecond <= 0 || burst <= 0) {
+			throw new IllegalArgumentException("Rate and burst must be positive");
+		}
+		int size = Integer.highestOneBit(Math.max(PROBES, slots) * 2 - 1);
+		this.slots = new AtomicLongArray(size);
+		this.mask = size - 1;
+		this.intervalMicros = Math.max(1, Math.round(TimeUnit.SECONDS.toMicros(1) / ratePerSecond));
+		this.toleranceMicros = intervalMicros * (burst - 1);
+		this.burst = burst;
+	}
+
+	/**
+	 * Most tokens a bucket holds, so the most {@link #tryAcquireTokens(String, int)}
+	 * can ever take at once.
+	 */
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * Takes a token from the bucket of {@code key}.
+	 *
+	 * @return {@code false} if the bucket is empty
+	 */
+	public boolean tryAcquire(String key) {
+		return tryAcquireTokens(key, 1);
+	}
+
+	/**
+	 * Takes {@code tokens} tokens from the bucket of {@code key} at once, or none.
+	 *
+	 * @return {@code false} if the bucket holds fewer tokens, always if
+	 *         {@code tokens} exceeds the burst
+	 */
+	public boolean tryAcquireTokens(String key, int tokens) {
+		return tryAcquireTokens(key, tokens, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - originNanos));
+	}
+
+	boolean tryAcquire(String key, long nowMicros) {
+		return tryAcquireTokens(key, 1, nowMicros);
+	}
+
+	boolean tryAcquireTokens(String key, int tokens, long nowMicros) {
+		if (tokens <= 0) {
+			throw new IllegalArgumentException("Tokens must be positive");
+		}
+		// Room for the first token within the burst, and the rest right after it.
+		long tolerance = toleranceMicros - intervalMicros * (tokens - 1);
+		if (tolerance < 0) {
+			return false;
+		}
+		long costMicros = intervalMicros * tokens;
+		long hash = hash(key);
+		long tag = Math.max(1, hash >>> TIME_BITS) << TIME_BITS;
+		int home = (int) hash & mask;
+		while (true) {
+			int found = -1;
+			int free = -1;
+			long freeValue = 0;
+			for (int probe = 0; probe < PROBES && found < 0; probe++) {
+				int slot = (home + probe) & mask;
+				long value = slots.get(slot);
+				if ((value & ~TIME_MASK) == tag) {
+					found = slot;
+				} else if (free < 0 && (value & TIME_MASK) <= nowMicros) {
+					free = slot;
+					freeValue = value;
+				}
+			}
+			if (found >= 0) {
+				int admitted = acquire(found, tag, nowMicros, costMicros, tolerance);
+				if (admitted >= 0) {
+					return admitted == 1;
+				}
+				// The bucket was evicted meanwhile, look the key up again.
+			} else if (free < 0) {
+				return true;
+			} else if (slots.compareAndSet(free, freeValue, tag | (nowMicros + costMicros))) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Puts back {@code tokens} tokens taken from the bucket of {@code key} by a
+	 * request that was then rejected for another reason. Nothing is put back if
+	 * the key was admitted untracked or its bucket was evicted since.
+	 */
+	public void release(String key, int tokens) {
+		long costMicros = intervalMicros * tokens;
+		long hash = hash(key);
+		long tag = Math.max(1, hash >>> TIME_BITS) << TIME_BITS;
+		int home = (int) hash & mask;
+		for (int probe = 0; probe < PROBES; probe++) {
+			int slot = (home + probe) & mask;
+			long value;
+			while (((value = slots.get(slot)) & ~TIME_MASK) == tag) {
+				if (slots.compareAndSet(slot, value, tag | Math.max(0, (value & TIME_MASK) - costMicros))) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return 1 if admitted, 0 if the bucket is empty, -1 if the slot no longer
+	 *         holds the bucket of {@code tag}
+	 */
+	private int acquire(int slot, long tag, long nowMicros, long costMicros, long tolerance) {
+		while (true) {
+			long value = slots.get(slot);
+			if ((value & ~TIME_MASK) != tag) {
+				return -1;
+			}
+			long tat = Math.max(value & TIME_MASK, nowMicros);
+			if (tat - nowMicros > tolerance) {
+				return 0;
+			}
+			if (slots.compareAndSet(slot, value, tag | (tat + costMicros))) {
+				return 1;
+			}
+		}
+	}
+
+	/**
+	 * 64-bit FNV-1a over the characters, finished with the MurmurHash3 mixer.
+	 */
+	private static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			h ^= key.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		return h ^ (h >>> 33);
+	}
+}
@@ -0,0 +1,401 @@
+package com.db.awmd.challenge.audit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountSnapshot;
+import com.db.awmd.challenge.domain.Amounts;
+import com.db.awmd.challenge.domain.AuditDiscrepancy;
+import com.db.awmd.challenge.domain.AuditReport;
+import com.db.awmd.challenge.domain.AuditTotal;
+import com.db.awmd.challenge.domain.TransferEvent;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.LedgerListener;
+import com.db.awmd.challenge.service.RemoteTransfers;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reconciles every balance with the ledger in the background, flagging money
+ * that was created or destroyed outside of a recorded transfer.
+ * <p>
+ * The auditor keeps a shadow ledger: the balance each account should have
+ * according to the account creations and transfers published to the ledger
+ * listeners, one {@link LongAdder} add per side of a transfer, so request
+ * threads crediting one hot account don't contend on a single cell. An audit lists all
+ * accounts and compares every balance with its shadow in parallel on its own
+ * fork-join pool, summing both on the way. No balance lock is taken, so
+ * transfers keep running meanwhile and a balance may already show a transfer
+ * the ledger has not been told about yet. A mismatch is therefore
+ * only a candidate: it is re-read {@code settle-ms} later, up to
+ * {@value #SETTLE_ROUNDS} times, and reported once the account stayed
+ * unchanged (same version, same shadow) for that long and still mismatches.
+ * Accounts that changed in every round are counted as unsettled.
+ * <p>
+ * The totals of a report add up each account at the moment it was confirmed,
+ * which is consistent per account rather than at one instant, and differ by
+ * exactly the sum of the discrepancies and of the unsettled mismatches. There
+ * is one total per currency: cross-currency transfers convert, so balances of
+ * different currencies don't add up.
+ * <p>
+ * The shadow ledger costs about 80 bytes per account, plus striped cells for
+ * the accounts whose adder saw contention. Accounts restored by the
+ * journal at startup are taken over with their replayed balance, as are
+ * accounts found by an audit that the ledger never saw created. In a cluster, a
+ * debit reserved for a cross-node transfer is reported until the transfer is
+ * decided.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "audit.enabled", havingValue = "true")
+public class LedgerAuditor implements LedgerListener, SmartInitializingSingleton, DisposableBean {
+
+	public static final long DEFAULT_SETTLE_MILLIS = 1000;
+
+	public static final int DEFAULT_MAX_REPORTED = 100;
+
+	static final int SETTLE_ROUNDS = 3;
+
+	/** Accounts checked by one fork-join task without splitting further. */
+	private static final int SCAN_BATCH = 8192;
+
+	private static final Function<String, LongAdder> NEW_ENTRY = id -> new LongAdder();
+
+	private final AccountsRepository repository;
+
+	private final TransferMetrics metrics;
+
+	private final RemoteTransfers remoteTransfers;
+
+	private final ConcurrentHashMap<String, LongAdder> expected = new ConcurrentHashMap<>();
+
+	private final ForkJoinPool pool;
+
+	private final long settleMillis;
+
+	private final int maxReported;
+
+	private final long intervalSeconds;
+
+	private ScheduledExecutorService scheduler;
+
+	private volatile AuditReport lastReport;
+
+	public LedgerAuditor(AccountsRepository repository, long settleMillis) {
+		this(repository, TransferMetrics.noop(), 0, settleMillis, DEFAULT_MAX_REPORTED, 0, Optional.empty());
+	}
+
+	/**
+	 * @param parallelism     threads of the audit's fork-join pool, 0 for one
+	 *                        per available processor
+	 * @param intervalSeconds pause between scheduled audits, 0 to audit only on
+	 *                        request
+	 * @param remoteTransfers present in a cluster, tells the accounts of other
+	 *                        nodes apart, which get no shadow balance here
+	 */
+	@Autowired
+	public LedgerAuditor(AccountsRepository repository, TransferMetrics metrics,
+			@Value("${audit.parallelism:0}") int parallelism,
+			@Value("${audit.settle-ms:" + DEFAULT_SETTLE_MILLIS + "}") long settleMillis,
+			@Value("${audit.max-reported:" + DEFAULT_MAX_REPORTED + "}") int maxReported,
+			@Value("${audit.interval-seconds:0}") long intervalSeconds, Optional<RemoteTransfers> remoteTransfers) {
+		this.repository = repository;
+		this.remoteTransfers = remoteTransfers.orElse(RemoteTransfers.NONE);
+		this.metrics = metrics;
+		this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+		this.settleMillis = settleMillis;
+		this.maxReported = maxReported;
+		this.intervalSeconds = intervalSeconds;
+	}
+
+	/**
+	 * Takes over the accounts already in the repository, e.g. replayed from the
+	 * journal, before any transfer is served.
+	 */
+	@Override
+	public void afterSingletonsInstantiated() {
+		for (Account account : repository.listAccounts()) {
+			expected.putIfAbsent(account.getAccountId(), adderOf(account.getBalanceUnits()));
+		}
+		metrics.bindAuditReport(() -> lastReport);
+		if (intervalSeconds > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "ledger-auditor");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleWithFixedDelay(this::scheduledAudit, intervalSeconds, intervalSeconds,
+					TimeUnit.SECONDS);
+		}
+	}
+
+	@Override
+	public void onAccountCreated(Account account, long openingUnits) {
+		// Added rather than set: a transfer may have reached the account first.
+		expected.computeIfAbsent(account.getAccountId(), NEW_ENTRY).add(openingUnits);
+	}
+
+	@Override
+	public void onTransfer(TransferEvent event) {
+		// Accounts of other nodes are audited there; an entry here would never be read.
+		if (!remoteTransfers.isRemote(event.getAccountFrom())) {
+			expected.computeIfAbsent(event.getAccountFrom(), NEW_ENTRY).add(-event.getAmountUnits());
+		}
+		if (!remoteTransfers.isRemote(event.getAccountTo())) {
+			expected.computeIfAbsent(event.getAccountTo(), NEW_ENTRY).add(event.getCreditUnits());
+		}
+	}
+
+	/**
+	 * The report of the latest audit, {@code null} before the first one.
+	 */
+	public AuditReport getLastReport() {
+		return lastReport;
+	}
+
+	/**
+	 * Reconciles all accounts now. Audits don't overlap; a caller arriving
+	 * during one waits for it and then runs its own.
+	 */
+	public synchronized AuditReport audit() throws InterruptedException {
+		long startedAt = System.currentTimeMillis();
+		long started = System.nanoTime();
+		List<Account> accounts = repository.listAccounts();
+		Totals totals = pool.invoke(new Scan(accounts, 0, accounts.size()));
+
+		List<Candidate> pending = new ArrayList<>(totals.candidates);
+		for (Iterator<Candidate> it = pending.iterator(); it.hasNext();) {
+			Candidate candidate = it.next();
+			candidate.read(expectedUnits(candidate.account));
+			if (candidate.balance == candidate.expected) {
+				it.remove();
+			}
+		}
+		List<Candidate> confirmed = new ArrayList<>();
+		for (int round = 0; round < SETTLE_ROUNDS && !pending.isEmpty(); round++) {
+			TimeUnit.MILLISECONDS.sleep(settleMillis);
+			for (Iterator<Candidate> it = pending.iterator(); it.hasNext();) {
+				Candidate candidate = it.next();
+				long version = candidate.version;
+				long shadow = candidate.expected;
+				candidate.read(expectedUnits(candidate.account));
+				if (candidate.balance == candidate.expected) {
+					it.remove();
+				} else if (candidate.version == version && candidate.expected == shadow) {
+					confirmed.add(candidate);
+					it.remove();
+				}
+			}
+		}
+
+		for (Candidate candidate : totals.candidates) {
+			long[] sums = totals.sums(candidate.account.getCurrency());
+			sums[0] += candidate.balance - candidate.scannedBalance;
+			sums[1] += candidate.expected - candidate.scannedExpected;
+		}
+		List<AuditTotal> sums = new ArrayList<>();
+		List<AuditTotal> mismatched = new ArrayList<>();
+		for (Map.Entry<String, long[]> entry : new TreeMap<>(totals.byCurrency).entrySet()) {
+			AuditTotal total = AuditTotal.builder().currency(entry.getKey())
+					.balance(Amounts.toDecimal(entry.getValue()[0])).expected(Amounts.toDecimal(entry.getValue()[1]))
+					.build();
+			sums.add(total);
+			if (entry.getValue()[0] != entry.getValue()[1]) {
+				mismatched.add(total);
+			}
+		}
+		List<AuditDiscrepancy> discrepancies = new ArrayList<>();
+		for (int i = 0; i < confirmed.size() && i < maxReported; i++) {
+			Candidate candidate = confirmed.get(i);
+			discrepancies.add(AuditDiscrepancy.builder().accountId(candidate.account.getAccountId())
+					.currency(candidate.account.getCurrency()).balance(Amounts.toDecimal(candidate.balance))
+					.expected(Amounts.toDecimal(candidate.expected)).build());
+		}
+
+		AuditReport report = AuditReport.builder().startedAt(startedAt)
+				.durationMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)).accounts(totals.accounts)
+				.adopted(totals.adopted).totals(sums).discrepancyCount(confirmed.size()).unsettled(pending.size())
+				.discrepancies(discrepancies).build();
+		lastReport = report;
+		if (confirmed.isEmpty()) {
+			log.info("Audited {} accounts in {} ms, balances match the ledger ({} unsettled)", report.getAccounts(),
+					report.getDurationMillis(), report.getUnsettled());
+		} else {
+			log.warn("Audited {} accounts in {} ms, {} balances differ from the ledger, totals {}: {}",
+					report.getAccounts(), report.getDurationMillis(), confirmed.size(), mismatched, discrepancies);
+		}
+		return report;
+	}
+
+	@Override
+	public void destroy() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+		pool.shutdownNow();
+	}
+
+	private void scheduledAudit() {
+		try {
+			audit();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			log.error("Ledger audit failed", e);
+		}
+	}
+
+	private static LongAdder adderOf(long units) {
+		LongAdder adder = new LongAdder();
+		adder.add(units);
+		return adder;
+	}
+
+	private long expectedUnits(Account account) {
+		LongAdder entry = expected.get(account.getAccountId());
+		return entry != null ? entry.sum() : account.getBalanceUnits();
+	}
+
+	/**
+	 * Checks a range of accounts, splitting it in halves down to
+	 * {@value LedgerAuditor#SCAN_BATCH} accounts.
+	 */
+	private final class Scan extends RecursiveTask<Totals> {
+
+		private final List<Account> accounts;
+
+		private final int from;
+
+		private final int to;
+
+		private Scan(List<Account> accounts, int from, int to) {
+			this.accounts = accounts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Totals compute() {
+			if (to - from > SCAN_BATCH) {
+				int middle = (from + to) >>> 1;
+				Scan left = new Scan(accounts, from, middle);
+				left.fork();
+				Totals right = new Scan(accounts, middle, to).compute();
+				return left.join().add(right);
+			}
+			Totals totals = new Totals();
+			String currency = null;
+			long[] sums = null;
+			for (int i = from; i < to; i++) {
+				Account account = accounts.get(i);
+				long balance = account.getBalanceUnits();
+				LongAdder entry = expected.get(account.getAccountId());
+				if (entry == null) {
+					entry = expected.putIfAbsent(account.getAccountId(), adderOf(balance));
+					totals.adopted += entry == null ? 1 : 0;
+				}
+				long shadow = entry != null ? entry.sum() : balance;
+				// Currencies are interned, and accounts of one currency tend to come in runs.
+				if (account.getCurrency() != currency) {
+					currency = account.getCurrency();
+					sums = totals.sums(currency);
+				}
+				totals.accounts++;
+				sums[0] += balance;
+				sums[1] += shadow;
+				if (balance != shadow) {
+					totals.candidates.add(new Candidate(account, balance, shadow));
+				}
+			}
+			return totals;
+		}
+	}
+
+	private static final class Totals {
+
+		private long accounts;
+
+		private long adopted;
+
+		/** Balance and expected units summed per currency. */
+		private final Map<String, long[]> byCurrency = new HashMap<>();
+
+		private final List<Candidate> candidates = new ArrayList<>();
+
+		private long[] sums(String currency) {
+			return byCurrency.computeIfAbsent(currency, c -> new long[2]);
+		}
+
+		private Totals add(Totals other) {
+			accounts += other.accounts;
+			adopted += other.adopted;
+			for (Map.Entry<String, long[]> entry : other.byCurrency.entrySet()) {
+				long[] sums = sums(entry.getKey());
+				sums[0] += entry.getValue()[0];
+				sums[1] += entry.getValue()[1];
+			}
+			candidates.addAll(other.candidates);
+			return this;
+		}
+	}
+
+	/**
+	 * An account whose balance differed from the shadow ledger, with the values
+	 * it was counted with in the scan and those of its latest re-read.
+	 */
+	private static final class Candidate {
+
+		private final Account account;
+
+		private final long scannedBalance;
+
+		private final long scannedExpected;
+
+		private long balance;
+
+		private long expected;
+
+		private long version = -1;
+
+		private Candidate(Account account, long balance, long expected) {
+			this.account = account;
+			this.scannedBalance = balance;
+			this.scannedExpected = expected;
+			this.balance = balance;
+			this.expected = expected;
+		}
+
+		/**
+		 * Re-reads the balance with its version, then takes {@code expected},
+		 * read by the caller before.
+		 */
+		private void read(long expected) {
+			AccountSnapshot snapshot = account.snapshot();
+			this.balance = Amounts.toUnits(snapshot.getBalance());
+			this.version = snapshot.getVersion();
+			this.expected = expected;
+		}
+	}
+}
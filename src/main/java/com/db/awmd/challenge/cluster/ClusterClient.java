@@ -0,0 +1,83 @@
+package com.db.awmd.challenge.cluster;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.exception.NodeUnavailableException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * HTTP calls between cluster nodes, for forwarded client requests and the
+ * two-phase transfer protocol. Every call is marked with
+ * {@link #FORWARDED_HEADER} so the receiving node never routes it further.
+ */
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class ClusterClient {
+
+	public static final String FORWARDED_HEADER = "X-Cluster-Forwarded-By";
+
+	private final ClusterTopology topology;
+
+	private final ObjectMapper objectMapper;
+
+	private final HttpClient httpClient;
+
+	private final Duration requestTimeout;
+
+	@Autowired
+	public ClusterClient(ClusterTopology topology, ObjectMapper objectMapper,
+			@Value("${cluster.request-timeout-ms:2000}") long requestTimeoutMillis) {
+		this.topology = topology;
+		this.objectMapper = objectMapper;
+		this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+		this.httpClient = HttpClient.newBuilder().connectTimeout(requestTimeout).build();
+	}
+
+	/**
+	 * Sends a request to {@code nodeId} and returns its response, whatever its
+	 * status.
+	 *
+	 * @throws NodeUnavailableException if the node could not be reached or did
+	 *                                  not answer in time
+	 */
+	public HttpResponse<byte[]> send(String nodeId, String method, String pathAndQuery, byte[] body,
+			Map<String, String> headers) {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(topology.urlOf(nodeId) + pathAndQuery))
+				.timeout(requestTimeout).header(FORWARDED_HEADER, topology.getLocalNodeId())
+				.method(method, body == null ? BodyPublishers.noBody() : BodyPublishers.ofByteArray(body));
+		headers.forEach(request::header);
+		try {
+			return httpClient.send(request.build(), BodyHandlers.ofByteArray());
+		} catch (IOException e) {
+			throw new NodeUnavailableException("Cluster node " + nodeId + " is unavailable, please retry.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new NodeUnavailableException("Interrupted while calling cluster node " + nodeId + ".", e);
+		}
+	}
+
+	public HttpResponse<byte[]> postJson(String nodeId, String path, Object body) {
+		byte[] json;
+		try {
+			json = body == null ? null : objectMapper.writeValueAsBytes(body);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException("Can't serialize cluster request", e);
+		}
+		return send(nodeId, "POST", path, json, Map.of("Content-Type", MediaType.APPLICATION_JSON_VALUE));
+	}
+}
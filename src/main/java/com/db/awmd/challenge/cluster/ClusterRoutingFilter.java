@@ -0,0 +1,255 @@
+package com.db.awmd.challenge.cluster;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.db.awmd.challenge.domain.ExceptionResponse;
+import com.db.awmd.challenge.exception.NodeUnavailableException;
+import com.db.awmd.challenge.web.ForwardingPeers;
+import com.db.awmd.challenge.web.FundTransferController;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sends every client request about an account to the node owning it, so a
+ * client may call any node. Account reads and creations go to the owner of the
+ * account, transfers to the owner of the source account, which then runs a
+ * cross-node transfer if the destination lives elsewhere.
+ * <p>
+ * Endpoints that work on many accounts at once (bulk import and read, batch,
+ * multi-leg and scheduled transfers) can't be served by one node and are rejected in
+ * cluster mode.
+ * <p>
+ * A request marked as forwarded is only trusted, and served without routing,
+ * if it comes from the host of the node it names. A forwarded request carries
+ * the remote address of the original client, which the owner rate-limits.
+ * <p>
+ * The node-to-node endpoints under {@code /internal} are refused with 403
+ * unless the request is trusted, so only a cluster node can prepare or decide
+ * a cross-node transfer, under the node id it is the host of.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class ClusterRoutingFilter extends OncePerRequestFilter implements ForwardingPeers {
+
+	private static final String ACCOUNTS = "/v1/accounts";
+
+	private static final String TRANSFER = "/v1/transfer";
+
+	private static final String INTERNAL = "/internal/";
+
+	/** Request headers a forwarded call keeps; the client sets hop-by-hop headers itself. */
+	private static final Set<String> FORWARDED_REQUEST_HEADERS = Set.of(HttpHeaders.CONTENT_TYPE.toLowerCase(),
+			HttpHeaders.ACCEPT.toLowerCase(), FundTransferController.IDEMPOTENCY_KEY_HEADER.toLowerCase());
+
+	private static final Set<String> HOP_BY_HOP_RESPONSE_HEADERS = Set.of("connection", "content-length",
+			"keep-alive", "transfer-encoding", ":status");
+
+	private final ClusterTopology topology;
+
+	private final ClusterClient client;
+
+	private final ObjectMapper objectMapper;
+
+	@Autowired
+	public ClusterRoutingFilter(ClusterTopology topology, ClusterClient client, ObjectMapper objectMapper) {
+		this.topology = topology;
+		this.client = client;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public boolean isTrusted(HttpServletRequest request) {
+		String nodeId = request.getHeader(ClusterClient.FORWARDED_HEADER);
+		return nodeId != null && topology.isAddressOf(nodeId, request.getRemoteAddr());
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return isTrusted(request);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		if (path.startsWith(INTERNAL)) {
+			log.warn("Refused {} {} from {}, which is not a cluster node", request.getMethod(), path,
+					request.getRemoteAddr());
+			writeError(response, HttpStatus.FORBIDDEN, path + " is only available to cluster nodes.");
+			return;
+		}
+		if (isNodeLocal(path) || ("GET".equals(request.getMethod()) && ACCOUNTS.equals(path))) {
+			writeError(response, HttpStatus.BAD_REQUEST, path + " is not available in cluster mode.");
+			return;
+		}
+
+		if ("GET".equals(request.getMethod()) && path.startsWith(ACCOUNTS + "/")) {
+			int end = path.indexOf('/', ACCOUNTS.length() + 1);
+			String accountId = path.substring(ACCOUNTS.length() + 1, end < 0 ? path.length() : end);
+			route(accountId, path, null, request, response, chain);
+		} else if ("POST".equals(request.getMethod()) && (ACCOUNTS.equals(path) || TRANSFER.equals(path))) {
+			byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+			String accountId = readField(body, ACCOUNTS.equals(path) ? "accountId" : "accountFrom");
+			route(accountId, path, body, request, response, chain);
+		} else {
+			chain.doFilter(request, response);
+		}
+	}
+
+	private void route(String accountId, String path, byte[] body, HttpServletRequest request,
+			HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+		HttpServletRequest local = body == null ? request : new CachedBodyRequest(request, body);
+		if (accountId == null || accountId.isEmpty() || topology.isLocal(accountId)) {
+			chain.doFilter(local, response);
+			return;
+		}
+
+		String nodeId = topology.ownerOf(accountId);
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (String name : FORWARDED_REQUEST_HEADERS) {
+			String value = request.getHeader(name);
+			if (value != null) {
+				headers.put(name, value);
+			}
+		}
+		// The owner rate-limits the original client, not this node.
+		headers.put(FundTransferController.CLIENT_ID_HEADER, request.getRemoteAddr());
+		String query = request.getQueryString();
+		HttpResponse<byte[]> forwarded;
+		try {
+			forwarded = client.send(nodeId, request.getMethod(), query == null ? path : path + "?" + query, body,
+					headers);
+		} catch (NodeUnavailableException e) {
+			log.warn("Can't forward {} {} to node {}: {}", request.getMethod(), path, nodeId, e.getMessage());
+			writeError(response, HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+			return;
+		}
+
+		response.setStatus(forwarded.statusCode());
+		forwarded.headers().map().forEach((name, values) -> {
+			if (!HOP_BY_HOP_RESPONSE_HEADERS.contains(name.toLowerCase())) {
+				values.forEach(value -> response.addHeader(name, value));
+			}
+		});
+		response.getOutputStream().write(forwarded.body());
+	}
+
+	private static boolean isNodeLocal(String path) {
+		return path.startsWith(ACCOUNTS + "/bulk") || path.startsWith(TRANSFER + "/batch")
+				|| path.startsWith(TRANSFER + "/multi-leg") || path.startsWith(TRANSFER + "/scheduled");
+	}
+
+	/**
+	 * Reads a top-level text field of a JSON body, or {@code null} if the body
+	 * isn't such JSON; the local controller then rejects it as usual.
+	 */
+	private String readField(byte[] body, String field) {
+		try {
+			JsonNode value = objectMapper.readTree(body).get(field);
+			return value != null && value.isTextual() ? value.asText() : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+		response.setStatus(status.value());
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		objectMapper.writeValue(response.getOutputStream(),
+				ExceptionResponse.builder().httpStatus(status.value()).message(message).build());
+	}
+
+	/**
+	 * Request whose body was consumed for routing and is served again from
+	 * memory.
+	 */
+	private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+		private final byte[] body;
+
+		private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+			super(request);
+			this.body = body;
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			ByteArrayInputStream in = new ByteArrayInputStream(body);
+			return new ServletInputStream() {
+
+				@Override
+				public int read() {
+					return in.read();
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					return in.read(b, off, len);
+				}
+
+				@Override
+				public boolean isFinished() {
+					return in.available() == 0;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				/**
+				 * The body is in memory, so all of it is available at once: the
+				 * listener is told so right away, as a container does for a body
+				 * that already arrived.
+				 */
+				@Override
+				public void setReadListener(ReadListener listener) {
+					if (!isAsyncStarted()) {
+						throw new IllegalStateException("A read listener needs an asynchronous request");
+					}
+					try {
+						if (!isFinished()) {
+							listener.onDataAvailable();
+						}
+						listener.onAllDataRead();
+					} catch (IOException | RuntimeException e) {
+						listener.onError(e);
+					}
+				}
+			};
+		}
+
+		@Override
+		public BufferedReader getReader() {
+			return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+		}
+	}
+}
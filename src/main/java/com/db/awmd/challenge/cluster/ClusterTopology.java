@@ -0,0 +1,106 @@
+package com.db.awmd.challenge.cluster;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Nodes of the cluster and the node owning each account. The node list is
+ * static configuration ({@code cluster.nodes}) and must be the same on every
+ * node, as must {@code cluster.virtual-nodes}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class ClusterTopology {
+
+	private final String localNodeId;
+
+	private final Map<String, String> nodeUrls;
+
+	private final ConsistentHashRing ring;
+
+	/** Resolved addresses of the nodes' hosts, filled on first use. */
+	private final Map<String, InetAddress[]> nodeAddresses = new ConcurrentHashMap<>();
+
+	@Autowired
+	public ClusterTopology(@Value("${cluster.node-id}") String localNodeId, @Value("${cluster.nodes}") String nodes,
+			@Value("${cluster.virtual-nodes:128}") int virtualNodes) {
+		Map<String, String> urls = new LinkedHashMap<>();
+		for (String node : nodes.split(",")) {
+			int separator = node.indexOf('=');
+			if (separator <= 0) {
+				throw new IllegalArgumentException("Cluster nodes must be given as id=url, got " + node);
+			}
+			String url = node.substring(separator + 1).trim();
+			urls.put(node.substring(0, separator).trim(), url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+		}
+		if (!urls.containsKey(localNodeId)) {
+			throw new IllegalArgumentException("Local node " + localNodeId + " is not one of the cluster nodes");
+		}
+		this.localNodeId = localNodeId;
+		this.nodeUrls = Collections.unmodifiableMap(urls);
+		this.ring = new ConsistentHashRing(urls.keySet(), virtualNodes);
+		log.info("Node {} joined cluster of {}", localNodeId, urls.keySet());
+	}
+
+	public String getLocalNodeId() {
+		return localNodeId;
+	}
+
+	public String ownerOf(String accountId) {
+		return ring.ownerOf(accountId);
+	}
+
+	public boolean isLocal(String accountId) {
+		return localNodeId.equals(ring.ownerOf(accountId));
+	}
+
+	/**
+	 * Whether the IP address {@code address} belongs to the host of
+	 * {@code nodeId}. Any loopback address matches a node on a loopback host.
+	 */
+	public boolean isAddressOf(String nodeId, String address) {
+		String url = nodeUrls.get(nodeId);
+		if (url == null || address == null) {
+			return false;
+		}
+		try {
+			InetAddress[] hosts = nodeAddresses.get(nodeId);
+			if (hosts == null) {
+				hosts = InetAddress.getAllByName(URI.create(url).getHost());
+				nodeAddresses.put(nodeId, hosts);
+			}
+			// An IP literal, as given by the servlet container: no name lookup.
+			InetAddress remote = InetAddress.getByName(address);
+			for (InetAddress host : hosts) {
+				if (host.equals(remote) || (host.isLoopbackAddress() && remote.isLoopbackAddress())) {
+					return true;
+				}
+			}
+			return false;
+		} catch (UnknownHostException | IllegalArgumentException e) {
+			log.warn("Can't resolve the address of cluster node {}: {}", nodeId, e.getMessage());
+			return false;
+		}
+	}
+
+	public String urlOf(String nodeId) {
+		String url = nodeUrls.get(nodeId);
+		if (url == null) {
+			throw new IllegalArgumentException("Unknown cluster node " + nodeId);
+		}
+		return url;
+	}
+}
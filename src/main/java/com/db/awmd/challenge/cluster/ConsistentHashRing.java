@@ -0,0 +1,83 @@
+package com.db.awmd.challenge.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Consistent hash ring assigning account ids to nodes. Every node is placed on
+ * the ring at {@code virtualNodes} pseudo-random points and an account belongs
+ * to the node of the first point at or after the account's hash, so adding or
+ * removing a node only moves the accounts of the ring segments it gains or
+ * loses, and the virtual points spread the load evenly.
+ */
+public final class ConsistentHashRing {
+
+	private final long[] points;
+
+	private final String[] owners;
+
+	public ConsistentHashRing(Collection<String> nodeIds, int virtualNodes) {
+		if (nodeIds.isEmpty() || virtualNodes <= 0) {
+			throw new IllegalArgumentException("A ring needs nodes and virtual nodes");
+		}
+		int size = nodeIds.size() * virtualNodes;
+		long[] packed = new long[size];
+		String[] nodes = nodeIds.toArray(new String[0]);
+		Arrays.sort(nodes);
+		int count = 0;
+		for (int n = 0; n < nodes.length; n++) {
+			for (int v = 0; v < virtualNodes; v++) {
+				packed[count++] = hash(nodes[n] + "#" + v);
+			}
+		}
+		// Sort points together with their owners by sorting indexes by point.
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compareUnsigned(packed[a], packed[b]));
+		this.points = new long[size];
+		this.owners = new String[size];
+		for (int i = 0; i < size; i++) {
+			points[i] = packed[order[i]];
+			owners[i] = nodes[order[i] / virtualNodes];
+		}
+	}
+
+	public String ownerOf(String key) {
+		long hash = hash(key);
+		int low = 0;
+		int high = points.length - 1;
+		if (Long.compareUnsigned(hash, points[high]) > 0) {
+			return owners[0];
+		}
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (Long.compareUnsigned(points[mid], hash) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return owners[low];
+	}
+
+	/**
+	 * 64-bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 mixer so
+	 * similar keys land far apart.
+	 */
+	static long hash(String key) {
+		long h = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			h ^= b & 0xff;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
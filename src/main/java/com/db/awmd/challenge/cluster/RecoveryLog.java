@@ -0,0 +1,297 @@
+package com.db.awmd.challenge.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.exception.JournalException;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only log of the state changes of cross-node transfers, for both roles
+ * a node plays: coordinator (the node owning the source account) and
+ * participant (the node owning the destination account). Every record is
+ * forced to disk before the protocol step it describes is acknowledged.
+ * <p>
+ * Appends only write to the file under a short lock; a background flusher
+ * forces the file and wakes every appender covered by the force, so concurrent
+ * transactions share one fsync (group commit, as in the transfer journal).
+ * <p>
+ * On startup the log is read, the latest state of every transaction is kept,
+ * and transactions that are still unresolved are written to a fresh log, which
+ * keeps the file as small as the number of in-doubt transactions.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class RecoveryLog implements DisposableBean {
+
+	public enum State {
+		/** Coordinator: source debited, participant not asked yet. */
+		RESERVED,
+		/** Coordinator: commit decided, participant not acknowledged yet. */
+		COMMITTING,
+		/** Coordinator: abort decided, participant not acknowledged yet. */
+		ABORTING,
+		/** Coordinator: participant acknowledged the decision. */
+		DONE,
+		/** Participant: destination checked, waiting for the decision. */
+		PREPARED,
+		/** Participant: destination credited. */
+		COMMITTED,
+		/** Participant: transaction aborted, a late prepare is refused. */
+		ABORTED;
+
+		boolean isFinal() {
+			return this == DONE || this == COMMITTED || this == ABORTED;
+		}
+	}
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final FileChannel channel;
+
+	private final List<Entry> unresolved;
+
+	private final ReentrantLock appendLock = new ReentrantLock();
+
+	private final Object commitMonitor = new Object();
+
+	private final Thread flusher;
+
+	private volatile long writtenPosition;
+
+	private volatile long durablePosition;
+
+	private volatile IOException failure;
+
+	private volatile boolean running = true;
+
+	/**
+	 * @param file the log, which must outlive the process: it is required and
+	 *             has no default under a temporary directory
+	 */
+	@Autowired
+	public RecoveryLog(@Value("${cluster.recovery-log:}") String file) {
+		if (file == null || file.trim().isEmpty()) {
+			throw new IllegalStateException("cluster.recovery-log must name the file logging in-doubt transfers");
+		}
+		Path path = Paths.get(file);
+		try {
+			Map<String, Entry> latest = new LinkedHashMap<>();
+			if (Files.exists(path)) {
+				try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+					Entry entry;
+					while ((entry = read(in)) != null) {
+						latest.put(entry.txId, entry);
+					}
+				}
+			}
+			List<Entry> pending = new ArrayList<>();
+			for (Entry entry : latest.values()) {
+				if (!entry.state.isFinal()) {
+					pending.add(entry);
+				}
+			}
+
+			Path compacted = Paths.get(file + ".compacted");
+			try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				for (Entry entry : pending) {
+					write(out, entry);
+				}
+				out.force(true);
+			}
+			Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			this.channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			this.writtenPosition = channel.size();
+			this.durablePosition = writtenPosition;
+			this.unresolved = Collections.unmodifiableList(pending);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Can't open cluster recovery log " + path, e);
+		}
+		if (!unresolved.isEmpty()) {
+			log.info("Recovering {} unresolved cross-node transfers", unresolved.size());
+		}
+		this.flusher = new Thread(this::flush, "cluster-recovery-flusher");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	/**
+	 * Transactions that were unresolved when the log was opened.
+	 */
+	public List<Entry> getUnresolved() {
+		return unresolved;
+	}
+
+	/**
+	 * Appends a record and waits until it is forced to disk.
+	 */
+	public void append(Entry entry) {
+		long end;
+		appendLock.lock();
+		try {
+			end = writtenPosition + write(channel, entry);
+			writtenPosition = end;
+		} catch (IOException e) {
+			throw new JournalException("Can't write cluster recovery log", e);
+		} finally {
+			appendLock.unlock();
+		}
+		awaitDurable(end);
+	}
+
+	@Override
+	public void destroy() throws IOException, InterruptedException {
+		running = false;
+		LockSupport.unpark(flusher);
+		flusher.join(TimeUnit.SECONDS.toMillis(5));
+		synchronized (commitMonitor) {
+			commitMonitor.notifyAll();
+		}
+		appendLock.lock();
+		try {
+			channel.force(false);
+			channel.close();
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	private void awaitDurable(long end) {
+		LockSupport.unpark(flusher);
+		boolean interrupted = false;
+		synchronized (commitMonitor) {
+			while (durablePosition < end) {
+				if (failure != null) {
+					throw new JournalException("Can't force cluster recovery log", failure);
+				}
+				if (!running) {
+					throw new JournalException("Cluster recovery log closed before the record became durable");
+				}
+				try {
+					commitMonitor.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void flush() {
+		while (running) {
+			long target = writtenPosition;
+			if (target <= durablePosition) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				continue;
+			}
+			try {
+				channel.force(false);
+			} catch (IOException e) {
+				log.error("Forcing the cluster recovery log failed", e);
+				failure = e;
+				running = false;
+			}
+			synchronized (commitMonitor) {
+				if (failure == null) {
+					durablePosition = target;
+				}
+				commitMonitor.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes written
+	 */
+	private static int write(FileChannel out, Entry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		DataOutputStream record = new DataOutputStream(bytes);
+		record.writeByte(entry.state.ordinal());
+		record.writeUTF(entry.txId);
+		record.writeUTF(entry.nodeId);
+		record.writeUTF(entry.accountFrom);
+		record.writeUTF(entry.accountTo);
+		record.writeLong(entry.amountUnits);
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		return buffer.limit();
+	}
+
+	/**
+	 * Reads the next record, or {@code null} at the end of the log or at a record
+	 * torn by a crash.
+	 */
+	private static Entry read(DataInputStream in) throws IOException {
+		int state = in.read();
+		if (state < 0) {
+			return null;
+		}
+		try {
+			return new Entry(State.values()[state], in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(),
+					in.readLong());
+		} catch (EOFException | ArrayIndexOutOfBoundsException e) {
+			log.warn("Ignoring torn record at the end of the cluster recovery log");
+			return null;
+		}
+	}
+
+	/**
+	 * One state of a cross-node transfer. {@code nodeId} is the other node of
+	 * the transaction.
+	 */
+	@Getter
+	@AllArgsConstructor
+	public static final class Entry {
+
+		private final State state;
+
+		private final String txId;
+
+		private final String nodeId;
+
+		private final String accountFrom;
+
+		private final String accountTo;
+
+		private final long amountUnits;
+
+		public Entry withState(State state) {
+			return new Entry(state, txId, nodeId, accountFrom, accountTo, amountUnits);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package com.db.awmd.challenge.cluster;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.cluster.RecoveryLog.Entry;
+import com.db.awmd.challenge.cluster.RecoveryLog.State;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.RemoteCredit;
+import com.db.awmd.challenge.domain.TransferEvent;
+import com.db.awmd.challenge.engine.TransferExecutor;
+import com.db.awmd.challenge.engine.WriteAheadLog;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.InvalidAccountNumberException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.LedgerListener;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Participant side of cross-node transfers, run by the node owning the
+ * destination account; see {@link TwoPhaseTransfers} for the protocol. Every
+ * call is idempotent, so the coordinator may repeat it until it gets an answer.
+ * <p>
+ * Calls for one transaction are serialized by one of a fixed set of stripe
+ * monitors chosen by its id, so transactions of different ids run and share
+ * their recovery log forces concurrently.
+ * <p>
+ * A commit journals the credit as a remote leg of the transaction before it
+ * is applied, and logs {@code COMMITTED} once the record is durable. A
+ * transaction found {@code PREPARED} on startup whose leg was replayed from the
+ * journal crashed between the two steps and is committed without crediting the
+ * account again.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class TransferParticipant {
+
+	/** Aborted transaction ids remembered to refuse a prepare that arrives late. */
+	private static final int MAX_ABORTED = 100_000;
+
+	private static final int TX_LOCKS = 1024;
+
+	private final AccountsRepository repository;
+
+	private final RecoveryLog recoveryLog;
+
+	private final List<LedgerListener> ledgerListeners;
+
+	private final TransferExecutor transferExecutor;
+
+	private final WriteAheadLog writeAheadLog;
+
+	private final Object[] txLocks = new Object[TX_LOCKS];
+
+	private final Map<String, Entry> prepared = new ConcurrentHashMap<>();
+
+	/** Journal positions of the credits of prepared transactions not yet logged as committed. */
+	private final Map<String, Long> credited = new ConcurrentHashMap<>();
+
+	private final Map<String, Boolean> aborted = new LinkedHashMap<String, Boolean>() {
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > MAX_ABORTED;
+		}
+	};
+
+	/**
+	 * @param transferExecutor hands the destination account over while it is
+	 *                         credited
+	 * @param writeAheadLog    present with a journal, records the credit before
+	 *                         it is applied
+	 */
+	@Autowired
+	public TransferParticipant(AccountsRepository repository, RecoveryLog recoveryLog,
+			List<LedgerListener> ledgerListeners, TransferExecutor transferExecutor,
+			Optional<WriteAheadLog> writeAheadLog) {
+		this.repository = repository;
+		this.recoveryLog = recoveryLog;
+		this.ledgerListeners = ledgerListeners;
+		this.transferExecutor = transferExecutor;
+		this.writeAheadLog = writeAheadLog.orElse(WriteAheadLog.NONE);
+		for (int i = 0; i < TX_LOCKS; i++) {
+			txLocks[i] = new Object();
+		}
+		for (Entry entry : recoveryLog.getUnresolved()) {
+			if (entry.getState() != State.PREPARED) {
+				continue;
+			}
+			if (this.writeAheadLog.getRecoveredLegUnits(entry.getTxId()) != 0) {
+				log.info("Transaction {} was credited before the restart, logging its commit", entry.getTxId());
+				recoveryLog.append(entry.withState(State.COMMITTED));
+			} else {
+				prepared.put(entry.getTxId(), entry);
+			}
+		}
+	}
+
+	/**
+	 * Checks that the destination account exists and holds the currency of the
+	 * credit, and promises to credit it once the coordinator commits. Amounts
+	 * aren't converted across nodes: the nodes' exchange rates may differ, and
+	 * both would have to agree on the credited amount.
+	 */
+	public void prepare(String txId, String coordinatorNodeId, RemoteCredit credit) {
+		synchronized (lockOf(txId)) {
+			if (prepared.containsKey(txId)) {
+				return;
+			}
+			if (isAborted(txId)) {
+				throw new IllegalOperationException("Transaction " + txId + " was aborted.");
+			}
+			Account accountTo = repository.getAccount(credit.getAccountTo());
+			if (accountTo == null) {
+				throw new InvalidAccountNumberException(credit.getAccountTo() + " account doesn't exist");
+			}
+			if (!Account.currencyOf(credit.getCurrency()).equals(accountTo.getCurrency())) {
+				throw new IllegalOperationException("Transfers to accounts of other nodes can't convert currencies.");
+			}
+			Entry entry = new Entry(State.PREPARED, txId, coordinatorNodeId, credit.getAccountFrom(),
+					credit.getAccountTo(), credit.getAmountUnits());
+			recoveryLog.append(entry);
+			prepared.put(txId, entry);
+		}
+	}
+
+	/**
+	 * Credits the destination account of a prepared transaction. A transaction
+	 * that isn't prepared was committed already.
+	 */
+	public void commit(String txId) {
+		Entry entry;
+		synchronized (lockOf(txId)) {
+			entry = prepared.get(txId);
+			if (entry == null) {
+				return;
+			}
+			// Stays prepared until COMMITTED is logged, so a commit that fails is
+			// redelivered; the credit is remembered so the redelivery doesn't repeat it.
+			Long position = credited.get(txId);
+			if (position == null) {
+				Account accountTo = repository.getAccount(entry.getAccountTo());
+				long amountUnits = entry.getAmountUnits();
+				position = transferExecutor.writeBalances(Collections.singletonList(accountTo), () -> {
+					long appended = writeAheadLog.appendRemoteLeg(txId, accountTo.getAccountId(),
+							entry.getAccountFrom(), amountUnits);
+					accountTo.creditUnits(amountUnits);
+					return appended;
+				});
+				credited.put(txId, position);
+			}
+			writeAheadLog.awaitDurable(position);
+			recoveryLog.append(entry.withState(State.COMMITTED));
+			writeAheadLog.settleRemoteLegs(txId);
+			credited.remove(txId);
+			prepared.remove(txId);
+		}
+
+		TransferEvent event = new TransferEvent(entry.getAccountFrom(), entry.getAccountTo(), entry.getAmountUnits(),
+				System.currentTimeMillis());
+		for (int i = 0; i < ledgerListeners.size(); i++) {
+			ledgerListeners.get(i).onTransfer(event);
+		}
+	}
+
+	public void abort(String txId) {
+		synchronized (lockOf(txId)) {
+			Entry entry = prepared.remove(txId);
+			if (entry != null) {
+				recoveryLog.append(entry.withState(State.ABORTED));
+			}
+			synchronized (aborted) {
+				aborted.put(txId, Boolean.TRUE);
+			}
+		}
+	}
+
+	private boolean isAborted(String txId) {
+		synchronized (aborted) {
+			return aborted.containsKey(txId);
+		}
+	}
+
+	private Object lockOf(String txId) {
+		int h = txId.hashCode() * 0x9E3779B9;
+		return txLocks[(h ^ (h >>> 16)) & (TX_LOCKS - 1)];
+	}
+}
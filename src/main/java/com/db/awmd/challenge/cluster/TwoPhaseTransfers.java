@@ -0,0 +1,289 @@
+package com.db.awmd.challenge.cluster;
+
+import java.net.http.HttpResponse;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.cluster.RecoveryLog.Entry;
+import com.db.awmd.challenge.cluster.RecoveryLog.State;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ExceptionResponse;
+import com.db.awmd.challenge.domain.RemoteCredit;
+import com.db.awmd.challenge.engine.TransferExecutor;
+import com.db.awmd.challenge.engine.WriteAheadLog;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountNumberException;
+import com.db.awmd.challenge.exception.LockAcquisitionTimeoutException;
+import com.db.awmd.challenge.exception.NodeUnavailableException;
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.service.RemoteTransfers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Coordinator side of cross-node transfers, run by the node owning the source
+ * account with a reserve/commit protocol:
+ * <ol>
+ * <li>the source is debited (the reservation) and {@code RESERVED} is logged;</li>
+ * <li>the destination node checks the account and logs {@code PREPARED};</li>
+ * <li>{@code COMMITTING} is logged, which decides the transfer, and the
+ * destination node credits the account.</li>
+ * </ol>
+ * If the destination refuses or can't be reached during prepare, the
+ * reservation is refunded and {@code ABORTING} is logged; a refusal is reported
+ * by its status, 404 as an unknown account, other 4xx with the destination's
+ * reason, 429 as overload and 5xx as an unavailable node. A decision the
+ * destination hasn't acknowledged is re-sent by a background thread until it
+ * is, so a committed transfer is always credited eventually.
+ * <p>
+ * The debit is journaled as a remote leg of the transaction once the
+ * destination prepared, and durable before {@code COMMITTING} is logged; a
+ * reservation is a hold that only lives in memory until then. A transaction
+ * found {@code RESERVED} on startup is resolved against the journal: if its
+ * debit was replayed the destination had prepared and it is committed,
+ * otherwise its reservation is gone with the rest of the in-memory balances
+ * and it is aborted without a refund. A debit whose durability can't be
+ * confirmed is undone by a reversing leg before the reservation is refunded;
+ * if that can't be journaled either, the transaction stays reserved until a
+ * restart resolves it.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class TwoPhaseTransfers implements RemoteTransfers, DisposableBean {
+
+	static final String TRANSACTIONS_PATH = "/internal/cluster/transactions/";
+
+	private final ClusterTopology topology;
+
+	private final ClusterClient client;
+
+	private final RecoveryLog recoveryLog;
+
+	private final ObjectMapper objectMapper;
+
+	private final TransferExecutor transferExecutor;
+
+	private final WriteAheadLog writeAheadLog;
+
+	private final Map<String, Entry> undelivered = new ConcurrentHashMap<>();
+
+	private final long retryIntervalNanos;
+
+	private final Thread redelivery;
+
+	private volatile boolean running = true;
+
+	/**
+	 * @param transferExecutor hands the source account over while it is
+	 *                         reserved or refunded
+	 * @param writeAheadLog    present with a journal, records the debit before
+	 *                         the transfer is decided
+	 */
+	@Autowired
+	public TwoPhaseTransfers(ClusterTopology topology, ClusterClient client, RecoveryLog recoveryLog,
+			ObjectMapper objectMapper, @Value("${cluster.retry-interval-ms:1000}") long retryIntervalMillis,
+			TransferExecutor transferExecutor, Optional<WriteAheadLog> writeAheadLog) {
+		this.topology = topology;
+		this.client = client;
+		this.recoveryLog = recoveryLog;
+		this.objectMapper = objectMapper;
+		this.transferExecutor = transferExecutor;
+		this.writeAheadLog = writeAheadLog.orElse(WriteAheadLog.NONE);
+		this.retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalMillis);
+		for (Entry entry : recoveryLog.getUnresolved()) {
+			if (entry.getState() == State.RESERVED) {
+				boolean debited = this.writeAheadLog.getRecoveredLegUnits(entry.getTxId()) != 0;
+				Entry decision = entry.withState(debited ? State.COMMITTING : State.ABORTING);
+				recoveryLog.append(decision);
+				undelivered.put(entry.getTxId(), decision);
+			} else if (entry.getState() == State.COMMITTING || entry.getState() == State.ABORTING) {
+				undelivered.put(entry.getTxId(), entry);
+			}
+		}
+		this.redelivery = new Thread(this::redeliver, "cluster-redelivery");
+		this.redelivery.setDaemon(true);
+		this.redelivery.start();
+	}
+
+	@Override
+	public boolean isRemote(String accountId) {
+		return !topology.isLocal(accountId);
+	}
+
+	@Override
+	public void transfer(Account accountFrom, String accountToId, long amountUnits) {
+		if (!transferExecutor.writeBalances(Collections.singletonList(accountFrom),
+				() -> accountFrom.tryDebitUnits(amountUnits))) {
+			throw InsufficientBalanceException.TRANSFER;
+		}
+		Entry reserved = new Entry(State.RESERVED, UUID.randomUUID().toString(), topology.ownerOf(accountToId),
+				accountFrom.getAccountId(), accountToId, amountUnits);
+		try {
+			recoveryLog.append(reserved);
+		} catch (RuntimeException e) {
+			refund(accountFrom, amountUnits);
+			throw e;
+		}
+
+		HttpResponse<byte[]> prepared;
+		try {
+			prepared = client.postJson(reserved.getNodeId(), TRANSACTIONS_PATH + reserved.getTxId() + "/prepare",
+					RemoteCredit.builder().accountFrom(reserved.getAccountFrom()).accountTo(accountToId)
+							.amountUnits(amountUnits).currency(accountFrom.getCurrency()).build());
+		} catch (NodeUnavailableException e) {
+			abort(reserved, accountFrom);
+			throw e;
+		}
+		if (prepared.statusCode() / 100 != 2) {
+			abort(reserved, accountFrom);
+			throw refusal(reserved.getNodeId(), prepared, accountToId);
+		}
+
+		String txId = reserved.getTxId();
+		long position;
+		try {
+			position = writeAheadLog.appendRemoteLeg(txId, accountFrom.getAccountId(), accountToId, -amountUnits);
+		} catch (RuntimeException e) {
+			abort(reserved, accountFrom);
+			throw e;
+		}
+		try {
+			writeAheadLog.awaitDurable(position);
+		} catch (RuntimeException e) {
+			// The debit may survive a restart, so it is reversed before the refund.
+			try {
+				writeAheadLog.awaitDurable(
+						writeAheadLog.appendRemoteLeg(txId, accountFrom.getAccountId(), accountToId, amountUnits));
+			} catch (RuntimeException reversal) {
+				log.error("Transaction {} is in doubt until a restart resolves it with the journal", txId, reversal);
+				throw e;
+			}
+			abort(reserved, accountFrom);
+			throw e;
+		}
+		Entry committing = reserved.withState(State.COMMITTING);
+		recoveryLog.append(committing);
+		writeAheadLog.settleRemoteLegs(txId);
+		if (!deliver(committing)) {
+			undelivered.put(committing.getTxId(), committing);
+		}
+	}
+
+	/**
+	 * Number of decisions not yet acknowledged by their participant.
+	 */
+	public int getUndelivered() {
+		return undelivered.size();
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		running = false;
+		LockSupport.unpark(redelivery);
+		redelivery.join(TimeUnit.SECONDS.toMillis(5));
+	}
+
+	private void abort(Entry reserved, Account accountFrom) {
+		refund(accountFrom, reserved.getAmountUnits());
+		Entry aborting = reserved.withState(State.ABORTING);
+		recoveryLog.append(aborting);
+		writeAheadLog.settleRemoteLegs(aborting.getTxId());
+		if (!deliver(aborting)) {
+			undelivered.put(aborting.getTxId(), aborting);
+		}
+	}
+
+	/**
+	 * Gives a reservation back. A busy executor is waited out rather than
+	 * reported, as the reservation would otherwise be lost.
+	 */
+	private void refund(Account accountFrom, long amountUnits) {
+		while (true) {
+			try {
+				transferExecutor.writeBalances(Collections.singletonList(accountFrom),
+						() -> accountFrom.creditUnits(amountUnits));
+				return;
+			} catch (LockAcquisitionTimeoutException e) {
+				log.warn("Refund of {} to {} is waiting for its shard", amountUnits, accountFrom.getAccountId());
+			}
+		}
+	}
+
+	/**
+	 * Sends a decision to the participant and logs {@code DONE} once it is
+	 * acknowledged.
+	 *
+	 * @return whether the participant acknowledged the decision
+	 */
+	private boolean deliver(Entry decision) {
+		String action = decision.getState() == State.COMMITTING ? "/commit" : "/abort";
+		try {
+			HttpResponse<byte[]> response = client.postJson(decision.getNodeId(),
+					TRANSACTIONS_PATH + decision.getTxId() + action, null);
+			if (response.statusCode() / 100 != 2) {
+				log.warn("Node {} refused {} of transaction {}: {}", decision.getNodeId(), action,
+						decision.getTxId(), messageOf(response, "status " + response.statusCode()));
+				return false;
+			}
+		} catch (NodeUnavailableException e) {
+			return false;
+		}
+		recoveryLog.append(decision.withState(State.DONE));
+		return true;
+	}
+
+	private void redeliver() {
+		while (running) {
+			for (Entry decision : undelivered.values()) {
+				if (running && deliver(decision)) {
+					undelivered.remove(decision.getTxId());
+				}
+			}
+			LockSupport.parkNanos(this, retryIntervalNanos);
+		}
+	}
+
+	/**
+	 * The exception a participant's refusal to prepare is reported as, so the
+	 * client sees the participant's reason and status class: an unknown account,
+	 * a rejected request, throttling or an unavailable node.
+	 */
+	private RuntimeException refusal(String nodeId, HttpResponse<byte[]> response, String accountToId) {
+		int status = response.statusCode();
+		if (status == HttpStatus.NOT_FOUND.value()) {
+			return new InvalidAccountNumberException(messageOf(response, accountToId + " account doesn't exist"));
+		}
+		if (status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+			return TooManyRequestsException.OVERLOADED;
+		}
+		if (status / 100 == 4) {
+			return new IllegalOperationException(messageOf(response, "Node " + nodeId + " refused the transfer."));
+		}
+		return new NodeUnavailableException(
+				messageOf(response, "Node " + nodeId + " failed to prepare the transfer with status " + status), null);
+	}
+
+	private String messageOf(HttpResponse<byte[]> response, String fallback) {
+		try {
+			String message = objectMapper.readValue(response.body(), ExceptionResponse.class).getMessage();
+			return message == null ? fallback : message;
+		} catch (Exception e) {
+			return fallback;
+		}
+	}
+}
@@ -3,65 +3,258 @@ package com.db.awmd.challenge.domain;
 import com.db.awmd.challenge.exception.IllegalOperationException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
 import java.math.BigDecimal;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 import lombok.Builder;
-import lombok.Data;
-import org.hibernate.validator.constraints.NotBlank;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import org.hibernate.validator.constraints.NotEmpty;
 
-@Data
-@Builder
+/**
+ * Account whose balance is held as a fixed-point number of minor units in a
+ * single {@code long} cell. Credits and debits are compare-and-set loops, so
+ * single-account operations need no monitor. {@link BigDecimal} is only used
+ * at the edge, for the JSON contract and the legacy
+ * {@link #credit(BigDecimal)}/{@link #debit(BigDecimal)} API.
+ * <p>
+ * All access to the cell goes through {@link #loadBalance()},
+ * {@link #storeBalance(long)} and {@link #compareAndSetBalance(long, long)}, so
+ * a repository can keep the balance outside of this object.
+ * <p>
+ * Every balance change also advances a version, published through a per-account
+ * seqlock: a writer makes the version odd, writes the cell and makes it even
+ * again. {@link #snapshot()} reads the version, the cell and the version again
+ * and retries only if they don't match, so readers never block writers and
+ * always get a balance together with the version it was written at.
+ * <p>
+ * The balance is denominated in the account's {@link #getCurrency() currency},
+ * an ISO 4217 code fixed when the account is opened.
+ */
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@ToString(onlyExplicitlyIncluded = true)
+@JsonPropertyOrder({ "accountId", "currency", "balance" })
 public class Account {
 
+  /** Currency of accounts opened without one. */
+  public static final String DEFAULT_CURRENCY = "EUR";
+
+  private static final AtomicLongFieldUpdater<Account> VERSION =
+      AtomicLongFieldUpdater.newUpdater(Account.class, "version");
+
+  @Getter
+  @EqualsAndHashCode.Include
+  @ToString.Include
   @NotNull
   @NotEmpty
   private final String accountId;
 
-  @NotNull
-  @Min(value = 0, message = "Initial balance must be positive.")
-  private BigDecimal balance;
+  @Getter
+  @EqualsAndHashCode.Include
+  @ToString.Include
+  private final String currency;
+
+  private volatile long balanceUnits;
+
+  /** Twice the number of balance changes, plus one while a change is being written. */
+  private volatile long version;
 
   public Account(String accountId) {
+    this(accountId, (String) null);
+  }
+
+  /**
+   * Account with a zero balance in {@code currency}, the default currency if
+   * {@code null}.
+   */
+  public Account(String accountId, String currency) {
     this.accountId = accountId;
-    this.balance = BigDecimal.ZERO;
+    this.currency = currencyOf(currency);
+  }
+
+  public Account(String accountId, BigDecimal balance) {
+    this(accountId, balance, null);
   }
 
+  @Builder
   @JsonCreator
   public Account(@JsonProperty("accountId") String accountId,
-    @JsonProperty("balance") BigDecimal balance) {
+    @JsonProperty("balance") BigDecimal balance,
+    @JsonProperty("currency") String currency) {
     this.accountId = accountId;
-    this.balance = balance;
+    this.currency = currencyOf(currency);
+    if (balance == null) {
+      throw new IllegalOperationException("Initial balance must be provided.");
+    }
+    this.balanceUnits = Amounts.toUnits(balance);
+  }
+
+  @ToString.Include(name = "balance")
+  @NotNull
+  @Min(value = 0, message = "Initial balance must be positive.")
+  public BigDecimal getBalance() {
+    return Amounts.toDecimal(getBalanceUnits());
+  }
+
+  public void setBalance(BigDecimal balance) {
+    storeBalance(Amounts.toUnits(Objects.requireNonNull(balance, "balance")));
+  }
+
+  @JsonIgnore
+  @EqualsAndHashCode.Include
+  public long getBalanceUnits() {
+    return loadBalance();
   }
-  
-  
+
+  @JsonIgnore
+  public void setBalanceUnits(long balanceUnits) {
+    storeBalance(balanceUnits);
+  }
+
   public BigDecimal credit(BigDecimal amount) {
       validate(amount);
 
-      balance = balance.add(amount);
-      return balance;
+      return Amounts.toDecimal(creditUnits(Amounts.toUnits(amount)));
   }
 
   public BigDecimal debit(BigDecimal amount) {
       validate(amount);
 
-      if (balance.compareTo(amount) < 0) {
-          throw new InsufficientBalanceException("Debit can't be performed due to lack of funds on the account.");
+      return Amounts.toDecimal(debitUnits(Amounts.toUnits(amount)));
+  }
+
+  /**
+   * Adds {@code units} to the balance and returns the new balance in minor units.
+   */
+  public long creditUnits(long units) {
+      validate(units);
+
+      long current;
+      long updated;
+      do {
+          current = loadBalance();
+          updated = Math.addExact(current, units);
+      } while (!compareAndSetBalance(current, updated));
+      return updated;
+  }
+
+  /**
+   * Subtracts {@code units} from the balance and returns the new balance in minor
+   * units, refusing to let the balance go negative.
+   */
+  public long debitUnits(long units) {
+      validate(units);
+
+      long current;
+      do {
+          current = loadBalance();
+          if (current < units) {
+              throw new InsufficientBalanceException("Debit can't be performed due to lack of funds on the account.");
+          }
+      } while (!compareAndSetBalance(current, current - units));
+      return current - units;
+  }
+
+  /**
+   * Same as {@link #debitUnits(long)} but reports lack of funds through the
+   * return value instead of an exception.
+   */
+  public boolean tryDebitUnits(long units) {
+      validate(units);
+
+      long current;
+      do {
+          current = loadBalance();
+          if (current < units) {
+              return false;
+          }
+      } while (!compareAndSetBalance(current, current - units));
+      return true;
+  }
+
+  /**
+   * Immutable copy of the balance and the version it was written at.
+   */
+  public AccountSnapshot snapshot() {
+      while (true) {
+          long before = version;
+          if ((before & 1) == 0) {
+              long units = balanceUnits;
+              if (version == before) {
+                  return new AccountSnapshot(accountId, currency, Amounts.toDecimal(units), before >>> 1);
+              }
+          }
+          Thread.onSpinWait();
+      }
+  }
+
+  protected long loadBalance() {
+      return balanceUnits;
+  }
+
+  protected void storeBalance(long units) {
+      long current;
+      do {
+          current = version;
+      } while ((current & 1) != 0 || !VERSION.compareAndSet(this, current, current + 1));
+      this.balanceUnits = units;
+      this.version = current + 2;
+  }
+
+  protected boolean compareAndSetBalance(long expected, long updated) {
+      long current = version;
+      if ((current & 1) != 0 || !VERSION.compareAndSet(this, current, current + 1)) {
+          return false;
       }
+      // The odd version excludes other writers, so the cell can be compared and written plainly.
+      if (balanceUnits != expected) {
+          this.version = current;
+          return false;
+      }
+      this.balanceUnits = updated;
+      this.version = current + 2;
+      return true;
+  }
 
-      balance = balance.subtract(amount);
-      return balance;
+  /**
+   * {@code currency} as an upper-case ISO 4217 code, interned so accounts of one
+   * currency share the instance; the default currency if {@code null}.
+   */
+  public static String currencyOf(String currency) {
+      if (currency == null) {
+          return DEFAULT_CURRENCY;
+      }
+      if (currency.length() != 3) {
+          throw new IllegalOperationException("Currency must be a three-letter ISO 4217 code.");
+      }
+      String code = currency.toUpperCase(Locale.ROOT);
+      for (int i = 0; i < 3; i++) {
+          if (code.charAt(i) < 'A' || code.charAt(i) > 'Z') {
+              throw new IllegalOperationException("Currency must be a three-letter ISO 4217 code.");
+          }
+      }
+      return code.intern();
   }
-  
+
   private void validate(BigDecimal amount) {
       if (Objects.isNull(amount) || BigDecimal.ZERO.compareTo(amount) > 0) {
 			throw new IllegalOperationException("Negative amount can not be transferred");
       }
   }
+
+  private void validate(long units) {
+      if (units < 0) {
+          throw new IllegalOperationException("Negative amount can not be transferred");
+      }
+  }
 }
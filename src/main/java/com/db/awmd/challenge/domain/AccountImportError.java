@@ -0,0 +1,22 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class AccountImportError {
+
+	private long line;
+	private String accountId;
+	private String message;
+
+}
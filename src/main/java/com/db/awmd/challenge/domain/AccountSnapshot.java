@@ -0,0 +1,24 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Immutable view of an account's balance. {@code version} counts the balance
+ * changes of the account since it was loaded, so of two snapshots of the same
+ * account the one with the higher version is the more recent.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class AccountSnapshot {
+
+	private final String accountId;
+	private final String currency;
+	private final BigDecimal balance;
+	private final long version;
+
+}
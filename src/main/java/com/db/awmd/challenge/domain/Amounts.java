@@ -0,0 +1,47 @@
+package com.db.awmd.challenge.domain;
+
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import java.math.BigDecimal;
+
+/**
+ * Conversions between the {@link BigDecimal} amounts used in the JSON contract
+ * and the fixed-point minor units balances are kept in internally.
+ */
+public final class Amounts {
+
+  /** Number of decimal places represented by one minor unit. */
+  public static final int SCALE = 2;
+
+  private Amounts() {
+  }
+
+  /** Significant digits a double holds exactly, with room for the rounding below. */
+  private static final int EXACT_DOUBLE_DIGITS = 15;
+
+  private static final double UNITS_PER_WHOLE = Math.pow(10, SCALE);
+
+  public static long toUnits(BigDecimal amount) {
+    int scale = amount.scale();
+    if (scale >= 0 && scale <= SCALE && amount.precision() - scale + SCALE <= EXACT_DOUBLE_DIGITS) {
+      // Allocation-free for the usual request amounts: the double is within half
+      // a minor unit of the exact value, so rounding recovers it exactly.
+      return Math.round(amount.doubleValue() * UNITS_PER_WHOLE);
+    }
+    try {
+      return amount.movePointRight(SCALE).longValueExact();
+    } catch (ArithmeticException ae) {
+      throw new IllegalOperationException(
+          "Amount " + amount.toPlainString() + " can't be represented with " + SCALE + " decimal places");
+    }
+  }
+
+  /**
+   * {@code units} as an amount without trailing zeros and never in exponent
+   * form, so a balance opened with {@code 1000} still reads {@code 1000} in the
+   * JSON contract rather than {@code 1000.00}.
+   */
+  public static BigDecimal toDecimal(long units) {
+    BigDecimal amount = BigDecimal.valueOf(units, SCALE).stripTrailingZeros();
+    return amount.scale() < 0 ? amount.setScale(0) : amount;
+  }
+}
@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * An account whose balance stayed different from the ledger while it was idle.
+ */
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class AuditDiscrepancy {
+
+	private String accountId;
+	private String currency;
+	private BigDecimal balance;
+	private BigDecimal expected;
+
+}
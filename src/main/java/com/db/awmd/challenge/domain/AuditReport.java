@@ -0,0 +1,35 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Outcome of one reconciliation of all balances against the ledger. The
+ * totals sum every account of a currency as it was confirmed: the balance of a
+ * total differs from the expected one by exactly the money created or
+ * destroyed outside of the ledger.
+ */
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class AuditReport {
+
+	private long startedAt;
+	private long durationMillis;
+	private long accounts;
+	private long adopted;
+	private List<AuditTotal> totals;
+	private long discrepancyCount;
+	private long unsettled;
+	private List<AuditDiscrepancy> discrepancies;
+
+}
@@ -0,0 +1,16 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * What a bounded queue does with new work while it is full.
+ */
+public enum BackpressurePolicy {
+
+	/** Discard the new item and count it. */
+	DROP,
+
+	/** Make the producer wait until space is available. */
+	BLOCK,
+
+	/** Write the item to a local spill file and deliver it once the queue drained. */
+	SPILL
+}
@@ -0,0 +1,13 @@
+package com.db.awmd.challenge.domain;
+
+/**
+ * How a batch of transfers reacts to items that can't be executed.
+ */
+public enum BatchMode {
+
+	/** Either every item is applied or none is. */
+	ALL_OR_NOTHING,
+
+	/** Valid items are applied in order, failing items are skipped. */
+	BEST_EFFORT
+}
@@ -0,0 +1,25 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class BatchTransferResult {
+
+	private BatchMode mode;
+	private int succeeded;
+	private int failed;
+	private List<TransferItemResult> results;
+
+}
@@ -27,12 +27,23 @@ public class FundTransfer {
 	@Positive
 	private BigDecimal amount;
 
+	/**
+	 * Optional client-chosen identity; a retry with the same id gets the outcome
+	 * of the first attempt instead of transferring again.
+	 */
+	private String transferId;
+
+	public FundTransfer(String accountFrom, String accountTo, BigDecimal amount) {
+		this(accountFrom, accountTo, amount, null);
+	}
+
 	@JsonCreator
 	public FundTransfer(@JsonProperty("accountFrom") String accountFrom, @JsonProperty("accountTo") String accountTo,
-			@JsonProperty("amount") BigDecimal amount) {
+			@JsonProperty("amount") BigDecimal amount, @JsonProperty("transferId") String transferId) {
 		this.accountFrom = accountFrom;
 		this.accountTo = accountTo;
 		this.amount = amount;
+		this.transferId = transferId;
 	}
 
 }
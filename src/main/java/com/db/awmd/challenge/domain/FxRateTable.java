@@ -0,0 +1,39 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Exchange rates quoted against one base currency: {@code rates} maps a
+ * currency to the amount of it one unit of {@code base} buys. Rates between
+ * two quoted currencies are crossed through the base. {@code updatedAt} is set
+ * when the table is published.
+ */
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class FxRateTable {
+
+	@NotNull
+	@NotBlank
+	private String base;
+
+	@NotNull
+	private Map<String, BigDecimal> rates;
+
+	private long updatedAt;
+
+}
@@ -0,0 +1,36 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Debits {@code accountFrom} once and credits every leg, all or nothing.
+ */
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class MultiLegTransfer {
+
+	@NotNull
+	@NotBlank
+	private String accountFrom;
+
+	@NotEmpty
+	@Valid
+	private List<TransferLeg> legs;
+
+}
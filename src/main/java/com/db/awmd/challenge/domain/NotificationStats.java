@@ -0,0 +1,29 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class NotificationStats {
+
+	private BackpressurePolicy backpressure;
+	private int queueDepth;
+	private int queueCapacity;
+	private long enqueued;
+	private long dropped;
+	private long spilled;
+	private long dispatched;
+	private long notificationsSent;
+	private long lastDispatchLagMillis;
+	private long maxDispatchLagMillis;
+
+}
@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Credit side of a cross-node transfer, sent by the node owning the source
+ * account to the node owning the destination account. {@code currency} is the
+ * one of the source account, the default currency if absent.
+ */
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class RemoteCredit {
+
+	private String accountFrom;
+	private String accountTo;
+	private long amountUnits;
+	private String currency;
+
+}
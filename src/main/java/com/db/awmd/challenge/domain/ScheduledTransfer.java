@@ -0,0 +1,44 @@
+package com.db.awmd.challenge.domain;
+
+import java.math.BigDecimal;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Transfer to be executed at {@code executeAt} (epoch milliseconds). The id is
+ * assigned when the transfer is scheduled.
+ */
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class ScheduledTransfer {
+
+	private Long id;
+
+	@NotNull
+	@NotBlank
+	private String accountFrom;
+
+	@NotNull
+	@NotBlank
+	private String accountTo;
+
+	@Positive
+	private BigDecimal amount;
+
+	@NotNull
+	private Long executeAt;
+
+}
@@ -0,0 +1,247 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Account for a hot merchant or settlement account whose balance is split over
+ * a fixed number of sub-balances, in the spirit of {@code LongAdder}.
+ * <p>
+ * Credits add to a random stripe, so concurrent credits almost never touch the
+ * same cache line. A debit first tries the stripe it lands on and, only when
+ * that stripe can't cover the amount, borrows from the others under the
+ * account's debit monitor; if all stripes together fall short, the borrowed
+ * units are put back. The balance is the sum of all stripes. While a debit
+ * borrows, a reader may briefly see a balance lowered by the units taken so far.
+ * <p>
+ * Every stripe carries its own version next to its cell, written like the
+ * account seqlock of {@link Account}, and a borrow runs inside a sequence of
+ * its own. {@link #snapshot()} sums the stripes between two reads of all
+ * versions, so it never sees a borrow half done; its version is the total
+ * number of stripe changes.
+ */
+public class StripedAccount extends Account {
+
+	/**
+	 * Longs per stripe, so every stripe sits on its own 64-byte cache line: the
+	 * cell, then its version.
+	 */
+	private static final int SPACING = 8;
+
+	private final AtomicLongArray cells;
+
+	private final int mask;
+
+	private final Object debitLock = new Object();
+
+	/** Odd while a debit borrows from other stripes, written under the debit monitor. */
+	private volatile long borrowSequence;
+
+	public StripedAccount(String accountId, int stripes, long balanceUnits) {
+		this(accountId, null, stripes, balanceUnits);
+	}
+
+	public StripedAccount(String accountId, String currency, int stripes, long balanceUnits) {
+		super(accountId, currency);
+		int count = Integer.highestOneBit(Math.max(1, stripes) * 2 - 1);
+		this.cells = new AtomicLongArray(count * SPACING);
+		this.mask = count - 1;
+		this.cells.set(0, balanceUnits);
+	}
+
+	@JsonIgnore
+	public int getStripeCount() {
+		return mask + 1;
+	}
+
+	@Override
+	public long creditUnits(long units) {
+		validate(units);
+
+		int cell = randomCell();
+		long version = lockStripe(cell);
+		try {
+			cells.set(cell, Math.addExact(cells.get(cell), units));
+		} finally {
+			cells.set(cell + 1, version + 2);
+		}
+		return loadBalance();
+	}
+
+	@Override
+	public long debitUnits(long units) {
+		if (!tryDebitUnits(units)) {
+			throw new InsufficientBalanceException("Debit can't be performed due to lack of funds on the account.");
+		}
+		return loadBalance();
+	}
+
+	@Override
+	public boolean tryDebitUnits(long units) {
+		validate(units);
+
+		int home = randomCell();
+		long version = lockStripe(home);
+		long current = cells.get(home);
+		if (current >= units) {
+			cells.set(home, current - units);
+		}
+		cells.set(home + 1, version + 2);
+		return current >= units || borrow(home, units);
+	}
+
+	@Override
+	public AccountSnapshot snapshot() {
+		long[] versions = new long[mask + 1];
+		while (true) {
+			long sequence = borrowSequence;
+			long version = 0;
+			boolean stable = (sequence & 1) == 0;
+			for (int stripe = 0; stable && stripe <= mask; stripe++) {
+				versions[stripe] = cells.get(stripe * SPACING + 1);
+				stable = (versions[stripe] & 1) == 0;
+				version += versions[stripe] >>> 1;
+			}
+			long sum = 0;
+			for (int stripe = 0; stable && stripe <= mask; stripe++) {
+				sum += cells.get(stripe * SPACING);
+			}
+			for (int stripe = 0; stable && stripe <= mask; stripe++) {
+				stable = cells.get(stripe * SPACING + 1) == versions[stripe];
+			}
+			if (stable && borrowSequence == sequence) {
+				return new AccountSnapshot(getAccountId(), getCurrency(), Amounts.toDecimal(sum), version);
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	@Override
+	protected long loadBalance() {
+		long sum = 0;
+		for (int cell = 0; cell < cells.length(); cell += SPACING) {
+			sum += cells.get(cell);
+		}
+		return sum;
+	}
+
+	/**
+	 * Replaces the whole balance. Only meant for account creation and journal
+	 * replay, where no transfer runs concurrently.
+	 */
+	@Override
+	protected void storeBalance(long units) {
+		synchronized (debitLock) {
+			long[] versions = lockStripes();
+			replaceStripes(units, versions, true);
+		}
+	}
+
+	/**
+	 * Holds the debit monitor and every stripe while it compares the sum, so no
+	 * credit, debit or borrow can change the balance between the comparison and
+	 * the write; the new balance then sits in the first stripe.
+	 */
+	@Override
+	protected boolean compareAndSetBalance(long expected, long updated) {
+		synchronized (debitLock) {
+			long[] versions = lockStripes();
+			long sum = 0;
+			for (int cell = 0; cell < cells.length(); cell += SPACING) {
+				sum += cells.get(cell);
+			}
+			replaceStripes(updated, versions, sum == expected);
+			return sum == expected;
+		}
+	}
+
+	/**
+	 * Locks all stripes in order and returns their even versions. Other writers
+	 * hold at most one stripe at a time, so taking them all can't deadlock.
+	 */
+	private long[] lockStripes() {
+		long[] versions = new long[mask + 1];
+		for (int stripe = 0; stripe <= mask; stripe++) {
+			versions[stripe] = lockStripe(stripe * SPACING);
+		}
+		return versions;
+	}
+
+	/**
+	 * Moves {@code units} into the first stripe and empties the others if
+	 * {@code write}, then unlocks all stripes; an unchanged stripe gets its old
+	 * version back.
+	 */
+	private void replaceStripes(long units, long[] versions, boolean write) {
+		for (int stripe = 0; stripe <= mask; stripe++) {
+			int cell = stripe * SPACING;
+			if (write) {
+				cells.set(cell, stripe == 0 ? units : 0);
+			}
+			cells.set(cell + 1, write ? versions[stripe] + 2 : versions[stripe]);
+		}
+	}
+
+	private boolean borrow(int home, long units) {
+		synchronized (debitLock) {
+			long sequence = borrowSequence;
+			borrowSequence = sequence + 1;
+			try {
+				long taken = 0;
+				for (int i = 0; i <= mask && taken < units; i++) {
+					taken += take((home + i * SPACING) & (cells.length() - 1), units - taken);
+				}
+				if (taken < units) {
+					long version = lockStripe(home);
+					cells.set(home, cells.get(home) + taken);
+					cells.set(home + 1, version + 2);
+					return false;
+				}
+				return true;
+			} finally {
+				borrowSequence = sequence + 2;
+			}
+		}
+	}
+
+	/**
+	 * Takes what one stripe holds, up to {@code units}, and returns the units taken.
+	 */
+	private long take(int cell, long units) {
+		long version = lockStripe(cell);
+		long current = cells.get(cell);
+		long taken = Math.max(0, Math.min(current, units));
+		cells.set(cell, current - taken);
+		cells.set(cell + 1, version + 2);
+		return taken;
+	}
+
+	/**
+	 * Makes the stripe's version odd, which excludes other writers of the stripe,
+	 * and returns the even version it had. The caller stores that version plus
+	 * two once the cell is written.
+	 */
+	private long lockStripe(int cell) {
+		while (true) {
+			long version = cells.get(cell + 1);
+			if ((version & 1) == 0 && cells.compareAndSet(cell + 1, version, version + 1)) {
+				return version;
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	private int randomCell() {
+		return (ThreadLocalRandom.current().nextInt() & mask) * SPACING;
+	}
+
+	private static void validate(long units) {
+		if (units < 0) {
+			throw new IllegalOperationException("Negative amount can not be transferred");
+		}
+	}
+}
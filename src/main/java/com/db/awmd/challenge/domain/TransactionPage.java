@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * Page of an account's transactions, newest first. {@code nextCursor} fetches
+ * the following, older page and is {@code null} on the last page.
+ */
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class TransactionPage {
+
+	private String accountId;
+	private List<Transaction> transactions;
+	private String nextCursor;
+
+}
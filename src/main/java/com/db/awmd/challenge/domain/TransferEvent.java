@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Immutable record of a balance movement that has been applied.
+ * {@code amountUnits} left {@code accountFrom} in its currency,
+ * {@code creditUnits} reached {@code accountTo} in its own; both are the same
+ * unless the transfer was converted between currencies.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class TransferEvent {
+
+	private final String accountFrom;
+	private final String accountTo;
+	private final long amountUnits;
+	private final long creditUnits;
+	private final long timestamp;
+
+	public TransferEvent(String accountFrom, String accountTo, long amountUnits, long timestamp) {
+		this(accountFrom, accountTo, amountUnits, amountUnits, timestamp);
+	}
+
+}
@@ -0,0 +1,26 @@
+package com.db.awmd.challenge.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Builder
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class TransferItemResult {
+
+	public enum Status {
+		SUCCESS, REJECTED, NOT_EXECUTED
+	}
+
+	private int index;
+	private Status status;
+	private String message;
+
+}
@@ -0,0 +1,65 @@
+package com.db.awmd.challenge.engine;
+
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.lock.AccountLockManager;
+
+/**
+ * Default execution mode: the request thread applies the transfer itself while
+ * holding the ordered stripe locks of both accounts. A {@link StripedAccount}
+ * takes no lock: its sub-balances absorb concurrent credits and debits on their
+ * own, so a hot account no longer serializes every transfer touching it.
+ * <p>
+ * The transfer is appended to the {@link WriteAheadLog} under the locks and
+ * waited for to become durable after they are released.
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.mode", havingValue = "locking", matchIfMissing = true)
+public class LockingTransferExecutor implements TransferExecutor {
+
+	private final AccountLockManager lockManager;
+
+	private final WriteAheadLog writeAheadLog;
+
+	public LockingTransferExecutor(AccountLockManager lockManager) {
+		this(lockManager, Optional.empty());
+	}
+
+	/**
+	 * @param writeAheadLog present with a journal, records every transfer
+	 *                      before it is applied
+	 */
+	@Autowired
+	public LockingTransferExecutor(AccountLockManager lockManager, Optional<WriteAheadLog> writeAheadLog) {
+		this.lockManager = lockManager;
+		this.writeAheadLog = writeAheadLog.orElse(WriteAheadLog.NONE);
+	}
+
+	@Override
+	public void execute(Account accountFrom, Account accountTo, long debitUnits, long creditUnits) {
+		boolean fromStriped = accountFrom instanceof StripedAccount;
+		boolean toStriped = accountTo instanceof StripedAccount;
+		if (fromStriped && toStriped) {
+			writeAheadLog.awaitDurable(writeAheadLog.apply(accountFrom, accountTo, debitUnits, creditUnits));
+			return;
+		}
+		// Balances are lock-free cells; the locks only make the debit/credit pair atomic.
+		// Locking the same account twice takes its stripe once.
+		String first = fromStriped ? accountTo.getAccountId() : accountFrom.getAccountId();
+		String second = toStriped ? accountFrom.getAccountId() : accountTo.getAccountId();
+		long locks = lockManager.lockPair(first, second);
+		long position;
+		try {
+			position = writeAheadLog.apply(accountFrom, accountTo, debitUnits, creditUnits);
+		} finally {
+			lockManager.unlockPair(locks);
+		}
+		writeAheadLog.awaitDurable(position);
+	}
+}
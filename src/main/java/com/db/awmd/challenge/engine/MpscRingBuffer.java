@@ -0,0 +1,77 @@
+package com.db.awmd.challenge.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free multi-producer single-consumer ring buffer.
+ * <p>
+ * Producers claim a sequence by CAS on the tail and then publish into the slot;
+ * the single consumer reads slots in sequence order and clears them. A claimed
+ * but not yet published slot simply reads as empty until the producer's write
+ * becomes visible.
+ */
+public final class MpscRingBuffer<E> {
+
+	private final AtomicReferenceArray<E> slots;
+
+	private final int mask;
+
+	private final AtomicLong tail = new AtomicLong();
+
+	private volatile long head;
+
+	public MpscRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity));
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.slots = new AtomicReferenceArray<>(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Publishes {@code element}, returning {@code false} when the buffer is full.
+	 */
+	public boolean offer(E element) {
+		long sequence;
+		do {
+			sequence = tail.get();
+			if (sequence - head >= slots.length()) {
+				return false;
+			}
+		} while (!tail.compareAndSet(sequence, sequence + 1));
+		slots.lazySet((int) sequence & mask, element);
+		return true;
+	}
+
+	/**
+	 * Takes the next element; must only be called by the consumer thread.
+	 */
+	public E poll() {
+		long sequence = head;
+		int index = (int) sequence & mask;
+		E element = slots.get(index);
+		if (element == null) {
+			return null;
+		}
+		slots.lazySet(index, null);
+		head = sequence + 1;
+		return element;
+	}
+
+	public boolean isEmpty() {
+		return tail.get() == head;
+	}
+
+	/**
+	 * Number of claimed but not yet consumed slots.
+	 */
+	public int size() {
+		return (int) (tail.get() - head);
+	}
+
+	public int capacity() {
+		return slots.length();
+	}
+}
@@ -0,0 +1,189 @@
+package com.db.awmd.challenge.engine;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.lock.StripeSeqLocks;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+
+/**
+ * Optimistic execution mode for mostly uncontended traffic. A transfer reads
+ * the version stamps of both accounts' stripes and the source balance, rejects
+ * a short balance if the stamps are still unchanged, and otherwise commits by
+ * compare-and-setting both stamps into a short write section in which the
+ * balances are moved. No lock is taken and no thread parks unless there is a
+ * conflict.
+ * <p>
+ * A conflicting transfer retries after a randomized, exponentially growing
+ * pause. After {@code maxAttempts} conflicts it falls back to the stripe locks
+ * of {@link AccountLockManager}, which queue contending transfers instead of
+ * letting them spin, and then enters the write sections. A
+ * {@link StripedAccount} takes no part in versioning, as it takes no lock in
+ * {@link LockingTransferExecutor}.
+ * <p>
+ * The transfer is appended to the {@link WriteAheadLog} inside the write
+ * sections and waited for to become durable after them.
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.mode", havingValue = "optimistic")
+public class OptimisticTransferExecutor implements TransferExecutor {
+
+	public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+	public static final long DEFAULT_BACKOFF_NANOS = 1_000;
+
+	private final AccountLockManager lockManager;
+
+	private final StripeSeqLocks seqLocks;
+
+	private final int maxAttempts;
+
+	private final long backoffNanos;
+
+	private final TransferMetrics metrics;
+
+	private final WriteAheadLog writeAheadLog;
+
+	public OptimisticTransferExecutor(AccountLockManager lockManager) {
+		this(lockManager, DEFAULT_MAX_ATTEMPTS, DEFAULT_BACKOFF_NANOS, TransferMetrics.noop());
+	}
+
+	public OptimisticTransferExecutor(AccountLockManager lockManager, int maxAttempts, long backoffNanos,
+			TransferMetrics metrics) {
+		this(lockManager, maxAttempts, backoffNanos, metrics, Optional.empty());
+	}
+
+	/**
+	 * @param writeAheadLog present with a journal, records every transfer
+	 *                      before it is applied
+	 */
+	@Autowired
+	public OptimisticTransferExecutor(AccountLockManager lockManager,
+			@Value("${transfer.optimistic.max-attempts:" + DEFAULT_MAX_ATTEMPTS + "}") int maxAttempts,
+			@Value("${transfer.optimistic.backoff-ns:" + DEFAULT_BACKOFF_NANOS + "}") long backoffNanos,
+			TransferMetrics metrics, Optional<WriteAheadLog> writeAheadLog) {
+		if (maxAttempts <= 0 || backoffNanos <= 0) {
+			throw new IllegalArgumentException("Optimistic attempts and backoff must be positive");
+		}
+		this.lockManager = lockManager;
+		this.seqLocks = new StripeSeqLocks(lockManager.getStripeCount());
+		this.maxAttempts = maxAttempts;
+		this.backoffNanos = backoffNanos;
+		this.metrics = metrics;
+		this.writeAheadLog = writeAheadLog.orElse(WriteAheadLog.NONE);
+	}
+
+	@Override
+	public void execute(Account accountFrom, Account accountTo, long debitUnits, long creditUnits) {
+		boolean fromStriped = accountFrom instanceof StripedAccount;
+		boolean toStriped = accountTo instanceof StripedAccount;
+		if (fromStriped && toStriped) {
+			writeAheadLog.awaitDurable(writeAheadLog.apply(accountFrom, accountTo, debitUnits, creditUnits));
+			return;
+		}
+		// A striped side is stamped and locked as if it were the other account.
+		String firstId = fromStriped ? accountTo.getAccountId() : accountFrom.getAccountId();
+		String secondId = toStriped ? accountFrom.getAccountId() : accountTo.getAccountId();
+		int first = lockManager.stripeOf(firstId);
+		int second = lockManager.stripeOf(secondId);
+		int low = Math.min(first, second);
+		int high = Math.max(first, second);
+
+		for (int attempt = 0; attempt < maxAttempts; attempt++) {
+			long position = tryExecute(accountFrom, accountTo, debitUnits, creditUnits, low, high);
+			if (position >= 0) {
+				writeAheadLog.awaitDurable(position);
+				return;
+			}
+			metrics.recordOptimisticConflict();
+			backOff(attempt);
+		}
+
+		metrics.recordOptimisticFallback();
+		long locks = lockManager.lockPair(firstId, secondId);
+		long position;
+		try {
+			seqLocks.beginWrite(low);
+			if (high != low) {
+				seqLocks.beginWrite(high);
+			}
+			try {
+				position = apply(accountFrom, accountTo, debitUnits, creditUnits);
+			} finally {
+				endWrite(low, high);
+			}
+		} finally {
+			lockManager.unlockPair(locks);
+		}
+		writeAheadLog.awaitDurable(position);
+	}
+
+	/**
+	 * One optimistic attempt.
+	 *
+	 * @return the log position of the applied transfer, or -1 on a conflict, in
+	 *         which case no balance changed
+	 */
+	private long tryExecute(Account accountFrom, Account accountTo, long debitUnits, long creditUnits, int low,
+			int high) {
+		long lowVersion = seqLocks.version(low);
+		long highVersion = high == low ? lowVersion : seqLocks.version(high);
+		if (StripeSeqLocks.isWriting(lowVersion) || StripeSeqLocks.isWriting(highVersion)) {
+			return -1;
+		}
+		if (accountFrom.getBalanceUnits() < debitUnits) {
+			// Only a consistent read may reject the transfer.
+			if (seqLocks.version(low) == lowVersion && seqLocks.version(high) == highVersion) {
+				throw InsufficientBalanceException.TRANSFER;
+			}
+			return -1;
+		}
+
+		if (!seqLocks.tryBeginWrite(low, lowVersion)) {
+			return -1;
+		}
+		if (high != low && !seqLocks.tryBeginWrite(high, highVersion)) {
+			seqLocks.endWrite(low);
+			return -1;
+		}
+		try {
+			return apply(accountFrom, accountTo, debitUnits, creditUnits);
+		} finally {
+			endWrite(low, high);
+		}
+	}
+
+	private void endWrite(int low, int high) {
+		if (high != low) {
+			seqLocks.endWrite(high);
+		}
+		seqLocks.endWrite(low);
+	}
+
+	private void backOff(int attempt) {
+		if (attempt == 0) {
+			Thread.onSpinWait();
+		} else {
+			LockSupport.parkNanos(1 + ThreadLocalRandom.current().nextLong(backoffNanos << attempt));
+		}
+	}
+
+	/**
+	 * Moves the balances. Inside a write section only writers that don't use the
+	 * stamps (batch and multi-leg transfers) can interfere, which the
+	 * compare-and-set balance cells already make safe.
+	 */
+	private long apply(Account accountFrom, Account accountTo, long debitUnits, long creditUnits) {
+		return writeAheadLog.apply(accountFrom, accountTo, debitUnits, creditUnits);
+	}
+}
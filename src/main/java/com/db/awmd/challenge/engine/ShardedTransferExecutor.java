@@ -0,0 +1,473 @@
+package com.db.awmd.challenge.engine;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.LockAcquisitionTimeoutException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single-writer execution mode. Accounts are hash-partitioned into shards and
+ * every shard is owned by one event-loop thread, which is the only thread that
+ * writes balances of its accounts. Request threads publish transfer commands to
+ * the source shard's ring buffer and wait for the outcome.
+ * <p>
+ * A transfer between two shards runs in two phases: the source shard debits and
+ * then hands the credit over to the destination shard's inbox. The inbox is
+ * unbounded, so shard threads never block on each other and the handoff cannot
+ * deadlock; the request thread is only released once the credit is applied.
+ * <p>
+ * A request thread waits at most {@code transfer.sharded.timeout-ms} for a
+ * shard to take its command. A command no shard has taken by then is
+ * withdrawn and the transfer rejected as busy, with no balance changed; once
+ * taken, the command runs to completion without queueing behind others, and
+ * the request thread waits for it.
+ * <p>
+ * Services that move balances themselves, such as batches, multi-leg and
+ * cross-node transfers, do so through {@link #writeBalances}: every shard
+ * owning one of the accounts is paused, in shard order so that two such writers
+ * can't deadlock, and hands its accounts over to the writer until it is done.
+ * <p>
+ * The source shard appends the transfer to the {@link WriteAheadLog} before it
+ * debits the source; the request thread waits for the record to become
+ * durable once both phases ran, so shard threads never wait for the disk.
+ * <p>
+ * A {@link StripedAccount} is safe to update from any thread and has no owning
+ * shard: a transfer runs entirely on the shard of its other account, and a
+ * transfer between two striped accounts on the request thread.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "transfer.mode", havingValue = "sharded")
+public class ShardedTransferExecutor implements TransferExecutor, DisposableBean {
+
+	private static final int BATCH_SIZE = 256;
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	public static final long DEFAULT_TIMEOUT_MILLIS = 500;
+
+	private final Shard[] shards;
+
+	private final long timeoutNanos;
+
+	private final WriteAheadLog writeAheadLog;
+
+	public ShardedTransferExecutor(int shardCount, int ringSize) {
+		this(shardCount, ringSize, DEFAULT_TIMEOUT_MILLIS);
+	}
+
+	public ShardedTransferExecutor(int shardCount, int ringSize, long timeoutMillis) {
+		this(shardCount, ringSize, timeoutMillis, Optional.empty());
+	}
+
+	/**
+	 * @param writeAheadLog present with a journal, records every transfer
+	 *                      before it is applied
+	 */
+	@Autowired
+	public ShardedTransferExecutor(@Value("${transfer.sharded.shards:0}") int shardCount,
+			@Value("${transfer.sharded.ring-size:4096}") int ringSize,
+			@Value("${transfer.sharded.timeout-ms:" + DEFAULT_TIMEOUT_MILLIS + "}") long timeoutMillis,
+			Optional<WriteAheadLog> writeAheadLog) {
+		if (timeoutMillis <= 0) {
+			throw new IllegalArgumentException("Shard timeout must be positive");
+		}
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		this.writeAheadLog = writeAheadLog.orElse(WriteAheadLog.NONE);
+		int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+		this.shards = new Shard[count];
+		for (int i = 0; i < count; i++) {
+			shards[i] = new Shard(i, ringSize);
+		}
+		for (Shard shard : shards) {
+			shard.thread.start();
+		}
+		log.info("Started sharded transfer engine with {} shards", count);
+	}
+
+	@Override
+	public void execute(Account accountFrom, Account accountTo, long debitUnits, long creditUnits) {
+		boolean fromStriped = accountFrom instanceof StripedAccount;
+		if (fromStriped && accountTo instanceof StripedAccount) {
+			writeAheadLog.awaitDurable(writeAheadLog.apply(accountFrom, accountTo, debitUnits, creditUnits));
+			return;
+		}
+		TransferCommand command = new TransferCommand(accountFrom, accountTo, debitUnits, creditUnits,
+				Thread.currentThread());
+		long deadline = System.nanoTime() + timeoutNanos;
+		shardOf(fromStriped ? accountTo : accountFrom).submit(command, deadline);
+		if (!command.await(deadline)) {
+			throw command.failure != null ? command.failure : InsufficientBalanceException.TRANSFER;
+		}
+		writeAheadLog.awaitDurable(command.position);
+	}
+
+	@Override
+	public <T> T writeBalances(Collection<? extends Account> accounts, Supplier<T> writer) {
+		boolean[] owners = new boolean[shards.length];
+		for (Account account : accounts) {
+			if (!(account instanceof StripedAccount)) {
+				owners[shardIndexOf(account.getAccountId())] = true;
+			}
+		}
+		long deadline = System.nanoTime() + timeoutNanos;
+		Pause[] pauses = new Pause[shards.length];
+		int paused = 0;
+		try {
+			for (int i = 0; i < shards.length; i++) {
+				if (owners[i]) {
+					Pause pause = new Pause(Thread.currentThread());
+					shards[i].pause(pause);
+					pause.await(deadline);
+					pauses[paused++] = pause;
+				}
+			}
+			return writer.get();
+		} finally {
+			for (int i = paused - 1; i >= 0; i--) {
+				pauses[i].release();
+			}
+		}
+	}
+
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	int shardIndexOf(String accountId) {
+		int h = accountId.hashCode();
+		return Math.floorMod(h ^ (h >>> 16), shards.length);
+	}
+
+	private Shard shardOf(Account account) {
+		return shards[shardIndexOf(account.getAccountId())];
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		for (Shard shard : shards) {
+			shard.running = false;
+			LockSupport.unpark(shard.thread);
+		}
+		for (Shard shard : shards) {
+			shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+		}
+	}
+
+	private static final class TransferCommand {
+
+		private static final AtomicIntegerFieldUpdater<TransferCommand> STATUS = AtomicIntegerFieldUpdater
+				.newUpdater(TransferCommand.class, "status");
+
+		private static final int PENDING = 0;
+
+		private static final int COMPLETED = 1;
+
+		private static final int REJECTED = 2;
+
+		private static final int STARTED = 3;
+
+		private static final int WITHDRAWN = 4;
+
+		private final Account accountFrom;
+
+		private final Account accountTo;
+
+		private final long debitUnits;
+
+		private final long creditUnits;
+
+		private final Thread requester;
+
+		/** Log position of the transfer's record, published by the status. */
+		private long position;
+
+		/** Why a rejected command failed, {@code null} if the source lacked funds. */
+		private RuntimeException failure;
+
+		private volatile int status = PENDING;
+
+		private TransferCommand(Account accountFrom, Account accountTo, long debitUnits, long creditUnits,
+				Thread requester) {
+			this.accountFrom = accountFrom;
+			this.accountTo = accountTo;
+			this.debitUnits = debitUnits;
+			this.creditUnits = creditUnits;
+			this.requester = requester;
+		}
+
+		/**
+		 * Takes the command for execution, unless the requester withdrew it.
+		 */
+		private boolean start() {
+			return STATUS.compareAndSet(this, PENDING, STARTED);
+		}
+
+		private void complete(int outcome) {
+			status = outcome;
+			LockSupport.unpark(requester);
+		}
+
+		/**
+		 * Waits until both phases ran. A command still waiting for its shard at
+		 * the deadline is withdrawn; a started one is waited for, as giving up
+		 * then would report a failure for a transfer that still happens.
+		 *
+		 * @throws LockAcquisitionTimeoutException if the command was withdrawn
+		 */
+		private boolean await(long deadline) {
+			boolean interrupted = false;
+			try {
+				int current;
+				while ((current = status) == PENDING || current == STARTED) {
+					if (current == PENDING) {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0) {
+							if (STATUS.compareAndSet(this, PENDING, WITHDRAWN)) {
+								throw LockAcquisitionTimeoutException.BUSY;
+							}
+							continue;
+						}
+						LockSupport.parkNanos(this, remaining);
+					} else {
+						LockSupport.park(this);
+					}
+					interrupted |= Thread.interrupted();
+				}
+				return current == COMPLETED;
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Request of a {@link #writeBalances} caller to hold a shard still until it
+	 * is released.
+	 */
+	private static final class Pause {
+
+		private static final AtomicIntegerFieldUpdater<Pause> STATE = AtomicIntegerFieldUpdater.newUpdater(Pause.class,
+				"state");
+
+		private static final int PENDING = 0;
+
+		private static final int HELD = 1;
+
+		private static final int WITHDRAWN = 2;
+
+		private static final int RELEASED = 3;
+
+		private final Thread requester;
+
+		private volatile int state = PENDING;
+
+		private volatile Thread holder;
+
+		private Pause(Thread requester) {
+			this.requester = requester;
+		}
+
+		/**
+		 * Run by the shard: parks it until the requester is done, unless the
+		 * requester gave up waiting already.
+		 */
+		private void hold() {
+			holder = Thread.currentThread();
+			if (!STATE.compareAndSet(this, PENDING, HELD)) {
+				return;
+			}
+			LockSupport.unpark(requester);
+			while (state != RELEASED) {
+				LockSupport.park(this);
+			}
+		}
+
+		/**
+		 * Waits until the shard holds still.
+		 *
+		 * @throws LockAcquisitionTimeoutException if it didn't by the deadline,
+		 *                                         in which case the request is
+		 *                                         withdrawn
+		 */
+		private void await(long deadline) {
+			boolean interrupted = false;
+			try {
+				while (state == PENDING) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						if (STATE.compareAndSet(this, PENDING, WITHDRAWN)) {
+							throw LockAcquisitionTimeoutException.BUSY;
+						}
+						break;
+					}
+					LockSupport.parkNanos(this, remaining);
+					interrupted |= Thread.interrupted();
+				}
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		private void release() {
+			state = RELEASED;
+			LockSupport.unpark(holder);
+		}
+	}
+
+	private final class Shard implements Runnable {
+
+		private final MpscRingBuffer<TransferCommand> commands;
+
+		private final Queue<TransferCommand> credits = new ConcurrentLinkedQueue<>();
+
+		private final Queue<Pause> pauses = new ConcurrentLinkedQueue<>();
+
+		private final Thread thread;
+
+		private volatile boolean running = true;
+
+		private volatile boolean sleeping;
+
+		private Shard(int index, int ringSize) {
+			this.commands = new MpscRingBuffer<>(ringSize);
+			this.thread = new Thread(this, "transfer-shard-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		private void submit(TransferCommand command, long deadline) {
+			while (!commands.offer(command)) {
+				// Ring is full: let the shard catch up instead of growing without bound.
+				if (System.nanoTime() - deadline >= 0) {
+					throw LockAcquisitionTimeoutException.BUSY;
+				}
+				wakeUp();
+				Thread.yield();
+			}
+			wakeUp();
+		}
+
+		private void pause(Pause pause) {
+			pauses.offer(pause);
+			wakeUp();
+		}
+
+		private void handOffCredit(TransferCommand command) {
+			credits.offer(command);
+			wakeUp();
+		}
+
+		private void wakeUp() {
+			if (sleeping) {
+				LockSupport.unpark(thread);
+			}
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				int processed = 0;
+				Pause pause;
+				while ((pause = pauses.poll()) != null) {
+					pause.hold();
+				}
+				TransferCommand command;
+				while ((command = credits.poll()) != null) {
+					credit(command);
+					processed++;
+				}
+				while (processed < BATCH_SIZE && (command = commands.poll()) != null) {
+					debit(command);
+					processed++;
+				}
+				if (processed == 0) {
+					sleeping = true;
+					if (commands.isEmpty() && credits.isEmpty() && pauses.isEmpty() && running) {
+						LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+					}
+					sleeping = false;
+				}
+			}
+		}
+
+		private void debit(TransferCommand command) {
+			if (!command.start()) {
+				return;
+			}
+			Account accountFrom = command.accountFrom;
+			Account accountTo = command.accountTo;
+			try {
+				if (accountFrom.getBalanceUnits() < command.debitUnits) {
+					command.complete(TransferCommand.REJECTED);
+					return;
+				}
+				command.position = writeAheadLog.appendTransfer(accountFrom.getAccountId(), accountTo.getAccountId(),
+						command.debitUnits, command.creditUnits);
+				if (!accountFrom.tryDebitUnits(command.debitUnits)) {
+					// A hot source account was drained meanwhile.
+					appendReversal(command);
+					command.complete(TransferCommand.REJECTED);
+					return;
+				}
+			} catch (RuntimeException e) {
+				log.error("Debit of transfer from {} failed", accountFrom.getAccountId(), e);
+				command.failure = e;
+				command.complete(TransferCommand.REJECTED);
+				return;
+			}
+			Shard target = command.accountTo instanceof StripedAccount ? this : shardOf(command.accountTo);
+			if (target == this) {
+				credit(command);
+			} else {
+				target.handOffCredit(command);
+			}
+		}
+
+		private void credit(TransferCommand command) {
+			try {
+				command.accountTo.creditUnits(command.creditUnits);
+			} catch (RuntimeException e) {
+				log.error("Credit of transfer to {} failed, refunding {}", command.accountTo.getAccountId(),
+						command.accountFrom.getAccountId(), e);
+				command.accountFrom.creditUnits(command.debitUnits);
+				command.failure = e;
+				appendReversal(command);
+				command.complete(TransferCommand.REJECTED);
+				return;
+			}
+			command.complete(TransferCommand.COMPLETED);
+		}
+
+		private void appendReversal(TransferCommand command) {
+			try {
+				// Rare enough to wait for on the shard, so the failure is only reported once it is durable.
+				writeAheadLog.awaitDurable(writeAheadLog.appendTransfer(command.accountTo.getAccountId(),
+						command.accountFrom.getAccountId(), command.creditUnits, command.debitUnits));
+			} catch (RuntimeException e) {
+				log.error("Journaling the reversal of transfer from {} failed", command.accountFrom.getAccountId(),
+						e);
+			}
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.db.awmd.challenge.engine;
+
+import java.util.function.Consumer;
+
+/**
+ * Hashed hierarchical timing wheel holding any number of timeouts at constant
+ * cost per timeout, without a thread or executor task each.
+ * <p>
+ * Time advances in ticks of {@code tickMillis}. Level 0 has one slot per tick
+ * for the next {@code 2^SLOT_BITS} ticks, every further level covers
+ * {@code 2^SLOT_BITS} times the span of the level below with slots of the
+ * lower level's span. A timeout is filed in the finest level that reaches its
+ * deadline, and a slot of a higher level is redistributed to the levels below
+ * ("cascaded") when time enters its span. Timeouts beyond the top level are
+ * parked in its farthest slot and re-filed when that slot cascades.
+ * <p>
+ * Slots are intrusive doubly-linked lists, so cancelling is O(1). The wheel is
+ * not thread-safe: a single owner thread schedules, cancels and advances it.
+ */
+public final class TimingWheel<T> {
+
+	private static final int SLOT_BITS = 9;
+
+	private static final int SLOTS = 1 << SLOT_BITS;
+
+	private static final int MASK = SLOTS - 1;
+
+	private static final int LEVELS = 4;
+
+	private final long tickMillis;
+
+	private final long startMillis;
+
+	private final Timeout<T>[][] slots;
+
+	/** Last tick whose level 0 slot has fired. */
+	private long currentTick;
+
+	private int size;
+
+	public TimingWheel(long tickMillis, long startMillis) {
+		if (tickMillis <= 0) {
+			throw new IllegalArgumentException("Tick must be positive");
+		}
+		this.tickMillis = tickMillis;
+		this.startMillis = startMillis;
+		this.slots = newSlots();
+	}
+
+	/**
+	 * Files {@code item} to expire at {@code deadlineMillis}. Deadlines that
+	 * already passed expire on the next tick.
+	 */
+	public Timeout<T> schedule(T item, long deadlineMillis) {
+		long deadlineTick = Math.floorDiv(deadlineMillis - startMillis + tickMillis - 1, tickMillis);
+		Timeout<T> timeout = new Timeout<>(item, Math.max(deadlineTick, currentTick + 1));
+		file(timeout, currentTick + 1);
+		size++;
+		return timeout;
+	}
+
+	/**
+	 * Removes a timeout that has neither expired nor been cancelled yet.
+	 *
+	 * @return {@code false} if the timeout was no longer in the wheel
+	 */
+	public boolean cancel(Timeout<T> timeout) {
+		if (timeout.level < 0) {
+			return false;
+		}
+		unlink(timeout);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Fires every tick up to {@code nowMillis}, handing the items of expired
+	 * timeouts to {@code expired} tick by tick.
+	 */
+	public void advance(long nowMillis, Consumer<T> expired) {
+		long targetTick = Math.floorDiv(nowMillis - startMillis, tickMillis);
+		while (currentTick < targetTick) {
+			long tick = currentTick + 1;
+			for (int level = LEVELS - 1; level > 0; level--) {
+				if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+					cascade(level, (int) (tick >>> (SLOT_BITS * level)) & MASK, tick);
+				}
+			}
+			currentTick = tick;
+			int slot = (int) tick & MASK;
+			Timeout<T> timeout;
+			while ((timeout = slots[0][slot]) != null) {
+				unlink(timeout);
+				size--;
+				expired.accept(timeout.item);
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Milliseconds at which the next tick is due.
+	 */
+	public long nextTickMillis() {
+		return startMillis + (currentTick + 1) * tickMillis;
+	}
+
+	private void cascade(int level, int slot, long tick) {
+		Timeout<T> timeout = slots[level][slot];
+		slots[level][slot] = null;
+		while (timeout != null) {
+			Timeout<T> next = timeout.next;
+			timeout.prev = null;
+			timeout.next = null;
+			file(timeout, tick);
+			timeout = next;
+		}
+	}
+
+	/**
+	 * Files a timeout relative to {@code baseTick}, the earliest tick not yet
+	 * fired; its deadline is never before {@code baseTick}.
+	 */
+	private void file(Timeout<T> timeout, long baseTick) {
+		long delta = timeout.deadlineTick - baseTick;
+		int level = 0;
+		while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+			level++;
+		}
+		long filedTick = Math.min(timeout.deadlineTick, baseTick + (1L << (SLOT_BITS * LEVELS)) - 1);
+		int slot = (int) (filedTick >>> (SLOT_BITS * level)) & MASK;
+		timeout.level = level;
+		timeout.slot = slot;
+		Timeout<T> head = slots[level][slot];
+		timeout.next = head;
+		if (head != null) {
+			head.prev = timeout;
+		}
+		slots[level][slot] = timeout;
+	}
+
+	private void unlink(Timeout<T> timeout) {
+		if (timeout.prev != null) {
+			timeout.prev.next = timeout.next;
+		} else {
+			slots[timeout.level][timeout.slot] = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.prev = timeout.prev;
+		}
+		timeout.prev = null;
+		timeout.next = null;
+		timeout.level = -1;
+	}
+
+	/**
+	 * Empty slot lists of all levels. Java can't create an array of a generic
+	 * type, so the wildcard array is cast once here.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> Timeout<T>[][] newSlots() {
+		return (Timeout<T>[][]) new Timeout<?>[LEVELS][SLOTS];
+	}
+
+	/**
+	 * Handle of a scheduled item, for cancelling it.
+	 */
+	public static final class Timeout<T> {
+
+		private final T item;
+
+		private final long deadlineTick;
+
+		private Timeout<T> prev;
+
+		private Timeout<T> next;
+
+		private int level = -1;
+
+		private int slot;
+
+		private Timeout(T item, long deadlineTick) {
+			this.item = item;
+			this.deadlineTick = deadlineTick;
+		}
+
+		public T getItem() {
+			return item;
+		}
+	}
+}
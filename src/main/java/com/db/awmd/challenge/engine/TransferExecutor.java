@@ -0,0 +1,51 @@
+package com.db.awmd.challenge.engine;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.LockAcquisitionTimeoutException;
+
+/**
+ * Applies the balance movement of an already validated transfer. Implementations
+ * decide how concurrent transfers touching the same accounts are serialized.
+ */
+public interface TransferExecutor {
+
+	/**
+	 * Moves {@code amountUnits} minor units from {@code accountFrom} to
+	 * {@code accountTo} atomically.
+	 *
+	 * @throws InsufficientBalanceException if {@code accountFrom} can't cover the
+	 *                                      amount, in which case no balance changed
+	 */
+	default void execute(Account accountFrom, Account accountTo, long amountUnits) {
+		execute(accountFrom, accountTo, amountUnits, amountUnits);
+	}
+
+	/**
+	 * Debits {@code debitUnits} from {@code accountFrom} and credits
+	 * {@code creditUnits} to {@code accountTo} atomically. The amounts differ
+	 * when the accounts hold different currencies.
+	 *
+	 * @throws InsufficientBalanceException if {@code accountFrom} can't cover
+	 *                                      {@code debitUnits}, in which case no
+	 *                                      balance changed
+	 */
+	void execute(Account accountFrom, Account accountTo, long debitUnits, long creditUnits);
+
+	/**
+	 * Runs {@code writer}, which moves balances of {@code accounts} itself
+	 * rather than through {@link #execute}, such as a batch or a cross-node
+	 * reservation. Callers take the stripe locks they need as before; this only
+	 * keeps the writer from racing an executor that owns the accounts' balances.
+	 *
+	 * @throws LockAcquisitionTimeoutException if the accounts could not be taken
+	 *                                         over in time, in which case
+	 *                                         {@code writer} did not run
+	 */
+	default <T> T writeBalances(Collection<? extends Account> accounts, Supplier<T> writer) {
+		return writer.get();
+	}
+}
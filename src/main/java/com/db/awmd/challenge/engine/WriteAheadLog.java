@@ -0,0 +1,121 @@
+package com.db.awmd.challenge.engine;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.JournalException;
+
+/**
+ * Log every balance movement is recorded in before it is applied. Writers
+ * append the record while they hold the accounts, so records of transfers
+ * touching the same account are in the order the transfers were applied, and
+ * answer the request once the record is durable. Without a journal
+ * {@link #NONE} is used.
+ * <p>
+ * A movement that can't be applied after its record was appended, because a
+ * writer not taking the stripe locks changed a balance meanwhile, is undone in
+ * the log by a reversing record, which is made durable before the failure is
+ * reported so that a restart never replays the movement alone.
+ */
+public interface WriteAheadLog {
+
+	WriteAheadLog NONE = new WriteAheadLog() {
+
+		@Override
+		public long appendTransfer(String accountFromId, String accountToId, long debitUnits, long creditUnits) {
+			return 0;
+		}
+
+		@Override
+		public long appendRemoteLeg(String txId, String accountId, String remoteAccountId, long units) {
+			return 0;
+		}
+
+		@Override
+		public void settleRemoteLegs(String txId) {
+		}
+
+		@Override
+		public long getRecoveredLegUnits(String txId) {
+			return 0;
+		}
+
+		@Override
+		public void awaitDurable(long position) {
+		}
+
+		@Override
+		public long apply(Account accountFrom, Account accountTo, long debitUnits, long creditUnits) {
+			if (!accountFrom.tryDebitUnits(debitUnits)) {
+				throw InsufficientBalanceException.TRANSFER;
+			}
+			accountTo.creditUnits(creditUnits);
+			return 0;
+		}
+	};
+
+	/**
+	 * Records a transfer between two local accounts.
+	 *
+	 * @return the position to pass to {@link #awaitDurable(long)}
+	 * @throws JournalException if the record could not be written, in which
+	 *                          case the transfer must not be applied
+	 */
+	long appendTransfer(String accountFromId, String accountToId, long debitUnits, long creditUnits);
+
+	/**
+	 * Records the local side of a transfer with an account of another node. The
+	 * record is kept out of snapshots until {@link #settleRemoteLegs(String)},
+	 * so that a restart can still tell from the log whether it was written.
+	 *
+	 * @param txId  cross-node transaction the change belongs to
+	 * @param units signed change of the local account
+	 * @return the position to pass to {@link #awaitDurable(long)}
+	 * @throws JournalException if the record could not be written, in which
+	 *                          case the change must not be applied
+	 */
+	long appendRemoteLeg(String txId, String accountId, String remoteAccountId, long units);
+
+	/**
+	 * Called once the outcome of transaction {@code txId} is logged elsewhere,
+	 * after which its records may be folded into snapshots.
+	 */
+	void settleRemoteLegs(String txId);
+
+	/**
+	 * Net units of the records of transaction {@code txId} replayed on startup,
+	 * 0 if it has none or they were undone. Only meaningful until the first
+	 * snapshot, so it is meant for recovery while the application starts.
+	 */
+	long getRecoveredLegUnits(String txId);
+
+	/**
+	 * Waits until every record up to {@code position} is durable.
+	 *
+	 * @throws JournalException if the log was closed first; the records may or
+	 *                          may not survive a restart
+	 */
+	void awaitDurable(long position);
+
+	/**
+	 * Records and applies a transfer between accounts the caller holds.
+	 *
+	 * @return the position to pass to {@link #awaitDurable(long)} once the
+	 *         accounts are released
+	 * @throws InsufficientBalanceException if {@code accountFrom} can't cover
+	 *                                      {@code debitUnits}, in which case no
+	 *                                      balance changed
+	 */
+	default long apply(Account accountFrom, Account accountTo, long debitUnits, long creditUnits) {
+		if (accountFrom.getBalanceUnits() < debitUnits) {
+			throw InsufficientBalanceException.TRANSFER;
+		}
+		long position = appendTransfer(accountFrom.getAccountId(), accountTo.getAccountId(), debitUnits,
+				creditUnits);
+		if (!accountFrom.tryDebitUnits(debitUnits)) {
+			awaitDurable(appendTransfer(accountTo.getAccountId(), accountFrom.getAccountId(), creditUnits, debitUnits));
+			throw InsufficientBalanceException.TRANSFER;
+		}
+		accountTo.creditUnits(creditUnits);
+		return position;
+	}
+}
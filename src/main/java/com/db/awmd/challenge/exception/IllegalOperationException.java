@@ -3,6 +3,6 @@ package com.db.awmd.challenge.exception;
 public class IllegalOperationException extends RuntimeException {
 
 	public IllegalOperationException(String message) {
-		super(message);
+		super(message, null, false, false);
 	}
-}
\ No newline at end of file
+}
@@ -1,8 +1,16 @@
 package com.db.awmd.challenge.exception;
 
+/**
+ * Business rejection of a debit. Like the other rejections it carries no stack
+ * trace, so a rejected transfer costs no more than a successful one.
+ */
 public class InsufficientBalanceException extends RuntimeException {
 
+	/** Shared rejection of a transfer whose source account can't cover the amount. */
+	public static final InsufficientBalanceException TRANSFER = new InsufficientBalanceException(
+			"Money Transfer can't be performed due to lack of funds in the account.");
+
 	public InsufficientBalanceException(String message) {
-		super(message);
+		super(message, null, false, false);
 	}
 }
@@ -3,6 +3,6 @@ package com.db.awmd.challenge.exception;
 public class InvalidAccountNumberException extends RuntimeException {
 
 	public InvalidAccountNumberException(String message) {
-		super(message);
+		super(message, null, false, false);
 	}
 }
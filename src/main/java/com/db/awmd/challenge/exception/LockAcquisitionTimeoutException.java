@@ -0,0 +1,12 @@
+package com.db.awmd.challenge.exception;
+
+public class LockAcquisitionTimeoutException extends RuntimeException {
+
+	/** Shared rejection of a transfer whose account locks were not free in time. */
+	public static final LockAcquisitionTimeoutException BUSY = new LockAcquisitionTimeoutException(
+			"Accounts are busy, transfer could not be performed. Please retry.");
+
+	public LockAcquisitionTimeoutException(String message) {
+		super(message, null, false, false);
+	}
+}
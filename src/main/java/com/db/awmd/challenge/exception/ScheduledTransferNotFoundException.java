@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class ScheduledTransferNotFoundException extends RuntimeException {
+
+	public ScheduledTransferNotFoundException(String message) {
+		super(message, null, false, false);
+	}
+}
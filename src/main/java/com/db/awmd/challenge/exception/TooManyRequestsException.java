@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.exception;
+
+public class TooManyRequestsException extends RuntimeException {
+
+	public static final TooManyRequestsException CLIENT_RATE = new TooManyRequestsException(
+			"Too many transfer requests from this client, please slow down.");
+
+	public static final TooManyRequestsException ACCOUNT_RATE = new TooManyRequestsException(
+			"Too many transfers from this account, please slow down.");
+
+	public static final TooManyRequestsException IDEMPOTENCY_FULL = new TooManyRequestsException(
+			"Too many transfers with an idempotency key in progress, please retry later.");
+
+	public static final TooManyRequestsException OVERLOADED = new TooManyRequestsException(
+			"Service is overloaded, please retry later.");
+
+	public TooManyRequestsException(String message) {
+		super(message, null, false, false);
+	}
+}
@@ -0,0 +1,8 @@
+package com.db.awmd.challenge.exception;
+
+public class TransferRuleViolationException extends RuntimeException {
+
+	public TransferRuleViolationException(String message) {
+		super(message, null, false, false);
+	}
+}
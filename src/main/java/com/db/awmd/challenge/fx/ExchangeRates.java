@@ -0,0 +1,141 @@
+package com.db.awmd.challenge.fx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.FxRateTable;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Publishes the exchange rates used by cross-currency transfers. The rates are
+ * an immutable {@link FxRates} snapshot behind a volatile reference: an update
+ * builds a complete new snapshot and swaps it in, so transfers read the rates
+ * with a single volatile load and never see a half-updated table.
+ * <p>
+ * Rates come from the JSON file {@code fx.rates-file}, read at startup and
+ * again whenever it changed if {@code fx.reload-seconds} is set, or from
+ * {@link #update(FxRateTable)}. Without rates only transfers between accounts
+ * of the same currency are possible.
+ */
+@Slf4j
+@Component
+public class ExchangeRates implements InitializingBean, DisposableBean {
+
+	private static final ObjectMapper JSON = new ObjectMapper();
+
+	private final Path ratesFile;
+
+	private final long reloadSeconds;
+
+	private volatile FxRates current = FxRates.EMPTY;
+
+	private long loadedModified;
+
+	private ScheduledExecutorService scheduler;
+
+	public ExchangeRates() {
+		this("", 0);
+	}
+
+	/**
+	 * @param ratesFile     JSON {@link FxRateTable} to load, empty for none
+	 * @param reloadSeconds pause between checks of the file for changes, 0 to
+	 *                      read it only at startup and on request
+	 */
+	@Autowired
+	public ExchangeRates(@Value("${fx.rates-file:}") String ratesFile,
+			@Value("${fx.reload-seconds:0}") long reloadSeconds) {
+		this.ratesFile = ratesFile.isEmpty() ? null : Paths.get(ratesFile);
+		this.reloadSeconds = reloadSeconds;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (ratesFile == null) {
+			return;
+		}
+		reload();
+		if (reloadSeconds > 0) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "fx-rates-reload");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleWithFixedDelay(this::reloadIfModified, reloadSeconds, reloadSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * {@code units} of {@code from} in minor units of {@code to}.
+	 *
+	 * @throws IllegalOperationException if the currencies differ and there is no
+	 *                                   rate for them
+	 */
+	public long convert(long units, String from, String to) {
+		return current.convert(units, from, to);
+	}
+
+	public FxRates getRates() {
+		return current;
+	}
+
+	/**
+	 * Replaces all rates with {@code table}.
+	 */
+	public synchronized FxRates update(FxRateTable table) {
+		FxRates rates = FxRates.of(table, System.currentTimeMillis());
+		current = rates;
+		log.info("Published exchange rates {}", rates.toTable());
+		return rates;
+	}
+
+	/**
+	 * Replaces all rates with the content of the rates file.
+	 */
+	public synchronized FxRates reload() {
+		if (ratesFile == null) {
+			throw new IllegalOperationException("No exchange rate file is configured.");
+		}
+		try {
+			long modified = Files.getLastModifiedTime(ratesFile).toMillis();
+			FxRates rates = update(JSON.readValue(ratesFile.toFile(), FxRateTable.class));
+			loadedModified = modified;
+			return rates;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Can't read exchange rates from " + ratesFile, e);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	private synchronized void reloadIfModified() {
+		try {
+			if (Files.getLastModifiedTime(ratesFile).toMillis() != loadedModified) {
+				reload();
+			}
+		} catch (IOException | RuntimeException e) {
+			// The previous rates stay in effect.
+			log.error("Reloading exchange rates from {} failed", ratesFile, e);
+		}
+	}
+}
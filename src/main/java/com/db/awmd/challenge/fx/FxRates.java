@@ -0,0 +1,175 @@
+package com.db.awmd.challenge.fx;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FxRateTable;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+
+/**
+ * Immutable snapshot of an {@link FxRateTable}. The rate of every ordered pair
+ * of currencies is crossed through the base once, when the snapshot is built,
+ * and kept as a fixed-point {@code long} with {@value #RATE_SCALE} decimals.
+ * Converting an amount is then an exact 128-bit multiplication of its minor
+ * units by the rate and a division by a constant, rounded half-even, with no
+ * {@link BigDecimal} and no allocation.
+ * <p>
+ * All currencies use the minor units of {@link com.db.awmd.challenge.domain.Amounts}.
+ */
+public final class FxRates {
+
+	/** Decimal places of the fixed-point rates. */
+	public static final int RATE_SCALE = 9;
+
+	/** A rate of 1 as a fixed-point number; below 2^32, which the division relies on. */
+	private static final long ONE = 1_000_000_000L;
+
+	private static final long LOW_BITS = 0xFFFFFFFFL;
+
+	static final FxRates EMPTY = new FxRates(Account.DEFAULT_CURRENCY, Collections.emptyMap(), 0);
+
+	private final String base;
+
+	private final Map<String, BigDecimal> quotes;
+
+	private final long updatedAt;
+
+	private final Map<String, Integer> indexes = new HashMap<>();
+
+	/** Rate from currency {@code i} to currency {@code j} at {@code i * count + j}. */
+	private final long[] rates;
+
+	private final int count;
+
+	private FxRates(String base, Map<String, BigDecimal> quotes, long updatedAt) {
+		this.base = base;
+		this.quotes = Collections.unmodifiableMap(quotes);
+		this.updatedAt = updatedAt;
+
+		Map<String, BigDecimal> all = new TreeMap<>(quotes);
+		all.put(base, BigDecimal.ONE);
+		this.count = all.size();
+		BigDecimal[] values = new BigDecimal[count];
+		for (Map.Entry<String, BigDecimal> quote : all.entrySet()) {
+			values[indexes.size()] = quote.getValue();
+			indexes.put(quote.getKey(), indexes.size());
+		}
+		this.rates = new long[count * count];
+		for (Map.Entry<String, Integer> from : indexes.entrySet()) {
+			for (Map.Entry<String, Integer> to : indexes.entrySet()) {
+				rates[from.getValue() * count + to.getValue()] = fixedPoint(from.getKey(), to.getKey(),
+						values[to.getValue()].divide(values[from.getValue()], RATE_SCALE, RoundingMode.HALF_EVEN));
+			}
+		}
+	}
+
+	/**
+	 * Validates {@code table} and builds its snapshot.
+	 *
+	 * @throws IllegalOperationException if a currency code is malformed or a
+	 *                                   rate isn't positive or out of range
+	 */
+	public static FxRates of(FxRateTable table, long updatedAt) {
+		if (table.getBase() == null) {
+			throw new IllegalOperationException("Base currency of the exchange rates must be provided.");
+		}
+		String base = Account.currencyOf(table.getBase());
+		Map<String, BigDecimal> quotes = new TreeMap<>();
+		if (table.getRates() != null) {
+			for (Map.Entry<String, BigDecimal> rate : table.getRates().entrySet()) {
+				String currency = Account.currencyOf(rate.getKey());
+				if (rate.getValue() == null || rate.getValue().signum() <= 0) {
+					throw new IllegalOperationException("Exchange rate of " + currency + " must be positive.");
+				}
+				if (!currency.equals(base)) {
+					quotes.put(currency, rate.getValue());
+				} else if (rate.getValue().compareTo(BigDecimal.ONE) != 0) {
+					throw new IllegalOperationException("Exchange rate of the base currency must be 1.");
+				}
+			}
+		}
+		return new FxRates(base, quotes, updatedAt);
+	}
+
+	/**
+	 * {@code units} of {@code from} in minor units of {@code to}. Same currencies
+	 * need no rate.
+	 *
+	 * @throws IllegalOperationException if there is no rate for the pair or the
+	 *                                   result doesn't fit into a {@code long}
+	 */
+	public long convert(long units, String from, String to) {
+		if (from.equals(to)) {
+			return units;
+		}
+		Integer i = indexes.get(from);
+		Integer j = indexes.get(to);
+		if (i == null || j == null) {
+			throw new IllegalOperationException("No exchange rate from " + from + " to " + to + ".");
+		}
+		return multiply(units, rates[i * count + j]);
+	}
+
+	/**
+	 * Whether {@link #convert} has a rate from {@code from} to {@code to}.
+	 */
+	public boolean canConvert(String from, String to) {
+		return from.equals(to) || indexes.containsKey(from) && indexes.containsKey(to);
+	}
+
+	public FxRateTable toTable() {
+		return FxRateTable.builder().base(base).rates(new TreeMap<>(quotes)).updatedAt(updatedAt).build();
+	}
+
+	/**
+	 * {@code units * rate / ONE} rounded half-even, for non-negative
+	 * {@code units} and a positive fixed-point {@code rate}. The 128-bit product
+	 * is divided in 32-bit limbs, so every partial dividend, a remainder below
+	 * {@code ONE} followed by one limb, fits into a {@code long}.
+	 */
+	static long multiply(long units, long rate) {
+		long high = Math.multiplyHigh(units, rate);
+		long low = units * rate;
+		long quotient;
+		long remainder;
+		if (high == 0 && low >= 0) {
+			quotient = low / ONE;
+			remainder = low % ONE;
+		} else {
+			long q3 = (high >>> 32) / ONE;
+			long dividend = (high >>> 32) % ONE << 32 | high & LOW_BITS;
+			long q2 = dividend / ONE;
+			dividend = dividend % ONE << 32 | low >>> 32;
+			long q1 = dividend / ONE;
+			dividend = dividend % ONE << 32 | low & LOW_BITS;
+			if (q3 != 0 || q2 != 0 || q1 > Integer.MAX_VALUE) {
+				throw new IllegalOperationException("Converted amount is too large.");
+			}
+			quotient = q1 << 32 | dividend / ONE;
+			remainder = dividend % ONE;
+		}
+		if (remainder > ONE / 2 || remainder == ONE / 2 && (quotient & 1) != 0) {
+			if (quotient == Long.MAX_VALUE) {
+				throw new IllegalOperationException("Converted amount is too large.");
+			}
+			quotient++;
+		}
+		return quotient;
+	}
+
+	private static long fixedPoint(String from, String to, BigDecimal rate) {
+		if (rate.signum() == 0) {
+			throw new IllegalOperationException("Exchange rate from " + from + " to " + to + " is too small.");
+		}
+		try {
+			return rate.unscaledValue().longValueExact();
+		} catch (ArithmeticException e) {
+			throw new IllegalOperationException("Exchange rate from " + from + " to " + to + " is too large.");
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package com.db.awmd.challenge.history;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Append-only, time-ordered ledger of one account in fixed-size chunks of
+ * columns. Entries keep their absolute index for the lifetime of the account,
+ * so an index is a stable cursor; once the account holds more than its
+ * retention, whole chunks are dropped from the old end.
+ * <p>
+ * Every chunk is counted in a counter shared by all accounts, so the owner can
+ * bound the chunks of all accounts together by {@link #evict() evicting} whole
+ * histories.
+ */
+final class AccountHistory {
+
+	static final int CHUNK_SHIFT = 6;
+
+	static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	/** {@link #append} stored the entry in a chunk it already had. */
+	static final int APPENDED = 0;
+
+	/** {@link #append} stored the entry in a newly allocated chunk. */
+	static final int GREW = 1;
+
+	/** {@link #append} found the history evicted and stored nothing. */
+	static final int EVICTED = 2;
+
+	final String accountId;
+
+	private final int maxChunks;
+
+	private final LongAdder allocatedChunks;
+
+	private boolean evicted;
+
+	private Chunk[] chunks = new Chunk[1];
+
+	/** Index of the first chunk still in {@link #chunks}. */
+	private long firstChunk;
+
+	private int chunkCount;
+
+	private long size;
+
+	/** Timestamp of the newest entry, read without the monitor to pick idle accounts. */
+	private volatile long lastTimestamp;
+
+	AccountHistory(String accountId, int maxEntries, LongAdder allocatedChunks) {
+		this.accountId = accountId;
+		// One spare chunk, so that at least maxEntries survive dropping a chunk.
+		this.maxChunks = (Math.max(1, maxEntries) + CHUNK_SIZE - 1) / CHUNK_SIZE + 1;
+		this.allocatedChunks = allocatedChunks;
+	}
+
+	/**
+	 * Appends an entry; {@code counterparty} is the account id of the other
+	 * side, shared by all entries referring to it.
+	 *
+	 * @return {@link #APPENDED}, {@link #GREW} or {@link #EVICTED}
+	 */
+	synchronized int append(long timestamp, long amountUnits, String counterparty) {
+		if (evicted) {
+			return EVICTED;
+		}
+		// Concurrent transfers may publish slightly out of order; keep the index
+		// sorted so time ranges can be found by binary search.
+		long time = Math.max(timestamp, lastTimestamp);
+		int offset = (int) (size & (CHUNK_SIZE - 1));
+		boolean grew = offset == 0 && addChunk();
+		Chunk chunk = chunks[chunkCount - 1];
+		chunk.timestamps[offset] = time;
+		chunk.amounts[offset] = amountUnits;
+		chunk.counterparties[offset] = counterparty;
+		lastTimestamp = time;
+		size++;
+		return grew ? GREW : APPENDED;
+	}
+
+	/**
+	 * Releases all chunks; later appends report {@link #EVICTED}, so writers
+	 * move on to a new history of the account.
+	 */
+	synchronized void evict() {
+		if (!evicted) {
+			evicted = true;
+			allocatedChunks.add(-chunkCount);
+			chunks = new Chunk[0];
+			chunkCount = 0;
+			firstChunk = size >> CHUNK_SHIFT;
+		}
+	}
+
+	long getLastTimestamp() {
+		return lastTimestamp;
+	}
+
+	/**
+	 * Copies up to {@code limit} entries with {@code from <= timestamp < to} and
+	 * an index below {@code before} into {@code page}, newest first.
+	 *
+	 * @return the number of entries copied
+	 */
+	synchronized int read(long from, long to, long before, int limit, Page page) {
+		if (evicted) {
+			page.more = false;
+			return 0;
+		}
+		long first = firstChunk << CHUNK_SHIFT;
+		long end = Math.min(before, upperBound(to, first));
+		int count = 0;
+		for (long index = end - 1; index >= first && count < limit; index--) {
+			Chunk chunk = chunks[(int) ((index >> CHUNK_SHIFT) - firstChunk)];
+			int offset = (int) (index & (CHUNK_SIZE - 1));
+			long timestamp = chunk.timestamps[offset];
+			if (timestamp < from) {
+				break;
+			}
+			page.indexes[count] = index;
+			page.timestamps[count] = timestamp;
+			page.amounts[count] = chunk.amounts[offset];
+			page.counterparties[count] = chunk.counterparties[offset];
+			count++;
+		}
+		page.more = count == limit && end - count > first
+				&& timestampAt(end - count - 1) >= from;
+		return count;
+	}
+
+	/**
+	 * First index whose timestamp is at or after {@code to}.
+	 */
+	private long upperBound(long to, long first) {
+		long low = first;
+		long high = size;
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (timestampAt(middle) < to) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private long timestampAt(long index) {
+		return chunks[(int) ((index >> CHUNK_SHIFT) - firstChunk)].timestamps[(int) (index & (CHUNK_SIZE - 1))];
+	}
+
+	/**
+	 * Adds a chunk for the next entries, dropping the oldest one at the
+	 * retention limit.
+	 *
+	 * @return whether the number of chunks grew
+	 */
+	private boolean addChunk() {
+		boolean grew = chunkCount < maxChunks;
+		if (!grew) {
+			System.arraycopy(chunks, 1, chunks, 0, chunkCount - 1);
+			chunkCount--;
+			firstChunk++;
+		} else if (chunkCount == chunks.length) {
+			chunks = Arrays.copyOf(chunks, Math.min(maxChunks, chunks.length * 2));
+		}
+		chunks[chunkCount++] = new Chunk();
+		if (grew) {
+			allocatedChunks.increment();
+		}
+		return grew;
+	}
+
+	private static final class Chunk {
+
+		private final long[] timestamps = new long[CHUNK_SIZE];
+
+		private final long[] amounts = new long[CHUNK_SIZE];
+
+		private final String[] counterparties = new String[CHUNK_SIZE];
+	}
+
+	/**
+	 * Reusable buffer receiving one page of entries.
+	 */
+	static final class Page {
+
+		final long[] indexes;
+
+		final long[] timestamps;
+
+		final long[] amounts;
+
+		final String[] counterparties;
+
+		boolean more;
+
+		Page(int capacity) {
+			this.indexes = new long[capacity];
+			this.timestamps = new long[capacity];
+			this.amounts = new long[capacity];
+			this.counterparties = new String[capacity];
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.db.awmd.challenge.history;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Amounts;
+import com.db.awmd.challenge.domain.TransferEvent;
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionPage;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.service.LedgerListener;
+
+/**
+ * Per-account index of applied transfers, recorded on both sides of every
+ * transfer. Entries are columns in chunks and a counterparty is a reference to
+ * the account id its own history holds, so an entry costs 20 bytes with
+ * compressed references, and an id stays in memory only while an entry still
+ * refers to it. Each account keeps at most the configured number of recent
+ * entries.
+ * <p>
+ * All accounts together keep at most {@code history.max-entries}: when a new
+ * chunk takes them beyond it, the histories of the accounts idle the longest
+ * are evicted until a tenth of the limit is free again, so memory is bounded
+ * however many accounts ever transfer.
+ * <p>
+ * Queries return pages newest first. The cursor is the absolute index of the
+ * last entry returned, so locating any page is a direct chunk lookup no matter
+ * how deep it is.
+ */
+@Component
+public class TransactionHistory implements LedgerListener {
+
+	public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+	public static final long DEFAULT_MAX_TOTAL_ENTRIES = 10_000_000;
+
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	private final ConcurrentMap<String, AccountHistory> histories = new ConcurrentHashMap<>();
+
+	private final int maxEntriesPerAccount;
+
+	private final long maxChunks;
+
+	private final LongAdder allocatedChunks = new LongAdder();
+
+	private final ReentrantLock eviction = new ReentrantLock();
+
+	public TransactionHistory() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	public TransactionHistory(int maxEntriesPerAccount) {
+		this(maxEntriesPerAccount, DEFAULT_MAX_TOTAL_ENTRIES);
+	}
+
+	@Autowired
+	public TransactionHistory(
+			@Value("${history.max-entries-per-account:" + DEFAULT_MAX_ENTRIES + "}") int maxEntriesPerAccount,
+			@Value("${history.max-entries:" + DEFAULT_MAX_TOTAL_ENTRIES + "}") long maxEntries) {
+		this.maxEntriesPerAccount = maxEntriesPerAccount;
+		this.maxChunks = Math.max(1, maxEntries / AccountHistory.CHUNK_SIZE);
+	}
+
+	@Override
+	public void onTransfer(TransferEvent event) {
+		boolean grew = append(event.getAccountFrom(), event.getTimestamp(), -event.getAmountUnits(),
+				event.getAccountTo());
+		grew |= append(event.getAccountTo(), event.getTimestamp(), event.getCreditUnits(), event.getAccountFrom());
+		if (grew && allocatedChunks.sum() > maxChunks) {
+			evictIdle();
+		}
+	}
+
+	/**
+	 * Transactions of {@code accountId} with {@code from <= timestamp < to}
+	 * (epoch milliseconds, either bound may be {@code null}), newest first.
+	 */
+	public TransactionPage query(String accountId, Long from, Long to, String cursor, int limit) {
+		if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+			throw new IllegalOperationException("Page size must be between 1 and " + MAX_PAGE_SIZE + ".");
+		}
+		long before = cursor == null ? Long.MAX_VALUE : parseCursor(cursor);
+		AccountHistory history = histories.get(accountId);
+		if (history == null) {
+			return TransactionPage.builder().accountId(accountId).transactions(new ArrayList<>()).build();
+		}
+
+		AccountHistory.Page page = new AccountHistory.Page(limit);
+		int count = history.read(from == null ? Long.MIN_VALUE : from, to == null ? Long.MAX_VALUE : to, before,
+				limit, page);
+		List<Transaction> transactions = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			transactions.add(Transaction.builder().timestamp(page.timestamps[i])
+					.counterparty(page.counterparties[i])
+					.amount(Amounts.toDecimal(page.amounts[i])).build());
+		}
+		return TransactionPage.builder().accountId(accountId).transactions(transactions)
+				.nextCursor(page.more ? Long.toString(page.indexes[count - 1]) : null).build();
+	}
+
+	/**
+	 * Number of accounts with a history.
+	 */
+	public int getAccountCount() {
+		return histories.size();
+	}
+
+	/**
+	 * Appends an entry to the history of {@code accountId}, starting a new
+	 * history if it has none or its history was evicted meanwhile.
+	 *
+	 * @return whether a chunk was allocated for the entry
+	 */
+	private boolean append(String accountId, long timestamp, long amountUnits, String counterpartyId) {
+		AccountHistory counterparty = histories.get(counterpartyId);
+		// Entries share the id instance of the counterparty's history where there is one.
+		String counterpartyRef = counterparty != null ? counterparty.accountId : counterpartyId;
+		while (true) {
+			AccountHistory history = histories.get(accountId);
+			if (history == null) {
+				history = histories.computeIfAbsent(accountId,
+						id -> new AccountHistory(id, maxEntriesPerAccount, allocatedChunks));
+			}
+			int result = history.append(timestamp, amountUnits, counterpartyRef);
+			if (result != AccountHistory.EVICTED) {
+				return result == AccountHistory.GREW;
+			}
+			histories.remove(accountId, history);
+		}
+	}
+
+	/**
+	 * Evicts the histories of the accounts idle the longest until a tenth of
+	 * the chunk limit is free. One thread evicts at a time; the others go on
+	 * appending.
+	 */
+	private void evictIdle() {
+		if (!eviction.tryLock()) {
+			return;
+		}
+		try {
+			long target = maxChunks - maxChunks / 10;
+			if (allocatedChunks.sum() <= target) {
+				return;
+			}
+			List<AccountHistory> idleFirst = new ArrayList<>(histories.values());
+			idleFirst.sort(Comparator.comparingLong(AccountHistory::getLastTimestamp));
+			for (int i = 0; i < idleFirst.size() && allocatedChunks.sum() > target; i++) {
+				AccountHistory history = idleFirst.get(i);
+				history.evict();
+				histories.remove(history.accountId, history);
+			}
+		} finally {
+			eviction.unlock();
+		}
+	}
+
+	private static long parseCursor(String cursor) {
+		try {
+			long index = Long.parseLong(cursor);
+			if (index >= 0) {
+				return index;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below.
+		}
+		throw new IllegalOperationException("Invalid cursor.");
+	}
+}
@@ -0,0 +1,49 @@
+package com.db.awmd.challenge.journal;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.db.awmd.challenge.journal.SnapshotFile.Change;
+
+/**
+ * Folds journal records into the net change per account, sorted by account id.
+ * Creations and transfers are additive, so the result does not depend on the
+ * order in which concurrent requests appended them.
+ */
+final class ChangeCollector implements JournalVisitor {
+
+	private final SortedMap<String, Change> changes = new TreeMap<>();
+
+	@Override
+	public void onAccountCreated(String accountId, String currency, long balanceUnits) {
+		Change change = change(accountId);
+		change.created = true;
+		change.currency = currency;
+		change.units += balanceUnits;
+	}
+
+	@Override
+	public void onTransfer(String accountFrom, String accountTo, long amountUnits, long creditUnits,
+			long timestamp) {
+		change(accountFrom).units -= amountUnits;
+		change(accountTo).units += creditUnits;
+	}
+
+	@Override
+	public void onRemoteLeg(String txId, String accountId, String remoteAccountId, long deltaUnits, long timestamp) {
+		change(accountId).units += deltaUnits;
+	}
+
+	SortedMap<String, Change> getChanges() {
+		return changes;
+	}
+
+	private Change change(String accountId) {
+		Change change = changes.get(accountId);
+		if (change == null) {
+			change = new Change();
+			changes.put(accountId, change);
+		}
+		return change;
+	}
+}
@@ -0,0 +1,58 @@
+package com.db.awmd.challenge.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * One fixed-size, memory-mapped journal file. Files are zero-filled when
+ * created, so a zero record length marks the end of the written part.
+ */
+final class JournalSegment {
+
+	private static final String SUFFIX = ".journal";
+
+	final long index;
+
+	final Path path;
+
+	final MappedByteBuffer buffer;
+
+	private JournalSegment(long index, Path path, MappedByteBuffer buffer) {
+		this.index = index;
+		this.path = path;
+		this.buffer = buffer;
+	}
+
+	static JournalSegment open(Path directory, long index, int size) throws IOException {
+		Path path = path(directory, index);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			return new JournalSegment(index, path, channel.map(MapMode.READ_WRITE, 0, size));
+		}
+	}
+
+	static Path path(Path directory, long index) {
+		return directory.resolve(String.format("%020d%s", index, SUFFIX));
+	}
+
+	/**
+	 * Indexes of the segment files present in {@code directory}, in ascending order.
+	 */
+	static List<Long> list(Path directory) throws IOException {
+		List<Long> indexes = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			files.map(file -> file.getFileName().toString()).filter(name -> name.endsWith(SUFFIX))
+					.map(name -> Long.valueOf(name.substring(0, name.length() - SUFFIX.length())))
+					.sorted().forEach(indexes::add);
+		}
+		return indexes;
+	}
+}
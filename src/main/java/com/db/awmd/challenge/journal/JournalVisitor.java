@@ -0,0 +1,27 @@
+package com.db.awmd.challenge.journal;
+
+/**
+ * Callback receiving the records of a journal during replay, in append order.
+ */
+public interface JournalVisitor {
+
+	void onAccountCreated(String accountId, String currency, long balanceUnits);
+
+	/**
+	 * @param amountUnits units debited from {@code accountFrom}
+	 * @param creditUnits units credited to {@code accountTo}, different from
+	 *                    {@code amountUnits} only for a transfer converted
+	 *                    between currencies
+	 */
+	void onTransfer(String accountFrom, String accountTo, long amountUnits, long creditUnits, long timestamp);
+
+	/**
+	 * The local side of a transfer with an account of another node.
+	 *
+	 * @param txId       cross-node transaction of the change, {@code null} in
+	 *                   records written before transactions were recorded
+	 * @param deltaUnits units credited to {@code accountId}, negative for a
+	 *                   debit
+	 */
+	void onRemoteLeg(String txId, String accountId, String remoteAccountId, long deltaUnits, long timestamp);
+}
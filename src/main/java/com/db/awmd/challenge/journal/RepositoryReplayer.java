@@ -0,0 +1,132 @@
+package com.db.awmd.challenge.journal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rebuilds repository state from journal records. Transfers are applied as raw
+ * deltas without balance checks. Records precede their balance movements and a
+ * movement that failed is followed by its reversing record, so a transfer and
+ * its reversal simply cancel out. A transfer to a new account whose creation
+ * record comes later in the journal is kept aside until the account is
+ * created.
+ * <p>
+ * Transfers of accounts holding their stripe locks replay to the balances
+ * they were applied at. Hot accounts take no locks, so a debit of one may be
+ * journaled and then fail; if the process stops before the reversal is
+ * durable, the debit is replayed alone and can leave a negative balance.
+ * Replay tracks the accounts that end up negative so that they get reported.
+ * <p>
+ * The net change of every cross-node transaction is kept as well, so that the
+ * transactions in doubt at the crash can be resolved against the journal.
+ */
+@Slf4j
+public class RepositoryReplayer implements JournalVisitor {
+
+	private final AccountsRepository repository;
+
+	private final Map<String, Long> pending = new HashMap<>();
+
+	private final Set<String> negative = new HashSet<>();
+
+	private final Map<String, Long> remoteLegs = new HashMap<>();
+
+	private long accounts;
+
+	private long transfers;
+
+	public RepositoryReplayer(AccountsRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public void onAccountCreated(String accountId, String currency, long balanceUnits) {
+		Account account = new Account(accountId, currency);
+		Long pendingUnits = pending.remove(accountId);
+		account.setBalanceUnits(pendingUnits == null ? balanceUnits : balanceUnits + pendingUnits);
+		try {
+			repository.createAccount(account);
+			accounts++;
+			track(accountId, account.getBalanceUnits());
+		} catch (DuplicateAccountIdException e) {
+			log.warn("Skipping journal record creating existing account {}", accountId);
+		}
+	}
+
+	@Override
+	public void onTransfer(String accountFrom, String accountTo, long amountUnits, long creditUnits,
+			long timestamp) {
+		apply(accountFrom, -amountUnits);
+		apply(accountTo, creditUnits);
+		transfers++;
+	}
+
+	@Override
+	public void onRemoteLeg(String txId, String accountId, String remoteAccountId, long deltaUnits,
+			long timestamp) {
+		apply(accountId, deltaUnits);
+		if (txId != null) {
+			remoteLegs.merge(txId, deltaUnits, Long::sum);
+		}
+		transfers++;
+	}
+
+	/**
+	 * Number of accounts that received transfers but whose creation record was
+	 * never replayed.
+	 */
+	public int getPendingAccounts() {
+		return pending.size();
+	}
+
+	/**
+	 * Ids of the accounts left with a negative balance, which only happens if
+	 * the reversal of a failed debit of a hot account was lost.
+	 */
+	public List<String> getNegativeAccounts() {
+		return new ArrayList<>(negative);
+	}
+
+	/**
+	 * Net units replayed per cross-node transaction id.
+	 */
+	public Map<String, Long> getRemoteLegs() {
+		return remoteLegs;
+	}
+
+	public long getAccounts() {
+		return accounts;
+	}
+
+	public long getTransfers() {
+		return transfers;
+	}
+
+	private void apply(String accountId, long deltaUnits) {
+		Account account = repository.getAccount(accountId);
+		if (account == null) {
+			pending.merge(accountId, deltaUnits, Long::sum);
+		} else {
+			account.setBalanceUnits(account.getBalanceUnits() + deltaUnits);
+			track(accountId, account.getBalanceUnits());
+		}
+	}
+
+	private void track(String accountId, long balanceUnits) {
+		if (balanceUnits < 0) {
+			negative.add(accountId);
+		} else if (!negative.isEmpty()) {
+			negative.remove(accountId);
+		}
+	}
+}
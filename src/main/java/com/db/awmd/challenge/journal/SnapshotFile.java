@@ -0,0 +1,231 @@
+package com.db.awmd.challenge.journal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.JournalException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Binary snapshot of all account balances at one journal position.
+ * <p>
+ * Layout: {@code int magic, int version, long journal position}, then the
+ * accounts sorted by id as {@code short length + UTF-8 id, short length + UTF-8
+ * currency, long balance units}, terminated by {@code short -1, long account count, int CRC32} of everything
+ * before the checksum. Sorting lets a new snapshot be merged from the previous
+ * one and the changed accounts in a single sequential pass. Snapshots of
+ * version 1 have no currency; their accounts are in the default currency.
+ */
+final class SnapshotFile {
+
+	private static final String SUFFIX = ".snapshot";
+
+	private static final int MAGIC = 0x534e4150;
+
+	private static final int VERSION = 2;
+
+	private static final int VERSION_WITHOUT_CURRENCY = 1;
+
+	private static final int HEADER = 4 + 4 + 8;
+
+	private static final int TRAILER = 8 + 4;
+
+	private SnapshotFile() {
+	}
+
+	/**
+	 * The snapshot with the highest journal position in {@code directory}, or
+	 * {@code null}.
+	 */
+	static Path latest(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).max(Path::compareTo)
+					.orElse(null);
+		}
+	}
+
+	static long position(Path snapshot) {
+		String name = snapshot.getFileName().toString();
+		return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+	}
+
+	/**
+	 * Maps the snapshot, verifies its checksum and creates all of its accounts in
+	 * {@code repository}.
+	 *
+	 * @return the number of accounts loaded
+	 */
+	static long load(Path snapshot, AccountsRepository repository) throws IOException {
+		Reader reader = new Reader(snapshot);
+		long accounts = 0;
+		while (reader.next()) {
+			Account account = new Account(reader.accountId, reader.currency);
+			account.setBalanceUnits(reader.balanceUnits);
+			repository.createAccount(account);
+			accounts++;
+		}
+		return accounts;
+	}
+
+	/**
+	 * Writes the snapshot at {@code position} by merging {@code base} (may be
+	 * {@code null}) with the accounts changed since. The file only appears under
+	 * its final name once it was forced to disk.
+	 *
+	 * @return {@code false} if a change refers to an account that is neither in
+	 *         {@code base} nor created by the change set; nothing is written then
+	 */
+	static boolean write(Path directory, long position, Path base, SortedMap<String, Change> changes)
+			throws IOException {
+		Path target = directory.resolve(String.format("%020d%s", position, SUFFIX));
+		Path temporary = directory.resolve(target.getFileName() + ".tmp");
+		CRC32 crc = new CRC32();
+		boolean complete = true;
+		try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16), crc))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(position);
+
+			Reader reader = base == null ? null : new Reader(base);
+			boolean hasBase = reader != null && reader.next();
+			Iterator<Map.Entry<String, Change>> changed = changes.entrySet().iterator();
+			Map.Entry<String, Change> change = changed.hasNext() ? changed.next() : null;
+			long accounts = 0;
+			while (complete && (hasBase || change != null)) {
+				int order = !hasBase ? 1 : change == null ? -1 : reader.accountId.compareTo(change.getKey());
+				if (order < 0) {
+					writeAccount(out, reader.accountId, reader.currency, reader.balanceUnits);
+					hasBase = reader.next();
+				} else if (order == 0) {
+					Change value = change.getValue();
+					if (value.created) {
+						writeAccount(out, reader.accountId, value.currency, value.units);
+					} else {
+						writeAccount(out, reader.accountId, reader.currency, reader.balanceUnits + value.units);
+					}
+					hasBase = reader.next();
+					change = changed.hasNext() ? changed.next() : null;
+				} else {
+					complete = change.getValue().created;
+					writeAccount(out, change.getKey(), change.getValue().currency, change.getValue().units);
+					change = changed.hasNext() ? changed.next() : null;
+				}
+				accounts++;
+			}
+			out.writeShort(-1);
+			out.writeLong(accounts);
+			out.flush();
+			out.writeInt((int) crc.getValue());
+		}
+
+		if (!complete) {
+			Files.delete(temporary);
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+		Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+		return true;
+	}
+
+	private static void writeAccount(DataOutputStream out, String accountId, String currency, long balanceUnits)
+			throws IOException {
+		byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+		out.writeShort(id.length);
+		out.write(id);
+		byte[] code = (currency == null ? Account.DEFAULT_CURRENCY : currency).getBytes(StandardCharsets.UTF_8);
+		out.writeShort(code.length);
+		out.write(code);
+		out.writeLong(balanceUnits);
+	}
+
+	/**
+	 * Accumulated effect of the journal records on one account.
+	 */
+	static final class Change {
+
+		boolean created;
+
+		/** Currency of a created account. */
+		String currency;
+
+		long units;
+	}
+
+	/**
+	 * Sequential reader over a memory-mapped snapshot.
+	 */
+	private static final class Reader {
+
+		private final ByteBuffer buffer;
+
+		private final boolean withCurrency;
+
+		private String accountId;
+
+		private String currency;
+
+		private long balanceUnits;
+
+		private Reader(Path snapshot) throws IOException {
+			MappedByteBuffer mapped;
+			try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+				if (channel.size() > Integer.MAX_VALUE || channel.size() < HEADER + 2 + TRAILER) {
+					throw new JournalException("Snapshot " + snapshot + " has an invalid size");
+				}
+				mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			}
+			int checksummed = mapped.capacity() - 4;
+			ByteBuffer body = mapped.duplicate();
+			body.limit(checksummed);
+			CRC32 crc = new CRC32();
+			crc.update(body);
+			int version = mapped.getInt(4);
+			if (mapped.getInt(0) != MAGIC || (version != VERSION && version != VERSION_WITHOUT_CURRENCY)
+					|| (int) crc.getValue() != mapped.getInt(checksummed)) {
+				throw new JournalException("Snapshot " + snapshot + " is corrupt");
+			}
+			this.buffer = mapped;
+			this.withCurrency = version != VERSION_WITHOUT_CURRENCY;
+			this.buffer.position(HEADER);
+		}
+
+		private boolean next() {
+			short length = buffer.getShort();
+			if (length < 0) {
+				return false;
+			}
+			byte[] id = new byte[length];
+			buffer.get(id);
+			accountId = new String(id, StandardCharsets.UTF_8);
+			currency = withCurrency ? Account.currencyOf(decode(buffer)) : Account.DEFAULT_CURRENCY;
+			balanceUnits = buffer.getLong();
+			return true;
+		}
+
+		private static String decode(ByteBuffer buffer) {
+			byte[] bytes = new byte[buffer.getShort()];
+			buffer.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,617 @@
+package com.db.awmd.challenge.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferEvent;
+import com.db.awmd.challenge.engine.WriteAheadLog;
+import com.db.awmd.challenge.exception.JournalException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.service.LedgerListener;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only journal of account creations and transfers.
+ * <p>
+ * Transfers are journaled ahead of the engine as its {@link WriteAheadLog}: a
+ * record is appended while the transfer holds its accounts, before any balance
+ * moves, and the request is answered once the record is durable. Records of
+ * transfers touching the same account are therefore in the order the
+ * transfers were applied, and as records become durable in journal order, a
+ * transfer never survives a crash without the transfers it depended on. Only
+ * hot accounts, which take no locks, can still be replayed into a negative
+ * balance; such accounts are reported as errors on startup. Transfers
+ * published to {@link LedgerListener}s were journaled already and are ignored.
+ * <p>
+ * Records are written into fixed-size memory-mapped segment files, so an append
+ * is a short copy under a lock instead of a system call. When fsync is enabled a
+ * background flusher forces the mapped segments and every appender waits until
+ * its record is covered; all transfers appended while one force is running are
+ * made durable by the next one (group commit). On startup the journal is
+ * replayed into the repository, a torn record at the tail is discarded.
+ * <p>
+ * Snapshots are built off the request path by folding the records appended
+ * since the previous snapshot into it, so transfers never wait for them and
+ * every snapshot is exactly the state at one journal position. Startup then
+ * maps the latest snapshot and only replays the journal behind its position;
+ * segments fully covered by a snapshot are deleted.
+ * <p>
+ * Record layout: {@code int bodyLength, byte type, long timestamp, short
+ * length + UTF-8 account id [, short length + UTF-8 counterparty id or
+ * currency [, short length + UTF-8 transaction id]], long amount units [, long
+ * credited units], int CRC32(body)}.
+ * Accounts in the default currency and transfers that weren't converted use
+ * the record types without currency and credited units, which were the only
+ * ones before accounts had currencies.
+ * <p>
+ * In a cluster only the local side of a transfer with an account of another
+ * node is recorded, as a signed change of the local account with the remote
+ * account as counterparty: the remote account is journaled by its own node.
+ * The record carries the id of the cross-node transaction, and snapshots don't
+ * fold it until the outcome of the transaction is in the cluster recovery log,
+ * so that after a crash between the two the transaction is resolved by whether
+ * its record was replayed.
+ * <p>
+ * Account creations are still journaled behind the repository, as a
+ * {@link LedgerListener}: an account nobody could transfer from yet has no
+ * ordering to preserve.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "journal.enabled", havingValue = "true")
+public class TransferJournal implements WriteAheadLog, LedgerListener, InitializingBean, DisposableBean {
+
+	static final byte ACCOUNT_CREATED = 1;
+
+	static final byte TRANSFER = 2;
+
+	/** Account creation carrying the currency in the counterparty field. */
+	static final byte ACCOUNT_OPENED = 3;
+
+	/** Transfer between currencies, followed by the units credited. */
+	static final byte CONVERTED_TRANSFER = 4;
+
+	/** Local side of a cross-node transfer: signed units of the local account. */
+	static final byte REMOTE_LEG = 5;
+
+	/** {@link #REMOTE_LEG} followed by the id of its cross-node transaction. */
+	static final byte TX_REMOTE_LEG = 6;
+
+	private static final int RECORD_OVERHEAD = 4 + 4;
+
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final int SNAPSHOT_ATTEMPTS = 10;
+
+	/** Account ids listed in a startup error at most. */
+	private static final int MAX_LOGGED_IDS = 20;
+
+	private final AccountsRepository repository;
+
+	private final Path directory;
+
+	private final int segmentSize;
+
+	private final boolean fsync;
+
+	private final long groupCommitWindowNanos;
+
+	private final long snapshotIntervalSeconds;
+
+	private final ReentrantLock appendLock = new ReentrantLock();
+
+	private final CRC32 checksum = new CRC32();
+
+	private final Queue<JournalSegment> sealed = new ConcurrentLinkedQueue<>();
+
+	private final Object commitMonitor = new Object();
+
+	/** Journal position before the first record of every unsettled transaction. */
+	private final Map<String, Long> unsettledLegs = new ConcurrentHashMap<>();
+
+	private volatile Map<String, Long> recoveredLegs = Collections.emptyMap();
+
+	private volatile JournalSegment current;
+
+	private int position;
+
+	private volatile long writtenPosition;
+
+	private volatile long durablePosition;
+
+	private volatile boolean running;
+
+	private Thread flusher;
+
+	private ScheduledExecutorService snapshotter;
+
+	private volatile long snapshotPosition;
+
+	public TransferJournal(AccountsRepository repository, String directory, int segmentSize, boolean fsync,
+			long groupCommitWindowMicros) {
+		this(repository, directory, segmentSize, fsync, groupCommitWindowMicros, 0);
+	}
+
+	@Autowired
+	public TransferJournal(AccountsRepository repository, @Value("${journal.directory:data/journal}") String directory,
+			@Value("${journal.segment-size:67108864}") int segmentSize, @Value("${journal.fsync:true}") boolean fsync,
+			@Value("${journal.group-commit-window-micros:0}") long groupCommitWindowMicros,
+			@Value("${journal.snapshot-interval-seconds:0}") long snapshotIntervalSeconds) {
+		this.repository = repository;
+		this.directory = Paths.get(directory);
+		this.segmentSize = segmentSize;
+		this.fsync = fsync;
+		this.groupCommitWindowNanos = TimeUnit.MICROSECONDS.toNanos(groupCommitWindowMicros);
+		this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+	}
+
+	/**
+	 * Loads the latest snapshot, replays the journal behind it into the repository
+	 * and opens the journal for appends.
+	 */
+	@Override
+	public void afterPropertiesSet() throws IOException {
+		long started = System.nanoTime();
+		Files.createDirectories(directory);
+		Path snapshot = SnapshotFile.latest(directory);
+		if (snapshot != null) {
+			long accounts = SnapshotFile.load(snapshot, repository);
+			snapshotPosition = SnapshotFile.position(snapshot);
+			log.info("Loaded snapshot {}: {} accounts in {} ms", snapshot, accounts,
+					TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+		}
+
+		RepositoryReplayer replayer = new RepositoryReplayer(repository);
+		recover(replayer);
+		if (replayer.getPendingAccounts() > 0) {
+			log.warn("Journal {} holds transfers of {} accounts that were never created", directory,
+					replayer.getPendingAccounts());
+		}
+		List<String> negative = replayer.getNegativeAccounts();
+		if (!negative.isEmpty()) {
+			log.error("Journal {} left {} accounts with a negative balance, reversals of failed debits were lost: {}",
+					directory, negative.size(), negative.subList(0, Math.min(negative.size(), MAX_LOGGED_IDS)));
+		}
+		recoveredLegs = replayer.getRemoteLegs();
+		log.info("Replayed journal {}: {} accounts, {} transfers, started in {} ms", directory,
+				replayer.getAccounts(), replayer.getTransfers(),
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+		running = true;
+		flusher = new Thread(this::flush, "journal-flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+		if (snapshotIntervalSeconds > 0) {
+			snapshotter = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "journal-snapshotter");
+				thread.setDaemon(true);
+				return thread;
+			});
+			snapshotter.scheduleWithFixedDelay(this::scheduledSnapshot, snapshotIntervalSeconds,
+					snapshotIntervalSeconds, TimeUnit.SECONDS);
+		}
+	}
+
+	@Override
+	public void onAccountCreated(Account account, long openingUnits) {
+		if (Account.DEFAULT_CURRENCY.equals(account.getCurrency())) {
+			awaitDurable(append(ACCOUNT_CREATED, System.currentTimeMillis(), account.getAccountId(), null, null,
+					openingUnits, 0));
+		} else {
+			awaitDurable(append(ACCOUNT_OPENED, System.currentTimeMillis(), account.getAccountId(),
+					account.getCurrency(), null, openingUnits, 0));
+		}
+	}
+
+	@Override
+	public void onTransfer(TransferEvent event) {
+		// Appended ahead of the balance movement, see appendTransfer.
+	}
+
+	@Override
+	public long appendTransfer(String accountFromId, String accountToId, long debitUnits, long creditUnits) {
+		byte type = creditUnits == debitUnits ? TRANSFER : CONVERTED_TRANSFER;
+		return append(type, System.currentTimeMillis(), accountFromId, accountToId, null, debitUnits, creditUnits);
+	}
+
+	@Override
+	public long appendRemoteLeg(String txId, String accountId, String remoteAccountId, long units) {
+		appendLock.lock();
+		try {
+			// Registered under the append lock, so a snapshot sees the record and its
+			// registration together; the previous end is a record boundary before it.
+			long before = writtenPosition;
+			long end = append(TX_REMOTE_LEG, System.currentTimeMillis(), accountId, remoteAccountId, txId, units, 0);
+			unsettledLegs.putIfAbsent(txId, before);
+			return end;
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	@Override
+	public void settleRemoteLegs(String txId) {
+		unsettledLegs.remove(txId);
+	}
+
+	@Override
+	public long getRecoveredLegUnits(String txId) {
+		Long units = recoveredLegs.get(txId);
+		return units == null ? 0 : units;
+	}
+
+	/**
+	 * Position just behind the last appended record.
+	 */
+	public long getWrittenPosition() {
+		return writtenPosition;
+	}
+
+	public long getDurablePosition() {
+		return durablePosition;
+	}
+
+	/**
+	 * Journal position of the latest snapshot, 0 if there is none.
+	 */
+	public long getSnapshotPosition() {
+		return snapshotPosition;
+	}
+
+	/**
+	 * Writes a snapshot of all balances at the current end of the journal, or
+	 * before the first record of a cross-node transaction that isn't settled yet,
+	 * and deletes the segments and the snapshot it supersedes. Transfers keep
+	 * running meanwhile: the snapshot is computed from the previous one and the
+	 * journal records since, not from the live accounts.
+	 *
+	 * @return the journal position of the new snapshot
+	 */
+	public synchronized long snapshot() throws IOException {
+		long base = snapshotPosition;
+		Path baseFile = SnapshotFile.latest(directory);
+		ChangeCollector changes = new ChangeCollector();
+		long from = base;
+		// Transactions in doubt at startup were resolved while the application started.
+		recoveredLegs = Collections.emptyMap();
+		for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+			long target = foldablePosition();
+			if (target <= base) {
+				return base;
+			}
+			read(from, target, changes);
+			// A transfer to a new account may be appended just before the creation
+			// of that account; read on until the creation record is covered too.
+			if (SnapshotFile.write(directory, target, baseFile, changes.getChanges())) {
+				snapshotPosition = target;
+				if (baseFile != null) {
+					Files.deleteIfExists(baseFile);
+				}
+				for (long index : JournalSegment.list(directory)) {
+					if (index < target / segmentSize) {
+						Files.deleteIfExists(JournalSegment.path(directory, index));
+					}
+				}
+				log.info("Wrote snapshot of {} changed accounts at journal position {}", changes.getChanges().size(),
+						target);
+				return target;
+			}
+			from = target;
+		}
+		throw new JournalException("Journal references accounts without creation record, snapshot skipped");
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		if (snapshotter != null) {
+			snapshotter.shutdownNow();
+			snapshotter.awaitTermination(5, TimeUnit.SECONDS);
+		}
+		running = false;
+		if (flusher != null) {
+			LockSupport.unpark(flusher);
+			flusher.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		synchronized (commitMonitor) {
+			commitMonitor.notifyAll();
+		}
+		appendLock.lock();
+		try {
+			if (current != null) {
+				current.buffer.force();
+			}
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	/**
+	 * Position up to which records may be folded into a snapshot.
+	 */
+	private long foldablePosition() {
+		appendLock.lock();
+		try {
+			long position = writtenPosition;
+			for (long unsettled : unsettledLegs.values()) {
+				position = Math.min(position, unsettled);
+			}
+			return position;
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	/**
+	 * @param txId        only written for {@link #TX_REMOTE_LEG}
+	 * @param creditUnits only written for {@link #CONVERTED_TRANSFER}
+	 */
+	private long append(byte type, long timestamp, String accountId, String counterpartyId, String txId,
+			long amountUnits, long creditUnits) {
+		byte[] account = encode(accountId);
+		byte[] counterparty = counterpartyId == null ? null : encode(counterpartyId);
+		byte[] transaction = txId == null ? null : encode(txId);
+		boolean converted = type == CONVERTED_TRANSFER;
+		int bodyLength = 1 + 8 + 2 + account.length + (counterparty == null ? 0 : 2 + counterparty.length)
+				+ (transaction == null ? 0 : 2 + transaction.length) + 8 + (converted ? 8 : 0);
+		int recordLength = bodyLength + RECORD_OVERHEAD;
+		if (recordLength > segmentSize) {
+			throw new JournalException("Journal record of " + recordLength + " bytes exceeds the segment size");
+		}
+
+		appendLock.lock();
+		try {
+			if (!running) {
+				throw new JournalException("Journal is closed");
+			}
+			if (position + recordLength > segmentSize) {
+				roll();
+			}
+			ByteBuffer buffer = current.buffer;
+			int start = position;
+			buffer.position(start);
+			buffer.putInt(bodyLength).put(type).putLong(timestamp);
+			buffer.putShort((short) account.length).put(account);
+			if (counterparty != null) {
+				buffer.putShort((short) counterparty.length).put(counterparty);
+			}
+			if (transaction != null) {
+				buffer.putShort((short) transaction.length).put(transaction);
+			}
+			buffer.putLong(amountUnits);
+			if (converted) {
+				buffer.putLong(creditUnits);
+			}
+			buffer.putInt(checksum(checksum, buffer, start + 4, bodyLength));
+
+			position = start + recordLength;
+			long end = current.index * segmentSize + position;
+			writtenPosition = end;
+			return end;
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	private static byte[] encode(String accountId) {
+		byte[] bytes = accountId.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > Short.MAX_VALUE) {
+			throw new JournalException("Account id is too long to be journaled");
+		}
+		return bytes;
+	}
+
+	private static int checksum(CRC32 checksum, ByteBuffer buffer, int offset, int length) {
+		ByteBuffer body = buffer.duplicate();
+		body.limit(offset + length).position(offset);
+		checksum.reset();
+		checksum.update(body);
+		return (int) checksum.getValue();
+	}
+
+	private void roll() {
+		try {
+			JournalSegment next = JournalSegment.open(directory, current.index + 1, segmentSize);
+			sealed.add(current);
+			current = next;
+			position = 0;
+		} catch (IOException e) {
+			throw new JournalException("Opening next journal segment failed", e);
+		}
+	}
+
+	@Override
+	public void awaitDurable(long end) {
+		if (!fsync) {
+			return;
+		}
+		LockSupport.unpark(flusher);
+		boolean interrupted = false;
+		synchronized (commitMonitor) {
+			while (durablePosition < end) {
+				if (!running) {
+					throw new JournalException("Journal closed before the record became durable");
+				}
+				try {
+					commitMonitor.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void flush() {
+		while (running) {
+			long target = writtenPosition;
+			if (!fsync || target <= durablePosition) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				continue;
+			}
+			if (groupCommitWindowNanos > 0) {
+				LockSupport.parkNanos(this, groupCommitWindowNanos);
+				target = writtenPosition;
+			}
+			// Read the current segment before draining the sealed ones, so that a
+			// concurrent roll can't hide data up to target from this round.
+			JournalSegment segment = current;
+			JournalSegment full;
+			while ((full = sealed.poll()) != null) {
+				full.buffer.force();
+			}
+			segment.buffer.force();
+			synchronized (commitMonitor) {
+				durablePosition = target;
+				commitMonitor.notifyAll();
+			}
+		}
+	}
+
+	private void scheduledSnapshot() {
+		try {
+			snapshot();
+		} catch (IOException | RuntimeException e) {
+			log.error("Writing journal snapshot to {} failed", directory, e);
+		}
+	}
+
+	/**
+	 * Visits the records ending in {@code (from, to]}.
+	 */
+	private void read(long from, long to, JournalVisitor visitor) throws IOException {
+		CRC32 crc = new CRC32();
+		for (long index : JournalSegment.list(directory)) {
+			if ((index + 1) * segmentSize > from && index * segmentSize < to) {
+				scan(JournalSegment.open(directory, index, segmentSize), from, to, visitor, crc);
+			}
+		}
+	}
+
+	/**
+	 * Visits the valid records of {@code segment} ending in {@code (from, to]}.
+	 *
+	 * @return the offset behind the last valid record that was not beyond
+	 *         {@code to}
+	 */
+	private int scan(JournalSegment segment, long from, long to, JournalVisitor visitor, CRC32 crc) {
+		ByteBuffer buffer = segment.buffer;
+		long base = segment.index * segmentSize;
+		int offset = 0;
+		while (offset + 4 <= segmentSize) {
+			int bodyLength = buffer.getInt(offset);
+			if (bodyLength <= 0 || offset + bodyLength + RECORD_OVERHEAD > segmentSize
+					|| base + offset + bodyLength + RECORD_OVERHEAD > to
+					|| checksum(crc, buffer, offset + 4, bodyLength) != buffer.getInt(offset + 4 + bodyLength)) {
+				break;
+			}
+			if (base + offset + bodyLength + RECORD_OVERHEAD > from) {
+				visit(buffer, offset + 4, visitor);
+			}
+			offset += bodyLength + RECORD_OVERHEAD;
+		}
+		return offset;
+	}
+
+	/**
+	 * Replays the records behind the snapshot position and positions the writer
+	 * behind the last valid record.
+	 */
+	private void recover(JournalVisitor visitor) throws IOException {
+		List<Long> indexes = JournalSegment.list(directory);
+		for (int i = 0; i < indexes.size(); i++) {
+			JournalSegment segment = JournalSegment.open(directory, indexes.get(i), segmentSize);
+			int offset = scan(segment, snapshotPosition, Long.MAX_VALUE, visitor, checksum);
+			boolean torn = offset + 4 <= segmentSize && segment.buffer.getInt(offset) != 0;
+			if (torn) {
+				log.warn("Discarding torn journal tail in {} at offset {}", segment.path, offset);
+				for (int zero = offset; zero < segmentSize; zero++) {
+					segment.buffer.put(zero, (byte) 0);
+				}
+				for (int j = i + 1; j < indexes.size(); j++) {
+					Files.deleteIfExists(JournalSegment.path(directory, indexes.get(j)));
+				}
+			}
+			if (torn || i == indexes.size() - 1) {
+				current = segment;
+				position = offset;
+				break;
+			}
+		}
+
+		long end = current == null ? 0 : current.index * segmentSize + position;
+		if (end < snapshotPosition || current == null) {
+			// Never append below the snapshot, those records would be skipped.
+			long index = (snapshotPosition + segmentSize - 1) / segmentSize;
+			current = JournalSegment.open(directory, index, segmentSize);
+			position = 0;
+			end = index * segmentSize;
+		}
+		writtenPosition = end;
+		durablePosition = end;
+	}
+
+	private static void visit(ByteBuffer buffer, int offset, JournalVisitor visitor) {
+		ByteBuffer record = buffer.duplicate();
+		record.position(offset);
+		byte type = record.get();
+		long timestamp = record.getLong();
+		String accountId = decode(record);
+		if (type == ACCOUNT_CREATED) {
+			visitor.onAccountCreated(accountId, Account.DEFAULT_CURRENCY, record.getLong());
+		} else if (type == ACCOUNT_OPENED) {
+			String currency = decode(record);
+			visitor.onAccountCreated(accountId, currency, record.getLong());
+		} else if (type == TRANSFER) {
+			String counterpartyId = decode(record);
+			long amountUnits = record.getLong();
+			visitor.onTransfer(accountId, counterpartyId, amountUnits, amountUnits, timestamp);
+		} else if (type == CONVERTED_TRANSFER) {
+			String counterpartyId = decode(record);
+			long amountUnits = record.getLong();
+			visitor.onTransfer(accountId, counterpartyId, amountUnits, record.getLong(), timestamp);
+		} else if (type == REMOTE_LEG) {
+			String counterpartyId = decode(record);
+			visitor.onRemoteLeg(null, accountId, counterpartyId, record.getLong(), timestamp);
+		} else if (type == TX_REMOTE_LEG) {
+			String counterpartyId = decode(record);
+			String txId = decode(record);
+			visitor.onRemoteLeg(txId, accountId, counterpartyId, record.getLong(), timestamp);
+		}
+	}
+
+	private static String decode(ByteBuffer record) {
+		byte[] bytes = new byte[record.getShort()];
+		record.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
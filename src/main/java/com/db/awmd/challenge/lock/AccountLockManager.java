@@ -0,0 +1,218 @@
+package com.db.awmd.challenge.lock;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.exception.LockAcquisitionTimeoutException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+
+/**
+ * Striped lock table guarding account balances while a transfer is applied.
+ * <p>
+ * Every account id maps to exactly one stripe and stripes are always acquired in
+ * ascending index order. This gives a global total ordering over accounts, so
+ * concurrent A->B and B->A transfers can never deadlock. The number of stripes is
+ * fixed, which bounds both memory and contention regardless of the number of
+ * accounts, and every acquisition gives up after a configurable timeout.
+ */
+@Component
+public class AccountLockManager {
+
+	public static final int DEFAULT_STRIPES = 1024;
+
+	public static final long DEFAULT_TIMEOUT_MILLIS = 500;
+
+	private final ReentrantLock[] stripes;
+
+	private final int mask;
+
+	private final long timeoutNanos;
+
+	private final TransferMetrics metrics;
+
+	public AccountLockManager() {
+		this(DEFAULT_STRIPES, DEFAULT_TIMEOUT_MILLIS);
+	}
+
+	public AccountLockManager(int stripeCount, long timeoutMillis) {
+		this(stripeCount, timeoutMillis, TransferMetrics.noop());
+	}
+
+	@Autowired
+	public AccountLockManager(@Value("${transfer.lock.stripes:" + DEFAULT_STRIPES + "}") int stripeCount,
+			@Value("${transfer.lock.timeout-ms:" + DEFAULT_TIMEOUT_MILLIS + "}") long timeoutMillis,
+			TransferMetrics metrics) {
+		if (stripeCount <= 0 || timeoutMillis <= 0) {
+			throw new IllegalArgumentException("Lock stripes and timeout must be positive");
+		}
+		int size = Integer.highestOneBit(stripeCount);
+		if (size < stripeCount) {
+			size <<= 1;
+		}
+		this.stripes = new ReentrantLock[size];
+		for (int i = 0; i < size; i++) {
+			this.stripes[i] = new ReentrantLock();
+		}
+		this.mask = size - 1;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		this.metrics = metrics;
+	}
+
+	public int stripeOf(String accountId) {
+		int h = accountId.hashCode();
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	public int getStripeCount() {
+		return stripes.length;
+	}
+
+	/**
+	 * Number of holds of the calling thread on {@code stripe}.
+	 */
+	int getHoldCount(int stripe) {
+		return stripes[stripe].getHoldCount();
+	}
+
+	/**
+	 * Locks the stripes of both accounts in stripe order. Two accounts sharing a
+	 * stripe result in a single acquisition.
+	 */
+	public AccountLocks lock(String firstAccountId, String secondAccountId) {
+		int first = stripeOf(firstAccountId);
+		int second = stripeOf(secondAccountId);
+		int[] order;
+		if (first == second) {
+			order = new int[] { first };
+		} else if (first < second) {
+			order = new int[] { first, second };
+		} else {
+			order = new int[] { second, first };
+		}
+		return acquire(order);
+	}
+
+	/**
+	 * Allocation-free form of {@link #lock(String, String)} for the transfer hot
+	 * path. The returned token encodes the stripes held and must be passed to
+	 * {@link #unlockPair(long)}.
+	 */
+	public long lockPair(String firstAccountId, String secondAccountId) {
+		int first = stripeOf(firstAccountId);
+		int second = stripeOf(secondAccountId);
+		int low = Math.min(first, second);
+		int high = Math.max(first, second);
+		long started = System.nanoTime();
+		long deadline = started + timeoutNanos;
+		if (!tryLock(low, deadline)) {
+			metrics.recordLockWait(System.nanoTime() - started);
+			throw LockAcquisitionTimeoutException.BUSY;
+		}
+		try {
+			if (high != low && !tryLock(high, deadline)) {
+				metrics.recordLockWait(System.nanoTime() - started);
+				throw LockAcquisitionTimeoutException.BUSY;
+			}
+		} catch (RuntimeException e) {
+			stripes[low].unlock();
+			throw e;
+		}
+		metrics.recordLockWait(System.nanoTime() - started);
+		return ((long) high << 32) | low;
+	}
+
+	/**
+	 * Releases the stripes of a {@link #lockPair(String, String)} token.
+	 */
+	public void unlockPair(long token) {
+		int low = (int) token;
+		int high = (int) (token >>> 32);
+		if (high != low) {
+			stripes[high].unlock();
+		}
+		stripes[low].unlock();
+	}
+
+	/**
+	 * Locks the stripes of every given account, each stripe exactly once, in
+	 * stripe order.
+	 */
+	public AccountLocks lockAll(Collection<String> accountIds) {
+		int[] order = new int[accountIds.size()];
+		int count = 0;
+		for (String accountId : accountIds) {
+			order[count++] = stripeOf(accountId);
+		}
+		Arrays.sort(order);
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0 || order[i] != order[distinct - 1]) {
+				order[distinct++] = order[i];
+			}
+		}
+		return acquire(Arrays.copyOf(order, distinct));
+	}
+
+	private AccountLocks acquire(int[] order) {
+		long started = System.nanoTime();
+		long deadline = started + timeoutNanos;
+		int held = 0;
+		try {
+			for (; held < order.length; held++) {
+				long remaining = deadline - System.nanoTime();
+				if (!stripes[order[held]].tryLock(remaining, TimeUnit.NANOSECONDS)) {
+					metrics.recordLockWait(System.nanoTime() - started);
+					throw LockAcquisitionTimeoutException.BUSY;
+				}
+			}
+			metrics.recordLockWait(System.nanoTime() - started);
+			return new AccountLocks(order);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			release(order, held);
+			throw new LockAcquisitionTimeoutException("Interrupted while waiting for account locks.");
+		} catch (RuntimeException e) {
+			release(order, held);
+			throw e;
+		}
+	}
+
+	private boolean tryLock(int stripe, long deadline) {
+		try {
+			return stripes[stripe].tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new LockAcquisitionTimeoutException("Interrupted while waiting for account locks.");
+		}
+	}
+
+	private void release(int[] order, int held) {
+		for (int i = held - 1; i >= 0; i--) {
+			stripes[order[i]].unlock();
+		}
+	}
+
+	/**
+	 * Set of stripes held by the current thread, released in reverse acquisition
+	 * order on {@link #close()}.
+	 */
+	public final class AccountLocks implements AutoCloseable {
+
+		private final int[] order;
+
+		private AccountLocks(int[] order) {
+			this.order = order;
+		}
+
+		@Override
+		public void close() {
+			release(order, order.length);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package com.db.awmd.challenge.lock;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Version stamps for the stripes of an {@link AccountLockManager}, used as
+ * seqlocks: an even version means no write is in progress, a writer moves it
+ * to the next odd value for the duration of its write section and to the next
+ * even value when done. A reader that sees the same even version before and
+ * after reading the balances of a stripe has seen no concurrent write.
+ * <p>
+ * The stamps are kept per stripe rather than per account so they apply to
+ * every repository, including the off-heap one whose account objects are
+ * transient views.
+ */
+public final class StripeSeqLocks {
+
+	/** Longs per stamp, so every stamp sits on its own 64-byte cache line. */
+	private static final int SPACING = 8;
+
+	private final AtomicLongArray versions;
+
+	public StripeSeqLocks(int stripeCount) {
+		this.versions = new AtomicLongArray(stripeCount * SPACING);
+	}
+
+	public long version(int stripe) {
+		return versions.get(stripe * SPACING);
+	}
+
+	public static boolean isWriting(long version) {
+		return (version & 1) != 0;
+	}
+
+	/**
+	 * Enters the write section of {@code stripe} if its version is still
+	 * {@code version}, which must be even.
+	 */
+	public boolean tryBeginWrite(int stripe, long version) {
+		return versions.compareAndSet(stripe * SPACING, version, version + 1);
+	}
+
+	/**
+	 * Enters the write section of {@code stripe}, spinning while another writer
+	 * is in it. Write sections are a few balance updates long and never block.
+	 */
+	public void beginWrite(int stripe) {
+		while (true) {
+			long version = version(stripe);
+			if (!isWriting(version) && tryBeginWrite(stripe, version)) {
+				return;
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	public void endWrite(int stripe) {
+		versions.incrementAndGet(stripe * SPACING);
+	}
+}
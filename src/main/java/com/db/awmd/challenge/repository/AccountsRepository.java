@@ -2,12 +2,40 @@ package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.util.BitSet;
+import java.util.List;
 
 public interface AccountsRepository {
 
 	void createAccount(Account account) throws DuplicateAccountIdException;
 
+	/**
+	 * Creates every given account whose id does not exist yet, for bulk loads.
+	 * Duplicates are skipped instead of failing the whole batch.
+	 *
+	 * @return the positions in {@code accounts} of the accounts rejected as
+	 *         duplicates
+	 */
+	default BitSet createAccounts(List<Account> accounts) {
+		BitSet duplicates = new BitSet();
+		for (int i = 0; i < accounts.size(); i++) {
+			try {
+				createAccount(accounts.get(i));
+			} catch (DuplicateAccountIdException e) {
+				duplicates.set(i);
+			}
+		}
+		return duplicates;
+	}
+
 	Account getAccount(String accountId);
 
+	/**
+	 * Lists all accounts (their references, or views of their cells), for scans
+	 * over the whole repository. Accounts created meanwhile may or may not be
+	 * included.
+	 */
+	List<Account> listAccounts();
+
 	void clearAccounts();
 }
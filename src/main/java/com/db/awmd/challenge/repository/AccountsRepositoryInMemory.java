@@ -1,32 +1,101 @@
 package com.db.awmd.challenge.repository;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.StripedAccount;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 @Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "in-memory", matchIfMissing = true)
 public class AccountsRepositoryInMemory implements AccountsRepository {
 
-	private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+	public static final int DEFAULT_HOT_STRIPES = 16;
+
+	private final Map<String, Account> accounts;
+
+	private final Set<String> hotAccountIds;
+
+	private final int hotStripes;
+
+	public AccountsRepositoryInMemory() {
+		this(new String[0], DEFAULT_HOT_STRIPES);
+	}
+
+	public AccountsRepositoryInMemory(String[] hotAccountIds, int hotStripes) {
+		this(hotAccountIds, hotStripes, 16);
+	}
+
+	/**
+	 * @param hotAccountIds   accounts stored as {@link StripedAccount}s, so that
+	 *                        concurrent credits don't contend on one balance
+	 * @param hotStripes      number of sub-balances of every hot account
+	 * @param initialCapacity expected number of accounts, so that bulk loads
+	 *                        don't resize the map over and over
+	 */
+	@Autowired
+	public AccountsRepositoryInMemory(@Value("${accounts.hot.ids:}") String[] hotAccountIds,
+			@Value("${accounts.hot.stripes:" + DEFAULT_HOT_STRIPES + "}") int hotStripes,
+			@Value("${accounts.in-memory.initial-capacity:16}") int initialCapacity) {
+		this.accounts = new ConcurrentHashMap<>(initialCapacity);
+		Set<String> ids = new HashSet<>(Arrays.asList(hotAccountIds));
+		ids.remove("");
+		this.hotAccountIds = Collections.unmodifiableSet(ids);
+		this.hotStripes = hotStripes;
+	}
 
 	@Override
 	public void createAccount(Account account) throws DuplicateAccountIdException {
-		Account previousAccount = accounts.putIfAbsent(account.getAccountId(), account);
+		Account previousAccount = accounts.putIfAbsent(account.getAccountId(), stored(account));
 		if (previousAccount != null) {
 			throw new DuplicateAccountIdException("Account id " + account.getAccountId() + " already exists!");
 		}
 	}
 
+	@Override
+	public BitSet createAccounts(List<Account> batch) {
+		BitSet duplicates = new BitSet();
+		for (int i = 0; i < batch.size(); i++) {
+			Account account = batch.get(i);
+			if (accounts.putIfAbsent(account.getAccountId(), stored(account)) != null) {
+				duplicates.set(i);
+			}
+		}
+		return duplicates;
+	}
+
 	@Override
 	public Account getAccount(String accountId) {
 		return accounts.get(accountId);
 	}
 
+	@Override
+	public List<Account> listAccounts() {
+		return new ArrayList<>(accounts.values());
+	}
+
 	@Override
 	public void clearAccounts() {
 		accounts.clear();
 	}
 
+	private Account stored(Account account) {
+		if (hotAccountIds.contains(account.getAccountId()) && !(account instanceof StripedAccount)) {
+			return new StripedAccount(account.getAccountId(), account.getCurrency(), hotStripes,
+					account.getBalanceUnits());
+		}
+		return account;
+	}
+
 }
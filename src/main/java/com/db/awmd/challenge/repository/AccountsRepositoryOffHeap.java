@@ -0,0 +1,433 @@
+package com.db.awmd.challenge.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+
+/**
+ * Repository keeping account ids and balances outside of the Java heap, so that
+ * tens of millions of accounts add nothing for the garbage collector to trace.
+ * <p>
+ * Accounts are spread over segments by hash. Each segment has an
+ * open-addressing index of {@code int hash, int key reference, int account
+ * number} slots in a direct buffer, a direct buffer holding the UTF-8 ids and
+ * fixed pages of balance cells, each followed by the version of the balance,
+ * and behind the cells the number of each account's currency in a table shared
+ * by all segments. Inserts and index growth hold the segment's
+ * write lock, lookups run optimistically and only fall back to the read lock
+ * when an insert interfered. Balance cells never move once allocated, so
+ * {@link #getAccount(String)} hands out a small {@link Account} view bound to
+ * its cell, which reads and updates the cell lock-free through a
+ * {@code VarHandle}; pages are therefore in native byte order.
+ */
+@Repository
+@ConditionalOnProperty(name = "accounts.repository", havingValue = "off-heap")
+public class AccountsRepositoryOffHeap implements AccountsRepository {
+
+	private static final int PAGE_SHIFT = 12;
+
+	private static final int PAGE_ACCOUNTS = 1 << PAGE_SHIFT;
+
+	private static final int SLOT_BYTES = 12;
+
+	/** Bytes of an account in a page: the balance, then its version. */
+	private static final int CELL_BYTES = 16;
+
+	/** Offset of the currency numbers, one int per account, in a page. */
+	private static final int CURRENCIES = PAGE_ACCOUNTS * CELL_BYTES;
+
+	private static final int PAGE_BYTES = CURRENCIES + PAGE_ACCOUNTS * 4;
+
+	private final int segmentBits;
+
+	private final int initialSlots;
+
+	private volatile Segment[] segments;
+
+	/** Currencies by number, only ever appended to. */
+	private volatile String[] currencies = { Account.DEFAULT_CURRENCY };
+
+	public AccountsRepositoryOffHeap() {
+		this(64, 1 << 16);
+	}
+
+	@Autowired
+	public AccountsRepositoryOffHeap(@Value("${accounts.off-heap.segments:64}") int segments,
+			@Value("${accounts.off-heap.initial-capacity:1048576}") int initialCapacity) {
+		this.segmentBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, segments) - 1);
+		int perSegment = Math.max(16, (initialCapacity >> segmentBits) * 4 / 3 + 1);
+		this.initialSlots = Integer.highestOneBit(perSegment * 2 - 1);
+		this.segments = newSegments();
+	}
+
+	@Override
+	public void createAccount(Account account) throws DuplicateAccountIdException {
+		String accountId = account.getAccountId();
+		int hash = hash(accountId);
+		if (!segmentOf(hash).insert(encode(accountId), hash, account.getBalanceUnits(),
+				currencyNumber(account.getCurrency()))) {
+			throw new DuplicateAccountIdException("Account id " + accountId + " already exists!");
+		}
+	}
+
+	/**
+	 * Inserts the batch segment by segment, taking every segment's write lock
+	 * once for all of its accounts.
+	 */
+	@Override
+	public BitSet createAccounts(List<Account> accounts) {
+		Segment[] current = segments;
+		int[] hashes = new int[accounts.size()];
+		int[] currencyNumbers = new int[accounts.size()];
+		long[] bySegment = new long[accounts.size()];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = hash(accounts.get(i).getAccountId());
+			currencyNumbers[i] = currencyNumber(accounts.get(i).getCurrency());
+			bySegment[i] = (long) segmentIndexOf(hashes[i]) << 32 | i;
+		}
+		Arrays.sort(bySegment);
+
+		BitSet duplicates = new BitSet();
+		int start = 0;
+		while (start < bySegment.length) {
+			int segment = (int) (bySegment[start] >>> 32);
+			int end = start;
+			while (end < bySegment.length && (int) (bySegment[end] >>> 32) == segment) {
+				end++;
+			}
+			current[segment].insertAll(accounts, hashes, currencyNumbers, bySegment, start, end, duplicates);
+			start = end;
+		}
+		return duplicates;
+	}
+
+	@Override
+	public Account getAccount(String accountId) {
+		if (accountId == null) {
+			return null;
+		}
+		int hash = hash(accountId);
+		Segment segment = segmentOf(hash);
+		int number = segment.find(encode(accountId), hash);
+		if (number < 0) {
+			return null;
+		}
+		ByteBuffer page = segment.page(number);
+		int cell = number & (PAGE_ACCOUNTS - 1);
+		String currency = currencies[page.getInt(CURRENCIES + cell * 4)];
+		return new OffHeapAccount(accountId, currency, page, cell * CELL_BYTES);
+	}
+
+	/**
+	 * Scans the segments one at a time under their read lock, building a view of
+	 * every account.
+	 */
+	@Override
+	public List<Account> listAccounts() {
+		List<Account> accounts = new ArrayList<>();
+		for (Segment segment : segments) {
+			segment.listInto(accounts, this);
+		}
+		return accounts;
+	}
+
+	@Override
+	public void clearAccounts() {
+		segments = newSegments();
+	}
+
+	/**
+	 * Number of accounts stored.
+	 */
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Number of {@code currency} in the currency table, adding it if it is new.
+	 */
+	private int currencyNumber(String currency) {
+		String[] known = currencies;
+		for (int i = 0; i < known.length; i++) {
+			if (known[i].equals(currency)) {
+				return i;
+			}
+		}
+		synchronized (this) {
+			known = currencies;
+			for (int i = 0; i < known.length; i++) {
+				if (known[i].equals(currency)) {
+					return i;
+				}
+			}
+			String[] grown = Arrays.copyOf(known, known.length + 1);
+			grown[known.length] = currency;
+			currencies = grown;
+			return known.length;
+		}
+	}
+
+	private Segment[] newSegments() {
+		Segment[] created = new Segment[1 << segmentBits];
+		for (int i = 0; i < created.length; i++) {
+			created[i] = new Segment(initialSlots);
+		}
+		return created;
+	}
+
+	private Segment segmentOf(int hash) {
+		return segments[segmentIndexOf(hash)];
+	}
+
+	private int segmentIndexOf(int hash) {
+		return segmentBits == 0 ? 0 : hash >>> (32 - segmentBits);
+	}
+
+	private static int hash(String accountId) {
+		int h = accountId.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static byte[] encode(String accountId) {
+		byte[] key = accountId.getBytes(StandardCharsets.UTF_8);
+		if (key.length > Short.MAX_VALUE) {
+			throw new IllegalArgumentException("Account id is too long");
+		}
+		return key;
+	}
+
+	private static final class Segment {
+
+		private final StampedLock lock = new StampedLock();
+
+		private ByteBuffer index;
+
+		private int mask;
+
+		private int size;
+
+		private ByteBuffer keys;
+
+		private ByteBuffer[] pages = new ByteBuffer[0];
+
+		private Segment(int slots) {
+			this.index = ByteBuffer.allocateDirect(slots * SLOT_BYTES);
+			this.mask = slots - 1;
+			this.keys = ByteBuffer.allocateDirect(slots * 8);
+			// Key reference 0 marks an empty slot, so the key area starts at 1.
+			this.keys.position(1);
+		}
+
+		/**
+		 * Account number of {@code key}, or -1.
+		 */
+		private int find(byte[] key, int hash) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp != 0) {
+				try {
+					int number = probe(index, mask, keys, key, hash);
+					if (lock.validate(stamp)) {
+						return number;
+					}
+				} catch (IndexOutOfBoundsException e) {
+					// Torn read of a concurrent insert, retried under the read lock.
+				}
+			}
+			stamp = lock.readLock();
+			try {
+				return probe(index, mask, keys, key, hash);
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		private ByteBuffer page(int number) {
+			long stamp = lock.tryOptimisticRead();
+			ByteBuffer[] current = pages;
+			if (lock.validate(stamp)) {
+				return current[number >>> PAGE_SHIFT];
+			}
+			stamp = lock.readLock();
+			try {
+				return pages[number >>> PAGE_SHIFT];
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		/**
+		 * Adds a view of every account of the segment to {@code accounts}, in the
+		 * order they were inserted: the keys are appended in account number order.
+		 */
+		private void listInto(List<Account> accounts, AccountsRepositoryOffHeap repository) {
+			long stamp = lock.readLock();
+			try {
+				// Read under the lock: the currency of every inserted account is in the table.
+				String[] currencies = repository.currencies;
+				int reference = 1;
+				for (int number = 0; number < size; number++) {
+					byte[] key = new byte[keys.getShort(reference)];
+					for (int i = 0; i < key.length; i++) {
+						key[i] = keys.get(reference + 2 + i);
+					}
+					reference += 2 + key.length;
+					String accountId = new String(key, StandardCharsets.UTF_8);
+					ByteBuffer page = pages[number >>> PAGE_SHIFT];
+					int cell = number & (PAGE_ACCOUNTS - 1);
+					accounts.add(new OffHeapAccount(accountId, currencies[page.getInt(CURRENCIES + cell * 4)], page,
+							cell * CELL_BYTES));
+				}
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		private boolean insert(byte[] key, int hash, long balanceUnits, int currency) {
+			long stamp = lock.writeLock();
+			try {
+				return insertLocked(key, hash, balanceUnits, currency);
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		/**
+		 * Inserts the accounts at the positions packed into the low halves of
+		 * {@code positions[start, end)} under a single write lock.
+		 */
+		private void insertAll(List<Account> accounts, int[] hashes, int[] currencies, long[] positions, int start,
+				int end, BitSet duplicates) {
+			long stamp = lock.writeLock();
+			try {
+				for (int i = start; i < end; i++) {
+					int position = (int) positions[i];
+					Account account = accounts.get(position);
+					if (!insertLocked(encode(account.getAccountId()), hashes[position], account.getBalanceUnits(),
+							currencies[position])) {
+						duplicates.set(position);
+					}
+				}
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+		private boolean insertLocked(byte[] key, int hash, long balanceUnits, int currency) {
+			if (probe(index, mask, keys, key, hash) >= 0) {
+				return false;
+			}
+			if ((size + 1) * 4L > (mask + 1) * 3L) {
+				grow();
+			}
+
+			int number = size;
+			if ((number >>> PAGE_SHIFT) == pages.length) {
+				ByteBuffer[] grown = Arrays.copyOf(pages, pages.length + 1);
+				grown[pages.length] = ByteBuffer.allocateDirect(PAGE_BYTES).order(OffHeapAccount.ORDER);
+				pages = grown;
+			}
+			ByteBuffer page = pages[number >>> PAGE_SHIFT];
+			page.putLong((number & (PAGE_ACCOUNTS - 1)) * CELL_BYTES, balanceUnits);
+			page.putInt(CURRENCIES + (number & (PAGE_ACCOUNTS - 1)) * 4, currency);
+
+			if (keys.remaining() < 2 + key.length) {
+				ByteBuffer grown = ByteBuffer
+						.allocateDirect(Math.max(keys.capacity() * 2, keys.position() + 2 + key.length));
+				ByteBuffer used = keys.duplicate();
+				used.flip();
+				grown.put(used);
+				keys = grown;
+			}
+			int reference = keys.position();
+			keys.putShort((short) key.length).put(key);
+
+			int slot = hash & mask;
+			while (index.getInt(slot * SLOT_BYTES + 4) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			index.putInt(slot * SLOT_BYTES, hash);
+			index.putInt(slot * SLOT_BYTES + 8, number);
+			index.putInt(slot * SLOT_BYTES + 4, reference);
+			size++;
+			return true;
+		}
+
+		/**
+		 * Rehashes into an index of twice the size. The old buffer is left untouched
+		 * for optimistic readers still probing it.
+		 */
+		private void grow() {
+			int slots = (mask + 1) * 2;
+			ByteBuffer grown = ByteBuffer.allocateDirect(slots * SLOT_BYTES);
+			int grownMask = slots - 1;
+			for (int old = 0; old <= mask; old++) {
+				int reference = index.getInt(old * SLOT_BYTES + 4);
+				if (reference == 0) {
+					continue;
+				}
+				int hash = index.getInt(old * SLOT_BYTES);
+				int slot = hash & grownMask;
+				while (grown.getInt(slot * SLOT_BYTES + 4) != 0) {
+					slot = (slot + 1) & grownMask;
+				}
+				grown.putInt(slot * SLOT_BYTES, hash);
+				grown.putInt(slot * SLOT_BYTES + 4, reference);
+				grown.putInt(slot * SLOT_BYTES + 8, index.getInt(old * SLOT_BYTES + 8));
+			}
+			index = grown;
+			mask = grownMask;
+		}
+
+		private int size() {
+			long stamp = lock.readLock();
+			try {
+				return size;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+
+		private static int probe(ByteBuffer index, int mask, ByteBuffer keys, byte[] key, int hash) {
+			int slot = hash & mask;
+			for (int probes = 0; probes <= mask; probes++) {
+				int reference = index.getInt(slot * SLOT_BYTES + 4);
+				if (reference == 0) {
+					return -1;
+				}
+				if (index.getInt(slot * SLOT_BYTES) == hash && matches(keys, reference, key)) {
+					return index.getInt(slot * SLOT_BYTES + 8);
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private static boolean matches(ByteBuffer keys, int reference, byte[] key) {
+			if (keys.getShort(reference) != key.length) {
+				return false;
+			}
+			for (int i = 0; i < key.length; i++) {
+				if (keys.get(reference + 2 + i) != key[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.db.awmd.challenge.repository;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountSnapshot;
+import com.db.awmd.challenge.domain.Amounts;
+
+/**
+ * View of an account stored by {@link AccountsRepositoryOffHeap}. The balance
+ * lives in a cell of a direct buffer, followed by its version, and is accessed
+ * through a {@link VarHandle} view of the buffer with volatile reads and
+ * compare-and-set, so no two accounts ever contend.
+ * <p>
+ * The version works as the seqlock of {@link Account}: a writer makes it odd,
+ * writes the cell and makes it even again, and {@link #snapshot()} retries
+ * until it reads the same even version before and after the balance.
+ */
+final class OffHeapAccount extends Account {
+
+	/** Pages are in native byte order, which the view must match. */
+	static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+	private static final VarHandle CELL = MethodHandles.byteBufferViewVarHandle(long[].class, ORDER);
+
+	private final ByteBuffer page;
+
+	private final int offset;
+
+	OffHeapAccount(String accountId, String currency, ByteBuffer page, int offset) {
+		super(accountId, currency);
+		this.page = page;
+		this.offset = offset;
+	}
+
+	@Override
+	public AccountSnapshot snapshot() {
+		while (true) {
+			long before = (long) CELL.getVolatile(page, offset + 8);
+			if ((before & 1) == 0) {
+				long units = (long) CELL.getVolatile(page, offset);
+				if ((long) CELL.getVolatile(page, offset + 8) == before) {
+					return new AccountSnapshot(getAccountId(), getCurrency(), Amounts.toDecimal(units), before >>> 1);
+				}
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	@Override
+	protected long loadBalance() {
+		return (long) CELL.getVolatile(page, offset);
+	}
+
+	@Override
+	protected void storeBalance(long units) {
+		long version;
+		do {
+			version = (long) CELL.getVolatile(page, offset + 8);
+		} while ((version & 1) != 0 || !CELL.compareAndSet(page, offset + 8, version, version + 1));
+		CELL.setVolatile(page, offset, units);
+		CELL.setVolatile(page, offset + 8, version + 2);
+	}
+
+	@Override
+	protected boolean compareAndSetBalance(long expected, long updated) {
+		long version = (long) CELL.getVolatile(page, offset + 8);
+		if ((version & 1) != 0 || !CELL.compareAndSet(page, offset + 8, version, version + 1)) {
+			return false;
+		}
+		// The odd version excludes other writers, so the cell can be compared and written plainly.
+		if ((long) CELL.getVolatile(page, offset) != expected) {
+			CELL.setVolatile(page, offset + 8, version);
+			return false;
+		}
+		CELL.setVolatile(page, offset, updated);
+		CELL.setVolatile(page, offset + 8, version + 2);
+		return true;
+	}
+}
@@ -0,0 +1,34 @@
+package com.db.awmd.challenge.rules;
+
+import com.db.awmd.challenge.exception.TransferRuleViolationException;
+
+/**
+ * A check every transfer passes after its accounts were validated and before
+ * any balance moves. Rules may keep state about the transfers they accepted,
+ * such as the amounts sent per account, and are told through
+ * {@link #revert} when an accepted transfer did not execute after all.
+ * <p>
+ * Rules are called concurrently and sit on the transfer hot path, so
+ * {@link #apply} should neither block nor allocate in the steady state.
+ */
+public interface TransferRule {
+
+	/**
+	 * Name the rule is reported under in rejections and metrics.
+	 */
+	String getName();
+
+	/**
+	 * Accepts and records the transfer or rejects it.
+	 *
+	 * @throws TransferRuleViolationException if the transfer must not run
+	 */
+	void apply(String accountFrom, String accountTo, long amountUnits, long nowMillis);
+
+	/**
+	 * Takes back a transfer {@link #apply} accepted at {@code nowMillis} that
+	 * was not executed.
+	 */
+	default void revert(String accountFrom, String accountTo, long amountUnits, long nowMillis) {
+	}
+}
@@ -0,0 +1,163 @@
+package com.db.awmd.challenge.rules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Amounts;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.TransferRuleViolationException;
+import com.db.awmd.challenge.fx.ExchangeRates;
+import com.db.awmd.challenge.fx.FxRates;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * The {@link TransferRule}s every transfer passes before its balances move:
+ * the velocity limits configured under {@code transfer.rules.velocity},
+ * followed by any other {@code TransferRule} beans of the application.
+ * <p>
+ * Rules see amounts in the limit currency {@code transfer.rules.currency}:
+ * the pipeline converts the amount of a transfer out of an account of another
+ * currency through the {@link ExchangeRates} first, so a limit means the same
+ * value for every account. Without a rate for the account's currency the
+ * amount can't be compared with the limits and reaches the rules as 0, so
+ * only count limits apply to it; transfers of accounts in other currencies
+ * keep working when no rates are configured.
+ * <p>
+ * Rules run in order and the first rejection stops the pipeline; rules that
+ * already accepted the transfer are reverted. Every evaluation is timed into
+ * {@code transfer.rule.evaluation{rule}} and rejections are counted in
+ * {@code transfer.rule.violations{rule}}, both registered up front so the
+ * pipeline allocates nothing per transfer.
+ */
+@Component
+public class TransferRulePipeline {
+
+	private static final TransferRulePipeline EMPTY = new TransferRulePipeline(Collections.emptyList(),
+			TransferMetrics.noop());
+
+	private final ExchangeRates exchangeRates;
+
+	private final String currency;
+
+	private final TransferRule[] rules;
+
+	private final Timer[] evaluations;
+
+	private final Counter[] violations;
+
+	@Autowired
+	public TransferRulePipeline(TransferRuleProperties properties, ObjectProvider<TransferRule> customRules,
+			TransferMetrics metrics, ExchangeRates exchangeRates) {
+		this(rules(properties, customRules), metrics, exchangeRates, properties.getCurrency());
+	}
+
+	public TransferRulePipeline(List<TransferRule> rules, TransferMetrics metrics) {
+		this(rules, metrics, new ExchangeRates(), Account.DEFAULT_CURRENCY);
+	}
+
+	/**
+	 * @param currency currency the rules' limits are given in, the default
+	 *                 currency if {@code null}
+	 */
+	public TransferRulePipeline(List<TransferRule> rules, TransferMetrics metrics, ExchangeRates exchangeRates,
+			String currency) {
+		this.exchangeRates = exchangeRates;
+		this.currency = Account.currencyOf(currency);
+		this.rules = rules.toArray(new TransferRule[0]);
+		this.evaluations = new Timer[this.rules.length];
+		this.violations = new Counter[this.rules.length];
+		for (int i = 0; i < this.rules.length; i++) {
+			evaluations[i] = metrics.ruleEvaluationTimer(this.rules[i].getName());
+			violations[i] = metrics.ruleViolationCounter(this.rules[i].getName());
+		}
+	}
+
+	/**
+	 * A pipeline without rules, for services created outside of the
+	 * application context.
+	 */
+	public static TransferRulePipeline empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Runs every rule on the transfer of {@code amountUnits} in
+	 * {@code amountCurrency}.
+	 *
+	 * @return the amount in the limit currency, 0 if there is no rate to
+	 *         convert it, which {@link #revert} takes
+	 * @throws TransferRuleViolationException if a rule rejected the transfer
+	 * @throws IllegalOperationException      if the converted amount overflows
+	 */
+	public long apply(String accountFrom, String accountTo, long amountUnits, String amountCurrency,
+			long nowMillis) {
+		if (rules.length == 0) {
+			return amountUnits;
+		}
+		FxRates rates = exchangeRates.getRates();
+		long limitUnits = rates.canConvert(amountCurrency, currency)
+				? rates.convert(amountUnits, amountCurrency, currency)
+				: 0;
+		apply(accountFrom, accountTo, limitUnits, nowMillis);
+		return limitUnits;
+	}
+
+	private void apply(String accountFrom, String accountTo, long amountUnits, long nowMillis) {
+		for (int i = 0; i < rules.length; i++) {
+			long started = System.nanoTime();
+			try {
+				rules[i].apply(accountFrom, accountTo, amountUnits, nowMillis);
+			} catch (RuntimeException e) {
+				evaluations[i].record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+				if (e instanceof TransferRuleViolationException) {
+					violations[i].increment();
+				}
+				revert(i, accountFrom, accountTo, amountUnits, nowMillis);
+				throw e;
+			}
+			evaluations[i].record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Takes back a transfer that passed {@link #apply} at {@code nowMillis} but
+	 * was not executed; {@code amountUnits} is the amount {@code apply} returned.
+	 */
+	public void revert(String accountFrom, String accountTo, long amountUnits, long nowMillis) {
+		revert(rules.length, accountFrom, accountTo, amountUnits, nowMillis);
+	}
+
+	private void revert(int applied, String accountFrom, String accountTo, long amountUnits, long nowMillis) {
+		for (int i = applied - 1; i >= 0; i--) {
+			rules[i].revert(accountFrom, accountTo, amountUnits, nowMillis);
+		}
+	}
+
+	private static List<TransferRule> rules(TransferRuleProperties properties,
+			ObjectProvider<TransferRule> customRules) {
+		List<TransferRule> rules = new ArrayList<>();
+		for (TransferRuleProperties.Velocity velocity : properties.getVelocity()) {
+			if (velocity.getName() == null || velocity.getWindow() == null) {
+				throw new IllegalArgumentException("Every velocity rule needs a name and a window");
+			}
+			if (velocity.getMaxAmount() == null && velocity.getMaxCount() == null) {
+				throw new IllegalArgumentException("Velocity rule " + velocity.getName() + " has no limit");
+			}
+			rules.add(new VelocityRule(velocity.getName(), velocity.getWindow().toMillis(), velocity.getBuckets(),
+					velocity.getMaxAmount() != null ? Amounts.toUnits(velocity.getMaxAmount()) : Long.MAX_VALUE,
+					velocity.getMaxCount() != null ? velocity.getMaxCount() : Long.MAX_VALUE));
+		}
+		customRules.orderedStream().forEach(rules::add);
+		return rules;
+	}
+}
@@ -0,0 +1,51 @@
+package com.db.awmd.challenge.rules;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Account;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Rules of {@code transfer.rules} in {@code application.yml}. Unlike the
+ * single values read with {@code @Value}, a list of rules needs binding to
+ * objects.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "transfer.rules")
+public class TransferRuleProperties {
+
+	public static final int DEFAULT_BUCKETS = 60;
+
+	/** Currency of the amount limits; amounts of other currencies are converted to it. */
+	private String currency = Account.DEFAULT_CURRENCY;
+
+	private List<Velocity> velocity = new ArrayList<>();
+
+	/**
+	 * Settings of one {@link VelocityRule}; a limit left out is not checked.
+	 */
+	@Getter
+	@Setter
+	public static class Velocity {
+
+		private String name;
+
+		private Duration window;
+
+		private int buckets = DEFAULT_BUCKETS;
+
+		private BigDecimal maxAmount;
+
+		private Long maxCount;
+	}
+}
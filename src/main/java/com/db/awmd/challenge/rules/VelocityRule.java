@@ -0,0 +1,223 @@
+package com.db.awmd.challenge.rules;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.db.awmd.challenge.exception.TransferRuleViolationException;
+
+/**
+ * Limits the amount and the number of transfers out of an account within a
+ * sliding window, e.g. at most 600 transfers per minute or 10,000.00 per day.
+ * <p>
+ * The window is split into {@code buckets} buckets of equal length. Every
+ * source account has one {@code long[]} ring of per-bucket amounts and counts
+ * plus running totals, so a check is a few array updates under the ring's
+ * monitor: buckets that slid out of the window are subtracted from the totals
+ * as time advances, and the transfer is added to the bucket of the current
+ * time. The window therefore moves in steps of one bucket and covers between
+ * {@code window - window / buckets} and {@code window} of history.
+ * <p>
+ * A ring costs {@code 8 * (3 + 2 * buckets)} bytes per account that sent a
+ * transfer within the window. Once per window a sweep of the table starts and
+ * drops the rings whose newest bucket slid out of it; such a ring is empty
+ * anyway, so the next transfer of that account simply starts a new one. The
+ * sweep is spread over the transfers checked afterwards, each visiting at most
+ * {@value #SWEEP_BATCH} rings, so no transfer pays for a walk over millions
+ * of accounts; a transfer finding another one sweeping skips its share.
+ */
+public final class VelocityRule implements TransferRule {
+
+	private static final int HEAD_TICK = 0;
+
+	/** Head tick of a ring that was swept out of the table and must not be written. */
+	private static final long EVICTED = Long.MIN_VALUE;
+
+	private static final int TOTAL_UNITS = 1;
+
+	private static final int TOTAL_COUNT = 2;
+
+	/** Amount of bucket {@code i} is at {@code FIRST_BUCKET + 2i}, its count follows. */
+	private static final int FIRST_BUCKET = 3;
+
+	/** Rings one transfer visits of a running sweep. */
+	static final int SWEEP_BATCH = 64;
+
+	private final String name;
+
+	private final long bucketMillis;
+
+	private final int buckets;
+
+	private final long maxUnits;
+
+	private final long maxCount;
+
+	private final TransferRuleViolationException violation;
+
+	private final ConcurrentHashMap<String, long[]> windows = new ConcurrentHashMap<>();
+
+	/** Held by the transfer advancing the sweep; guards the two fields below. */
+	private final AtomicBoolean sweeping = new AtomicBoolean();
+
+	/** First tick at which the next sweep starts. */
+	private volatile long nextSweepTick;
+
+	/** Position of the running sweep, {@code null} between sweeps. */
+	private volatile Iterator<Map.Entry<String, long[]>> sweep;
+
+	/**
+	 * @param maxUnits largest total amount within the window in minor units,
+	 *                 {@code Long.MAX_VALUE} for no limit
+	 * @param maxCount largest number of transfers within the window,
+	 *                 {@code Long.MAX_VALUE} for no limit
+	 */
+	public VelocityRule(String name, long windowMillis, int buckets, long maxUnits, long maxCount) {
+		if (buckets <= 0 || windowMillis < buckets) {
+			throw new IllegalArgumentException(
+					"Rule " + name + " needs a window of at least one millisecond per bucket");
+		}
+		this.name = name;
+		this.bucketMillis = windowMillis / buckets;
+		this.buckets = buckets;
+		this.maxUnits = maxUnits;
+		this.maxCount = maxCount;
+		this.violation = new TransferRuleViolationException(
+				"Transfer exceeds the limit '" + name + "' of the source account.");
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public void apply(String accountFrom, String accountTo, long amountUnits, long nowMillis) {
+		long tick = nowMillis / bucketMillis;
+		sweepIfDue(tick);
+		while (!tryApply(accountFrom, amountUnits, tick)) {
+			// The ring was swept out of the table between the lookup and its monitor.
+		}
+	}
+
+	private boolean tryApply(String accountFrom, long amountUnits, long tick) {
+		long[] window = windows.get(accountFrom);
+		if (window == null) {
+			long[] created = new long[FIRST_BUCKET + 2 * buckets];
+			created[HEAD_TICK] = tick;
+			window = windows.putIfAbsent(accountFrom, created);
+			window = window != null ? window : created;
+		}
+		synchronized (window) {
+			if (window[HEAD_TICK] == EVICTED) {
+				return false;
+			}
+			advance(window, tick);
+			long units = window[TOTAL_UNITS] + amountUnits;
+			if (units < 0 || units > maxUnits || window[TOTAL_COUNT] >= maxCount) {
+				throw violation;
+			}
+			// A clock stepping back books into the newest bucket rather than one already reused.
+			int slot = slot(Math.max(tick, window[HEAD_TICK]));
+			window[slot] += amountUnits;
+			window[slot + 1]++;
+			window[TOTAL_UNITS] = units;
+			window[TOTAL_COUNT]++;
+		}
+		return true;
+	}
+
+	@Override
+	public void revert(String accountFrom, String accountTo, long amountUnits, long nowMillis) {
+		long[] window = windows.get(accountFrom);
+		if (window == null) {
+			return;
+		}
+		long tick = nowMillis / bucketMillis;
+		synchronized (window) {
+			// Nothing to take back once the bucket slid out of the window; an evicted ring's all did.
+			if (window[HEAD_TICK] == EVICTED || tick > window[HEAD_TICK] || window[HEAD_TICK] - tick >= buckets) {
+				return;
+			}
+			int slot = slot(tick);
+			if (window[slot + 1] == 0) {
+				return;
+			}
+			long units = Math.min(amountUnits, window[slot]);
+			window[slot] -= units;
+			window[slot + 1]--;
+			window[TOTAL_UNITS] -= units;
+			window[TOTAL_COUNT]--;
+		}
+	}
+
+	/**
+	 * Starts a sweep once per window and advances the running one by up to
+	 * {@link #SWEEP_BATCH} rings, dropping those whose newest bucket slid out of
+	 * the window. A ring is marked evicted under its monitor before it is
+	 * removed, so a transfer that looked it up just before retries with a new
+	 * ring instead of booking into one no longer in the table.
+	 */
+	private void sweepIfDue(long tick) {
+		if ((sweep == null && tick < nextSweepTick) || !sweeping.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			Iterator<Map.Entry<String, long[]>> entries = sweep;
+			if (entries == null) {
+				if (tick < nextSweepTick) {
+					return;
+				}
+				nextSweepTick = tick + buckets;
+				entries = windows.entrySet().iterator();
+			}
+			for (int i = 0; i < SWEEP_BATCH && entries.hasNext(); i++) {
+				Map.Entry<String, long[]> entry = entries.next();
+				long[] window = entry.getValue();
+				synchronized (window) {
+					if (window[HEAD_TICK] != EVICTED && tick - window[HEAD_TICK] >= buckets) {
+						window[HEAD_TICK] = EVICTED;
+						windows.remove(entry.getKey(), window);
+					}
+				}
+			}
+			sweep = entries.hasNext() ? entries : null;
+		} finally {
+			sweeping.set(false);
+		}
+	}
+
+	/** Number of accounts with a ring, for tests. */
+	int size() {
+		return windows.size();
+	}
+
+	/**
+	 * Moves the head of the window to {@code tick}, clearing the buckets that
+	 * slid out of it.
+	 */
+	private void advance(long[] window, long tick) {
+		long head = window[HEAD_TICK];
+		if (tick <= head) {
+			return;
+		}
+		if (tick - head >= buckets) {
+			Arrays.fill(window, TOTAL_UNITS, window.length, 0);
+		} else {
+			for (long t = head + 1; t <= tick; t++) {
+				int slot = slot(t);
+				window[TOTAL_UNITS] -= window[slot];
+				window[TOTAL_COUNT] -= window[slot + 1];
+				window[slot] = 0;
+				window[slot + 1] = 0;
+			}
+		}
+		window[HEAD_TICK] = tick;
+	}
+
+	private int slot(long tick) {
+		return FIRST_BUCKET + 2 * (int) (tick % buckets);
+	}
+}
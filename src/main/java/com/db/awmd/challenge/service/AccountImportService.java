@@ -0,0 +1,179 @@
+package com.db.awmd.challenge.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportError;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams accounts from an NDJSON or CSV upload into the repository.
+ * <p>
+ * The body is read line by line and accounts are created in batches through
+ * the repository's bulk path, so memory stays bounded by the batch size however
+ * large the upload is. Lines that can't be parsed or validated, and accounts
+ * whose id already exists, are reported with their line number while all other
+ * accounts are created.
+ */
+@Slf4j
+@Service
+public class AccountImportService {
+
+	public enum Format {
+		/** One account JSON object per line, as accepted by {@code POST /v1/accounts}. */
+		NDJSON,
+		/** {@code accountId,balance} per line, optionally preceded by that header. */
+		CSV
+	}
+
+	private final AccountsService accountsService;
+
+	private final ObjectReader accountReader;
+
+	private final int batchSize;
+
+	@Autowired
+	public AccountImportService(AccountsService accountsService, ObjectMapper objectMapper,
+			@Value("${accounts.import.batch-size:1000}") int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Import batch size must be positive");
+		}
+		this.accountsService = accountsService;
+		this.accountReader = objectMapper.readerFor(Account.class);
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Creates the accounts of {@code body}, passing every rejected line to
+	 * {@code errors} as soon as it is known.
+	 */
+	public AccountImportResult importAccounts(InputStream body, Format format, Consumer<AccountImportError> errors)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+		List<Account> batch = new ArrayList<>(batchSize);
+		long[] batchLines = new long[batchSize];
+		long created = 0;
+		long failed = 0;
+		long lineNumber = 0;
+		boolean firstLine = true;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			boolean header = firstLine && format == Format.CSV && isCsvHeader(line);
+			firstLine = false;
+			if (header) {
+				continue;
+			}
+
+			Account account;
+			try {
+				account = format == Format.NDJSON ? parseJson(line) : parseCsv(line);
+			} catch (IllegalOperationException e) {
+				errors.accept(AccountImportError.builder().line(lineNumber).message(e.getMessage()).build());
+				failed++;
+				continue;
+			}
+			batchLines[batch.size()] = lineNumber;
+			batch.add(account);
+			if (batch.size() == batchSize) {
+				int duplicates = flush(batch, batchLines, errors);
+				created += batch.size() - duplicates;
+				failed += duplicates;
+				batch.clear();
+			}
+		}
+		if (!batch.isEmpty()) {
+			int duplicates = flush(batch, batchLines, errors);
+			created += batch.size() - duplicates;
+			failed += duplicates;
+		}
+
+		log.info("Imported {} accounts, rejected {} lines", created, failed);
+		return AccountImportResult.builder().created(created).failed(failed).build();
+	}
+
+	private int flush(List<Account> batch, long[] batchLines, Consumer<AccountImportError> errors) {
+		BitSet duplicates = accountsService.createAccounts(batch);
+		for (int i = duplicates.nextSetBit(0); i >= 0; i = duplicates.nextSetBit(i + 1)) {
+			String accountId = batch.get(i).getAccountId();
+			errors.accept(AccountImportError.builder().line(batchLines[i]).accountId(accountId)
+					.message("Account id " + accountId + " already exists!").build());
+		}
+		return duplicates.cardinality();
+	}
+
+	private Account parseJson(String line) {
+		Account account;
+		try {
+			account = accountReader.readValue(line);
+		} catch (JsonProcessingException e) {
+			if (e.getCause() instanceof IllegalOperationException) {
+				throw (IllegalOperationException) e.getCause();
+			}
+			throw new IllegalOperationException("Invalid account: " + e.getOriginalMessage());
+		}
+		if (account == null) {
+			// A JSON null is valid JSON but no account.
+			throw new IllegalOperationException("Invalid account: expected an object.");
+		}
+		return validate(account);
+	}
+
+	private static Account parseCsv(String line) {
+		int comma = line.indexOf(',');
+		// The currency column is optional.
+		int currencyComma = comma < 0 ? -1 : line.indexOf(',', comma + 1);
+		if (comma < 0 || currencyComma >= 0 && line.indexOf(',', currencyComma + 1) >= 0) {
+			throw new IllegalOperationException("Expected accountId,balance[,currency].");
+		}
+		BigDecimal balance;
+		try {
+			balance = new BigDecimal(
+					(currencyComma < 0 ? line.substring(comma + 1) : line.substring(comma + 1, currencyComma)).trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalOperationException("Balance is not a number.");
+		}
+		String currency = currencyComma < 0 ? null : line.substring(currencyComma + 1).trim();
+		return validate(new Account(line.substring(0, comma).trim(), balance, currency));
+	}
+
+	/**
+	 * The checks {@code @Valid} applies to a single account creation.
+	 */
+	private static Account validate(Account account) {
+		if (account.getAccountId() == null || account.getAccountId().isEmpty()) {
+			throw new IllegalOperationException("Account id is required.");
+		}
+		if (account.getBalanceUnits() < 0) {
+			throw new IllegalOperationException("Initial balance must be positive.");
+		}
+		return account;
+	}
+
+	private static boolean isCsvHeader(String line) {
+		int comma = line.indexOf(',');
+		return "accountId".equalsIgnoreCase((comma < 0 ? line : line.substring(0, comma)).trim());
+	}
+}
@@ -1,27 +1,114 @@
 package com.db.awmd.challenge.service;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountSnapshot;
+import com.db.awmd.challenge.exception.IllegalOperationException;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
 public class AccountsService {
 
+	public static final int DEFAULT_MAX_SNAPSHOT_IDS = 1000;
+
 	@Getter
 	private final AccountsRepository accountsRepository;
 
-	@Autowired
+	private final List<LedgerListener> ledgerListeners;
+
+	private final int maxSnapshotIds;
+
 	public AccountsService(AccountsRepository accountsRepository) {
+		this(accountsRepository, Collections.emptyList());
+	}
+
+	public AccountsService(AccountsRepository accountsRepository, List<LedgerListener> ledgerListeners) {
+		this(accountsRepository, ledgerListeners, DEFAULT_MAX_SNAPSHOT_IDS);
+	}
+
+	@Autowired
+	public AccountsService(AccountsRepository accountsRepository, List<LedgerListener> ledgerListeners,
+			@Value("${accounts.snapshot.max-ids:" + DEFAULT_MAX_SNAPSHOT_IDS + "}") int maxSnapshotIds) {
 		this.accountsRepository = accountsRepository;
+		this.ledgerListeners = ledgerListeners;
+		this.maxSnapshotIds = maxSnapshotIds;
 	}
 
 	public void createAccount(Account account) {
+		// Read before the account is visible: a transfer may credit it right away.
+		long openingUnits = account.getBalanceUnits();
 		this.accountsRepository.createAccount(account);
+		notifyCreated(account.getAccountId(), openingUnits);
+	}
+
+	/**
+	 * Creates a batch of accounts through the repository's bulk path.
+	 *
+	 * @return the positions in {@code accounts} rejected as duplicates
+	 */
+	public BitSet createAccounts(List<Account> accounts) {
+		long[] openingUnits = new long[accounts.size()];
+		for (int i = 0; i < openingUnits.length; i++) {
+			openingUnits[i] = accounts.get(i).getBalanceUnits();
+		}
+		BitSet duplicates = this.accountsRepository.createAccounts(accounts);
+		for (int i = duplicates.nextClearBit(0); i < accounts.size(); i = duplicates.nextClearBit(i + 1)) {
+			notifyCreated(accounts.get(i).getAccountId(), openingUnits[i]);
+		}
+		return duplicates;
+	}
+
+	/**
+	 * Tells the listeners about the account as the repository stores it, which
+	 * for a hot account is a different instance than the one passed in.
+	 */
+	private void notifyCreated(String accountId, long openingUnits) {
+		if (ledgerListeners.isEmpty()) {
+			return;
+		}
+		Account stored = this.accountsRepository.getAccount(accountId);
+		for (LedgerListener listener : ledgerListeners) {
+			listener.onAccountCreated(stored, openingUnits);
+		}
 	}
 
 	public Account getAccount(String accountId) {
 		return this.accountsRepository.getAccount(accountId);
 	}
+
+	/**
+	 * Consistent copy of the account's balance and version, or {@code null} if
+	 * the account doesn't exist.
+	 */
+	public AccountSnapshot getSnapshot(String accountId) {
+		Account account = this.accountsRepository.getAccount(accountId);
+		return account == null ? null : account.snapshot();
+	}
+
+	/**
+	 * Snapshots of the existing accounts among {@code accountIds}, in the given
+	 * order. Each snapshot is consistent on its own; they are not taken at one
+	 * instant.
+	 */
+	public List<AccountSnapshot> getSnapshots(Collection<String> accountIds) {
+		if (accountIds.size() > maxSnapshotIds) {
+			throw new IllegalOperationException("At most " + maxSnapshotIds + " accounts can be read at once.");
+		}
+		List<AccountSnapshot> snapshots = new ArrayList<>(accountIds.size());
+		for (String accountId : accountIds) {
+			AccountSnapshot snapshot = getSnapshot(accountId);
+			if (snapshot != null) {
+				snapshots.add(snapshot);
+			}
+		}
+		return snapshots;
+	}
 }
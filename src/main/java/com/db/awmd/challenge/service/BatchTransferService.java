@@ -0,0 +1,413 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.domain.TransferEvent;
+import com.db.awmd.challenge.domain.TransferItemResult;
+import com.db.awmd.challenge.domain.TransferItemResult.Status;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.engine.TransferExecutor;
+import com.db.awmd.challenge.engine.WriteAheadLog;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.fx.ExchangeRates;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.lock.AccountLockManager.AccountLocks;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.rules.TransferRulePipeline;
+
+/**
+ * Executes many transfers in one pass. Every distinct account of the batch is
+ * locked once, items are checked in order against running balances and only the
+ * net movement per account is written back. Hot accounts change without the
+ * stripe locks, so a net debit can still fail; the batch is then planned again,
+ * and a best-effort batch that keeps losing falls back to applying its
+ * transfers one at a time.
+ * <p>
+ * The transfers are appended to the {@link WriteAheadLog} before the net
+ * movements are written, and reversed in it if those fail; the batch returns
+ * once the records are durable.
+ * <p>
+ * Every transfer passes the transfer rules when it is validated; a rejection
+ * by a rule fails that transfer like any other validation error. Transfers
+ * between accounts of different currencies are converted at the rates current
+ * when they are validated.
+ */
+@Service
+public class BatchTransferService {
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 10_000;
+
+	/**
+	 * Times the net movements are planned and applied before a batch gives up
+	 * on applying them at once; the balances are read again for every attempt.
+	 */
+	private static final int MAX_NET_ATTEMPTS = 4;
+
+	private static final String INSUFFICIENT_FUNDS = "Money Transfer can't be performed due to lack of funds in the account.";
+
+	private final AccountsRepository repository;
+
+	private final AccountLockManager lockManager;
+
+	private final List<LedgerListener> ledgerListeners;
+
+	private final int maxBatchSize;
+
+	private final TransferRulePipeline rules;
+
+	private final ExchangeRates exchangeRates;
+
+	private final TransferExecutor transferExecutor;
+
+	private final WriteAheadLog writeAheadLog;
+
+	public BatchTransferService(AccountsRepository repository, AccountLockManager lockManager,
+			List<LedgerListener> ledgerListeners, int maxBatchSize) {
+		this(repository, lockManager, ledgerListeners, maxBatchSize, TransferRulePipeline.empty());
+	}
+
+	public BatchTransferService(AccountsRepository repository, AccountLockManager lockManager,
+			List<LedgerListener> ledgerListeners, int maxBatchSize, TransferRulePipeline rules) {
+		this(repository, lockManager, ledgerListeners, maxBatchSize, rules, new ExchangeRates());
+	}
+
+	public BatchTransferService(AccountsRepository repository, AccountLockManager lockManager,
+			List<LedgerListener> ledgerListeners, int maxBatchSize, TransferRulePipeline rules,
+			ExchangeRates exchangeRates) {
+		this(repository, lockManager, ledgerListeners, maxBatchSize, rules, exchangeRates,
+				new LockingTransferExecutor(lockManager), Optional.empty());
+	}
+
+	/**
+	 * @param rules            checked for every transfer of a batch in order, so
+	 *                         a transfer may be rejected because of earlier ones
+	 *                         of the same batch
+	 * @param exchangeRates    converts transfers between currencies
+	 * @param transferExecutor hands the batch's accounts over while the net
+	 *                         movements are written
+	 * @param writeAheadLog    present with a journal, records the transfers
+	 *                         before they are applied
+	 */
+	@Autowired
+	public BatchTransferService(AccountsRepository repository, AccountLockManager lockManager,
+			List<LedgerListener> ledgerListeners,
+			@Value("${transfer.batch.max-size:" + DEFAULT_MAX_BATCH_SIZE + "}") int maxBatchSize,
+			TransferRulePipeline rules, ExchangeRates exchangeRates, TransferExecutor transferExecutor,
+			Optional<WriteAheadLog> writeAheadLog) {
+		this.repository = repository;
+		this.lockManager = lockManager;
+		this.ledgerListeners = ledgerListeners;
+		this.maxBatchSize = maxBatchSize;
+		this.rules = rules;
+		this.exchangeRates = exchangeRates;
+		this.transferExecutor = transferExecutor;
+		this.writeAheadLog = writeAheadLog.orElse(WriteAheadLog.NONE);
+	}
+
+	public BatchTransferResult transferBatch(List<FundTransfer> transfers, BatchMode mode) {
+		if (transfers.size() > maxBatchSize) {
+			throw new IllegalOperationException(tooLarge(maxBatchSize));
+		}
+
+		long now = System.currentTimeMillis();
+		long[] limitAmounts = new long[transfers.size()];
+		boolean[] ruled = new boolean[transfers.size()];
+		BatchTransferResult result;
+		try {
+			result = transferBatch(transfers, mode, limitAmounts, ruled, now);
+		} catch (RuntimeException e) {
+			revertUnexecuted(transfers, limitAmounts, ruled, null, now);
+			throw e;
+		}
+		revertUnexecuted(transfers, limitAmounts, ruled, result.getResults(), now);
+		return result;
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	public static String tooLarge(int maxBatchSize) {
+		return "A batch can contain at most " + maxBatchSize + " transfers.";
+	}
+
+	/**
+	 * Runs the batch, marking in {@code ruled} the transfers that passed the
+	 * transfer rules and keeping in {@code limitAmounts} the amounts the rules
+	 * recorded for them.
+	 */
+	private BatchTransferResult transferBatch(List<FundTransfer> transfers, BatchMode mode, long[] limitAmounts,
+			boolean[] ruled, long now) {
+		int size = transfers.size();
+		long[] amounts = new long[size];
+		TransferItemResult[] results = new TransferItemResult[size];
+		Position[] sources = new Position[size];
+		Position[] targets = new Position[size];
+		long[] credits = new long[size];
+		Map<String, Position> positions = new HashMap<>();
+		int firstFailure = -1;
+
+		for (int i = 0; i < size; i++) {
+			FundTransfer fundTransfer = transfers.get(i);
+			try {
+				amounts[i] = TransferValidator.validateAmount(fundTransfer.getAmount());
+				sources[i] = position(positions, fundTransfer.getAccountFrom());
+				targets[i] = position(positions, fundTransfer.getAccountTo());
+				TransferValidator.validateAccounts(fundTransfer, sources[i] == null ? null : sources[i].account,
+						targets[i] == null ? null : targets[i].account);
+				credits[i] = exchangeRates.convert(amounts[i], sources[i].account.getCurrency(),
+						targets[i].account.getCurrency());
+				limitAmounts[i] = rules.apply(fundTransfer.getAccountFrom(), fundTransfer.getAccountTo(), amounts[i],
+						sources[i].account.getCurrency(), now);
+				ruled[i] = true;
+			} catch (RuntimeException e) {
+				results[i] = result(i, Status.REJECTED, e.getMessage());
+				firstFailure = firstFailure < 0 ? i : firstFailure;
+			}
+		}
+
+		if (mode == BatchMode.ALL_OR_NOTHING && firstFailure >= 0) {
+			return complete(mode, results, firstFailure);
+		}
+
+		TransferItemResult[] validated = results.clone();
+		List<Account> accounts = new ArrayList<>(positions.size());
+		for (Position position : positions.values()) {
+			accounts.add(position.account);
+		}
+		long[] journaled = new long[1];
+		AccountLocks locks = lockManager.lockAll(positions.keySet());
+		try {
+			BatchTransferResult unapplied = transferExecutor.writeBalances(accounts, () -> {
+				for (int attempt = 1;; attempt++) {
+					System.arraycopy(validated, 0, results, 0, size);
+					for (Position position : positions.values()) {
+						position.available = position.account.getBalanceUnits();
+						position.net = 0;
+					}
+
+					for (int i = 0; i < size; i++) {
+						if (results[i] != null) {
+							continue;
+						}
+						if (sources[i].available < amounts[i]) {
+							results[i] = result(i, Status.REJECTED, INSUFFICIENT_FUNDS);
+							if (mode == BatchMode.ALL_OR_NOTHING) {
+								return complete(mode, results, i);
+							}
+							continue;
+						}
+						sources[i].available -= amounts[i];
+						sources[i].net -= amounts[i];
+						targets[i].available += credits[i];
+						targets[i].net += credits[i];
+					}
+
+					journaled[0] = journal(results, sources, targets, amounts, credits);
+					if (applyNetMovements(positions.values())) {
+						return null;
+					}
+					reverse(results, sources, targets, amounts, credits, size);
+					if (attempt < MAX_NET_ATTEMPTS) {
+						continue;
+					}
+					if (mode == BatchMode.BEST_EFFORT) {
+						journaled[0] = applyOneByOne(results, sources, targets, amounts, credits);
+						return null;
+					}
+					for (int i = 0; i < size; i++) {
+						if (results[i] == null) {
+							results[i] = result(i, Status.REJECTED,
+									"Balances changed concurrently, please retry the batch.");
+						}
+					}
+					return complete(mode, results, -1);
+				}
+			});
+			if (unapplied != null) {
+				return unapplied;
+			}
+		} finally {
+			locks.close();
+		}
+		writeAheadLog.awaitDurable(journaled[0]);
+
+		long timestamp = System.currentTimeMillis();
+		for (int i = 0; i < size; i++) {
+			if (results[i] == null) {
+				results[i] = result(i, Status.SUCCESS, null);
+				TransferEvent event = new TransferEvent(sources[i].account.getAccountId(),
+						targets[i].account.getAccountId(), amounts[i], credits[i], timestamp);
+				for (LedgerListener listener : ledgerListeners) {
+					listener.onTransfer(event);
+				}
+			}
+		}
+		return complete(mode, results, -1);
+	}
+
+	/**
+	 * Takes the transfers that passed the rules but did not succeed back from
+	 * the rules; {@code results} is {@code null} if the batch failed as a whole.
+	 */
+	private void revertUnexecuted(List<FundTransfer> transfers, long[] limitAmounts, boolean[] ruled,
+			List<TransferItemResult> results, long now) {
+		for (int i = 0; i < ruled.length; i++) {
+			if (ruled[i] && (results == null || results.get(i).getStatus() != Status.SUCCESS)) {
+				FundTransfer fundTransfer = transfers.get(i);
+				rules.revert(fundTransfer.getAccountFrom(), fundTransfer.getAccountTo(), limitAmounts[i], now);
+			}
+		}
+	}
+
+	private Position position(Map<String, Position> positions, String accountId) {
+		if (accountId == null) {
+			return null;
+		}
+		Position position = positions.get(accountId);
+		if (position == null) {
+			Account account = repository.getAccount(accountId);
+			if (account == null) {
+				return null;
+			}
+			position = new Position(account);
+			positions.put(accountId, position);
+		}
+		return position;
+	}
+
+	/**
+	 * Writes the net movements, debits first. A debit can only fail if a writer
+	 * that does not use the stripe locks changed the balance meanwhile; already
+	 * applied debits are then refunded and nothing is credited, and the batch is
+	 * planned again from the current balances.
+	 */
+	private boolean applyNetMovements(Collection<Position> positions) {
+		List<Position> debited = new ArrayList<>();
+		for (Position position : positions) {
+			if (position.net < 0) {
+				if (!position.account.tryDebitUnits(-position.net)) {
+					for (Position applied : debited) {
+						applied.account.creditUnits(-applied.net);
+					}
+					return false;
+				}
+				debited.add(position);
+			}
+		}
+		for (Position position : positions) {
+			if (position.net > 0) {
+				position.account.creditUnits(position.net);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Journals the transfers planned to succeed.
+	 *
+	 * @return the log position of the last one
+	 */
+	private long journal(TransferItemResult[] results, Position[] sources, Position[] targets, long[] amounts,
+			long[] credits) {
+		long position = 0;
+		int i = 0;
+		try {
+			for (; i < results.length; i++) {
+				if (results[i] == null) {
+					position = writeAheadLog.appendTransfer(sources[i].account.getAccountId(),
+							targets[i].account.getAccountId(), amounts[i], credits[i]);
+				}
+			}
+		} catch (RuntimeException e) {
+			reverse(results, sources, targets, amounts, credits, i);
+			throw e;
+		}
+		return position;
+	}
+
+	/**
+	 * Undoes the journaled transfers among the first {@code count} when their
+	 * net movements were not written.
+	 */
+	private void reverse(TransferItemResult[] results, Position[] sources, Position[] targets, long[] amounts,
+			long[] credits, int count) {
+		long position = 0;
+		for (int i = 0; i < count; i++) {
+			if (results[i] == null) {
+				position = writeAheadLog.appendTransfer(targets[i].account.getAccountId(),
+						sources[i].account.getAccountId(), credits[i], amounts[i]);
+			}
+		}
+		writeAheadLog.awaitDurable(position);
+	}
+
+	/**
+	 * Applies the remaining transfers of a best-effort batch one at a time, so
+	 * that a hot account changing under every net attempt only fails the
+	 * transfers it can't cover at that moment.
+	 *
+	 * @return the log position of the last applied transfer
+	 */
+	private long applyOneByOne(TransferItemResult[] results, Position[] sources, Position[] targets,
+			long[] amounts, long[] credits) {
+		long position = 0;
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] != null) {
+				continue;
+			}
+			try {
+				position = writeAheadLog.apply(sources[i].account, targets[i].account, amounts[i], credits[i]);
+			} catch (InsufficientBalanceException e) {
+				results[i] = result(i, Status.REJECTED, INSUFFICIENT_FUNDS);
+			}
+		}
+		return position;
+	}
+
+	private BatchTransferResult complete(BatchMode mode, TransferItemResult[] results, int rollbackCause) {
+		int succeeded = 0;
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == null) {
+				results[i] = result(i, Status.NOT_EXECUTED,
+						"Batch was not applied because transfer " + rollbackCause + " failed.");
+			} else if (results[i].getStatus() == Status.SUCCESS) {
+				succeeded++;
+			}
+		}
+		return BatchTransferResult.builder().mode(mode).succeeded(succeeded).failed(results.length - succeeded)
+				.results(Arrays.asList(results)).build();
+	}
+
+	private static TransferItemResult result(int index, Status status, String message) {
+		return TransferItemResult.builder().index(index).status(status).message(message).build();
+	}
+
+	private static final class Position {
+
+		private final Account account;
+
+		private long available;
+
+		private long net;
+
+		private Position(Account account) {
+			this.account = account;
+		}
+	}
+}
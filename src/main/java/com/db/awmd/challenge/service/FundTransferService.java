@@ -1,76 +1,224 @@
 package com.db.awmd.challenge.service;
 
-import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.db.awmd.challenge.domain.Account;
 import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.domain.TransferEvent;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.engine.TransferExecutor;
+import com.db.awmd.challenge.exception.IdempotencyKeyConflictException;
 import com.db.awmd.challenge.exception.IllegalOperationException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.db.awmd.challenge.exception.InvalidAccountNumberException;
+import com.db.awmd.challenge.exception.JournalException;
+import com.db.awmd.challenge.fx.ExchangeRates;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.metrics.TransferMetrics;
 import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.rules.TransferRulePipeline;
+import com.db.awmd.challenge.service.IdempotencyCache.Outcome;
 
 @Service
 public class FundTransferService {
 
 	private final AccountsRepository repository;
 
-	private final NotificationService notificationService;
+	private final TransferExecutor transferExecutor;
+
+	private final List<LedgerListener> ledgerListeners;
+
+	private final IdempotencyCache idempotencyCache;
+
+	private final TransferMetrics metrics;
+
+	private final RemoteTransfers remoteTransfers;
+
+	private final TransferRulePipeline rules;
+
+	private final ExchangeRates exchangeRates;
 
-	@Autowired
 	public FundTransferService(AccountsRepository repository, NotificationService notificationService) {
-		this.repository = repository;
-		this.notificationService = notificationService;
+		this(repository, new LockingTransferExecutor(new AccountLockManager()),
+				Collections.singletonList(LedgerListener.notifying(notificationService, repository)));
 	}
 
-	public String transferFund(final FundTransfer fundTransfer) {
+	public FundTransferService(AccountsRepository repository, TransferExecutor transferExecutor,
+			List<LedgerListener> ledgerListeners) {
+		this(repository, transferExecutor, ledgerListeners, new IdempotencyCache());
+	}
 
-		if (BigDecimal.ZERO.compareTo(fundTransfer.getAmount()) == 0) {
-			throw new IllegalOperationException("Transfer amount should be greater than zero.");
-		}
+	public FundTransferService(AccountsRepository repository, TransferExecutor transferExecutor,
+			List<LedgerListener> ledgerListeners, IdempotencyCache idempotencyCache) {
+		this(repository, transferExecutor, ledgerListeners, idempotencyCache, TransferMetrics.noop());
+	}
 
-		Account accountFrom = repository.getAccount(fundTransfer.getAccountFrom());
-		Account accountTo = repository.getAccount(fundTransfer.getAccountTo());
+	public FundTransferService(AccountsRepository repository, TransferExecutor transferExecutor,
+			List<LedgerListener> ledgerListeners, IdempotencyCache idempotencyCache, TransferMetrics metrics) {
+		this(repository, transferExecutor, ledgerListeners, idempotencyCache, metrics, Optional.empty());
+	}
 
-		validate(fundTransfer, accountFrom, accountTo);
+	public FundTransferService(AccountsRepository repository, TransferExecutor transferExecutor,
+			List<LedgerListener> ledgerListeners, IdempotencyCache idempotencyCache, TransferMetrics metrics,
+			Optional<RemoteTransfers> remoteTransfers) {
+		this(repository, transferExecutor, ledgerListeners, idempotencyCache, metrics, remoteTransfers,
+				TransferRulePipeline.empty());
+	}
 
-		synchronized (accountFrom) {
-			synchronized (accountTo) {
-				accountFrom.debit(fundTransfer.getAmount());
-				accountTo.credit(fundTransfer.getAmount());
+	public FundTransferService(AccountsRepository repository, TransferExecutor transferExecutor,
+			List<LedgerListener> ledgerListeners, IdempotencyCache idempotencyCache, TransferMetrics metrics,
+			Optional<RemoteTransfers> remoteTransfers, TransferRulePipeline rules) {
+		this(repository, transferExecutor, ledgerListeners, idempotencyCache, metrics, remoteTransfers, rules,
+				new ExchangeRates());
+	}
 
-			}
+	/**
+	 * @param remoteTransfers present in a cluster, where transfers to accounts
+	 *                        of other nodes go through it
+	 * @param rules           checks a transfer must pass once its accounts are
+	 *                        known to be valid
+	 * @param exchangeRates   converts the amount of a transfer between accounts
+	 *                        of different currencies
+	 */
+	@Autowired
+	public FundTransferService(AccountsRepository repository, TransferExecutor transferExecutor,
+			List<LedgerListener> ledgerListeners, IdempotencyCache idempotencyCache, TransferMetrics metrics,
+			Optional<RemoteTransfers> remoteTransfers, TransferRulePipeline rules, ExchangeRates exchangeRates) {
+		this.repository = repository;
+		this.transferExecutor = transferExecutor;
+		this.ledgerListeners = ledgerListeners;
+		this.idempotencyCache = idempotencyCache;
+		this.metrics = metrics;
+		this.remoteTransfers = remoteTransfers.orElse(RemoteTransfers.NONE);
+		this.rules = rules;
+		this.exchangeRates = exchangeRates;
+	}
+
+	/**
+	 * Transfers the amount, given in the currency of the source account and
+	 * converted if the destination account holds another one. A transfer
+	 * carrying a {@code transferId} runs at most
+	 * once per id while the id is remembered; retries get the first outcome back,
+	 * including the rejection if the first attempt was rejected.
+	 */
+	public String transferFund(final FundTransfer fundTransfer) {
+		long started = System.nanoTime();
+		try {
+			String result = transferOnce(fundTransfer);
+			metrics.recordTransfer(System.nanoTime() - started, null);
+			return result;
+		} catch (RuntimeException e) {
+			metrics.recordTransfer(System.nanoTime() - started, e);
+			throw e;
 		}
+	}
 
-		notificationService.notifyAboutTransfer(accountFrom,
-				fundTransfer.getAmount() + " transferred to " + accountTo.getAccountId() + ".");
+	private String transferOnce(FundTransfer fundTransfer) {
+		long amountUnits = TransferValidator.validateAmount(fundTransfer.getAmount());
 
-		notificationService.notifyAboutTransfer(accountTo,
-				 fundTransfer.getAmount() + " amount received from " + accountFrom.getAccountId() + ".");
+		String transferId = fundTransfer.getTransferId();
+		if (transferId == null) {
+			long creditUnits = execute(fundTransfer, amountUnits);
+			publish(fundTransfer.getAccountFrom(), fundTransfer.getAccountTo(), amountUnits, creditUnits);
+			return "Success";
+		}
 
+		Outcome previous = idempotencyCache.claim(transferId, fingerprint(fundTransfer, amountUnits));
+		if (previous != null) {
+			return replay(previous);
+		}
+		long creditUnits;
+		try {
+			creditUnits = execute(fundTransfer, amountUnits);
+		} catch (InsufficientBalanceException | InvalidAccountNumberException | IllegalOperationException e) {
+			idempotencyCache.complete(transferId, Outcome.failed(e));
+			throw e;
+		} catch (JournalException e) {
+			// The record may have been written and the balances moved before the
+			// journal failed, so a retry must not run the transfer again.
+			idempotencyCache.complete(transferId, Outcome.failed(e));
+			throw e;
+		} catch (RuntimeException e) {
+			// Rejected before any balance moved (e.g. lock timeout), a retry may run it.
+			idempotencyCache.release(transferId);
+			throw e;
+		}
+		// The balances moved: a retry must not run the transfer again, even if a
+		// listener fails below.
+		idempotencyCache.complete(transferId, Outcome.SUCCESS);
+		publish(fundTransfer.getAccountFrom(), fundTransfer.getAccountTo(), amountUnits, creditUnits);
 		return "Success";
-
 	}
 
-	private void validate(final FundTransfer fundTransfer, Account accountFrom, Account accountTo) {
-		if (accountFrom == null) {
-			throw new InvalidAccountNumberException(fundTransfer.getAccountFrom() + " account doesn't exist");
+	/**
+	 * Moves the balances of a transfer, without publishing it.
+	 *
+	 * @return the units credited to the destination account
+	 */
+	private long execute(FundTransfer fundTransfer, long amountUnits) {
+		Account accountFrom = repository.getAccount(fundTransfer.getAccountFrom());
+		long now = System.currentTimeMillis();
+		if (accountFrom != null && remoteTransfers.isRemote(fundTransfer.getAccountTo())) {
+			long limitUnits = rules.apply(accountFrom.getAccountId(), fundTransfer.getAccountTo(), amountUnits,
+					accountFrom.getCurrency(), now);
+			try {
+				remoteTransfers.transfer(accountFrom, fundTransfer.getAccountTo(), amountUnits);
+			} catch (RuntimeException e) {
+				rules.revert(accountFrom.getAccountId(), fundTransfer.getAccountTo(), limitUnits, now);
+				throw e;
+			}
+			return amountUnits;
 		}
+		Account accountTo = repository.getAccount(fundTransfer.getAccountTo());
+
+		TransferValidator.validateAccounts(fundTransfer, accountFrom, accountTo);
+		long creditUnits = exchangeRates.convert(amountUnits, accountFrom.getCurrency(), accountTo.getCurrency());
 
-		if (accountTo == null) {
-			throw new InvalidAccountNumberException(fundTransfer.getAccountTo() + " account doesn't exist");
+		long limitUnits = rules.apply(accountFrom.getAccountId(), accountTo.getAccountId(), amountUnits,
+				accountFrom.getCurrency(), now);
+		try {
+			transferExecutor.execute(accountFrom, accountTo, amountUnits, creditUnits);
+		} catch (RuntimeException e) {
+			rules.revert(accountFrom.getAccountId(), accountTo.getAccountId(), limitUnits, now);
+			throw e;
 		}
+		return creditUnits;
+	}
 
-		if (accountFrom.getAccountId().equalsIgnoreCase(accountTo.getAccountId())) {
-			throw new InvalidAccountNumberException("Money transfer between same account is not allowed");
+	private void publish(String accountFromId, String accountToId, long amountUnits, long creditUnits) {
+		if (!ledgerListeners.isEmpty()) {
+			// The event is the only allocation of a transfer; listeners render text from it lazily.
+			TransferEvent event = new TransferEvent(accountFromId, accountToId, amountUnits, creditUnits,
+					System.currentTimeMillis());
+			for (int i = 0; i < ledgerListeners.size(); i++) {
+				ledgerListeners.get(i).onTransfer(event);
+			}
 		}
+	}
 
-		if (accountFrom.getBalance().compareTo(fundTransfer.getAmount()) < 0) {
-			throw new InsufficientBalanceException(
-					"Money Transfer can't be performed due to lack of funds in the account.");
+	private static String replay(Outcome previous) {
+		if (previous == Outcome.SUCCESS) {
+			return "Success";
 		}
+		if (previous == Outcome.IN_PROGRESS) {
+			throw new IdempotencyKeyConflictException("A transfer with this id is still in progress.");
+		}
+		if (previous == Outcome.KEY_REUSED) {
+			throw new IdempotencyKeyConflictException("Transfer id was already used for a different transfer.");
+		}
+		throw previous.getFailure();
+	}
+
+	private static long fingerprint(FundTransfer fundTransfer, long amountUnits) {
+		long hash = Objects.hashCode(fundTransfer.getAccountFrom());
+		hash = hash * 0x9E3779B97F4A7C15L + Objects.hashCode(fundTransfer.getAccountTo());
+		return hash * 0x9E3779B97F4A7C15L + amountUnits;
 	}
 
 }
@@ -0,0 +1,206 @@
+package com.db.awmd.challenge.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+
+/**
+ * Bounded memory of recent transfer outcomes by idempotency key.
+ * <p>
+ * Keys hash into buckets of {@value #WAYS} slots held in flat arrays, and every
+ * bucket is guarded by one of a fixed number of stripe monitors. A lookup is a
+ * short scan of one bucket under its stripe and allocates nothing. Entries
+ * expire after the configured time to live; a full bucket evicts its oldest
+ * completed entry, so the cache never grows beyond its capacity.
+ * <p>
+ * An entry still in progress is never evicted, since a retry could then run
+ * its transfer a second time; a claim finding its bucket full of them is
+ * rejected as {@link TooManyRequestsException#IDEMPOTENCY_FULL}. Outcomes are
+ * only remembered for the whole time to live while the capacity covers all
+ * keys used within it, e.g. 8,640,000 for 100 transfers a second over 24
+ * hours; completed entries evicted before they expired are counted in
+ * {@code transfer.idempotency.evicted}, a sign the capacity is too small.
+ */
+@Component
+public class IdempotencyCache {
+
+	public static final int DEFAULT_CAPACITY = 1 << 18;
+
+	public static final long DEFAULT_TTL_SECONDS = 24 * 60 * 60;
+
+	private static final int WAYS = 8;
+
+	private static final int STRIPES = 1024;
+
+	private final Object[] stripes = new Object[STRIPES];
+
+	private final int bucketMask;
+
+	private final long ttlMillis;
+
+	private final String[] keys;
+
+	private final long[] fingerprints;
+
+	private final long[] storedAt;
+
+	private final Outcome[] outcomes;
+
+	private final LongAdder evicted = new LongAdder();
+
+	public IdempotencyCache() {
+		this(DEFAULT_CAPACITY, DEFAULT_TTL_SECONDS);
+	}
+
+	public IdempotencyCache(int capacity, long ttlSeconds) {
+		this(capacity, ttlSeconds, TransferMetrics.noop());
+	}
+
+	@Autowired
+	public IdempotencyCache(@Value("${transfer.idempotency.capacity:" + DEFAULT_CAPACITY + "}") int capacity,
+			@Value("${transfer.idempotency.ttl-seconds:" + DEFAULT_TTL_SECONDS + "}") long ttlSeconds,
+			TransferMetrics metrics) {
+		if (capacity <= 0 || ttlSeconds <= 0) {
+			throw new IllegalArgumentException("Idempotency cache capacity and time to live must be positive");
+		}
+		int buckets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS) * 2 - 1);
+		this.bucketMask = buckets - 1;
+		this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+		this.keys = new String[buckets * WAYS];
+		this.fingerprints = new long[buckets * WAYS];
+		this.storedAt = new long[buckets * WAYS];
+		this.outcomes = new Outcome[buckets * WAYS];
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Object();
+		}
+		metrics.bindIdempotencyEvictions(evicted);
+	}
+
+	/**
+	 * Claims {@code key} for a transfer with the given request fingerprint.
+	 *
+	 * @return {@code null} if the caller now owns the key and must
+	 *         {@link #complete} or {@link #release} it, otherwise the outcome
+	 *         remembered for the key
+	 * @throws TooManyRequestsException if every slot the key may take holds a
+	 *                                  transfer still in progress
+	 */
+	public Outcome claim(String key, long fingerprint) {
+		int bucket = bucketOf(key);
+		long now = System.currentTimeMillis();
+		synchronized (stripes[bucket & (STRIPES - 1)]) {
+			int start = bucket * WAYS;
+			int free = -1;
+			int oldestCompleted = -1;
+			for (int slot = start; slot < start + WAYS; slot++) {
+				String cached = keys[slot];
+				boolean expired = cached == null || now - storedAt[slot] >= ttlMillis;
+				if (cached != null && cached.equals(key)) {
+					if (!expired) {
+						return fingerprints[slot] == fingerprint ? outcomes[slot] : Outcome.KEY_REUSED;
+					}
+					// Reuse the expired slot of the same key, so a key never has two slots.
+					free = slot;
+				} else if (expired) {
+					free = free < 0 ? slot : free;
+				} else if (outcomes[slot] != Outcome.IN_PROGRESS
+						&& (oldestCompleted < 0 || storedAt[slot] < storedAt[oldestCompleted])) {
+					oldestCompleted = slot;
+				}
+			}
+			if (free < 0 && oldestCompleted < 0) {
+				throw TooManyRequestsException.IDEMPOTENCY_FULL;
+			}
+			int victim = free;
+			if (victim < 0) {
+				victim = oldestCompleted;
+				evicted.increment();
+			}
+			keys[victim] = key;
+			fingerprints[victim] = fingerprint;
+			storedAt[victim] = now;
+			outcomes[victim] = Outcome.IN_PROGRESS;
+			return null;
+		}
+	}
+
+	/**
+	 * Remembers the outcome of a claimed key.
+	 */
+	public void complete(String key, Outcome outcome) {
+		int bucket = bucketOf(key);
+		synchronized (stripes[bucket & (STRIPES - 1)]) {
+			int slot = find(bucket, key);
+			if (slot >= 0) {
+				outcomes[slot] = outcome;
+				storedAt[slot] = System.currentTimeMillis();
+			}
+		}
+	}
+
+	/**
+	 * Forgets a claimed key whose transfer did not run, so a retry executes it.
+	 */
+	public void release(String key) {
+		int bucket = bucketOf(key);
+		synchronized (stripes[bucket & (STRIPES - 1)]) {
+			int slot = find(bucket, key);
+			if (slot >= 0) {
+				keys[slot] = null;
+				outcomes[slot] = null;
+			}
+		}
+	}
+
+	private int find(int bucket, String key) {
+		int start = bucket * WAYS;
+		for (int slot = start; slot < start + WAYS; slot++) {
+			if (key.equals(keys[slot])) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	private int bucketOf(String key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & bucketMask;
+	}
+
+	/**
+	 * What a retry of a remembered transfer gets back.
+	 */
+	public static final class Outcome {
+
+		public static final Outcome SUCCESS = new Outcome(null);
+
+		/** The first request with the key has not finished yet. */
+		public static final Outcome IN_PROGRESS = new Outcome(null);
+
+		/** The key was used before for a transfer with different details. */
+		public static final Outcome KEY_REUSED = new Outcome(null);
+
+		private final RuntimeException failure;
+
+		private Outcome(RuntimeException failure) {
+			this.failure = failure;
+		}
+
+		public static Outcome failed(RuntimeException failure) {
+			return new Outcome(failure);
+		}
+
+		/**
+		 * The exception the transfer was rejected with, or {@code null}.
+		 */
+		public RuntimeException getFailure() {
+			return failure;
+		}
+	}
+}
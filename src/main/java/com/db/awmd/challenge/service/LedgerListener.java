@@ -0,0 +1,35 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferEvent;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Receives every created account and every applied transfer, after the
+ * repository changed and before the request is answered. Listeners run on the
+ * request thread, so they must hand slow work off to their own threads.
+ */
+public interface LedgerListener {
+
+	/**
+	 * @param openingUnits the balance the account was created with; the
+	 *                     account itself may already show later transfers
+	 */
+	default void onAccountCreated(Account account, long openingUnits) {
+	}
+
+	void onTransfer(TransferEvent event);
+
+	/**
+	 * Listener delivering both notifications of a transfer synchronously on the
+	 * calling thread, one call per party.
+	 */
+	static LedgerListener notifying(NotificationService notificationService, AccountsRepository repository) {
+		return event -> {
+			notificationService.notifyAboutTransfer(repository.getAccount(event.getAccountFrom()),
+					TransferDescriptions.append(new StringBuilder(), event, event.getAccountFrom()).toString());
+			notificationService.notifyAboutTransfer(repository.getAccount(event.getAccountTo()),
+					TransferDescriptions.append(new StringBuilder(), event, event.getAccountTo()).toString());
+		};
+	}
+}
@@ -0,0 +1,243 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+import com.db.awmd.challenge.domain.StripedAccount;
+import com.db.awmd.challenge.domain.TransferEvent;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.engine.TransferExecutor;
+import com.db.awmd.challenge.engine.WriteAheadLog;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.fx.ExchangeRates;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.lock.AccountLockManager.AccountLocks;
+import com.db.awmd.challenge.repository.AccountsRepository;
+import com.db.awmd.challenge.rules.TransferRulePipeline;
+
+/**
+ * Executes one debit and many credits as a single atomic transfer, e.g. a
+ * payroll run. The legs are validated and their total checked once, then the
+ * stripes of all involved accounts are taken in one ordered acquisition, the
+ * total is debited and every credit applied before any lock is released. Other
+ * transfers therefore see either none or all of the legs. Every leg is
+ * appended to the {@link WriteAheadLog} before the debit, and the transfer
+ * returns once the records are durable.
+ * <p>
+ * Every leg passes the transfer rules like a single transfer of its amount;
+ * if one leg is rejected, none is executed. A leg to an account of another
+ * currency is credited the converted amount.
+ */
+@Service
+public class MultiLegTransferService {
+
+	public static final int DEFAULT_MAX_LEGS = 10_000;
+
+	private final AccountsRepository repository;
+
+	private final AccountLockManager lockManager;
+
+	private final List<LedgerListener> ledgerListeners;
+
+	private final int maxLegs;
+
+	private final TransferRulePipeline rules;
+
+	private final ExchangeRates exchangeRates;
+
+	private final TransferExecutor transferExecutor;
+
+	private final WriteAheadLog writeAheadLog;
+
+	public MultiLegTransferService(AccountsRepository repository, AccountLockManager lockManager,
+			List<LedgerListener> ledgerListeners, int maxLegs) {
+		this(repository, lockManager, ledgerListeners, maxLegs, TransferRulePipeline.empty());
+	}
+
+	public MultiLegTransferService(AccountsRepository repository, AccountLockManager lockManager,
+			List<LedgerListener> ledgerListeners, int maxLegs, TransferRulePipeline rules) {
+		this(repository, lockManager, ledgerListeners, maxLegs, rules, new ExchangeRates());
+	}
+
+	public MultiLegTransferService(AccountsRepository repository, AccountLockManager lockManager,
+			List<LedgerListener> ledgerListeners, int maxLegs, TransferRulePipeline rules,
+			ExchangeRates exchangeRates) {
+		this(repository, lockManager, ledgerListeners, maxLegs, rules, exchangeRates,
+				new LockingTransferExecutor(lockManager), Optional.empty());
+	}
+
+	/**
+	 * @param rules            checked for every leg as a transfer of its own
+	 * @param exchangeRates    converts legs between currencies
+	 * @param transferExecutor hands the involved accounts over while the legs
+	 *                         are applied
+	 * @param writeAheadLog    present with a journal, records the legs before
+	 *                         they are applied
+	 */
+	@Autowired
+	public MultiLegTransferService(AccountsRepository repository, AccountLockManager lockManager,
+			List<LedgerListener> ledgerListeners,
+			@Value("${transfer.multi-leg.max-legs:" + DEFAULT_MAX_LEGS + "}") int maxLegs, TransferRulePipeline rules,
+			ExchangeRates exchangeRates, TransferExecutor transferExecutor, Optional<WriteAheadLog> writeAheadLog) {
+		this.repository = repository;
+		this.lockManager = lockManager;
+		this.ledgerListeners = ledgerListeners;
+		this.maxLegs = maxLegs;
+		this.rules = rules;
+		this.exchangeRates = exchangeRates;
+		this.transferExecutor = transferExecutor;
+		this.writeAheadLog = writeAheadLog.orElse(WriteAheadLog.NONE);
+	}
+
+	/**
+	 * Applies every leg or, if any leg is invalid or the source can't cover the
+	 * total, none of them.
+	 */
+	public void transfer(MultiLegTransfer transfer) {
+		List<TransferLeg> legs = transfer.getLegs();
+		if (legs == null || legs.isEmpty()) {
+			throw new IllegalOperationException("A multi-leg transfer needs at least one leg.");
+		}
+		if (legs.size() > maxLegs) {
+			throw new IllegalOperationException("A multi-leg transfer can contain at most " + maxLegs + " legs.");
+		}
+
+		Account accountFrom = repository.getAccount(transfer.getAccountFrom());
+		long[] amounts = new long[legs.size()];
+		long[] converted = new long[legs.size()];
+		Account[] targets = new Account[legs.size()];
+		// Legs to the same account are credited in one step.
+		Map<String, Credit> credits = new LinkedHashMap<>();
+		long total = 0;
+		for (int i = 0; i < legs.size(); i++) {
+			TransferLeg leg = legs.get(i);
+			amounts[i] = TransferValidator.validateAmount(leg.getAmount());
+			targets[i] = repository.getAccount(leg.getAccountTo());
+			TransferValidator.validateAccounts(transfer.getAccountFrom(), accountFrom, leg.getAccountTo(), targets[i]);
+			try {
+				total = Math.addExact(total, amounts[i]);
+			} catch (ArithmeticException e) {
+				throw new IllegalOperationException("Total amount of the transfer is too large.");
+			}
+			converted[i] = exchangeRates.convert(amounts[i], accountFrom.getCurrency(), targets[i].getCurrency());
+			credits.computeIfAbsent(targets[i].getAccountId(), id -> new Credit()).add(targets[i], converted[i]);
+		}
+
+		List<String> lockedIds = new ArrayList<>(credits.size() + 1);
+		List<Account> accounts = new ArrayList<>(credits.size() + 1);
+		accounts.add(accountFrom);
+		if (!(accountFrom instanceof StripedAccount)) {
+			lockedIds.add(accountFrom.getAccountId());
+		}
+		for (Credit credit : credits.values()) {
+			accounts.add(credit.account);
+			// Striped accounts apply concurrent credits on their own, like in LockingTransferExecutor.
+			if (!(credit.account instanceof StripedAccount)) {
+				lockedIds.add(credit.account.getAccountId());
+			}
+		}
+		long now = System.currentTimeMillis();
+		long[] limitAmounts = new long[targets.length];
+		int ruled = 0;
+		long position;
+		try {
+			for (; ruled < targets.length; ruled++) {
+				limitAmounts[ruled] = rules.apply(accountFrom.getAccountId(), targets[ruled].getAccountId(),
+						amounts[ruled], accountFrom.getCurrency(), now);
+			}
+			AccountLocks locks = lockManager.lockAll(lockedIds);
+			try {
+				long debit = total;
+				position = transferExecutor.writeBalances(accounts,
+						() -> apply(accountFrom, debit, targets, amounts, converted, credits.values()));
+			} finally {
+				locks.close();
+			}
+		} catch (RuntimeException e) {
+			for (int i = 0; i < ruled; i++) {
+				rules.revert(accountFrom.getAccountId(), targets[i].getAccountId(), limitAmounts[i], now);
+			}
+			throw e;
+		}
+		writeAheadLog.awaitDurable(position);
+
+		if (!ledgerListeners.isEmpty()) {
+			long timestamp = System.currentTimeMillis();
+			for (int i = 0; i < targets.length; i++) {
+				TransferEvent event = new TransferEvent(accountFrom.getAccountId(), targets[i].getAccountId(),
+						amounts[i], converted[i], timestamp);
+				for (int l = 0; l < ledgerListeners.size(); l++) {
+					ledgerListeners.get(l).onTransfer(event);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Journals the legs, debits the total and applies the credits.
+	 *
+	 * @return the log position of the last leg
+	 */
+	private long apply(Account accountFrom, long total, Account[] targets, long[] amounts, long[] converted,
+			Collection<Credit> credits) {
+		if (accountFrom.getBalanceUnits() < total) {
+			throw InsufficientBalanceException.TRANSFER;
+		}
+		long position = 0;
+		int appended = 0;
+		try {
+			for (; appended < targets.length; appended++) {
+				position = writeAheadLog.appendTransfer(accountFrom.getAccountId(), targets[appended].getAccountId(),
+						amounts[appended], converted[appended]);
+			}
+			if (!accountFrom.tryDebitUnits(total)) {
+				// A hot source account was drained meanwhile.
+				throw InsufficientBalanceException.TRANSFER;
+			}
+		} catch (RuntimeException e) {
+			reverse(accountFrom, targets, amounts, converted, appended);
+			throw e;
+		}
+		for (Credit credit : credits) {
+			credit.account.creditUnits(credit.units);
+		}
+		return position;
+	}
+
+	/**
+	 * Undoes the first {@code count} journaled legs of a transfer that was not
+	 * applied.
+	 */
+	private void reverse(Account accountFrom, Account[] targets, long[] amounts, long[] converted, int count) {
+		long position = 0;
+		for (int i = 0; i < count; i++) {
+			position = writeAheadLog.appendTransfer(targets[i].getAccountId(), accountFrom.getAccountId(),
+					converted[i], amounts[i]);
+		}
+		writeAheadLog.awaitDurable(position);
+	}
+
+	private static final class Credit {
+
+		private Account account;
+
+		private long units;
+
+		private void add(Account account, long amountUnits) {
+			this.account = account;
+			this.units += amountUnits;
+		}
+	}
+}
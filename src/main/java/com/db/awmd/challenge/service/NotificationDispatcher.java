@@ -0,0 +1,367 @@
+package com.db.awmd.challenge.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BackpressurePolicy;
+import com.db.awmd.challenge.domain.NotificationStats;
+import com.db.awmd.challenge.domain.TransferEvent;
+import com.db.awmd.challenge.engine.MpscRingBuffer;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Delivers transfer notifications off the request thread.
+ * <p>
+ * Transfers only publish their {@link TransferEvent} into a bounded lock-free
+ * queue. A single background dispatcher drains the queue in batches, coalesces
+ * all events of a batch into one notification per account and only then builds
+ * the notification text. When the queue is full the configured
+ * {@link BackpressurePolicy} decides whether the event is dropped, the producer
+ * waits, or the event is spilled to a local file and delivered later.
+ * <p>
+ * The spill file starts with a magic number and the version of its record
+ * layout. A file left by a restart is only replayed if it has the current
+ * version; any other file is moved aside to {@code <spill-file>.rejected} and
+ * reported, rather than decoded into wrong notifications.
+ */
+@Slf4j
+@Component
+public class NotificationDispatcher implements LedgerListener, InitializingBean, DisposableBean {
+
+	private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	/** First bytes of a spill file, "TNSP". */
+	private static final int SPILL_MAGIC = 0x544E5350;
+
+	/** Record layout: from, to (UTF), amount units, credit units, timestamp (long). */
+	private static final int SPILL_VERSION = 2;
+
+	private final NotificationService notificationService;
+
+	private final AccountsRepository repository;
+
+	private final BackpressurePolicy backpressure;
+
+	private final MpscRingBuffer<TransferEvent> queue;
+
+	private final int batchSize;
+
+	private final long flushIntervalNanos;
+
+	private final Path spillFile;
+
+	private final Path replayFile;
+
+	private final Thread dispatcher;
+
+	private final TransferMetrics metrics;
+
+	private final LongAdder enqueued = new LongAdder();
+
+	private final LongAdder dropped = new LongAdder();
+
+	private final LongAdder spilled = new LongAdder();
+
+	private final Object spillLock = new Object();
+
+	private DataOutputStream spillOut;
+
+	private volatile boolean spilling;
+
+	private volatile boolean running = true;
+
+	private volatile long dispatched;
+
+	private volatile long notificationsSent;
+
+	private volatile long lastDispatchLagMillis;
+
+	private volatile long maxDispatchLagMillis;
+
+	public NotificationDispatcher(NotificationService notificationService, AccountsRepository repository,
+			BackpressurePolicy backpressure, int queueCapacity, int batchSize, long flushIntervalMillis,
+			String spillFile) {
+		this(notificationService, repository, backpressure, queueCapacity, batchSize, flushIntervalMillis, spillFile,
+				TransferMetrics.noop());
+	}
+
+	@Autowired
+	public NotificationDispatcher(NotificationService notificationService, AccountsRepository repository,
+			@Value("${notification.backpressure:DROP}") BackpressurePolicy backpressure,
+			@Value("${notification.queue-capacity:65536}") int queueCapacity,
+			@Value("${notification.batch-size:1024}") int batchSize,
+			@Value("${notification.flush-interval-ms:10}") long flushIntervalMillis,
+			@Value("${notification.spill-file:data/notifications.spill}") String spillFile,
+			TransferMetrics metrics) {
+		this.notificationService = notificationService;
+		this.repository = repository;
+		this.backpressure = backpressure;
+		this.queue = new MpscRingBuffer<>(queueCapacity);
+		this.batchSize = batchSize;
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+		this.spillFile = Paths.get(spillFile);
+		this.replayFile = Paths.get(spillFile + ".replay");
+		this.metrics = metrics;
+		this.dispatcher = new Thread(this::run, "notification-dispatcher");
+		this.dispatcher.setDaemon(true);
+	}
+
+	/**
+	 * Starts the dispatcher once the bean is fully constructed. Events spilled
+	 * before a restart are delivered once the dispatcher is idle.
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		this.spilling = Files.exists(spillFile) && checkSpillFile();
+		metrics.bindNotificationStats(this, NotificationDispatcher::getStats);
+		dispatcher.start();
+	}
+
+	@Override
+	public void onTransfer(TransferEvent event) {
+		enqueued.increment();
+		if (!spilling && queue.offer(event)) {
+			return;
+		}
+		switch (backpressure) {
+		case BLOCK:
+			while (!queue.offer(event)) {
+				if (!running) {
+					dropped.increment();
+					return;
+				}
+				LockSupport.unpark(dispatcher);
+				LockSupport.parkNanos(BLOCK_PARK_NANOS);
+			}
+			break;
+		case SPILL:
+			spill(event);
+			break;
+		default:
+			dropped.increment();
+		}
+	}
+
+	public NotificationStats getStats() {
+		return NotificationStats.builder().backpressure(backpressure).queueDepth(queue.size())
+				.queueCapacity(queue.capacity()).enqueued(enqueued.sum()).dropped(dropped.sum())
+				.spilled(spilled.sum()).dispatched(dispatched).notificationsSent(notificationsSent)
+				.lastDispatchLagMillis(lastDispatchLagMillis).maxDispatchLagMillis(maxDispatchLagMillis).build();
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		running = false;
+		LockSupport.unpark(dispatcher);
+		dispatcher.join(TimeUnit.SECONDS.toMillis(5));
+		synchronized (spillLock) {
+			if (spillOut != null) {
+				spillOut.close();
+				spillOut = null;
+			}
+		}
+	}
+
+	private void run() {
+		List<TransferEvent> batch = new ArrayList<>(batchSize);
+		while (running || !queue.isEmpty()) {
+			drainTo(batch);
+			if (batch.size() < batchSize && running) {
+				// Give concurrent transfers of the same accounts a chance to be coalesced.
+				LockSupport.parkNanos(this, flushIntervalNanos);
+				drainTo(batch);
+			}
+			if (!batch.isEmpty()) {
+				dispatch(batch);
+				batch.clear();
+			} else if (spilling) {
+				replaySpill();
+			}
+		}
+	}
+
+	private void drainTo(List<TransferEvent> batch) {
+		TransferEvent event;
+		while (batch.size() < batchSize && (event = queue.poll()) != null) {
+			batch.add(event);
+		}
+	}
+
+	private void dispatch(List<TransferEvent> batch) {
+		long started = System.nanoTime();
+		long now = System.currentTimeMillis();
+		long lag = 0;
+		Map<String, StringBuilder> texts = new LinkedHashMap<>();
+		for (TransferEvent event : batch) {
+			lag = Math.max(lag, now - event.getTimestamp());
+			describe(texts, event, event.getAccountFrom());
+			describe(texts, event, event.getAccountTo());
+		}
+
+		long sent = 0;
+		for (Map.Entry<String, StringBuilder> text : texts.entrySet()) {
+			Account account = repository.getAccount(text.getKey());
+			if (account == null) {
+				continue;
+			}
+			try {
+				notificationService.notifyAboutTransfer(account, text.getValue().toString());
+				sent++;
+			} catch (RuntimeException e) {
+				log.warn("Notification to owner of {} failed", text.getKey(), e);
+			}
+		}
+
+		dispatched += batch.size();
+		notificationsSent += sent;
+		lastDispatchLagMillis = lag;
+		maxDispatchLagMillis = Math.max(maxDispatchLagMillis, lag);
+		metrics.recordNotificationDispatch(System.nanoTime() - started);
+	}
+
+	private static void describe(Map<String, StringBuilder> texts, TransferEvent event, String accountId) {
+		StringBuilder text = texts.get(accountId);
+		if (text == null) {
+			text = new StringBuilder();
+			texts.put(accountId, text);
+		} else {
+			text.append(' ');
+		}
+		TransferDescriptions.append(text, event, accountId);
+	}
+
+	private void spill(TransferEvent event) {
+		synchronized (spillLock) {
+			try {
+				if (spillOut == null) {
+					Path directory = spillFile.toAbsolutePath().getParent();
+					if (directory != null) {
+						Files.createDirectories(directory);
+					}
+					boolean empty = !Files.exists(spillFile) || Files.size(spillFile) == 0;
+					spillOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile,
+							StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+					if (empty) {
+						spillOut.writeInt(SPILL_MAGIC);
+						spillOut.writeInt(SPILL_VERSION);
+					}
+				}
+				spillOut.writeUTF(event.getAccountFrom());
+				spillOut.writeUTF(event.getAccountTo());
+				spillOut.writeLong(event.getAmountUnits());
+				spillOut.writeLong(event.getCreditUnits());
+				spillOut.writeLong(event.getTimestamp());
+				spilling = true;
+				spilled.increment();
+			} catch (IOException e) {
+				log.error("Spilling notification to {} failed", spillFile, e);
+				dropped.increment();
+			}
+		}
+	}
+
+	/**
+	 * Moves the spill file aside and delivers its events. Producers start using
+	 * the queue again as soon as the file was moved.
+	 */
+	private void replaySpill() {
+		synchronized (spillLock) {
+			try {
+				if (spillOut != null) {
+					spillOut.close();
+					spillOut = null;
+				}
+				Files.move(spillFile, replayFile, StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException e) {
+				log.error("Moving notification spill file {} failed", spillFile, e);
+				return;
+			} finally {
+				spilling = false;
+			}
+		}
+
+		List<TransferEvent> batch = new ArrayList<>(batchSize);
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(replayFile)))) {
+			// Checked when the file was opened for appending or at startup.
+			in.readInt();
+			in.readInt();
+			while (true) {
+				String accountFrom;
+				try {
+					accountFrom = in.readUTF();
+				} catch (EOFException eof) {
+					break;
+				}
+				batch.add(new TransferEvent(accountFrom, in.readUTF(), in.readLong(), in.readLong(), in.readLong()));
+				if (batch.size() == batchSize) {
+					dispatch(batch);
+					batch.clear();
+				}
+			}
+			if (!batch.isEmpty()) {
+				dispatch(batch);
+			}
+			Files.delete(replayFile);
+		} catch (IOException e) {
+			log.error("Replaying notification spill file {} failed", replayFile, e);
+		}
+	}
+
+	/**
+	 * Checks the header of a spill file left by an earlier run and moves the
+	 * file aside if it doesn't have the current layout.
+	 *
+	 * @return whether the file is to be replayed
+	 */
+	private boolean checkSpillFile() {
+		int magic = 0;
+		int version = 0;
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(spillFile))) {
+			magic = in.readInt();
+			version = in.readInt();
+		} catch (EOFException e) {
+			// Too short for a header, rejected below unless empty.
+		} catch (IOException e) {
+			log.error("Reading notification spill file {} failed", spillFile, e);
+			return false;
+		}
+		if (magic == SPILL_MAGIC && version == SPILL_VERSION) {
+			return true;
+		}
+		Path rejected = Paths.get(spillFile + ".rejected");
+		try {
+			Files.move(spillFile, rejected, StandardCopyOption.REPLACE_EXISTING);
+			log.error("Notification spill file {} has an unknown format (magic {}, version {}), moved it to {}"
+					+ " without delivering it", spillFile, Integer.toHexString(magic), version, rejected);
+		} catch (IOException e) {
+			log.error("Moving unreadable notification spill file {} aside failed", spillFile, e);
+		}
+		return false;
+	}
+}
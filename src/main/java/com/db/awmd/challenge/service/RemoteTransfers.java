@@ -0,0 +1,38 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountNumberException;
+
+/**
+ * Transfers to accounts held by another node of a cluster. Without clustering
+ * every account is local and {@link #NONE} is used.
+ */
+public interface RemoteTransfers {
+
+	RemoteTransfers NONE = new RemoteTransfers() {
+
+		@Override
+		public boolean isRemote(String accountId) {
+			return false;
+		}
+
+		@Override
+		public void transfer(Account accountFrom, String accountToId, long amountUnits) {
+			throw new IllegalStateException("Account " + accountToId + " is not remote");
+		}
+	};
+
+	boolean isRemote(String accountId);
+
+	/**
+	 * Moves {@code amountUnits} from the local {@code accountFrom} to the remote
+	 * account, either completely or not at all. Both accounts must hold the same
+	 * currency.
+	 *
+	 * @throws InsufficientBalanceException  if {@code accountFrom} can't cover
+	 *                                       the amount
+	 * @throws InvalidAccountNumberException if the remote account doesn't exist
+	 */
+	void transfer(Account accountFrom, String accountToId, long amountUnits);
+}
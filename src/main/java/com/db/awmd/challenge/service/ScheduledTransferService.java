@@ -0,0 +1,299 @@
+package com.db.awmd.challenge.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.domain.TransferItemResult;
+import com.db.awmd.challenge.domain.TransferItemResult.Status;
+import com.db.awmd.challenge.engine.TimingWheel;
+import com.db.awmd.challenge.engine.TimingWheel.Timeout;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.ScheduledTransferNotFoundException;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Future-dated transfers such as standing orders and end-of-day sweeps.
+ * <p>
+ * Pending transfers live in a {@link TimingWheel} owned by one scheduler
+ * thread, so a pending transfer costs a few objects rather than a thread or an
+ * executor task. Request threads hand new transfers and cancellations to the
+ * scheduler through queues; every tick the scheduler files them and advances
+ * the wheel. The transfers that came due are handed in batches of at most
+ * {@link BatchTransferService#getMaxBatchSize()} to a fixed pool of executor
+ * threads, which run each batch best effort through
+ * {@link BatchTransferService#transferBatch(List, BatchMode)}. The scheduler
+ * thread never waits for a transfer, so a large sweep coming due doesn't delay
+ * later ticks or cancellations. A transfer leaves the pending state once, when
+ * it comes due, so it is never executed twice.
+ * <p>
+ * Pending transfers are held in memory only and are lost on shutdown.
+ */
+@Slf4j
+@Service
+public class ScheduledTransferService implements InitializingBean, DisposableBean {
+
+	public static final long DEFAULT_TICK_MILLIS = 100;
+
+	public static final int DEFAULT_MAX_PENDING = 10_000_000;
+
+	public static final int DEFAULT_THREADS = 4;
+
+	private static final int PENDING = 0;
+
+	private static final int CANCELLED = 1;
+
+	private static final int DUE = 2;
+
+	private final BatchTransferService batchTransferService;
+
+	private final AccountsRepository repository;
+
+	private final TimingWheel<Item> wheel;
+
+	private final int maxPending;
+
+	private final AtomicLong ids = new AtomicLong();
+
+	private final Map<Long, Item> pending = new ConcurrentHashMap<>();
+
+	private final Map<String, Set<Item>> pendingByAccount = new ConcurrentHashMap<>();
+
+	private final Queue<Item> submitted = new ConcurrentLinkedQueue<>();
+
+	private final Queue<Item> cancelled = new ConcurrentLinkedQueue<>();
+
+	private final Thread scheduler;
+
+	/**
+	 * Runs the due batches. Its queue holds at most the pending transfers, which
+	 * {@code maxPending} bounds.
+	 */
+	private final ThreadPoolExecutor executor;
+
+	private volatile boolean running = true;
+
+	public ScheduledTransferService(BatchTransferService batchTransferService, AccountsRepository repository,
+			long tickMillis, int maxPending) {
+		this(batchTransferService, repository, tickMillis, maxPending, DEFAULT_THREADS);
+	}
+
+	/**
+	 * @param threads batches of due transfers executed at once
+	 */
+	@Autowired
+	public ScheduledTransferService(BatchTransferService batchTransferService, AccountsRepository repository,
+			@Value("${transfer.scheduled.tick-ms:" + DEFAULT_TICK_MILLIS + "}") long tickMillis,
+			@Value("${transfer.scheduled.max-pending:" + DEFAULT_MAX_PENDING + "}") int maxPending,
+			@Value("${transfer.scheduled.threads:" + DEFAULT_THREADS + "}") int threads) {
+		this.batchTransferService = batchTransferService;
+		this.repository = repository;
+		this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+		this.maxPending = maxPending;
+		this.scheduler = new Thread(this::run, "transfer-scheduler");
+		this.scheduler.setDaemon(true);
+		AtomicInteger created = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+				task -> {
+					Thread thread = new Thread(task, "scheduled-transfer-" + created.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	/**
+	 * Starts the scheduler once the bean is fully constructed.
+	 */
+	@Override
+	public void afterPropertiesSet() {
+		scheduler.start();
+	}
+
+	/**
+	 * Validates and schedules a transfer, returning it with its id. The accounts
+	 * and amount are checked now and again when the transfer executes.
+	 */
+	public ScheduledTransfer schedule(ScheduledTransfer request) {
+		TransferValidator.validateAmount(request.getAmount());
+		TransferValidator.validateAccounts(request.getAccountFrom(), repository.getAccount(request.getAccountFrom()),
+				request.getAccountTo(), repository.getAccount(request.getAccountTo()));
+		if (request.getExecuteAt() == null) {
+			throw new IllegalOperationException("Execution time is required.");
+		}
+		if (pending.size() >= maxPending) {
+			throw new IllegalOperationException("At most " + maxPending + " transfers can be scheduled.");
+		}
+
+		ScheduledTransfer transfer = ScheduledTransfer.builder().id(ids.incrementAndGet())
+				.accountFrom(request.getAccountFrom()).accountTo(request.getAccountTo()).amount(request.getAmount())
+				.executeAt(request.getExecuteAt()).build();
+		Item item = new Item(transfer);
+		pending.put(transfer.getId(), item);
+		index(transfer.getAccountFrom(), item);
+		index(transfer.getAccountTo(), item);
+		submitted.offer(item);
+		LockSupport.unpark(scheduler);
+		return transfer;
+	}
+
+	/**
+	 * Cancels a transfer that has not started executing yet.
+	 */
+	public void cancel(long id) {
+		Item item = pending.get(id);
+		if (item == null || !item.state.compareAndSet(PENDING, CANCELLED)) {
+			throw new ScheduledTransferNotFoundException("Scheduled transfer " + id + " is not pending");
+		}
+		forget(item);
+		cancelled.offer(item);
+		LockSupport.unpark(scheduler);
+	}
+
+	/**
+	 * Pending transfers from or to the account, earliest first.
+	 */
+	public List<ScheduledTransfer> getPending(String accountId) {
+		Set<Item> items = pendingByAccount.get(accountId);
+		if (items == null) {
+			return Collections.emptyList();
+		}
+		List<ScheduledTransfer> transfers = new ArrayList<>(items.size());
+		for (Item item : items) {
+			transfers.add(item.transfer);
+		}
+		transfers.sort(Comparator.comparing(ScheduledTransfer::getExecuteAt).thenComparing(ScheduledTransfer::getId));
+		return transfers;
+	}
+
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		running = false;
+		LockSupport.unpark(scheduler);
+		scheduler.join(TimeUnit.SECONDS.toMillis(5));
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		if (!pending.isEmpty()) {
+			log.warn("Discarding {} scheduled transfers on shutdown", pending.size());
+		}
+	}
+
+	private void run() {
+		int batchSize = batchTransferService.getMaxBatchSize();
+		List<List<ScheduledTransfer>> batches = new ArrayList<>();
+		while (running) {
+			Item item;
+			while ((item = submitted.poll()) != null) {
+				if (item.state.get() == PENDING) {
+					item.timeout = wheel.schedule(item, item.transfer.getExecuteAt());
+				}
+			}
+			while ((item = cancelled.poll()) != null) {
+				if (item.timeout != null) {
+					wheel.cancel(item.timeout);
+				}
+			}
+
+			wheel.advance(System.currentTimeMillis(), expired -> {
+				if (expired.state.compareAndSet(PENDING, DUE)) {
+					forget(expired);
+					if (batches.isEmpty() || batches.get(batches.size() - 1).size() == batchSize) {
+						batches.add(new ArrayList<>(batchSize));
+					}
+					batches.get(batches.size() - 1).add(expired.transfer);
+				}
+			});
+			for (List<ScheduledTransfer> batch : batches) {
+				executor.execute(() -> execute(batch));
+			}
+			batches.clear();
+
+			long sleepMillis = wheel.nextTickMillis() - System.currentTimeMillis();
+			if (sleepMillis > 0 && submitted.isEmpty() && cancelled.isEmpty()) {
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(sleepMillis));
+			}
+		}
+	}
+
+	private void execute(List<ScheduledTransfer> transfers) {
+		List<FundTransfer> batch = new ArrayList<>(transfers.size());
+		for (ScheduledTransfer transfer : transfers) {
+			batch.add(new FundTransfer(transfer.getAccountFrom(), transfer.getAccountTo(), transfer.getAmount(),
+					"scheduled-" + transfer.getId()));
+		}
+		try {
+			BatchTransferResult result = batchTransferService.transferBatch(batch, BatchMode.BEST_EFFORT);
+			for (TransferItemResult item : result.getResults()) {
+				if (item.getStatus() != Status.SUCCESS) {
+					ScheduledTransfer transfer = transfers.get(item.getIndex());
+					log.warn("Scheduled transfer {} from {} to {} failed: {}", transfer.getId(),
+							transfer.getAccountFrom(), transfer.getAccountTo(), item.getMessage());
+				}
+			}
+		} catch (RuntimeException e) {
+			log.warn("Batch of {} scheduled transfers failed: {}", transfers.size(), e.getMessage());
+		}
+	}
+
+	private void index(String accountId, Item item) {
+		pendingByAccount.compute(accountId, (id, items) -> {
+			Set<Item> updated = items != null ? items : ConcurrentHashMap.newKeySet();
+			updated.add(item);
+			return updated;
+		});
+	}
+
+	private void forget(Item item) {
+		pending.remove(item.transfer.getId());
+		unindex(item.transfer.getAccountFrom(), item);
+		unindex(item.transfer.getAccountTo(), item);
+	}
+
+	private void unindex(String accountId, Item item) {
+		pendingByAccount.computeIfPresent(accountId, (id, items) -> {
+			items.remove(item);
+			return items.isEmpty() ? null : items;
+		});
+	}
+
+	private static final class Item {
+
+		private final ScheduledTransfer transfer;
+
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+
+		/** Handle in the wheel, only accessed by the scheduler thread. */
+		private Timeout<Item> timeout;
+
+		private Item(ScheduledTransfer transfer) {
+			this.transfer = transfer;
+		}
+	}
+}
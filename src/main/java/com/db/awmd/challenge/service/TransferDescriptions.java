@@ -0,0 +1,28 @@
+package com.db.awmd.challenge.service;
+
+import com.db.awmd.challenge.domain.Amounts;
+import com.db.awmd.challenge.domain.TransferEvent;
+
+/**
+ * Builds the human readable notification text of a transfer. Text is only
+ * produced when a notification is actually delivered, never on the transfer
+ * path itself.
+ */
+public final class TransferDescriptions {
+
+	private TransferDescriptions() {
+	}
+
+	/**
+	 * Appends the description of {@code event} as seen by the owner of
+	 * {@code accountId}, which must be one of the two parties.
+	 */
+	public static StringBuilder append(StringBuilder text, TransferEvent event, String accountId) {
+		if (accountId.equals(event.getAccountFrom())) {
+			text.append(Amounts.toDecimal(event.getAmountUnits()).toPlainString());
+			return text.append(" transferred to ").append(event.getAccountTo()).append('.');
+		}
+		text.append(Amounts.toDecimal(event.getCreditUnits()).toPlainString());
+		return text.append(" amount received from ").append(event.getAccountFrom()).append('.');
+	}
+}
@@ -0,0 +1,74 @@
+package com.db.awmd.challenge.service;
+
+import java.math.BigDecimal;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.Amounts;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.InvalidAccountNumberException;
+
+/**
+ * Checks shared by every transfer entry point, so that single, batch and
+ * multi-leg transfers reject invalid input with the same messages.
+ */
+public final class TransferValidator {
+
+	private static final IllegalOperationException AMOUNT_REQUIRED = new IllegalOperationException(
+			"Transfer amount is required.");
+
+	private static final IllegalOperationException AMOUNT_ZERO = new IllegalOperationException(
+			"Transfer amount should be greater than zero.");
+
+	private static final IllegalOperationException AMOUNT_NEGATIVE = new IllegalOperationException(
+			"Negative amount can not be transferred");
+
+	private static final InvalidAccountNumberException SAME_ACCOUNT = new InvalidAccountNumberException(
+			"Money transfer between same account is not allowed");
+
+	private TransferValidator() {
+	}
+
+	/**
+	 * Validates a transfer amount and returns it in minor units.
+	 */
+	public static long validateAmount(BigDecimal amount) {
+		if (amount == null) {
+			throw AMOUNT_REQUIRED;
+		}
+
+		if (amount.signum() == 0) {
+			throw AMOUNT_ZERO;
+		}
+
+		long amountUnits = Amounts.toUnits(amount);
+		if (amountUnits < 0) {
+			throw AMOUNT_NEGATIVE;
+		}
+		return amountUnits;
+	}
+
+	public static void validateAccounts(final FundTransfer fundTransfer, Account accountFrom, Account accountTo) {
+		validateAccounts(fundTransfer.getAccountFrom(), accountFrom, fundTransfer.getAccountTo(), accountTo);
+	}
+
+	/**
+	 * Checks that both looked up accounts exist and differ. Unlike the other
+	 * rejections, that of an unknown account is created per call: its message
+	 * names the account, which the client needs to tell which id was wrong.
+	 */
+	public static void validateAccounts(String accountFromId, Account accountFrom, String accountToId,
+			Account accountTo) {
+		if (accountFrom == null) {
+			throw new InvalidAccountNumberException(accountFromId + " account doesn't exist");
+		}
+
+		if (accountTo == null) {
+			throw new InvalidAccountNumberException(accountToId + " account doesn't exist");
+		}
+
+		if (accountFrom.getAccountId().equalsIgnoreCase(accountTo.getAccountId())) {
+			throw SAME_ACCOUNT;
+		}
+	}
+}
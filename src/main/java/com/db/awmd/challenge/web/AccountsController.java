@@ -1,8 +1,22 @@
 package com.db.awmd.challenge.web;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AccountImportResult;
+import com.db.awmd.challenge.domain.AccountSnapshot;
+import com.db.awmd.challenge.domain.TransactionPage;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InvalidAccountNumberException;
+import com.db.awmd.challenge.history.TransactionHistory;
+import com.db.awmd.challenge.service.AccountImportService;
+import com.db.awmd.challenge.service.AccountImportService.Format;
 import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,6 +28,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -21,11 +36,23 @@ import org.springframework.web.bind.annotation.RestController;
 @Slf4j
 public class AccountsController {
 
+	public static final String TEXT_CSV_VALUE = "text/csv";
+
 	private final AccountsService accountsService;
 
+	private final TransactionHistory transactionHistory;
+
+	private final AccountImportService accountImportService;
+
+	private final ObjectMapper objectMapper;
+
 	@Autowired
-	public AccountsController(AccountsService accountsService) {
+	public AccountsController(AccountsService accountsService, TransactionHistory transactionHistory,
+			AccountImportService accountImportService, ObjectMapper objectMapper) {
 		this.accountsService = accountsService;
+		this.transactionHistory = transactionHistory;
+		this.accountImportService = accountImportService;
+		this.objectMapper = objectMapper;
 	}
 
 	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -41,10 +68,65 @@ public class AccountsController {
 		return new ResponseEntity<>(HttpStatus.CREATED);
 	}
 
+	/**
+	 * Creates accounts from an NDJSON upload. The response is an NDJSON stream of
+	 * one error per rejected line, followed by the {@link AccountImportResult}.
+	 */
+	@PostMapping(path = "/bulk", consumes = FundTransferController.APPLICATION_NDJSON_VALUE)
+	public void importAccountsNdjson(InputStream body, HttpServletResponse response) throws IOException {
+		importAccounts(body, Format.NDJSON, response);
+	}
+
+	@PostMapping(path = "/bulk", consumes = TEXT_CSV_VALUE)
+	public void importAccountsCsv(InputStream body, HttpServletResponse response) throws IOException {
+		importAccounts(body, Format.CSV, response);
+	}
+
 	@GetMapping(path = "/{accountId}")
-	public Account getAccount(@PathVariable String accountId) {
+	public AccountSnapshot getAccount(@PathVariable String accountId) {
 		log.info("Retrieving account for id {}", accountId);
-		return this.accountsService.getAccount(accountId);
+		return this.accountsService.getSnapshot(accountId);
+	}
+
+	/**
+	 * Snapshots of many accounts in one call, e.g. {@code ?ids=Id-1,Id-2}. Unknown
+	 * ids are left out.
+	 */
+	@GetMapping(params = "ids")
+	public List<AccountSnapshot> getAccounts(@RequestParam List<String> ids) {
+		return this.accountsService.getSnapshots(ids);
+	}
+
+	@GetMapping(path = "/{accountId}/transactions")
+	public TransactionPage getTransactions(@PathVariable String accountId, @RequestParam(required = false) Long from,
+			@RequestParam(required = false) Long to, @RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "100") int limit) {
+		if (this.accountsService.getAccount(accountId) == null) {
+			throw new InvalidAccountNumberException(accountId + " account doesn't exist");
+		}
+		return this.transactionHistory.query(accountId, from, to, cursor, limit);
+	}
+
+	private void importAccounts(InputStream body, Format format, HttpServletResponse response) throws IOException {
+		response.setContentType(FundTransferController.APPLICATION_NDJSON_VALUE);
+		OutputStream out = response.getOutputStream();
+		try {
+			AccountImportResult result = this.accountImportService.importAccounts(body, format, error -> {
+				try {
+					writeLine(out, error);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			writeLine(out, result);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void writeLine(OutputStream out, Object value) throws IOException {
+		out.write(this.objectMapper.writeValueAsBytes(value));
+		out.write('\n');
 	}
 
 }
@@ -0,0 +1,96 @@
+package com.db.awmd.challenge.web;
+
+import java.util.Optional;
+
+import javax.validation.Valid;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.db.awmd.challenge.audit.LedgerAuditor;
+import com.db.awmd.challenge.domain.AuditReport;
+import com.db.awmd.challenge.domain.FxRateTable;
+import com.db.awmd.challenge.domain.NotificationStats;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.fx.ExchangeRates;
+import com.db.awmd.challenge.service.NotificationDispatcher;
+
+import lombok.extern.slf4j.Slf4j;
+
+@RestController
+@RequestMapping("/v1/admin")
+@Slf4j
+public class AdminController {
+
+	private final NotificationDispatcher notificationDispatcher;
+
+	private final Optional<LedgerAuditor> ledgerAuditor;
+
+	private final ExchangeRates exchangeRates;
+
+	@Autowired
+	public AdminController(NotificationDispatcher notificationDispatcher, Optional<LedgerAuditor> ledgerAuditor,
+			ExchangeRates exchangeRates) {
+		this.notificationDispatcher = notificationDispatcher;
+		this.ledgerAuditor = ledgerAuditor;
+		this.exchangeRates = exchangeRates;
+	}
+
+	@GetMapping(path = "/notifications")
+	public NotificationStats getNotificationStats() {
+		return notificationDispatcher.getStats();
+	}
+
+	/**
+	 * Report of the latest ledger audit, no content before the first one.
+	 */
+	@GetMapping(path = "/audit")
+	public ResponseEntity<AuditReport> getAuditReport() {
+		AuditReport report = auditor().getLastReport();
+		return report == null ? ResponseEntity.noContent().build() : ResponseEntity.ok(report);
+	}
+
+	/**
+	 * Runs a ledger audit now and answers with its report.
+	 */
+	@PostMapping(path = "/audit")
+	public AuditReport audit() throws InterruptedException {
+		log.info("Ledger audit requested");
+		return auditor().audit();
+	}
+
+	@GetMapping(path = "/fx-rates")
+	public FxRateTable getExchangeRates() {
+		return exchangeRates.getRates().toTable();
+	}
+
+	/**
+	 * Replaces all exchange rates; transfers already running keep the rates they
+	 * started with.
+	 */
+	@PutMapping(path = "/fx-rates")
+	public FxRateTable updateExchangeRates(@RequestBody @Valid FxRateTable table) {
+		log.info("Updating exchange rates {}", table);
+		return exchangeRates.update(table).toTable();
+	}
+
+	/**
+	 * Reads the exchange rates from the configured file again.
+	 */
+	@PostMapping(path = "/fx-rates/reload")
+	public FxRateTable reloadExchangeRates() {
+		log.info("Exchange rate reload requested");
+		return exchangeRates.reload().toTable();
+	}
+
+	private LedgerAuditor auditor() {
+		return ledgerAuditor.orElseThrow(() -> new IllegalOperationException("Ledger audit is disabled."));
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.db.awmd.challenge.web;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.db.awmd.challenge.cluster.ClusterClient;
+import com.db.awmd.challenge.cluster.TransferParticipant;
+import com.db.awmd.challenge.domain.ExceptionResponse;
+import com.db.awmd.challenge.domain.RemoteCredit;
+import com.db.awmd.challenge.exception.InvalidAccountNumberException;
+
+/**
+ * Node-to-node endpoints of the cross-node transfer protocol. The
+ * {@link com.db.awmd.challenge.cluster.ClusterRoutingFilter} refuses requests
+ * that don't come from the host of the node they name, so the coordinator id a
+ * prepare carries is the node that sent it.
+ */
+@RestController
+@RequestMapping("/internal/cluster/transactions/{txId}")
+@ConditionalOnProperty(name = "cluster.enabled", havingValue = "true")
+public class ClusterController {
+
+	private final TransferParticipant participant;
+
+	@Autowired
+	public ClusterController(TransferParticipant participant) {
+		this.participant = participant;
+	}
+
+	@PostMapping(path = "/prepare", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> prepare(@PathVariable String txId, @RequestBody RemoteCredit credit,
+			@RequestHeader(ClusterClient.FORWARDED_HEADER) String coordinatorNodeId) {
+		participant.prepare(txId, coordinatorNodeId, credit);
+
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+	/**
+	 * Tells the coordinator the account is missing by status, since other
+	 * refusals of a prepare are 400 as well.
+	 */
+	@ExceptionHandler({ InvalidAccountNumberException.class })
+	public ResponseEntity<ExceptionResponse> invalidAccountException(InvalidAccountNumberException ex) {
+		ExceptionResponse exceptionResponse = ExceptionResponse.builder().httpStatus(HttpStatus.NOT_FOUND.value())
+				.message(ex.getMessage()).build();
+
+		return new ResponseEntity<>(exceptionResponse, HttpStatus.NOT_FOUND);
+	}
+
+	@PostMapping(path = "/commit")
+	public ResponseEntity<Object> commit(@PathVariable String txId) {
+		participant.commit(txId);
+
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+	@PostMapping(path = "/abort")
+	public ResponseEntity<Object> abort(@PathVariable String txId) {
+		participant.abort(txId);
+
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
+
+}
@@ -0,0 +1,20 @@
+package com.db.awmd.challenge.web;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Tells requests relayed by a trusted peer (another node of a cluster) apart
+ * from requests of clients, which must not be able to pick the identity they
+ * are rate-limited under. Without clustering no request is relayed and
+ * {@link #NONE} is used.
+ */
+public interface ForwardingPeers {
+
+	ForwardingPeers NONE = request -> false;
+
+	/**
+	 * Whether {@code request} was forwarded by a trusted peer, which then names
+	 * the original client in {@link FundTransferController#CLIENT_ID_HEADER}.
+	 */
+	boolean isTrusted(HttpServletRequest request);
+}
@@ -1,21 +1,43 @@
 package com.db.awmd.challenge.web;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.db.awmd.challenge.admission.AdmissionControl;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
 import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.IllegalOperationException;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BatchTransferService;
 import com.db.awmd.challenge.service.FundTransferService;
+import com.db.awmd.challenge.service.MultiLegTransferService;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -24,19 +46,205 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class FundTransferController {
 
+	public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+	public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+	/**
+	 * Original client of a request forwarded by a cluster node, for rate
+	 * limiting. Ignored unless the request comes from a trusted node; clients
+	 * are otherwise identified by their remote address.
+	 */
+	public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
 	private final FundTransferService moneyTransferService;
 
+	private final BatchTransferService batchTransferService;
+
+	private final MultiLegTransferService multiLegTransferService;
+
+	private final AdmissionControl admissionControl;
+
+	private final ObjectMapper objectMapper;
+
+	private final ForwardingPeers forwardingPeers;
+
+	/**
+	 * @param forwardingPeers present in a cluster, where requests forwarded by
+	 *                        another node are rate-limited as their original
+	 *                        client
+	 */
 	@Autowired
-	public FundTransferController(FundTransferService moneyTransferService) {
+	public FundTransferController(FundTransferService moneyTransferService, BatchTransferService batchTransferService,
+			MultiLegTransferService multiLegTransferService, AdmissionControl admissionControl,
+			ObjectMapper objectMapper, Optional<ForwardingPeers> forwardingPeers) {
 		this.moneyTransferService = moneyTransferService;
+		this.batchTransferService = batchTransferService;
+		this.multiLegTransferService = multiLegTransferService;
+		this.admissionControl = admissionControl;
+		this.objectMapper = objectMapper;
+		this.forwardingPeers = forwardingPeers.orElse(ForwardingPeers.NONE);
 	}
 
-	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-	public ResponseEntity<Object> transferFund(@RequestBody @Valid FundTransfer fundTransfer) {
+	@PostMapping(path = "/multi-leg", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<Object> transferMultiLeg(@RequestBody @Valid MultiLegTransfer transfer,
+			HttpServletRequest request) {
+		long admitted = admissionControl.admit(clientOf(request), transfer.getAccountFrom());
+		try {
+			multiLegTransferService.transfer(transfer);
+		} finally {
+			admissionControl.release(admitted);
+		}
 
-		moneyTransferService.transferFund(fundTransfer);
+		return new ResponseEntity<>("Money successfully transferred.", HttpStatus.OK);
+	}
+
+	@PostMapping(path = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<BatchTransferResult> transferBatch(@RequestBody List<FundTransfer> transfers,
+			@RequestParam(defaultValue = "BEST_EFFORT") BatchMode mode, HttpServletRequest request) {
+
+		long admitted = admissionControl.admit(clientOf(request), null);
+		try {
+			admitDebits(transfers);
+			return batchResponse(batchTransferService.transferBatch(transfers, mode));
+		} finally {
+			admissionControl.release(admitted);
+		}
+	}
+
+	@PostMapping(path = "/batch", consumes = APPLICATION_NDJSON_VALUE)
+	public ResponseEntity<BatchTransferResult> transferBatchStream(InputStream body,
+			@RequestParam(defaultValue = "BEST_EFFORT") BatchMode mode, HttpServletRequest request)
+			throws IOException {
+
+		long admitted = admissionControl.admit(clientOf(request), null);
+		try {
+			// Read no further than the batch limit, so an oversized stream is never held in memory.
+			int maxBatchSize = batchTransferService.getMaxBatchSize();
+			List<FundTransfer> transfers = new ArrayList<>();
+			try (MappingIterator<FundTransfer> lines = objectMapper.readerFor(FundTransfer.class).readValues(body)) {
+				while (lines.hasNextValue()) {
+					if (transfers.size() == maxBatchSize) {
+						throw new IllegalOperationException(BatchTransferService.tooLarge(maxBatchSize));
+					}
+					transfers.add(lines.nextValue());
+				}
+			}
+			admitDebits(transfers);
+			return batchResponse(batchTransferService.transferBatch(transfers, mode));
+		} finally {
+			admissionControl.release(admitted);
+		}
+	}
+
+	/**
+	 * Checks a single transfer and admits it on the thread that received it.
+	 *
+	 * @return the admission time to pass to {@link #transfer(FundTransfer, long)}
+	 */
+	long admit(FundTransfer fundTransfer, String idempotencyKey, HttpServletRequest request) {
+		if (idempotencyKey != null) {
+			if (fundTransfer.getTransferId() != null && !fundTransfer.getTransferId().equals(idempotencyKey)) {
+				throw new IllegalOperationException("Transfer id and " + IDEMPOTENCY_KEY_HEADER + " header differ.");
+			}
+			fundTransfer.setTransferId(idempotencyKey);
+		}
+		return admissionControl.admit(clientOf(request), fundTransfer.getAccountFrom());
+	}
+
+	/**
+	 * Runs a single transfer admitted at {@code admitted}.
+	 */
+	ResponseEntity<Object> transfer(FundTransfer fundTransfer, long admitted) {
+		try {
+			moneyTransferService.transferFund(fundTransfer);
+		} finally {
+			admissionControl.release(admitted);
+		}
 
 		return new ResponseEntity<>("Money successfully transferred.", HttpStatus.OK);
 	}
 
+	/**
+	 * Charges each source account of a batch one token per transfer out of it,
+	 * so a batch can't move more out of an account than single requests could.
+	 */
+	private void admitDebits(List<FundTransfer> transfers) {
+		Map<String, Integer> debits = new HashMap<>();
+		for (FundTransfer transfer : transfers) {
+			if (transfer != null && transfer.getAccountFrom() != null) {
+				debits.merge(transfer.getAccountFrom(), 1, Integer::sum);
+			}
+		}
+		admissionControl.admitDebits(debits);
+	}
+
+	private String clientOf(HttpServletRequest request) {
+		String clientId = request.getHeader(CLIENT_ID_HEADER);
+		return clientId != null && forwardingPeers.isTrusted(request) ? clientId : request.getRemoteAddr();
+	}
+
+	private ResponseEntity<BatchTransferResult> batchResponse(BatchTransferResult result) {
+		boolean rolledBack = result.getMode() == BatchMode.ALL_OR_NOTHING && result.getFailed() > 0;
+		return new ResponseEntity<>(result, rolledBack ? HttpStatus.BAD_REQUEST : HttpStatus.OK);
+	}
+
+	/**
+	 * Serves single transfers on the container thread that received them, the
+	 * default {@code web.execution-mode}.
+	 */
+	@RestController
+	@RequestMapping("/v1/transfer")
+	@ConditionalOnProperty(name = "web.execution-mode", havingValue = "blocking", matchIfMissing = true)
+	public static class BlockingTransfers {
+
+		private final FundTransferController controller;
+
+		@Autowired
+		public BlockingTransfers(FundTransferController controller) {
+			this.controller = controller;
+		}
+
+		@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+		public ResponseEntity<Object> transferFund(@RequestBody @Valid FundTransfer fundTransfer,
+				@RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+				HttpServletRequest request) {
+			return controller.transfer(fundTransfer, controller.admit(fundTransfer, idempotencyKey, request));
+		}
+	}
+
+	/**
+	 * Serves single transfers with servlet async processing: the request is
+	 * admitted on the container thread, which is then released while the
+	 * transfer runs on the {@link TransferRequestExecutor}.
+	 */
+	@RestController
+	@RequestMapping("/v1/transfer")
+	@ConditionalOnProperty(name = "web.execution-mode", havingValue = "async")
+	public static class AsyncTransfers {
+
+		private final FundTransferController controller;
+
+		private final TransferRequestExecutor requestExecutor;
+
+		@Autowired
+		public AsyncTransfers(FundTransferController controller, TransferRequestExecutor requestExecutor) {
+			this.controller = controller;
+			this.requestExecutor = requestExecutor;
+		}
+
+		@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+		public CompletableFuture<ResponseEntity<Object>> transferFund(@RequestBody @Valid FundTransfer fundTransfer,
+				@RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+				HttpServletRequest request) {
+			long admitted = controller.admit(fundTransfer, idempotencyKey, request);
+			try {
+				return requestExecutor.submit(() -> controller.transfer(fundTransfer, admitted));
+			} catch (RuntimeException e) {
+				controller.admissionControl.release(admitted);
+				throw e;
+			}
+		}
+	}
+
 }
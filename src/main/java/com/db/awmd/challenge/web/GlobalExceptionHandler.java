@@ -2,6 +2,7 @@ package com.db.awmd.challenge.web;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -9,9 +10,15 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
 import com.db.awmd.challenge.domain.ExceptionResponse;
+import com.db.awmd.challenge.exception.IdempotencyKeyConflictException;
 import com.db.awmd.challenge.exception.InvalidAccountNumberException;
 import com.db.awmd.challenge.exception.InsufficientBalanceException;
 import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.LockAcquisitionTimeoutException;
+import com.db.awmd.challenge.exception.NodeUnavailableException;
+import com.db.awmd.challenge.exception.ScheduledTransferNotFoundException;
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.exception.TransferRuleViolationException;
 
 @ControllerAdvice
 public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
@@ -46,4 +53,65 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
 		return new ResponseEntity(exceptionResponse, HttpStatus.BAD_REQUEST);
 	}
 
+	@ExceptionHandler({ LockAcquisitionTimeoutException.class })
+	public ResponseEntity<ExceptionResponse> lockAcquisitionTimeoutException(LockAcquisitionTimeoutException ex,
+			HttpServletRequest req) {
+
+		ExceptionResponse exceptionResponse = ExceptionResponse.builder()
+				.httpStatus(HttpStatus.SERVICE_UNAVAILABLE.value()).message(ex.getMessage()).build();
+
+		return new ResponseEntity(exceptionResponse, HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	@ExceptionHandler({ IdempotencyKeyConflictException.class })
+	public ResponseEntity<ExceptionResponse> idempotencyKeyConflictException(IdempotencyKeyConflictException ex,
+			HttpServletRequest req) {
+
+		ExceptionResponse exceptionResponse = ExceptionResponse.builder().httpStatus(HttpStatus.CONFLICT.value())
+				.message(ex.getMessage()).build();
+
+		return new ResponseEntity(exceptionResponse, HttpStatus.CONFLICT);
+	}
+
+	@ExceptionHandler({ ScheduledTransferNotFoundException.class })
+	public ResponseEntity<ExceptionResponse> scheduledTransferNotFoundException(ScheduledTransferNotFoundException ex,
+			HttpServletRequest req) {
+
+		ExceptionResponse exceptionResponse = ExceptionResponse.builder().httpStatus(HttpStatus.NOT_FOUND.value())
+				.message(ex.getMessage()).build();
+
+		return new ResponseEntity(exceptionResponse, HttpStatus.NOT_FOUND);
+	}
+
+	@ExceptionHandler({ NodeUnavailableException.class })
+	public ResponseEntity<ExceptionResponse> nodeUnavailableException(NodeUnavailableException ex,
+			HttpServletRequest req) {
+
+		ExceptionResponse exceptionResponse = ExceptionResponse.builder()
+				.httpStatus(HttpStatus.SERVICE_UNAVAILABLE.value()).message(ex.getMessage()).build();
+
+		return new ResponseEntity(exceptionResponse, HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
+	@ExceptionHandler({ TooManyRequestsException.class })
+	public ResponseEntity<ExceptionResponse> tooManyRequestsException(TooManyRequestsException ex,
+			HttpServletRequest req) {
+
+		ExceptionResponse exceptionResponse = ExceptionResponse.builder()
+				.httpStatus(HttpStatus.TOO_MANY_REQUESTS.value()).message(ex.getMessage()).build();
+
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, "1")
+				.body(exceptionResponse);
+	}
+
+	@ExceptionHandler({ TransferRuleViolationException.class })
+	public ResponseEntity<ExceptionResponse> transferRuleViolationException(TransferRuleViolationException ex,
+			HttpServletRequest req) {
+
+		ExceptionResponse exceptionResponse = ExceptionResponse.builder().httpStatus(HttpStatus.BAD_REQUEST.value())
+				.message(ex.getMessage()).build();
+
+		return new ResponseEntity(exceptionResponse, HttpStatus.BAD_REQUEST);
+	}
+
 }
@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.web;
+
+import java.util.List;
+
+import javax.validation.Valid;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.service.ScheduledTransferService;
+
+import lombok.extern.slf4j.Slf4j;
+
+@RestController
+@RequestMapping("/v1/transfer/scheduled")
+@Slf4j
+public class ScheduledTransferController {
+
+	private final ScheduledTransferService scheduledTransferService;
+
+	@Autowired
+	public ScheduledTransferController(ScheduledTransferService scheduledTransferService) {
+		this.scheduledTransferService = scheduledTransferService;
+	}
+
+	@PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<ScheduledTransfer> scheduleTransfer(@RequestBody @Valid ScheduledTransfer transfer) {
+		return new ResponseEntity<>(scheduledTransferService.schedule(transfer), HttpStatus.CREATED);
+	}
+
+	@DeleteMapping(path = "/{id}")
+	public ResponseEntity<Object> cancelTransfer(@PathVariable long id) {
+		scheduledTransferService.cancel(id);
+
+		return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+	}
+
+	@GetMapping
+	public List<ScheduledTransfer> getPendingTransfers(@RequestParam String accountId) {
+		return scheduledTransferService.getPending(accountId);
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.db.awmd.challenge.web;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+
+/**
+ * Runs single transfers in the {@code async} web execution mode. The container
+ * thread that received the request hands the transfer over and is free again
+ * at once, so transfers queued on the locks of a hot account hold threads of
+ * this pool instead of the container's workers, and requests for other
+ * accounts keep being served.
+ * <p>
+ * Transfers beyond the pool's threads wait in a bounded queue; once it is full
+ * requests are rejected with {@link TooManyRequestsException#OVERLOADED}.
+ */
+@Component
+@ConditionalOnProperty(name = "web.execution-mode", havingValue = "async")
+public class TransferRequestExecutor implements DisposableBean {
+
+	private final ThreadPoolExecutor pool;
+
+	/**
+	 * @param threads       transfers running at once
+	 * @param queueCapacity transfers waiting for a thread
+	 */
+	@Autowired
+	public TransferRequestExecutor(@Value("${web.async.threads:64}") int threads,
+			@Value("${web.async.queue-capacity:10000}") int queueCapacity, TransferMetrics metrics) {
+		AtomicInteger created = new AtomicInteger();
+		this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), task -> {
+					Thread thread = new Thread(task, "transfer-request-" + created.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		metrics.bindTransferRequestPool(pool::getActiveCount, () -> pool.getQueue().size());
+	}
+
+	/**
+	 * Runs {@code transfer} on the pool.
+	 *
+	 * @throws TooManyRequestsException if the queue is full
+	 */
+	public <T> CompletableFuture<T> submit(Supplier<T> transfer) {
+		try {
+			return CompletableFuture.supplyAsync(transfer, pool);
+		} catch (RejectedExecutionException e) {
+			throw TooManyRequestsException.OVERLOADED;
+		}
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		pool.shutdown();
+		pool.awaitTermination(5, TimeUnit.SECONDS);
+	}
+}
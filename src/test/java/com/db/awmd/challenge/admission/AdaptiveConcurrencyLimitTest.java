@@ -0,0 +1,51 @@
+package com.db.awmd.challenge.admission;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveConcurrencyLimitTest {
+
+	private static final long WINDOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 100, 10);
+
+	@Test
+	public void requestsBeyondTheLimitAreRejected() {
+		for (int i = 0; i < 100; i++) {
+			assertThat(limit.tryAcquire()).isTrue();
+		}
+		assertThat(limit.tryAcquire()).isFalse();
+
+		limit.release(0);
+		assertThat(limit.tryAcquire()).isTrue();
+	}
+
+	@Test
+	public void limitShrinksWhileRequestsQueueAndRecoversAfter() {
+		long now = System.nanoTime();
+		for (int window = 1; window <= 20; window++) {
+			assertThat(limit.tryAcquire()).isTrue();
+			limit.release(SLOW, now + window * WINDOW);
+		}
+		assertThat(limit.getLimit()).isEqualTo(4);
+		for (int i = 0; i < 4; i++) {
+			assertThat(limit.tryAcquire()).isTrue();
+		}
+		assertThat(limit.tryAcquire()).isFalse();
+		for (int i = 0; i < 4; i++) {
+			limit.release(0, now);
+		}
+
+		for (int window = 21; window <= 100; window++) {
+			assertThat(limit.tryAcquire()).isTrue();
+			limit.release(0, now + window * WINDOW);
+		}
+		assertThat(limit.getLimit()).isEqualTo(100);
+		assertThat(limit.getInFlight()).isZero();
+	}
+}
@@ -0,0 +1,88 @@
+package com.db.awmd.challenge.admission;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTableTest {
+
+	/** 1000 requests per second: one token per millisecond. */
+	private final TokenBucketTable buckets = new TokenBucketTable(1024, 1000, 5);
+
+	@Test
+	public void burstIsAdmittedThenRateApplies() {
+		for (int i = 0; i < 5; i++) {
+			assertThat(buckets.tryAcquire("client", 10_000)).isTrue();
+		}
+		assertThat(buckets.tryAcquire("client", 10_000)).isFalse();
+		assertThat(buckets.tryAcquire("other", 10_000)).isTrue();
+
+		assertThat(buckets.tryAcquire("client", 10_999)).isFalse();
+		assertThat(buckets.tryAcquire("client", 11_000)).isTrue();
+		assertThat(buckets.tryAcquire("client", 11_000)).isFalse();
+		// Idle for long, the bucket holds a full burst again and no more.
+		for (int i = 0; i < 5; i++) {
+			assertThat(buckets.tryAcquire("client", 1_000_000)).isTrue();
+		}
+		assertThat(buckets.tryAcquire("client", 1_000_000)).isFalse();
+	}
+
+	@Test
+	public void severalTokensAreTakenAtOnceOrNotAtAll() {
+		assertThat(buckets.tryAcquireTokens("account", 6, 10_000)).isFalse();
+		assertThat(buckets.tryAcquireTokens("account", 3, 10_000)).isTrue();
+		assertThat(buckets.tryAcquireTokens("account", 3, 10_000)).isFalse();
+		assertThat(buckets.tryAcquireTokens("account", 2, 10_000)).isTrue();
+		assertThat(buckets.tryAcquire("account", 10_000)).isFalse();
+
+		assertThat(buckets.tryAcquireTokens("account", 2, 11_000)).isFalse();
+		assertThat(buckets.tryAcquireTokens("account", 2, 12_000)).isTrue();
+	}
+
+	@Test
+	public void releasedTokensCanBeTakenAgain() {
+		assertThat(buckets.tryAcquireTokens("account", 4, 10_000)).isTrue();
+		buckets.release("account", 4);
+
+		assertThat(buckets.tryAcquireTokens("account", 5, 10_000)).isTrue();
+		assertThat(buckets.tryAcquire("account", 10_000)).isFalse();
+		// Nothing to put back for a key without a bucket.
+		buckets.release("unknown", 1);
+		assertThat(buckets.tryAcquireTokens("unknown", 5, 10_000)).isTrue();
+	}
+
+	@Test
+	public void idleBucketsAreEvictedForNewKeys() {
+		TokenBucketTable small = new TokenBucketTable(8, 1000, 2);
+		// Far more clients than slots, each coming back after its bucket refilled.
+		long now = 0;
+		for (int client = 0; client < 10_000; client++) {
+			now += 2_000;
+			assertThat(small.tryAcquire("client-" + client, now)).isTrue();
+			assertThat(small.tryAcquire("client-" + client, now)).isTrue();
+			assertThat(small.tryAcquire("client-" + client, now)).isFalse();
+		}
+	}
+
+	@Test
+	public void concurrentRequestsNeverExceedTheBurst() throws Exception {
+		AtomicInteger admitted = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 8_000; i++) {
+			executor.execute(() -> {
+				if (buckets.tryAcquire("client", 10_000)) {
+					admitted.incrementAndGet();
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+		assertThat(admitted.get()).isEqualTo(5);
+	}
+}
@@ -0,0 +1,121 @@
+package com.db.awmd.challenge.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.AuditReport;
+import com.db.awmd.challenge.domain.AuditTotal;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.FundTransferService;
+
+public class LedgerAuditorTest {
+
+	private final AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+
+	private final LedgerAuditor auditor = new LedgerAuditor(repository, 20);
+
+	private final AccountsService accountsService = new AccountsService(repository,
+			Collections.singletonList(auditor));
+
+	private final FundTransferService fundTransferService = new FundTransferService(repository,
+			new LockingTransferExecutor(new AccountLockManager()), Collections.singletonList(auditor));
+
+	@AfterEach
+	public void stopAuditor() {
+		auditor.destroy();
+	}
+
+	@Test
+	public void balancesChangedOutsideOfTheLedgerAreReported() throws Exception {
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal(50)));
+		// Created behind the ledger's back, taken over as it is.
+		repository.createAccount(new Account("Id-3", new BigDecimal(10)));
+		fundTransferService.transferFund(new FundTransfer("Id-1", "Id-2", new BigDecimal(30), null));
+
+		AuditReport report = auditor.audit();
+		assertThat(report.getAccounts()).isEqualTo(3);
+		assertThat(report.getAdopted()).isEqualTo(1);
+		assertThat(report.getDiscrepancyCount()).isZero();
+		assertThat(total(report).getBalance()).isEqualByComparingTo("160");
+		assertThat(total(report).getExpected()).isEqualByComparingTo("160");
+
+		repository.getAccount("Id-2").creditUnits(500);
+		report = auditor.audit();
+		assertThat(report.getDiscrepancyCount()).isEqualTo(1);
+		assertThat(report.getDiscrepancies().get(0).getAccountId()).isEqualTo("Id-2");
+		assertThat(report.getDiscrepancies().get(0).getBalance()).isEqualByComparingTo("85");
+		assertThat(report.getDiscrepancies().get(0).getExpected()).isEqualByComparingTo("80");
+		assertThat(total(report).getBalance()).isEqualByComparingTo("165");
+		assertThat(total(report).getExpected()).isEqualByComparingTo("160");
+		assertThat(auditor.getLastReport()).isSameAs(report);
+	}
+
+	@Test
+	public void transfersRunningDuringAnAuditAreNotReported() throws Exception {
+		int accounts = 50_000;
+		for (int i = 0; i < accounts; i++) {
+			accountsService.createAccount(new Account("Id-" + i, new BigDecimal(100)));
+		}
+		AtomicBoolean running = new AtomicBoolean(true);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (running.get()) {
+					// Few hot accounts, so some of them are always mid-transfer.
+					String from = "Id-" + random.nextInt(16);
+					String to = "Id-" + random.nextInt(accounts);
+					if (!from.equals(to)) {
+						try {
+							fundTransferService.transferFund(new FundTransfer(from, to, BigDecimal.ONE, null));
+						} catch (InsufficientBalanceException e) {
+							// Hot accounts run dry eventually.
+						}
+					}
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		try {
+			for (int i = 0; i < 3; i++) {
+				AuditReport report = auditor.audit();
+				assertThat(report.getAccounts()).isEqualTo(accounts);
+				assertThat(report.getDiscrepancyCount()).isZero();
+			}
+		} finally {
+			running.set(false);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+
+		AuditReport report = auditor.audit();
+		assertThat(report.getDiscrepancyCount()).isZero();
+		assertThat(report.getUnsettled()).isZero();
+		assertThat(total(report).getBalance()).isEqualByComparingTo(new BigDecimal(100L * accounts));
+		assertThat(total(report).getExpected()).isEqualByComparingTo(new BigDecimal(100L * accounts));
+	}
+
+	private static AuditTotal total(AuditReport report) {
+		assertThat(report.getTotals()).hasSize(1);
+		assertThat(report.getTotals().get(0).getCurrency()).isEqualTo(Account.DEFAULT_CURRENCY);
+		return report.getTotals().get(0);
+	}
+}
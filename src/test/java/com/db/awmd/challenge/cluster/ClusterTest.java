@@ -0,0 +1,205 @@
+package com.db.awmd.challenge.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.db.awmd.challenge.DevChallengeApplication;
+import com.db.awmd.challenge.repository.AccountsRepository;
+
+/**
+ * Two nodes of a cluster on localhost.
+ */
+public class ClusterTest {
+
+	private static final HttpClient HTTP = HttpClient.newHttpClient();
+
+	@TempDir
+	static Path recoveryLogs;
+
+	private static ConfigurableApplicationContext nodeA;
+
+	private static ConfigurableApplicationContext nodeB;
+
+	private static String urlA;
+
+	private static String urlB;
+
+	@BeforeAll
+	public static void startNodes() throws IOException {
+		int portA = freePort();
+		int portB = freePort();
+		urlA = "http://localhost:" + portA;
+		urlB = "http://localhost:" + portB;
+		String nodes = "a=" + urlA + ",b=" + urlB;
+		nodeA = start("a", portA, nodes);
+		nodeB = start("b", portB, nodes);
+	}
+
+	@AfterAll
+	public static void stopNodes() {
+		nodeB.close();
+		nodeA.close();
+	}
+
+	@Test
+	public void requestsAreForwardedToTheOwnerOfTheAccount() throws Exception {
+		String idA = accountOwnedBy("a", "Id-forward-");
+		String idB = accountOwnedBy("b", "Id-forward-");
+
+		assertThat(post(urlA, "/v1/accounts", "{\"accountId\":\"" + idB + "\",\"balance\":100}").statusCode())
+				.isEqualTo(201);
+		assertThat(post(urlB, "/v1/accounts", "{\"accountId\":\"" + idA + "\",\"balance\":50}").statusCode())
+				.isEqualTo(201);
+
+		assertThat(repository(nodeB).getAccount(idB)).isNotNull();
+		assertThat(repository(nodeA).getAccount(idB)).isNull();
+		assertThat(get(urlA, "/v1/accounts/" + idB).body()).contains("\"balance\":100");
+		assertThat(get(urlB, "/v1/accounts/" + idA).body()).contains("\"balance\":50");
+		assertThat(get(urlB, "/v1/accounts/" + idA + "-missing").body()).isEmpty();
+	}
+
+	@Test
+	public void crossNodeTransferMovesMoneyBetweenNodes() throws Exception {
+		String idA = accountOwnedBy("a", "Id-transfer-");
+		String idB = accountOwnedBy("b", "Id-transfer-");
+		post(urlA, "/v1/accounts", "{\"accountId\":\"" + idA + "\",\"balance\":1000}");
+		post(urlA, "/v1/accounts", "{\"accountId\":\"" + idB + "\",\"balance\":0}");
+
+		// Sent to the node owning neither the request nor the source.
+		HttpResponse<String> response = post(urlB, "/v1/transfer",
+				"{\"accountFrom\":\"" + idA + "\",\"accountTo\":\"" + idB + "\",\"amount\":300}");
+
+		assertThat(response.statusCode()).isEqualTo(200);
+		assertThat(repository(nodeA).getAccount(idA).getBalance()).isEqualByComparingTo(new BigDecimal("700"));
+		assertThat(repository(nodeB).getAccount(idB).getBalance()).isEqualByComparingTo(new BigDecimal("300"));
+		assertThat(nodeA.getBean(TwoPhaseTransfers.class).getUndelivered()).isZero();
+	}
+
+	@Test
+	public void crossNodeTransferToMissingAccountIsRefunded() throws Exception {
+		String idA = accountOwnedBy("a", "Id-refund-");
+		String missing = accountOwnedBy("b", "Id-nobody-");
+		post(urlA, "/v1/accounts", "{\"accountId\":\"" + idA + "\",\"balance\":1000}");
+
+		HttpResponse<String> response = post(urlA, "/v1/transfer",
+				"{\"accountFrom\":\"" + idA + "\",\"accountTo\":\"" + missing + "\",\"amount\":300}");
+
+		assertThat(response.statusCode()).isEqualTo(400);
+		assertThat(response.body()).contains(missing + " account doesn't exist");
+		assertThat(repository(nodeA).getAccount(idA).getBalance()).isEqualByComparingTo(new BigDecimal("1000"));
+	}
+
+	@Test
+	public void crossNodeTransferKeepsTheParticipantsReason() throws Exception {
+		String idA = accountOwnedBy("a", "Id-currency-");
+		String idB = accountOwnedBy("b", "Id-currency-");
+		post(urlA, "/v1/accounts", "{\"accountId\":\"" + idA + "\",\"balance\":1000}");
+		post(urlA, "/v1/accounts", "{\"accountId\":\"" + idB + "\",\"balance\":0,\"currency\":\"USD\"}");
+
+		HttpResponse<String> response = post(urlA, "/v1/transfer",
+				"{\"accountFrom\":\"" + idA + "\",\"accountTo\":\"" + idB + "\",\"amount\":300}");
+
+		assertThat(response.statusCode()).isEqualTo(400);
+		assertThat(response.body()).contains("can't convert currencies").doesNotContain("doesn't exist");
+		assertThat(repository(nodeA).getAccount(idA).getBalance()).isEqualByComparingTo(new BigDecimal("1000"));
+	}
+
+	@Test
+	public void crossNodeTransferBeyondBalanceIsRejected() throws Exception {
+		String idA = accountOwnedBy("a", "Id-poor-");
+		String idB = accountOwnedBy("b", "Id-poor-");
+		post(urlA, "/v1/accounts", "{\"accountId\":\"" + idA + "\",\"balance\":10}");
+		post(urlA, "/v1/accounts", "{\"accountId\":\"" + idB + "\",\"balance\":0}");
+
+		HttpResponse<String> response = post(urlA, "/v1/transfer",
+				"{\"accountFrom\":\"" + idA + "\",\"accountTo\":\"" + idB + "\",\"amount\":11}");
+
+		assertThat(response.statusCode()).isEqualTo(400);
+		assertThat(repository(nodeA).getAccount(idA).getBalance()).isEqualByComparingTo(BigDecimal.TEN);
+		assertThat(repository(nodeB).getAccount(idB).getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+	}
+
+	@Test
+	public void nodeLocalEndpointsAreRejected() throws Exception {
+		HttpResponse<String> response = post(urlA, "/v1/transfer/batch", "[]");
+
+		assertThat(response.statusCode()).isEqualTo(400);
+		assertThat(response.body()).contains("not available in cluster mode");
+	}
+
+	@Test
+	public void nodeToNodeEndpointsAreRefusedToOthers() throws Exception {
+		String idB = accountOwnedBy("b", "Id-forged-");
+		post(urlB, "/v1/accounts", "{\"accountId\":\"" + idB + "\",\"balance\":0}");
+		String credit = "{\"accountFrom\":\"Id-nowhere\",\"accountTo\":\"" + idB
+				+ "\",\"amountUnits\":100000,\"currency\":\"EUR\"}";
+
+		HttpResponse<String> prepare = post(urlB, "/internal/cluster/transactions/tx-forged/prepare", credit);
+		// A node id that isn't part of the cluster is no more trusted than none.
+		HttpResponse<String> impersonated = HTTP.send(
+				HttpRequest.newBuilder(URI.create(urlB + "/internal/cluster/transactions/tx-forged/prepare"))
+						.header("Content-Type", "application/json").header(ClusterClient.FORWARDED_HEADER, "c")
+						.POST(BodyPublishers.ofString(credit)).build(),
+				BodyHandlers.ofString());
+		HttpResponse<String> commit = post(urlB, "/internal/cluster/transactions/tx-forged/commit", "");
+
+		assertThat(prepare.statusCode()).isEqualTo(403);
+		assertThat(impersonated.statusCode()).isEqualTo(403);
+		assertThat(commit.statusCode()).isEqualTo(403);
+		assertThat(commit.body()).contains("only available to cluster nodes");
+		assertThat(repository(nodeB).getAccount(idB).getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+	}
+
+	private static ConfigurableApplicationContext start(String nodeId, int port, String nodes) {
+		return new SpringApplicationBuilder(DevChallengeApplication.class).run("--server.port=" + port,
+				"--cluster.enabled=true", "--cluster.node-id=" + nodeId, "--cluster.nodes=" + nodes,
+				"--cluster.recovery-log=" + recoveryLogs.resolve(nodeId + ".log"),
+				"--notification.spill-file=" + recoveryLogs.resolve(nodeId + ".spill"));
+	}
+
+	private static String accountOwnedBy(String nodeId, String prefix) {
+		ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b"), 128);
+		for (int i = 0;; i++) {
+			if (ring.ownerOf(prefix + i).equals(nodeId)) {
+				return prefix + i;
+			}
+		}
+	}
+
+	private static AccountsRepository repository(ConfigurableApplicationContext node) {
+		return node.getBean(AccountsRepository.class);
+	}
+
+	private static HttpResponse<String> post(String url, String path, String json) throws Exception {
+		return HTTP.send(HttpRequest.newBuilder(URI.create(url + path)).header("Content-Type", "application/json")
+				.POST(BodyPublishers.ofString(json)).build(), BodyHandlers.ofString());
+	}
+
+	private static HttpResponse<String> get(String url, String path) throws Exception {
+		return HTTP.send(HttpRequest.newBuilder(URI.create(url + path)).GET().build(), BodyHandlers.ofString());
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.db.awmd.challenge.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class ConsistentHashRingTest {
+
+	private static final int ACCOUNTS = 100_000;
+
+	@Test
+	public void accountsAreSpreadEvenlyOverNodes() {
+		ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("node-1", "node-2", "node-3", "node-4"), 128);
+
+		Map<String, Integer> owned = new HashMap<>();
+		for (int i = 0; i < ACCOUNTS; i++) {
+			owned.merge(ring.ownerOf("Id-" + i), 1, Integer::sum);
+		}
+
+		assertThat(owned).hasSize(4);
+		assertThat(owned.values()).allSatisfy(count -> assertThat(count).isBetween(ACCOUNTS / 4 * 8 / 10,
+				ACCOUNTS / 4 * 12 / 10));
+	}
+
+	@Test
+	public void addingANodeOnlyMovesAccountsToIt() {
+		ConsistentHashRing three = new ConsistentHashRing(Arrays.asList("node-1", "node-2", "node-3"), 128);
+		ConsistentHashRing four = new ConsistentHashRing(Arrays.asList("node-3", "node-1", "node-4", "node-2"), 128);
+
+		int moved = 0;
+		for (int i = 0; i < ACCOUNTS; i++) {
+			String before = three.ownerOf("Id-" + i);
+			String after = four.ownerOf("Id-" + i);
+			if (!before.equals(after)) {
+				assertThat(after).isEqualTo("node-4");
+				moved++;
+			}
+		}
+
+		assertThat(moved).isBetween(ACCOUNTS / 4 * 8 / 10, ACCOUNTS / 4 * 12 / 10);
+	}
+}
@@ -0,0 +1,154 @@
+package com.db.awmd.challenge.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.db.awmd.challenge.cluster.RecoveryLog.Entry;
+import com.db.awmd.challenge.cluster.RecoveryLog.State;
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.RemoteCredit;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.journal.TransferJournal;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.AccountsService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Restarts of one node after a crash between the journal record of a
+ * cross-node transfer and the recovery log entry deciding it. The crash is
+ * reproduced by writing the records the interrupted step left on disk.
+ */
+public class CrossNodeRecoveryTest {
+
+	@TempDir
+	Path directory;
+
+	private TransferJournal journal;
+
+	private RecoveryLog recoveryLog;
+
+	@AfterEach
+	public void close() throws Exception {
+		recoveryLog.destroy();
+		journal.destroy();
+	}
+
+	@Test
+	public void participantCrashedAfterTheCreditCommitsWithoutCreditingAgain() throws Exception {
+		AccountsRepositoryInMemory repository = open();
+		new AccountsService(repository, Collections.singletonList(journal))
+				.createAccount(new Account("Id-B", BigDecimal.ZERO));
+		participant(repository).prepare("tx-1", "a", credit(30_000));
+		// Crash between the durable credit and logging COMMITTED.
+		journal.awaitDurable(journal.appendRemoteLeg("tx-1", "Id-B", "Id-A", 30_000));
+		crash();
+
+		AccountsRepositoryInMemory recovered = open();
+		participant(recovered).commit("tx-1");
+
+		assertThat(recovered.getAccount("Id-B").getBalance()).isEqualByComparingTo("300");
+		assertThat(reopenedLog().getUnresolved()).isEmpty();
+	}
+
+	@Test
+	public void participantCrashedBeforeTheCreditCreditsOnRedelivery() throws Exception {
+		AccountsRepositoryInMemory repository = open();
+		new AccountsService(repository, Collections.singletonList(journal))
+				.createAccount(new Account("Id-B", BigDecimal.ZERO));
+		participant(repository).prepare("tx-1", "a", credit(30_000));
+		crash();
+
+		AccountsRepositoryInMemory recovered = open();
+		TransferParticipant participant = participant(recovered);
+		participant.commit("tx-1");
+		participant.commit("tx-1");
+
+		assertThat(recovered.getAccount("Id-B").getBalance()).isEqualByComparingTo("300");
+		assertThat(reopenedLog().getUnresolved()).isEmpty();
+	}
+
+	@Test
+	public void coordinatorCrashedAfterTheDebitCommits() throws Exception {
+		AccountsRepositoryInMemory repository = open();
+		new AccountsService(repository, Collections.singletonList(journal))
+				.createAccount(new Account("Id-A", new BigDecimal(1000)));
+		recoveryLog.append(new Entry(State.RESERVED, "tx-1", "b", "Id-A", "Id-B", 30_000));
+		// Crash between the durable debit and logging COMMITTING.
+		journal.awaitDurable(journal.appendRemoteLeg("tx-1", "Id-A", "Id-B", -30_000));
+		crash();
+
+		AccountsRepositoryInMemory recovered = open();
+		coordinator().destroy();
+
+		assertThat(recovered.getAccount("Id-A").getBalance()).isEqualByComparingTo("700");
+		assertThat(reopenedLog().getUnresolved()).singleElement()
+				.satisfies(entry -> assertThat(entry.getState()).isEqualTo(State.COMMITTING));
+	}
+
+	@Test
+	public void coordinatorCrashedAfterReversingTheDebitAborts() throws Exception {
+		AccountsRepositoryInMemory repository = open();
+		new AccountsService(repository, Collections.singletonList(journal))
+				.createAccount(new Account("Id-A", new BigDecimal(1000)));
+		recoveryLog.append(new Entry(State.RESERVED, "tx-1", "b", "Id-A", "Id-B", 30_000));
+		journal.awaitDurable(journal.appendRemoteLeg("tx-1", "Id-A", "Id-B", -30_000));
+		// Crash between the reversal of a debit that wasn't confirmed and logging ABORTING.
+		journal.awaitDurable(journal.appendRemoteLeg("tx-1", "Id-A", "Id-B", 30_000));
+		crash();
+
+		AccountsRepositoryInMemory recovered = open();
+		coordinator().destroy();
+
+		assertThat(recovered.getAccount("Id-A").getBalance()).isEqualByComparingTo("1000");
+		assertThat(reopenedLog().getUnresolved()).singleElement()
+				.satisfies(entry -> assertThat(entry.getState()).isEqualTo(State.ABORTING));
+	}
+
+	private AccountsRepositoryInMemory open() throws IOException {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		journal = new TransferJournal(repository, directory.resolve("journal").toString(), 1 << 20, true, 0, 0);
+		journal.afterPropertiesSet();
+		recoveryLog = new RecoveryLog(directory.resolve("recovery.log").toString());
+		return repository;
+	}
+
+	private void crash() throws Exception {
+		recoveryLog.destroy();
+		journal.destroy();
+	}
+
+	private RecoveryLog reopenedLog() throws Exception {
+		recoveryLog.destroy();
+		recoveryLog = new RecoveryLog(directory.resolve("recovery.log").toString());
+		return recoveryLog;
+	}
+
+	private TransferParticipant participant(AccountsRepositoryInMemory repository) {
+		return new TransferParticipant(repository, recoveryLog, Collections.emptyList(),
+				new LockingTransferExecutor(new AccountLockManager(), Optional.of(journal)), Optional.of(journal));
+	}
+
+	private TwoPhaseTransfers coordinator() {
+		// Node b can't be reached, so decisions stay undelivered.
+		ClusterTopology topology = new ClusterTopology("a", "a=http://localhost:1,b=http://localhost:1", 128);
+		ObjectMapper objectMapper = new ObjectMapper();
+		return new TwoPhaseTransfers(topology, new ClusterClient(topology, objectMapper, 100), recoveryLog,
+				objectMapper, 60_000, new LockingTransferExecutor(new AccountLockManager(), Optional.of(journal)),
+				Optional.of(journal));
+	}
+
+	private static RemoteCredit credit(long amountUnits) {
+		return RemoteCredit.builder().accountFrom("Id-A").accountTo("Id-B").amountUnits(amountUnits)
+				.currency(Account.DEFAULT_CURRENCY).build();
+	}
+}
@@ -0,0 +1,54 @@
+package com.db.awmd.challenge.cluster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.db.awmd.challenge.cluster.RecoveryLog.Entry;
+import com.db.awmd.challenge.cluster.RecoveryLog.State;
+
+public class RecoveryLogTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void concurrentAppendsAreAllDurableAndUnresolvedOnesRecovered() throws Exception {
+		String file = directory.resolve("recovery.log").toString();
+		RecoveryLog log = new RecoveryLog(file);
+		ExecutorService appenders = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 400; i++) {
+			String txId = "tx-" + i;
+			appenders.execute(() -> {
+				Entry prepared = new Entry(State.PREPARED, txId, "node-2", "Id-1", "Id-2", 100);
+				log.append(prepared);
+				if (!txId.endsWith("7")) {
+					log.append(prepared.withState(State.COMMITTED));
+				}
+			});
+		}
+		appenders.shutdown();
+		assertThat(appenders.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+		log.destroy();
+
+		RecoveryLog reopened = new RecoveryLog(file);
+		try {
+			assertThat(reopened.getUnresolved()).hasSize(40)
+					.allSatisfy(entry -> assertThat(entry.getState()).isEqualTo(State.PREPARED));
+		} finally {
+			reopened.destroy();
+		}
+	}
+
+	@Test
+	public void pathIsRequired() {
+		Assertions.assertThrows(IllegalStateException.class, () -> new RecoveryLog(""));
+	}
+}
@@ -0,0 +1,109 @@
+package com.db.awmd.challenge.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AccountTest {
+
+	@Test
+	public void balanceIsKeptInMinorUnits() {
+		Account account = new Account("Id-1", new BigDecimal("123.45"));
+
+		assertThat(account.getBalanceUnits()).isEqualTo(12345);
+		assertThat(account.credit(new BigDecimal("0.55"))).isEqualByComparingTo("124");
+		assertThat(account.debit(new BigDecimal(24))).isEqualByComparingTo("100");
+		assertThat(account.getBalance().toPlainString()).isEqualTo("100");
+	}
+
+	@Test
+	public void jsonContractIsUnchanged() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		Account account = mapper.readValue("{\"accountId\":\"Id-1\",\"balance\":123.45}", Account.class);
+
+		// Accounts created without a currency hold the default one.
+		assertThat(mapper.writeValueAsString(account))
+				.isEqualTo("{\"accountId\":\"Id-1\",\"currency\":\"EUR\",\"balance\":123.45}");
+		assertThat(mapper.readValue("{\"accountId\":\"Id-1\",\"balance\":1,\"currency\":\"chf\"}", Account.class)
+				.getCurrency()).isEqualTo("CHF");
+	}
+
+	@Test
+	public void amountsBeyondSupportedPrecisionAreRejected() {
+		Account account = new Account("Id-1", new BigDecimal(10));
+
+		Assertions.assertThrows(IllegalOperationException.class, () -> account.credit(new BigDecimal("0.001")));
+		Assertions.assertThrows(IllegalOperationException.class, () -> account.debitUnits(-1));
+	}
+
+	@Test
+	public void debitNeverDrivesBalanceNegative() throws Exception {
+		Account account = new Account("Id-1", new BigDecimal(1000));
+		AtomicInteger succeeded = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i = 0; i < 2000; i++) {
+			executor.execute(() -> {
+				if (account.tryDebitUnits(100)) {
+					succeeded.incrementAndGet();
+				}
+			});
+		}
+		executor.shutdown();
+		assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+		assertThat(succeeded.get()).isEqualTo(1000);
+		assertThat(account.getBalanceUnits()).isZero();
+		Assertions.assertThrows(InsufficientBalanceException.class, () -> account.debitUnits(1));
+	}
+
+	@Test
+	public void snapshotsPairEveryBalanceWithItsVersion() throws Exception {
+		Account account = new Account("Id-1", BigDecimal.ZERO);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int i = 0; i < 4; i++) {
+			executor.execute(() -> {
+				for (int credit = 0; credit < 50_000; credit++) {
+					account.creditUnits(1);
+				}
+			});
+		}
+		executor.shutdown();
+
+		long lastVersion = 0;
+		while (!executor.isTerminated()) {
+			AccountSnapshot snapshot = account.snapshot();
+			// Every change credited one unit, so the balance counts the changes.
+			assertThat(Amounts.toUnits(snapshot.getBalance())).isEqualTo(snapshot.getVersion());
+			assertThat(snapshot.getVersion()).isGreaterThanOrEqualTo(lastVersion);
+			lastVersion = snapshot.getVersion();
+		}
+
+		assertThat(account.snapshot().getVersion()).isEqualTo(200_000);
+		assertThat(account.getBalanceUnits()).isEqualTo(200_000);
+	}
+
+	@Test
+	public void amountConversionIsExactForEveryScale() {
+		Random random = new Random(42);
+		for (int i = 0; i < 100_000; i++) {
+			long units = random.nextLong() % 10_000_000_000_000L;
+			for (int scale = 0; scale <= Amounts.SCALE; scale++) {
+				BigDecimal amount = BigDecimal.valueOf(units, Amounts.SCALE).setScale(scale, RoundingMode.DOWN);
+				assertThat(Amounts.toUnits(amount)).isEqualTo(amount.movePointRight(Amounts.SCALE).longValueExact());
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.db.awmd.challenge.domain;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class StripedAccountTest {
+
+	@Test
+	public void debitsBorrowAcrossStripes() {
+		StripedAccount account = new StripedAccount("Merchant", 8, 0);
+		for (int i = 0; i < 100; i++) {
+			account.creditUnits(10);
+		}
+
+		assertThat(account.getBalanceUnits()).isEqualTo(1000);
+		assertThat(account.tryDebitUnits(999)).isTrue();
+		assertThat(account.getBalanceUnits()).isEqualTo(1);
+	}
+
+	@Test
+	public void refusedDebitLeavesBalanceUnchanged() {
+		StripedAccount account = new StripedAccount("Merchant", 8, 0);
+		for (int i = 0; i < 50; i++) {
+			account.creditUnits(3);
+		}
+
+		assertThat(account.tryDebitUnits(151)).isFalse();
+		Assertions.assertThrows(InsufficientBalanceException.class, () -> account.debitUnits(151));
+		assertThat(account.getBalanceUnits()).isEqualTo(150);
+	}
+
+	@Test
+	public void snapshotsNeverSeeHalfDoneBorrows() throws Exception {
+		StripedAccount account = new StripedAccount("Merchant", 8, 0);
+		for (int i = 0; i < 80; i++) {
+			account.creditUnits(10);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int i = 0; i < 4; i++) {
+			executor.execute(() -> {
+				for (int round = 0; round < 20_000; round++) {
+					// Large enough to borrow from other stripes, given back right away.
+					if (account.tryDebitUnits(300)) {
+						account.creditUnits(300);
+					}
+				}
+			});
+		}
+		executor.shutdown();
+
+		while (!executor.isTerminated()) {
+			long balance = Amounts.toUnits(account.snapshot().getBalance());
+			assertThat(balance).isIn(800L, 500L, 200L);
+		}
+
+		assertThat(account.getBalanceUnits()).isEqualTo(800);
+		assertThat(account.snapshot().getVersion()).isGreaterThan(80);
+	}
+
+	@Test
+	public void compareAndSetSeesTheWholeBalance() throws Exception {
+		StripedAccount account = new StripedAccount("Merchant", 8, 0);
+		for (int i = 0; i < 40; i++) {
+			account.creditUnits(5);
+		}
+
+		assertThat(account.compareAndSetBalance(5, 0)).isFalse();
+		assertThat(account.compareAndSetBalance(200, 150)).isTrue();
+		assertThat(account.getBalanceUnits()).isEqualTo(150);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		executor.execute(() -> {
+			for (int i = 0; i < 10_000; i++) {
+				account.creditUnits(1);
+			}
+		});
+		executor.execute(() -> {
+			for (int i = 0; i < 10_000; i++) {
+				long current;
+				do {
+					current = account.loadBalance();
+				} while (!account.compareAndSetBalance(current, current + 2));
+			}
+		});
+		executor.shutdown();
+		assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(account.getBalanceUnits()).isEqualTo(150 + 10_000 + 20_000);
+	}
+
+	@Test
+	public void jsonReportsSummedBalance() throws Exception {
+		StripedAccount account = new StripedAccount("Merchant", 4, 0);
+		account.credit(new BigDecimal("1.25"));
+		account.credit(new BigDecimal("2.5"));
+
+		assertThat(new ObjectMapper().writeValueAsString(account))
+				.isEqualTo("{\"accountId\":\"Merchant\",\"currency\":\"EUR\",\"balance\":3.75}");
+	}
+
+	@Test
+	public void concurrentTransfersThroughHotAccountConserveMoney() throws Exception {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory(new String[] { "Merchant" }, 16);
+		repository.createAccount(new Account("Merchant", BigDecimal.ZERO));
+		for (int i = 0; i < 8; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(10_000)));
+		}
+		Account merchant = repository.getAccount("Merchant");
+		LockingTransferExecutor executor = new LockingTransferExecutor(new AccountLockManager());
+
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			Account customer = repository.getAccount("Id-" + t);
+			clients.execute(() -> {
+				for (int i = 0; i < 20_000; i++) {
+					try {
+						if (ThreadLocalRandom.current().nextInt(4) == 0) {
+							executor.execute(merchant, customer, 3);
+						} else {
+							executor.execute(customer, merchant, 1);
+						}
+					} catch (InsufficientBalanceException e) {
+						// Expected while the merchant or a customer runs dry.
+					}
+				}
+			});
+		}
+		clients.shutdown();
+		assertThat(clients.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(merchant).isInstanceOf(StripedAccount.class);
+		long total = merchant.getBalanceUnits();
+		for (int i = 0; i < 8; i++) {
+			total += repository.getAccount("Id-" + i).getBalanceUnits();
+		}
+		assertThat(total).isEqualTo(8 * Amounts.toUnits(new BigDecimal(10_000)));
+		assertThat(merchant.getBalanceUnits()).isNotNegative();
+	}
+}
@@ -0,0 +1,97 @@
+package com.db.awmd.challenge.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.FundTransferService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class OptimisticTransferExecutorTest {
+
+	private static final int ACCOUNTS = 4;
+
+	@Test
+	public void transferMovesBothBalances() {
+		OptimisticTransferExecutor executor = new OptimisticTransferExecutor(new AccountLockManager());
+		Account accountFrom = new Account("001", new BigDecimal(1000));
+		Account accountTo = new Account("002", new BigDecimal(1000));
+
+		executor.execute(accountFrom, accountTo, 25_000);
+
+		assertThat(accountFrom.getBalance()).isEqualByComparingTo("750");
+		assertThat(accountTo.getBalance()).isEqualByComparingTo("1250");
+	}
+
+	@Test
+	public void insufficientBalanceLeavesBothAccountsUntouched() {
+		OptimisticTransferExecutor executor = new OptimisticTransferExecutor(new AccountLockManager());
+		Account accountFrom = new Account("001", new BigDecimal(100));
+		Account accountTo = new Account("002", new BigDecimal(1000));
+
+		Assertions.assertThrows(InsufficientBalanceException.class,
+				() -> executor.execute(accountFrom, accountTo, 10_001));
+
+		assertThat(accountFrom.getBalance()).isEqualByComparingTo("100");
+		assertThat(accountTo.getBalance()).isEqualByComparingTo("1000");
+	}
+
+	@Test
+	public void contendedTransfersFallBackToLocksAndConserveMoney() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		TransferMetrics metrics = new TransferMetrics(registry);
+		// One attempt and two stripes: nearly every contended transfer takes the fallback.
+		OptimisticTransferExecutor executor = new OptimisticTransferExecutor(new AccountLockManager(2, 5_000), 1,
+				OptimisticTransferExecutor.DEFAULT_BACKOFF_NANOS, metrics);
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		for (int i = 0; i < ACCOUNTS; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+		}
+		FundTransferService service = new FundTransferService(repository, executor, Collections.emptyList());
+
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			clients.execute(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < 50_000; i++) {
+					int from = random.nextInt(ACCOUNTS);
+					int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+					try {
+						service.transferFund(FundTransfer.builder().accountFrom("Id-" + from).accountTo("Id-" + to)
+								.amount(BigDecimal.valueOf(1 + random.nextInt(100))).build());
+					} catch (InsufficientBalanceException e) {
+						// Expected once an account ran dry.
+					}
+				}
+			});
+		}
+		clients.shutdown();
+		assertThat(clients.awaitTermination(5, TimeUnit.MINUTES)).isTrue();
+
+		long total = 0;
+		for (int i = 0; i < ACCOUNTS; i++) {
+			long balance = repository.getAccount("Id-" + i).getBalanceUnits();
+			assertThat(balance).isNotNegative();
+			total += balance;
+		}
+		assertThat(total).isEqualTo(ACCOUNTS * 100_000L);
+		assertThat(registry.get("transfer.optimistic.conflicts").counter().count()).isPositive();
+		assertThat(registry.get("transfer.optimistic.fallbacks").counter().count())
+				.isEqualTo(registry.get("transfer.optimistic.conflicts").counter().count());
+	}
+}
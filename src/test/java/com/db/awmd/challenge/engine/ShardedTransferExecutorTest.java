@@ -0,0 +1,150 @@
+package com.db.awmd.challenge.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.LockAcquisitionTimeoutException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.FundTransferService;
+
+public class ShardedTransferExecutorTest {
+
+	private static final int ACCOUNTS = 32;
+
+	private final ShardedTransferExecutor executor = new ShardedTransferExecutor(4, 64);
+
+	@AfterEach
+	public void stopShards() throws InterruptedException {
+		executor.destroy();
+	}
+
+	@Test
+	public void crossShardTransferIsAppliedOnBothSides() {
+		Account accountFrom = new Account("001", new BigDecimal(1000));
+		Account accountTo = findAccountOnOtherShard(accountFrom);
+
+		executor.execute(accountFrom, accountTo, 25_000);
+
+		assertThat(accountFrom.getBalance()).isEqualByComparingTo("750");
+		assertThat(accountTo.getBalance()).isEqualByComparingTo("1250");
+	}
+
+	@Test
+	public void insufficientBalanceLeavesBothAccountsUntouched() {
+		Account accountFrom = new Account("001", new BigDecimal(100));
+		Account accountTo = findAccountOnOtherShard(accountFrom);
+
+		Assertions.assertThrows(InsufficientBalanceException.class,
+				() -> executor.execute(accountFrom, accountTo, 10_001));
+
+		assertThat(accountFrom.getBalance()).isEqualByComparingTo("100");
+		assertThat(accountTo.getBalance()).isEqualByComparingTo("1000");
+	}
+
+	@Test
+	public void writerHoldsTheOwningShardsUntilDone() throws Exception {
+		Account accountFrom = new Account("001", new BigDecimal(1000));
+		Account accountTo = findAccountOnOtherShard(accountFrom);
+		ExecutorService client = Executors.newSingleThreadExecutor();
+		try {
+			executor.writeBalances(Collections.singletonList(accountFrom), () -> {
+				Future<?> transfer = client.submit(() -> executor.execute(accountFrom, accountTo, 10_000));
+				accountFrom.creditUnits(5_000);
+				// The shard of accountFrom is held, so the transfer can't debit it meanwhile.
+				Assertions.assertThrows(TimeoutException.class, () -> transfer.get(100, TimeUnit.MILLISECONDS));
+				assertThat(accountFrom.getBalance()).isEqualByComparingTo("1050");
+				return null;
+			});
+			client.shutdown();
+			assertThat(client.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+		} finally {
+			client.shutdownNow();
+		}
+
+		assertThat(accountFrom.getBalance()).isEqualByComparingTo("950");
+		assertThat(accountTo.getBalance()).isEqualByComparingTo("1100");
+	}
+
+	@Test
+	public void transferWaitingTooLongForItsShardIsWithdrawn() throws Exception {
+		ShardedTransferExecutor impatient = new ShardedTransferExecutor(2, 64, 50);
+		Account accountFrom = new Account("001", new BigDecimal(1000));
+		Account accountTo = new Account("002", new BigDecimal(1000));
+		try {
+			impatient.writeBalances(Arrays.asList(accountFrom, accountTo), () -> {
+				Assertions.assertThrows(LockAcquisitionTimeoutException.class,
+						() -> impatient.execute(accountFrom, accountTo, 10_000));
+				return null;
+			});
+			// The withdrawn command is skipped once the shards run again.
+			impatient.execute(accountFrom, accountTo, 1);
+		} finally {
+			impatient.destroy();
+		}
+
+		assertThat(accountFrom.getBalanceUnits()).isEqualTo(99_999);
+		assertThat(accountTo.getBalanceUnits()).isEqualTo(100_001);
+	}
+
+	@Test
+	public void concurrentTransfersConserveMoney() throws Exception {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		for (int i = 0; i < ACCOUNTS; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+		}
+		FundTransferService service = new FundTransferService(repository, executor, Collections.emptyList());
+
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			clients.execute(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < 50_000; i++) {
+					int from = random.nextInt(ACCOUNTS);
+					int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+					try {
+						service.transferFund(FundTransfer.builder().accountFrom("Id-" + from).accountTo("Id-" + to)
+								.amount(BigDecimal.valueOf(1 + random.nextInt(100))).build());
+					} catch (InsufficientBalanceException | LockAcquisitionTimeoutException e) {
+						// Expected once an account ran dry, or if a shard fell behind; no balance moved.
+					}
+				}
+			});
+		}
+		clients.shutdown();
+		assertThat(clients.awaitTermination(5, TimeUnit.MINUTES)).isTrue();
+
+		long total = 0;
+		for (int i = 0; i < ACCOUNTS; i++) {
+			long balance = repository.getAccount("Id-" + i).getBalanceUnits();
+			assertThat(balance).isNotNegative();
+			total += balance;
+		}
+		assertThat(total).isEqualTo(ACCOUNTS * 100_000L);
+	}
+
+	private Account findAccountOnOtherShard(Account account) {
+		int shard = executor.shardIndexOf(account.getAccountId());
+		for (int i = 0;; i++) {
+			String accountId = "Id-" + i;
+			if (executor.shardIndexOf(accountId) != shard) {
+				return new Account(accountId, new BigDecimal(1000));
+			}
+		}
+	}
+}
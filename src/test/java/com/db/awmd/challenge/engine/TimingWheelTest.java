@@ -0,0 +1,63 @@
+package com.db.awmd.challenge.engine;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.engine.TimingWheel.Timeout;
+
+public class TimingWheelTest {
+
+	private final TimingWheel<Long> wheel = new TimingWheel<>(1, 0);
+
+	@Test
+	public void timeoutsFireAtTheirTickAcrossLevels() {
+		long[] deadlines = { 1, 7, 511, 512, 513, 1_000, 262_143, 262_144, 300_001, 700_000 };
+		for (long deadline : deadlines) {
+			wheel.schedule(deadline, deadline);
+		}
+
+		List<Long> fired = new ArrayList<>();
+		for (long now = 1; now <= 700_000; now++) {
+			long tick = now;
+			wheel.advance(now, deadline -> {
+				fired.add(deadline);
+				assertThat(deadline).isEqualTo(tick);
+			});
+		}
+
+		assertThat(fired).containsExactly(1L, 7L, 511L, 512L, 513L, 1_000L, 262_143L, 262_144L, 300_001L, 700_000L);
+		assertThat(wheel.size()).isZero();
+	}
+
+	@Test
+	public void timeoutsScheduledLaterAreFiledRelativeToCurrentTick() {
+		List<Long> fired = new ArrayList<>();
+		wheel.advance(1_234, fired::add);
+		wheel.schedule(1_235L + 600, 1_235 + 600);
+		wheel.schedule(5L, 5);
+
+		wheel.advance(1_235, fired::add);
+		assertThat(fired).containsExactly(5L);
+		wheel.advance(1_834, fired::add);
+		assertThat(fired).containsExactly(5L);
+		wheel.advance(1_835, fired::add);
+		assertThat(fired).containsExactly(5L, 1_835L);
+	}
+
+	@Test
+	public void cancelledTimeoutsNeverFire() {
+		Timeout<Long> cancelled = wheel.schedule(100L, 100);
+		wheel.schedule(101L, 101);
+
+		assertThat(wheel.cancel(cancelled)).isTrue();
+		assertThat(wheel.cancel(cancelled)).isFalse();
+
+		List<Long> fired = new ArrayList<>();
+		wheel.advance(1_000, fired::add);
+		assertThat(fired).containsExactly(101L);
+	}
+}
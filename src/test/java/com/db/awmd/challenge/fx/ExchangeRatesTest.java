@@ -0,0 +1,74 @@
+package com.db.awmd.challenge.fx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.domain.FxRateTable;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.history.TransactionHistory;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.rules.TransferRulePipeline;
+import com.db.awmd.challenge.service.FundTransferService;
+import com.db.awmd.challenge.service.IdempotencyCache;
+
+public class ExchangeRatesTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void transfersBetweenCurrenciesCreditTheConvertedAmount() throws Exception {
+		Path file = directory.resolve("rates.json");
+		Files.write(file, "{\"base\":\"EUR\",\"rates\":{\"USD\":1.0873}}".getBytes());
+		ExchangeRates exchangeRates = new ExchangeRates(file.toString(), 0);
+		exchangeRates.afterPropertiesSet();
+
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		repository.createAccount(new Account("Id-1", new BigDecimal(100), "EUR"));
+		repository.createAccount(new Account("Id-2", new BigDecimal(100), "usd"));
+		repository.createAccount(new Account("Id-3", new BigDecimal(100), "GBP"));
+		TransactionHistory history = new TransactionHistory();
+		FundTransferService service = new FundTransferService(repository,
+				new LockingTransferExecutor(new AccountLockManager()), Collections.singletonList(history),
+				new IdempotencyCache(), TransferMetrics.noop(), Optional.empty(), TransferRulePipeline.empty(),
+				exchangeRates);
+
+		service.transferFund(transfer("Id-1", "Id-2", "10"));
+		assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("90");
+		assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("110.87");
+		assertThat(history.query("Id-2", null, null, null, 10).getTransactions().get(0).getAmount())
+				.isEqualByComparingTo("10.87");
+
+		// A replaced table is used by the next transfer.
+		Files.write(file, "{\"base\":\"USD\",\"rates\":{\"EUR\":0.5}}".getBytes());
+		exchangeRates.reload();
+		service.transferFund(transfer("Id-2", "Id-1", "10"));
+		assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("95");
+
+		assertThatThrownBy(() -> service.transferFund(transfer("Id-1", "Id-3", "10")))
+				.isInstanceOf(IllegalOperationException.class).hasMessage("No exchange rate from EUR to GBP.");
+		exchangeRates.update(FxRateTable.builder().base("GBP")
+				.rates(Collections.singletonMap("EUR", new BigDecimal("1.2"))).build());
+		service.transferFund(transfer("Id-1", "Id-3", "12"));
+		assertThat(repository.getAccount("Id-3").getBalance()).isEqualByComparingTo("110");
+		assertThat(exchangeRates.getRates().toTable().getBase()).isEqualTo("GBP");
+	}
+
+	private static FundTransfer transfer(String accountFrom, String accountTo, String amount) {
+		return new FundTransfer(accountFrom, accountTo, new BigDecimal(amount), null);
+	}
+}
@@ -0,0 +1,74 @@
+package com.db.awmd.challenge.fx;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.FxRateTable;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+
+public class FxRatesTest {
+
+	@Test
+	public void convertsThroughCrossRatesRoundingHalfEven() {
+		FxRates rates = FxRates.of(table("EUR", "USD", "1.25", "JPY", "160"), 0);
+
+		assertThat(rates.convert(10_000, "EUR", "USD")).isEqualTo(12_500);
+		assertThat(rates.convert(12_500, "USD", "EUR")).isEqualTo(10_000);
+		// 1 USD = 128 JPY, crossed through EUR.
+		assertThat(rates.convert(100, "USD", "JPY")).isEqualTo(12_800);
+		assertThat(rates.convert(7, "EUR", "EUR")).isEqualTo(7);
+		// 0.02 EUR * 1.25 = 0.025 USD, a tie rounded to the even 0.02.
+		assertThat(rates.convert(2, "EUR", "USD")).isEqualTo(2);
+		assertThat(rates.convert(6, "EUR", "USD")).isEqualTo(8);
+	}
+
+	@Test
+	public void productsBeyondSixtyFourBitsConvertExactly() {
+		FxRates rates = FxRates.of(table("EUR", "JPY", "161.734925318", "USD", "1.0873"), 0);
+		long jpy = FxRates.multiply(1, 161_734_925_318L);
+		assertThat(jpy).isEqualTo(162);
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < 10_000; i++) {
+			long units = random.nextLong(Long.MAX_VALUE / 200);
+			assertThat(rates.convert(units, "EUR", "JPY")).isEqualTo(reference(units, "161.734925318"));
+			assertThat(rates.convert(units, "EUR", "USD")).isEqualTo(reference(units, "1.0873"));
+		}
+		assertThatThrownBy(() -> rates.convert(Long.MAX_VALUE / 100, "EUR", "JPY"))
+				.isInstanceOf(IllegalOperationException.class);
+	}
+
+	@Test
+	public void invalidTablesAndMissingRatesAreRejected() {
+		FxRates rates = FxRates.of(table("EUR", "USD", "1.0873"), 0);
+
+		assertThatThrownBy(() -> rates.convert(100, "EUR", "GBP")).isInstanceOf(IllegalOperationException.class)
+				.hasMessage("No exchange rate from EUR to GBP.");
+		assertThatThrownBy(() -> FxRates.of(table("EUR", "USD", "0"), 0))
+				.isInstanceOf(IllegalOperationException.class);
+		assertThatThrownBy(() -> FxRates.of(table("EUR", "US", "1"), 0)).isInstanceOf(IllegalOperationException.class);
+		assertThatThrownBy(() -> FxRates.of(table("EUR", "USD", "0.0000000001"), 0))
+				.isInstanceOf(IllegalOperationException.class);
+		assertThat(FxRates.of(table("eur", "usd", "1.0873"), 0).toTable().getRates()).containsOnlyKeys("USD");
+	}
+
+	private static long reference(long units, String rate) {
+		BigDecimal fixedPoint = new BigDecimal(rate).setScale(FxRates.RATE_SCALE, RoundingMode.HALF_EVEN);
+		return BigDecimal.valueOf(units).multiply(fixedPoint).setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+	}
+
+	private static FxRateTable table(String base, String... rates) {
+		Map<String, BigDecimal> quotes = new TreeMap<>();
+		for (int i = 0; i < rates.length; i += 2) {
+			quotes.put(rates[i], new BigDecimal(rates[i + 1]));
+		}
+		return FxRateTable.builder().base(base).rates(quotes).build();
+	}
+}
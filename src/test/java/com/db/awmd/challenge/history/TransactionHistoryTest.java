@@ -0,0 +1,99 @@
+package com.db.awmd.challenge.history;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.Transaction;
+import com.db.awmd.challenge.domain.TransactionPage;
+import com.db.awmd.challenge.domain.TransferEvent;
+
+public class TransactionHistoryTest {
+
+	private final TransactionHistory history = new TransactionHistory(1000);
+
+	@Test
+	public void recordsBothSidesOfTransfer() {
+		history.onTransfer(new TransferEvent("Id-1", "Id-2", 1_050, 100));
+
+		Transaction sent = history.query("Id-1", null, null, null, 10).getTransactions().get(0);
+		Transaction received = history.query("Id-2", null, null, null, 10).getTransactions().get(0);
+
+		assertThat(sent.getCounterparty()).isEqualTo("Id-2");
+		assertThat(sent.getAmount()).isEqualByComparingTo("-10.5");
+		assertThat(received.getCounterparty()).isEqualTo("Id-1");
+		assertThat(received.getAmount()).isEqualByComparingTo("10.5");
+		assertThat(received.getTimestamp()).isEqualTo(100);
+	}
+
+	@Test
+	public void cursorWalksAllPagesNewestFirst() {
+		for (int i = 0; i < 250; i++) {
+			history.onTransfer(new TransferEvent("Id-1", "Id-" + (2 + i % 3), 100, 1_000 + i));
+		}
+
+		List<Long> timestamps = new ArrayList<>();
+		String cursor = null;
+		do {
+			TransactionPage page = history.query("Id-1", null, null, cursor, 40);
+			page.getTransactions().forEach(transaction -> timestamps.add(transaction.getTimestamp()));
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+
+		assertThat(timestamps).hasSize(250);
+		assertThat(timestamps.get(0)).isEqualTo(1_249);
+		assertThat(timestamps.get(249)).isEqualTo(1_000);
+		assertThat(timestamps).isSortedAccordingTo((a, b) -> Long.compare(b, a));
+	}
+
+	@Test
+	public void timeRangeLimitsEntries() {
+		for (int i = 0; i < 100; i++) {
+			history.onTransfer(new TransferEvent("Id-1", "Id-2", 100, 1_000 + i));
+		}
+
+		TransactionPage page = history.query("Id-1", 1_010L, 1_020L, null, 5);
+		TransactionPage next = history.query("Id-1", 1_010L, 1_020L, page.getNextCursor(), 5);
+
+		assertThat(page.getTransactions()).extracting(Transaction::getTimestamp).containsExactly(1_019L, 1_018L,
+				1_017L, 1_016L, 1_015L);
+		assertThat(next.getTransactions()).extracting(Transaction::getTimestamp).containsExactly(1_014L, 1_013L,
+				1_012L, 1_011L, 1_010L);
+		assertThat(next.getNextCursor()).isNull();
+	}
+
+	@Test
+	public void retentionDropsOldestChunks() {
+		for (int i = 0; i < 5_000; i++) {
+			history.onTransfer(new TransferEvent("Id-1", "Id-2", 100, i));
+		}
+
+		List<Transaction> oldest = history.query("Id-1", null, 4_000L, null, 1000).getTransactions();
+
+		assertThat(oldest).isNotEmpty();
+		assertThat(oldest.get(oldest.size() - 1).getTimestamp()).isGreaterThanOrEqualTo(5_000 - 1_000 - 64);
+	}
+
+	@Test
+	public void historiesOfIdleAccountsAreEvictedBeyondTheTotalLimit() {
+		// Room for 20 chunks of 64 entries.
+		TransactionHistory bounded = new TransactionHistory(1000, 20 * 64);
+		bounded.onTransfer(new TransferEvent("Id-old", "Id-hub", 100, 1));
+		for (int i = 0; i < 1000; i++) {
+			bounded.onTransfer(new TransferEvent("Id-" + i, "Id-hub", 100, 1_000 + i));
+		}
+
+		// Every sender has a chunk, so only the newest of them fit next to the hub's.
+		assertThat(bounded.getAccountCount()).isLessThanOrEqualTo(20);
+		assertThat(bounded.query("Id-old", null, null, null, 10).getTransactions()).isEmpty();
+		assertThat(bounded.query("Id-999", null, null, null, 10).getTransactions()).hasSize(1);
+		assertThat(bounded.query("Id-hub", null, null, null, 10).getTransactions().get(0).getCounterparty())
+				.isEqualTo("Id-999");
+
+		bounded.onTransfer(new TransferEvent("Id-old", "Id-hub", 100, 5_000));
+		assertThat(bounded.query("Id-old", null, null, null, 10).getTransactions()).hasSize(1);
+	}
+}
@@ -0,0 +1,304 @@
+package com.db.awmd.challenge.journal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.domain.FxRateTable;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.fx.ExchangeRates;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.rules.TransferRulePipeline;
+import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.FundTransferService;
+import com.db.awmd.challenge.service.IdempotencyCache;
+
+public class TransferJournalTest {
+
+	@TempDir
+	Path directory;
+
+	private TransferJournal journal;
+
+	@AfterEach
+	public void closeJournal() throws InterruptedException {
+		if (journal != null) {
+			journal.destroy();
+		}
+	}
+
+	@Test
+	public void restartRebuildsAccountsAndBalances() throws Exception {
+		AccountsRepositoryInMemory repository = openJournal(1 << 20);
+		writeLedger(repository, 20);
+		journal.destroy();
+
+		AccountsRepositoryInMemory recovered = openJournal(1 << 20);
+
+		assertThat(recovered.getAccount("Id-1").getBalance()).isEqualByComparingTo("980");
+		assertThat(recovered.getAccount("Id-2").getBalance()).isEqualByComparingTo("1020.5");
+		assertThat(journal.getDurablePosition()).isEqualTo(journal.getWrittenPosition());
+	}
+
+	@Test
+	public void replayReportsBalancesLeftNegativeByLostTransfers() {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		RepositoryReplayer replayer = new RepositoryReplayer(repository);
+		replayer.onAccountCreated("Id-A", Account.DEFAULT_CURRENCY, 1000);
+		replayer.onAccountCreated("Id-B", Account.DEFAULT_CURRENCY, 0);
+		replayer.onAccountCreated("Id-C", Account.DEFAULT_CURRENCY, 0);
+		// Id-B -> Id-C became durable, the Id-A -> Id-B transfer funding it was lost.
+		replayer.onTransfer("Id-B", "Id-C", 600, 600, 2);
+		replayer.onTransfer("Id-C", "Id-A", 100, 100, 3);
+
+		assertThat(replayer.getNegativeAccounts()).containsExactly("Id-B");
+		assertThat(repository.getAccount("Id-B").getBalanceUnits()).isEqualTo(-600);
+	}
+
+	@Test
+	public void recordsRollOverIntoNewSegments() throws Exception {
+		AccountsRepositoryInMemory repository = openJournal(256);
+		writeLedger(repository, 100);
+		journal.destroy();
+
+		assertThat(JournalSegment.list(directory).size()).isGreaterThan(1);
+		AccountsRepositoryInMemory recovered = openJournal(256);
+
+		assertThat(recovered.getAccount("Id-1").getBalance()).isEqualByComparingTo("900");
+		assertThat(recovered.getAccount("Id-2").getBalance()).isEqualByComparingTo("1100.5");
+	}
+
+	@Test
+	public void tornTailIsDiscardedAndOverwritten() throws Exception {
+		AccountsRepositoryInMemory repository = openJournal(1 << 20);
+		writeLedger(repository, 3);
+		long end = journal.getWrittenPosition();
+		journal.destroy();
+		corruptByteBefore(end);
+
+		AccountsRepositoryInMemory recovered = openJournal(1 << 20);
+
+		// The last of the three transfers is lost, the ones before it are intact.
+		assertThat(recovered.getAccount("Id-1").getBalance()).isEqualByComparingTo("998");
+		assertThat(journal.getWrittenPosition()).isLessThan(end);
+
+		transferService(recovered).transferFund(transfer("Id-2", "Id-1", "5"));
+		journal.destroy();
+		assertThat(openJournal(1 << 20).getAccount("Id-1").getBalance()).isEqualByComparingTo("1003");
+	}
+
+	@Test
+	public void startupLoadsSnapshotAndReplaysOnlyTheJournalBehindIt() throws Exception {
+		AccountsRepositoryInMemory repository = openJournal(256);
+		writeLedger(repository, 100);
+		long snapshotPosition = journal.snapshot();
+		transferService(repository).transferFund(transfer("Id-2", "Id-1", "50"));
+		journal.destroy();
+
+		assertThat(snapshotPosition).isPositive();
+		assertThat(JournalSegment.list(directory).get(0)).isEqualTo(snapshotPosition / 256);
+		AccountsRepositoryInMemory recovered = openJournal(256);
+
+		assertThat(journal.getSnapshotPosition()).isEqualTo(snapshotPosition);
+		assertThat(recovered.getAccount("Id-1").getBalance()).isEqualByComparingTo("950");
+		assertThat(recovered.getAccount("Id-2").getBalance()).isEqualByComparingTo("1050.5");
+	}
+
+	@Test
+	public void snapshotsTakenDuringTransfersMatchTheLedger() throws Exception {
+		AccountsRepositoryInMemory repository = openJournal(4096);
+		AccountsService accountsService = new AccountsService(repository, Collections.singletonList(journal));
+		for (int i = 0; i < 16; i++) {
+			accountsService.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+		}
+		FundTransferService transferService = transferService(repository);
+
+		ExecutorService clients = Executors.newFixedThreadPool(4);
+		for (int t = 0; t < 4; t++) {
+			int client = t;
+			clients.execute(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < 2_000; i++) {
+					if (i % 500 == 0) {
+						accountsService.createAccount(new Account("New-" + client + "-" + i, BigDecimal.TEN));
+					}
+					int from = random.nextInt(16);
+					try {
+						transferService.transferFund(transfer("Id-" + from, "Id-" + (from + 1) % 16, "1.25"));
+					} catch (InsufficientBalanceException e) {
+						// Expected once an account ran dry.
+					}
+				}
+			});
+		}
+		clients.shutdown();
+		while (!clients.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+			journal.snapshot();
+		}
+		journal.snapshot();
+		journal.destroy();
+
+		AccountsRepositoryInMemory recovered = openJournal(4096);
+		for (int i = 0; i < 16; i++) {
+			assertThat(recovered.getAccount("Id-" + i).getBalanceUnits())
+					.isEqualTo(repository.getAccount("Id-" + i).getBalanceUnits());
+		}
+		assertThat(recovered.getAccount("New-3-1500").getBalance()).isEqualByComparingTo("10");
+	}
+
+	@Test
+	public void currenciesAndConvertedTransfersSurviveSnapshotsAndReplay() throws Exception {
+		AccountsRepositoryInMemory repository = openJournal(1 << 20);
+		AccountsService accountsService = new AccountsService(repository, Collections.singletonList(journal));
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal(1000), "USD"));
+		ExchangeRates exchangeRates = new ExchangeRates();
+		exchangeRates.update(FxRateTable.builder().base("EUR")
+				.rates(Collections.singletonMap("USD", new BigDecimal("1.0873"))).build());
+		FundTransferService transferService = new FundTransferService(repository,
+				new LockingTransferExecutor(new AccountLockManager(), Optional.of(journal)), Collections.emptyList(),
+				new IdempotencyCache(), TransferMetrics.noop(), Optional.empty(), TransferRulePipeline.empty(),
+				exchangeRates);
+		transferService.transferFund(transfer("Id-1", "Id-2", "10"));
+		journal.snapshot();
+		transferService.transferFund(transfer("Id-1", "Id-2", "10"));
+		accountsService.createAccount(new Account("Id-3", BigDecimal.ONE, "GBP"));
+		journal.destroy();
+
+		AccountsRepositoryInMemory recovered = openJournal(1 << 20);
+
+		assertThat(recovered.getAccount("Id-1").getCurrency()).isEqualTo("EUR");
+		assertThat(recovered.getAccount("Id-1").getBalance()).isEqualByComparingTo("980");
+		assertThat(recovered.getAccount("Id-2").getCurrency()).isEqualTo("USD");
+		assertThat(recovered.getAccount("Id-2").getBalance()).isEqualByComparingTo("1021.74");
+		assertThat(recovered.getAccount("Id-3").getCurrency()).isEqualTo("GBP");
+
+		journal.snapshot();
+		journal.destroy();
+		assertThat(openJournal(1 << 20).getAccount("Id-3").getCurrency()).isEqualTo("GBP");
+	}
+
+	@Test
+	public void onlyTheLocalSideOfCrossNodeTransfersIsJournaled() throws Exception {
+		AccountsRepositoryInMemory repository = openJournal(1 << 20);
+		new AccountsService(repository, Collections.singletonList(journal))
+				.createAccount(new Account("Id-1", new BigDecimal(1000)));
+		journal.appendRemoteLeg("tx-1", "Id-1", "Remote-1", -30_000);
+		journal.awaitDurable(journal.appendRemoteLeg("tx-2", "Id-1", "Remote-2", 5_000));
+		journal.settleRemoteLegs("tx-1");
+		journal.settleRemoteLegs("tx-2");
+		journal.snapshot();
+		journal.awaitDurable(journal.appendRemoteLeg("tx-3", "Id-1", "Remote-1", -100));
+		journal.destroy();
+
+		AccountsRepositoryInMemory recovered = openJournal(1 << 20);
+
+		assertThat(recovered.getAccount("Id-1").getBalance()).isEqualByComparingTo("749");
+		assertThat(recovered.getAccount("Remote-1")).isNull();
+		assertThat(recovered.getAccount("Remote-2")).isNull();
+		assertThat(journal.getRecoveredLegUnits("tx-1")).isZero();
+		assertThat(journal.getRecoveredLegUnits("tx-3")).isEqualTo(-100);
+	}
+
+	@Test
+	public void snapshotsStopBeforeUnsettledCrossNodeTransactions() throws Exception {
+		AccountsRepositoryInMemory repository = openJournal(1 << 20);
+		new AccountsService(repository, Collections.singletonList(journal))
+				.createAccount(new Account("Id-1", new BigDecimal(1000)));
+		long beforeLeg = journal.getWrittenPosition();
+		journal.awaitDurable(journal.appendRemoteLeg("tx-1", "Id-1", "Remote-1", -30_000));
+		journal.awaitDurable(journal.appendRemoteLeg("tx-1", "Id-1", "Remote-1", 30_000));
+
+		assertThat(journal.snapshot()).isEqualTo(beforeLeg);
+		journal.destroy();
+
+		openJournal(1 << 20);
+		// Replayed from the journal and undone by its reversal.
+		assertThat(journal.getSnapshotPosition()).isEqualTo(beforeLeg);
+		assertThat(journal.getRecoveredLegUnits("tx-1")).isZero();
+		assertThat(journal.snapshot()).isEqualTo(journal.getWrittenPosition());
+	}
+
+	@Test
+	public void transfersAreJournaledBeforeTheyAreAcknowledged() throws Exception {
+		AccountsRepositoryInMemory repository = openJournal(1 << 20);
+		AccountsService accountsService = new AccountsService(repository, Collections.singletonList(journal));
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(100)));
+		accountsService.createAccount(new Account("Id-2", BigDecimal.ZERO));
+		FundTransferService transferService = transferService(repository);
+		transferService.transferFund(transfer("Id-1", "Id-2", "40"));
+		try {
+			transferService.transferFund(transfer("Id-1", "Id-2", "70"));
+		} catch (InsufficientBalanceException e) {
+			// Rejected before its record was appended.
+		}
+		// No listener wrote the transfer: it was appended by the executor.
+		journal.destroy();
+
+		AccountsRepositoryInMemory recovered = openJournal(1 << 20);
+
+		assertThat(recovered.getAccount("Id-1").getBalance()).isEqualByComparingTo("60");
+		assertThat(recovered.getAccount("Id-2").getBalance()).isEqualByComparingTo("40");
+	}
+
+	private AccountsRepositoryInMemory openJournal(int segmentSize) throws IOException {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		journal = new TransferJournal(repository, directory.toString(), segmentSize, true, 0, 0);
+		journal.afterPropertiesSet();
+		return repository;
+	}
+
+	private void writeLedger(AccountsRepositoryInMemory repository, int transfers) {
+		AccountsService accountsService = new AccountsService(repository, Collections.singletonList(journal));
+		accountsService.createAccount(new Account("Id-1", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("Id-2", new BigDecimal("1000.5")));
+		FundTransferService transferService = transferService(repository);
+		for (int i = 0; i < transfers; i++) {
+			transferService.transferFund(transfer("Id-1", "Id-2", "1"));
+		}
+	}
+
+	private FundTransferService transferService(AccountsRepositoryInMemory repository) {
+		return new FundTransferService(repository,
+				new LockingTransferExecutor(new AccountLockManager(), Optional.of(journal)), Collections.emptyList());
+	}
+
+	private static FundTransfer transfer(String accountFrom, String accountTo, String amount) {
+		return FundTransfer.builder().accountFrom(accountFrom).accountTo(accountTo).amount(new BigDecimal(amount))
+				.build();
+	}
+
+	private void corruptByteBefore(long position) throws IOException {
+		List<Long> segments = JournalSegment.list(directory);
+		Path last = directory.resolve(String.format("%020d.journal", segments.get(segments.size() - 1)));
+		try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer flipped = ByteBuffer.allocate(1);
+			long offset = position - 6;
+			channel.read(flipped, offset);
+			flipped.put(0, (byte) ~flipped.get(0));
+			flipped.rewind();
+			channel.write(flipped, offset);
+		}
+	}
+}
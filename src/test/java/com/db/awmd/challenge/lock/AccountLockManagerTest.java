@@ -0,0 +1,70 @@
+package com.db.awmd.challenge.lock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.exception.LockAcquisitionTimeoutException;
+import com.db.awmd.challenge.lock.AccountLockManager.AccountLocks;
+
+public class AccountLockManagerTest {
+
+	@Test
+	public void stripeCountIsRoundedUpToPowerOfTwo() {
+		assertThat(new AccountLockManager(1000, 100).getStripeCount()).isEqualTo(1024);
+		assertThat(new AccountLockManager(1, 100).getStripeCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void accountsSharingStripeAreLockedOnce() {
+		AccountLockManager lockManager = new AccountLockManager(1, 100);
+
+		AccountLocks pair = lockManager.lock("001", "002");
+		try {
+			assertThat(lockManager.stripeOf("001")).isEqualTo(lockManager.stripeOf("002"));
+			// The stripe is reentrant, so only the hold count tells it was taken once.
+			assertThat(lockManager.getHoldCount(0)).isEqualTo(1);
+		} finally {
+			pair.close();
+		}
+		assertThat(lockManager.getHoldCount(0)).isZero();
+		AccountLocks all = lockManager.lockAll(Arrays.asList("001", "002", "003"));
+		try {
+			assertThat(lockManager.stripeOf("003")).isZero();
+			assertThat(lockManager.getHoldCount(0)).isEqualTo(1);
+		} finally {
+			all.close();
+		}
+		assertThat(lockManager.getHoldCount(0)).isZero();
+		long token = lockManager.lockPair("001", "002");
+		try {
+			assertThat(lockManager.getHoldCount(0)).isEqualTo(1);
+		} finally {
+			lockManager.unlockPair(token);
+		}
+		assertThat(lockManager.getHoldCount(0)).isZero();
+	}
+
+	@Test
+	public void lockTimesOutWhenHeldByAnotherThread() throws Exception {
+		AccountLockManager lockManager = new AccountLockManager(16, 50);
+
+		AccountLocks locks = lockManager.lock("001", "002");
+		try {
+			CompletableFuture<Void> contender = CompletableFuture.runAsync(() -> lockManager.lock("002", "001").close());
+
+			Assertions.assertThrows(Exception.class, () -> contender.get(5, TimeUnit.SECONDS));
+			assertThat(contender.handle((v, e) -> e.getCause()).get())
+					.isInstanceOf(LockAcquisitionTimeoutException.class);
+		} finally {
+			locks.close();
+		}
+		// All stripes were released by the failed attempt as well.
+		CompletableFuture.runAsync(() -> lockManager.lock("001", "002").close()).get(5, TimeUnit.SECONDS);
+	}
+}
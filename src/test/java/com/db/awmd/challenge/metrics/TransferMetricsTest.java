@@ -0,0 +1,114 @@
+package com.db.awmd.challenge.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountNumberException;
+import com.db.awmd.challenge.exception.LockAcquisitionTimeoutException;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.lock.AccountLockManager.AccountLocks;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.FundTransferService;
+import com.db.awmd.challenge.service.IdempotencyCache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+public class TransferMetricsTest {
+
+	@Test
+	public void transfersAreTimedPerOutcome() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		TransferMetrics metrics = new TransferMetrics(registry);
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+		repository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+		FundTransferService service = new FundTransferService(repository,
+				new LockingTransferExecutor(new AccountLockManager(16, 100, metrics)), Collections.emptyList(),
+				new IdempotencyCache(), metrics);
+
+		service.transferFund(transfer("Id-1", "Id-2", "60"));
+		Assertions.assertThrows(InsufficientBalanceException.class,
+				() -> service.transferFund(transfer("Id-1", "Id-2", "60")));
+		Assertions.assertThrows(InvalidAccountNumberException.class,
+				() -> service.transferFund(transfer("Id-1", "Id-3", "1")));
+
+		assertThat(count(registry, "success")).isEqualTo(1);
+		assertThat(count(registry, "insufficient_balance")).isEqualTo(1);
+		assertThat(count(registry, "invalid_account")).isEqualTo(1);
+		assertThat(registry.get("transfer.lock.wait").timer().count()).isEqualTo(2);
+	}
+
+	@Test
+	public void lockTimeoutsRecordTheirWait() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		AccountLockManager lockManager = new AccountLockManager(1, 50, new TransferMetrics(registry));
+
+		Thread holder = new Thread(() -> {
+			AccountLocks locks = lockManager.lock("Id-1", "Id-2");
+			try {
+				Thread.sleep(500);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				locks.close();
+			}
+		});
+		holder.start();
+		Thread.sleep(100);
+		Assertions.assertThrows(LockAcquisitionTimeoutException.class, () -> lockManager.lock("Id-1", "Id-2"));
+		holder.interrupt();
+		holder.join();
+
+		assertThat(registry.get("transfer.lock.wait").timer().max(TimeUnit.MILLISECONDS))
+				.isGreaterThanOrEqualTo(50);
+	}
+
+	@Test
+	public void recordingDoesNotAllocate() {
+		TransferMetrics metrics = new TransferMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+		RuntimeException rejection = new InsufficientBalanceException("No funds");
+		// Warm up until the JIT compiled the recording path.
+		for (int i = 0; i < 2_000_000; i++) {
+			record(metrics, i, rejection);
+		}
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < 1_000_000; i++) {
+			record(metrics, i, rejection);
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+		// A single allocation per record would add up to megabytes.
+		assertThat(allocated).isLessThan(64 * 1024);
+	}
+
+	private static void record(TransferMetrics metrics, int i, RuntimeException rejection) {
+		metrics.recordTransfer(1_000 + i % 100_000, (i & 7) == 0 ? rejection : null);
+		metrics.recordLockWait(i % 10_000);
+	}
+
+	private static long count(SimpleMeterRegistry registry, String outcome) {
+		return registry.get("transfer.latency").tag("outcome", outcome).timer().count();
+	}
+
+	private static FundTransfer transfer(String accountFrom, String accountTo, String amount) {
+		return FundTransfer.builder().accountFrom(accountFrom).accountTo(accountTo).amount(new BigDecimal(amount))
+				.build();
+	}
+}
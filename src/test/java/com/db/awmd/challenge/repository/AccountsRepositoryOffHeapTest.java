@@ -0,0 +1,136 @@
+package com.db.awmd.challenge.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.exception.DuplicateAccountIdException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.service.FundTransferService;
+
+public class AccountsRepositoryOffHeapTest {
+
+	private static final int ACCOUNTS = 200_000;
+
+	private final AccountsRepositoryOffHeap repository = new AccountsRepositoryOffHeap(4, 64);
+
+	@Test
+	public void storesAccountsBeyondInitialCapacity() {
+		for (int i = 0; i < ACCOUNTS; i++) {
+			repository.createAccount(new Account("Id-" + i, BigDecimal.valueOf(i, 2)));
+		}
+
+		assertThat(repository.size()).isEqualTo(ACCOUNTS);
+		for (int i = 0; i < ACCOUNTS; i++) {
+			assertThat(repository.getAccount("Id-" + i).getBalanceUnits()).isEqualTo(i);
+		}
+		assertThat(repository.getAccount("Id-" + ACCOUNTS)).isNull();
+		assertThat(repository.getAccount("Id-17")).isEqualTo(new Account("Id-17", new BigDecimal("0.17")));
+	}
+
+	@Test
+	public void rejectsDuplicateIds() {
+		repository.createAccount(new Account("Id-\u00e9", new BigDecimal(10)));
+
+		Assertions.assertThrows(DuplicateAccountIdException.class,
+				() -> repository.createAccount(new Account("Id-\u00e9", new BigDecimal(20))));
+		assertThat(repository.getAccount("Id-\u00e9").getBalance()).isEqualByComparingTo("10");
+	}
+
+	@Test
+	public void bulkCreationReportsDuplicates() {
+		repository.createAccount(new Account("Id-7", new BigDecimal(70)));
+		List<Account> accounts = new ArrayList<>();
+		for (int i = 0; i < 10_000; i++) {
+			accounts.add(new Account("Id-" + i, BigDecimal.valueOf(i), i % 2 == 0 ? "EUR" : "USD"));
+		}
+		accounts.add(new Account("Id-42", BigDecimal.ONE));
+
+		BitSet duplicates = repository.createAccounts(accounts);
+
+		assertThat(duplicates.stream().toArray()).containsExactly(7, 10_000);
+		assertThat(repository.size()).isEqualTo(10_000);
+		assertThat(repository.getAccount("Id-7").getBalance()).isEqualByComparingTo("70");
+		assertThat(repository.getAccount("Id-42").getBalance()).isEqualByComparingTo("42");
+		assertThat(repository.getAccount("Id-9999").getBalance()).isEqualByComparingTo("9999");
+		assertThat(repository.getAccount("Id-9999").getCurrency()).isEqualTo("USD");
+		assertThat(repository.getAccount("Id-42").getCurrency()).isEqualTo("EUR");
+	}
+
+	@Test
+	public void listsEveryAccountAsView() {
+		for (int i = 0; i < 10_000; i++) {
+			repository.createAccount(new Account("Id-" + i, BigDecimal.valueOf(i), i % 3 == 0 ? "USD" : "EUR"));
+		}
+		repository.createAccount(new Account("Id-\u00e9", new BigDecimal(10)));
+
+		List<Account> accounts = repository.listAccounts();
+
+		assertThat(accounts).hasSize(10_001).contains(new Account("Id-9999", BigDecimal.valueOf(9999), "USD"),
+				new Account("Id-\u00e9", new BigDecimal(10)));
+		accounts.stream().filter(account -> account.getAccountId().equals("Id-5")).findFirst().get().creditUnits(1);
+		assertThat(repository.getAccount("Id-5").getBalance()).isEqualByComparingTo("5.01");
+	}
+
+	@Test
+	public void balanceUpdatesAreSharedByAllViews() {
+		repository.createAccount(new Account("Id-1", new BigDecimal(10)));
+
+		repository.getAccount("Id-1").creditUnits(250);
+		Assertions.assertThrows(InsufficientBalanceException.class, () -> repository.getAccount("Id-1").debitUnits(1251));
+
+		assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("12.5");
+		assertThat(repository.getAccount("Id-1").snapshot().getVersion()).isEqualTo(1);
+	}
+
+	@Test
+	public void concurrentCreationAndTransfersConserveMoney() throws Exception {
+		for (int i = 0; i < 64; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+		}
+		FundTransferService service = new FundTransferService(repository, (account, description) -> {
+		});
+
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		for (int t = 0; t < 8; t++) {
+			int client = t;
+			clients.execute(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < 20_000; i++) {
+					if (client % 2 == 0) {
+						repository.createAccount(new Account("New-" + client + "-" + i, BigDecimal.ZERO));
+					}
+					int from = random.nextInt(64);
+					try {
+						service.transferFund(FundTransfer.builder().accountFrom("Id-" + from)
+								.accountTo("Id-" + (from + 1 + random.nextInt(63)) % 64)
+								.amount(BigDecimal.valueOf(1 + random.nextInt(100))).build());
+					} catch (InsufficientBalanceException e) {
+						// Expected once an account ran dry.
+					}
+				}
+			});
+		}
+		clients.shutdown();
+		assertThat(clients.awaitTermination(5, TimeUnit.MINUTES)).isTrue();
+
+		long total = 0;
+		for (int i = 0; i < 64; i++) {
+			total += repository.getAccount("Id-" + i).getBalanceUnits();
+		}
+		assertThat(total).isEqualTo(64 * 100_000L);
+		assertThat(repository.size()).isEqualTo(64 + 4 * 20_000);
+	}
+}
@@ -0,0 +1,110 @@
+package com.db.awmd.challenge.rules;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.domain.FxRateTable;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.TransferRuleViolationException;
+import com.db.awmd.challenge.fx.ExchangeRates;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.FundTransferService;
+import com.db.awmd.challenge.service.IdempotencyCache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TransferRulePipelineTest {
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final TransferMetrics metrics = new TransferMetrics(registry);
+
+	@Test
+	public void rejectionRevertsTheRulesThatAcceptedTheTransfer() {
+		VelocityRule count = new VelocityRule("count", 60_000, 60, Long.MAX_VALUE, 2);
+		VelocityRule amount = new VelocityRule("amount", 60_000, 60, 1000, Long.MAX_VALUE);
+		TransferRulePipeline pipeline = new TransferRulePipeline(Arrays.asList(count, amount), metrics);
+
+		pipeline.apply("Id-1", "Id-2", 600, "EUR", 0);
+		assertThatThrownBy(() -> pipeline.apply("Id-1", "Id-2", 600, "EUR", 0))
+				.isInstanceOf(TransferRuleViolationException.class).hasMessageContaining("'amount'");
+		// The count rule took the rejected transfer back, so a second one still fits.
+		pipeline.apply("Id-1", "Id-2", 400, "EUR", 0);
+		assertThatThrownBy(() -> pipeline.apply("Id-1", "Id-2", 1, "EUR", 0))
+				.isInstanceOf(TransferRuleViolationException.class).hasMessageContaining("'count'");
+
+		assertThat(registry.get("transfer.rule.evaluation").tag("rule", "count").timer().count()).isEqualTo(4);
+		assertThat(registry.get("transfer.rule.evaluation").tag("rule", "amount").timer().count()).isEqualTo(3);
+		assertThat(registry.get("transfer.rule.violations").tag("rule", "amount").counter().count()).isEqualTo(1);
+		assertThat(registry.get("transfer.rule.violations").tag("rule", "count").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	public void transfersThatFailToExecuteDoNotCountTowardsTheLimit() {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+		repository.createAccount(new Account("Id-2", BigDecimal.ZERO));
+		TransferRulePipeline pipeline = new TransferRulePipeline(
+				Collections.singletonList(new VelocityRule("count", 60_000, 60, Long.MAX_VALUE, 1)), metrics);
+		FundTransferService service = new FundTransferService(repository,
+				new LockingTransferExecutor(new AccountLockManager()), Collections.emptyList(), new IdempotencyCache(),
+				metrics, Optional.empty(), pipeline);
+
+		assertThatThrownBy(() -> service.transferFund(transfer("Id-1", "Id-2", "500", "t-1")))
+				.isInstanceOf(InsufficientBalanceException.class);
+		service.transferFund(transfer("Id-1", "Id-2", "50", "t-2"));
+		assertThatThrownBy(() -> service.transferFund(transfer("Id-1", "Id-2", "50", "t-3")))
+				.isInstanceOf(TransferRuleViolationException.class);
+
+		assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("50");
+		assertThat(registry.get("transfer.latency").tag("outcome", "rule_violation").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	public void amountsAreLimitedInTheLimitCurrency() {
+		ExchangeRates exchangeRates = new ExchangeRates();
+		exchangeRates.update(FxRateTable.builder().base("EUR")
+				.rates(Collections.singletonMap("JPY", new BigDecimal("150"))).build());
+		TransferRulePipeline pipeline = new TransferRulePipeline(
+				Collections.singletonList(new VelocityRule("amount", 60_000, 60, 100_00, Long.MAX_VALUE)), metrics,
+				exchangeRates, "EUR");
+
+		// 9,000.00 JPY are 60.00 EUR, so 6,150.00 JPY (41.00 EUR) more go over the 100.00 EUR limit.
+		assertThat(pipeline.apply("Id-1", "Id-2", 9_000_00, "JPY", 0)).isEqualTo(60_00);
+		assertThatThrownBy(() -> pipeline.apply("Id-1", "Id-2", 6_150_00, "JPY", 0))
+				.isInstanceOf(TransferRuleViolationException.class);
+		long limitUnits = pipeline.apply("Id-1", "Id-2", 40_00, "EUR", 0);
+		pipeline.revert("Id-1", "Id-2", limitUnits, 0);
+		pipeline.apply("Id-1", "Id-2", 6_000_00, "JPY", 0);
+	}
+
+	@Test
+	public void amountsWithoutRateOnlyCountTowardsCountLimits() {
+		TransferRulePipeline pipeline = new TransferRulePipeline(
+				Arrays.asList(new VelocityRule("amount", 60_000, 60, 100_00, Long.MAX_VALUE),
+						new VelocityRule("count", 60_000, 60, Long.MAX_VALUE, 2)),
+				metrics, new ExchangeRates(), "EUR");
+
+		// No rates at all: USD amounts can't be limited, but they are counted.
+		assertThat(pipeline.apply("Id-1", "Id-2", 1_000_00, "USD", 0)).isZero();
+		pipeline.apply("Id-1", "Id-2", 1_000_00, "USD", 0);
+		assertThatThrownBy(() -> pipeline.apply("Id-1", "Id-2", 1_00, "USD", 0))
+				.isInstanceOf(TransferRuleViolationException.class);
+	}
+
+	private static FundTransfer transfer(String accountFrom, String accountTo, String amount, String transferId) {
+		return new FundTransfer(accountFrom, accountTo, new BigDecimal(amount), transferId);
+	}
+}
@@ -0,0 +1,80 @@
+package com.db.awmd.challenge.rules;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.exception.TransferRuleViolationException;
+
+public class VelocityRuleTest {
+
+	@Test
+	public void countSlidesOutOfTheWindowBucketByBucket() {
+		// Three transfers per second in buckets of 100 ms.
+		VelocityRule rule = new VelocityRule("count", 1000, 10, Long.MAX_VALUE, 3);
+		rule.apply("Id-1", "Id-2", 1, 10_000);
+		rule.apply("Id-1", "Id-2", 1, 10_500);
+		rule.apply("Id-1", "Id-2", 1, 10_900);
+		assertThatThrownBy(() -> rule.apply("Id-1", "Id-2", 1, 10_999))
+				.isInstanceOf(TransferRuleViolationException.class).hasMessageContaining("'count'");
+		assertThatCode(() -> rule.apply("Id-2", "Id-1", 1, 10_999)).doesNotThrowAnyException();
+
+		// The bucket of 10_000 leaves the window at 11_000, the others stay.
+		assertThatThrownBy(() -> rule.apply("Id-1", "Id-2", 1, 10_999))
+				.isInstanceOf(TransferRuleViolationException.class);
+		rule.apply("Id-1", "Id-2", 1, 11_000);
+		assertThatThrownBy(() -> rule.apply("Id-1", "Id-2", 1, 11_400))
+				.isInstanceOf(TransferRuleViolationException.class);
+		// Idle for longer than the window, everything is forgotten.
+		for (int i = 0; i < 3; i++) {
+			rule.apply("Id-1", "Id-2", 1, 60_000);
+		}
+	}
+
+	@Test
+	public void amountIsLimitedAndRevertedTransfersDoNotCount() {
+		VelocityRule rule = new VelocityRule("amount", 60_000, 60, 1000, Long.MAX_VALUE);
+		rule.apply("Id-1", "Id-2", 600, 0);
+		assertThatThrownBy(() -> rule.apply("Id-1", "Id-2", 401, 1_000))
+				.isInstanceOf(TransferRuleViolationException.class);
+		rule.apply("Id-1", "Id-2", 400, 1_000);
+		rule.revert("Id-1", "Id-2", 400, 1_000);
+		rule.apply("Id-1", "Id-2", 400, 2_000);
+		assertThatThrownBy(() -> rule.apply("Id-1", "Id-2", 1, 2_000))
+				.isInstanceOf(TransferRuleViolationException.class);
+		assertThatThrownBy(() -> rule.apply("Id-1", "Id-2", Long.MAX_VALUE, 2_000))
+				.isInstanceOf(TransferRuleViolationException.class);
+
+		// The first transfer left the window, and reverting it no longer changes anything.
+		rule.apply("Id-1", "Id-2", 600, 60_000 + 500);
+		rule.revert("Id-1", "Id-2", 600, 0);
+		assertThatThrownBy(() -> rule.apply("Id-1", "Id-2", 1, 60_000 + 500))
+				.isInstanceOf(TransferRuleViolationException.class);
+	}
+
+	@Test
+	public void ringsOfIdleAccountsAreDropped() {
+		VelocityRule rule = new VelocityRule("count", 1000, 10, Long.MAX_VALUE, 3);
+		int accounts = VelocityRule.SWEEP_BATCH + 36;
+		for (int i = 0; i < accounts; i++) {
+			rule.apply("Id-" + i, "Id-x", 1, 10_000);
+		}
+		rule.apply("Id-0", "Id-x", 1, 10_500);
+		rule.apply("Id-0", "Id-x", 1, 10_900);
+		assertThat(rule.size()).isEqualTo(accounts);
+
+		// A window later the sweep starts, visiting a bounded batch of rings per transfer.
+		rule.apply("Id-0", "Id-x", 1, 11_000);
+		assertThat(rule.size()).isBetween(accounts - VelocityRule.SWEEP_BATCH, accounts - VelocityRule.SWEEP_BATCH + 1);
+		// Once it's through, only the account still sending within the window keeps its ring, and its count.
+		assertThatThrownBy(() -> rule.apply("Id-0", "Id-x", 1, 11_100))
+				.isInstanceOf(TransferRuleViolationException.class);
+		assertThat(rule.size()).isEqualTo(1);
+		rule.revert("Id-1", "Id-x", 1, 10_000);
+		for (int i = 0; i < 3; i++) {
+			rule.apply("Id-1", "Id-x", 1, 11_700);
+		}
+	}
+}
@@ -4,10 +4,14 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.Test;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.TransferEvent;
 import com.db.awmd.challenge.exception.DuplicateAccountIdException;
 import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
 
@@ -38,4 +42,60 @@ public class AccountsServiceTest {
 		}
 
 	}
+
+	@Test
+	public void listenersGetTheOpeningBalance() {
+		AtomicLong journaled = new AtomicLong(-1);
+		LedgerListener earlyTransfer = new LedgerListener() {
+			@Override
+			public void onAccountCreated(Account account, long openingUnits) {
+				// A transfer crediting the account as soon as it is visible.
+				account.creditUnits(500);
+			}
+
+			@Override
+			public void onTransfer(TransferEvent event) {
+			}
+		};
+		LedgerListener journal = new LedgerListener() {
+			@Override
+			public void onAccountCreated(Account account, long openingUnits) {
+				journaled.set(openingUnits);
+			}
+
+			@Override
+			public void onTransfer(TransferEvent event) {
+			}
+		};
+		AccountsService service = new AccountsService(new AccountsRepositoryInMemory(),
+				Arrays.asList(earlyTransfer, journal));
+
+		service.createAccount(new Account("Id-1", new BigDecimal(10)));
+
+		assertThat(journaled.get()).isEqualTo(1000);
+		assertThat(service.getAccount("Id-1").getBalanceUnits()).isEqualTo(1500);
+	}
+
+	@Test
+	public void listenersGetTheStoredHotAccount() {
+		AtomicReference<Account> created = new AtomicReference<>();
+		LedgerListener listener = new LedgerListener() {
+			@Override
+			public void onAccountCreated(Account account, long openingUnits) {
+				created.set(account);
+			}
+
+			@Override
+			public void onTransfer(TransferEvent event) {
+			}
+		};
+		AccountsService service = new AccountsService(new AccountsRepositoryInMemory(new String[] { "Id-hot" }, 4),
+				Arrays.asList(listener));
+
+		service.createAccount(new Account("Id-hot", new BigDecimal(10)));
+		service.getAccount("Id-hot").creditUnits(500);
+
+		assertThat(created.get()).isSameAs(service.getAccount("Id-hot"));
+		assertThat(created.get().getBalanceUnits()).isEqualTo(1500);
+	}
 }
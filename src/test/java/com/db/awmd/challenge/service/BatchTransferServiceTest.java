@@ -0,0 +1,133 @@
+package com.db.awmd.challenge.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BatchMode;
+import com.db.awmd.challenge.domain.BatchTransferResult;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.domain.TransferItemResult.Status;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+public class BatchTransferServiceTest {
+
+	private AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+
+	private NotificationService notificationService = Mockito.mock(NotificationService.class);
+
+	private BatchTransferService batchTransferService = new BatchTransferService(repository, new AccountLockManager(),
+			Collections.singletonList(LedgerListener.notifying(notificationService, repository)), 4);
+
+	@BeforeEach
+	public void createAccounts() {
+		repository.createAccount(Account.builder().accountId("001").balance(new BigDecimal(100)).build());
+		repository.createAccount(Account.builder().accountId("002").balance(new BigDecimal(100)).build());
+		repository.createAccount(Account.builder().accountId("003").balance(BigDecimal.ZERO).build());
+	}
+
+	@Test
+	public void bestEffortAppliesValidItemsAgainstRunningBalances() {
+		BatchTransferResult result = batchTransferService.transferBatch(
+				Arrays.asList(transfer("001", "003", 80), transfer("003", "002", 50), transfer("001", "002", 30),
+						transfer("004", "002", 10)),
+				BatchMode.BEST_EFFORT);
+
+		assertThat(result.getResults()).extracting("status").containsExactly(Status.SUCCESS, Status.SUCCESS,
+				Status.REJECTED, Status.REJECTED);
+		assertThat(result.getSucceeded()).isEqualTo(2);
+		assertThat(result.getResults().get(3).getMessage()).isEqualTo("004 account doesn't exist");
+		assertThat(repository.getAccount("001").getBalance()).isEqualByComparingTo("20");
+		assertThat(repository.getAccount("002").getBalance()).isEqualByComparingTo("150");
+		assertThat(repository.getAccount("003").getBalance()).isEqualByComparingTo("30");
+		verify(notificationService, times(4)).notifyAboutTransfer(any(Account.class), anyString());
+	}
+
+	@Test
+	public void allOrNothingRejectsWholeBatchOnFirstFailure() {
+		BatchTransferResult result = batchTransferService.transferBatch(
+				Arrays.asList(transfer("001", "002", 60), transfer("001", "003", 60)), BatchMode.ALL_OR_NOTHING);
+
+		assertThat(result.getResults()).extracting("status").containsExactly(Status.NOT_EXECUTED, Status.REJECTED);
+		assertThat(result.getFailed()).isEqualTo(2);
+		assertThat(repository.getAccount("001").getBalance()).isEqualByComparingTo("100");
+		assertThat(repository.getAccount("002").getBalance()).isEqualByComparingTo("100");
+		verify(notificationService, never()).notifyAboutTransfer(any(Account.class), anyString());
+	}
+
+	@Test
+	public void oversizedBatchIsRejected() {
+		FundTransfer transfer = transfer("001", "002", 1);
+		Assertions.assertThrows(IllegalOperationException.class, () -> batchTransferService
+				.transferBatch(Arrays.asList(transfer, transfer, transfer, transfer, transfer), BatchMode.BEST_EFFORT));
+	}
+
+	@Test
+	public void allOrNothingPlansAgainWhenBalancesChangeConcurrently() {
+		repository.createAccount(new ContendedAccount("hot", 100, 1));
+
+		BatchTransferResult result = batchTransferService.transferBatch(
+				Arrays.asList(transfer("hot", "003", 40), transfer("hot", "002", 40)), BatchMode.ALL_OR_NOTHING);
+
+		assertThat(result.getResults()).extracting("status").containsExactly(Status.SUCCESS, Status.SUCCESS);
+		assertThat(repository.getAccount("hot").getBalance()).isEqualByComparingTo("20");
+	}
+
+	@Test
+	public void bestEffortFallsBackToSingleTransfersWhenNetDebitsKeepFailing() {
+		repository.createAccount(new ContendedAccount("hot", 100, 4));
+
+		BatchTransferResult result = batchTransferService.transferBatch(
+				Arrays.asList(transfer("hot", "003", 40), transfer("hot", "002", 70), transfer("hot", "002", 60)),
+				BatchMode.BEST_EFFORT);
+
+		assertThat(result.getResults()).extracting("status").containsExactly(Status.SUCCESS, Status.REJECTED,
+				Status.SUCCESS);
+		assertThat(repository.getAccount("hot").getBalance()).isEqualByComparingTo("0");
+		assertThat(repository.getAccount("002").getBalance()).isEqualByComparingTo("160");
+		assertThat(repository.getAccount("003").getBalance()).isEqualByComparingTo("40");
+	}
+
+	private static FundTransfer transfer(String accountFrom, String accountTo, int amount) {
+		return FundTransfer.builder().accountFrom(accountFrom).accountTo(accountTo).amount(new BigDecimal(amount))
+				.build();
+	}
+
+	/**
+	 * Account whose first debits fail as if a transfer bypassing the stripe
+	 * locks had drained it and been refunded meanwhile.
+	 */
+	private static final class ContendedAccount extends Account {
+
+		private int contendedDebits;
+
+		private ContendedAccount(String accountId, int balance, int contendedDebits) {
+			super(accountId, new BigDecimal(balance));
+			this.contendedDebits = contendedDebits;
+		}
+
+		@Override
+		public boolean tryDebitUnits(long units) {
+			if (contendedDebits > 0) {
+				contendedDebits--;
+				return false;
+			}
+			return super.tryDebitUnits(units);
+		}
+	}
+}
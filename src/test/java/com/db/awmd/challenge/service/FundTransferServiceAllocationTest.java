@@ -0,0 +1,81 @@
+package com.db.awmd.challenge.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountNumberException;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.rules.TransferRulePipeline;
+import com.db.awmd.challenge.rules.VelocityRule;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+/**
+ * The allocation-free guarantee covers the locking executor with metrics and
+ * velocity rules, for transfers, insufficient balance, same-account and rule
+ * rejections. It doesn't cover ledger listeners (journal, history,
+ * notifications each take the transfer as a {@code TransferEvent}), the
+ * sharded executor, or the rejection of an unknown account, whose message
+ * names the account.
+ */
+public class FundTransferServiceAllocationTest {
+
+	@Test
+	public void lockingTransfersThroughVelocityRulesWithoutLedgerListenersDoNotAllocate() {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+		repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+		TransferMetrics metrics = new TransferMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+		TransferRulePipeline rules = new TransferRulePipeline(
+				Arrays.asList(new VelocityRule("count", 60_000, 60, Long.MAX_VALUE, Long.MAX_VALUE),
+						new VelocityRule("amount", 86_400_000, 24, Long.MAX_VALUE, Long.MAX_VALUE)),
+				metrics);
+		FundTransferService service = new FundTransferService(repository,
+				new LockingTransferExecutor(new AccountLockManager(1024, 500, metrics)), Collections.emptyList(),
+				new IdempotencyCache(), metrics, Optional.empty(), rules);
+		FundTransfer[] transfers = { transfer("Id-1", "Id-2", "0.25"), transfer("Id-2", "Id-1", "0.25"),
+				transfer("Id-1", "Id-2", "5000"), transfer("Id-1", "Id-1", "1") };
+
+		// Warm up until the JIT compiled the whole path.
+		run(service, transfers, 2_000_000);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		run(service, transfers, 1_000_000);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+		// A single allocation per transfer would add up to megabytes.
+		assertThat(allocated).isLessThan(64 * 1024);
+		assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("1000");
+	}
+
+	private static void run(FundTransferService service, FundTransfer[] transfers, int count) {
+		for (int i = 0; i < count; i++) {
+			try {
+				service.transferFund(transfers[i & 3]);
+			} catch (InsufficientBalanceException | InvalidAccountNumberException e) {
+				// Every other transfer is rejected on purpose.
+			}
+		}
+	}
+
+	private static FundTransfer transfer(String accountFrom, String accountTo, String amount) {
+		return FundTransfer.builder().accountFrom(accountFrom).accountTo(accountTo).amount(new BigDecimal(amount))
+				.build();
+	}
+}
@@ -0,0 +1,75 @@
+package com.db.awmd.challenge.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+public class FundTransferServiceStressTest {
+
+	private static final int ACCOUNTS = 32;
+
+	private static final int THREADS = 16;
+
+	private static final int TRANSFERS_PER_THREAD = 125_000;
+
+	@Test
+	public void randomBidirectionalTransfersDoNotDeadlockAndConserveMoney() throws Exception {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		for (int i = 0; i < ACCOUNTS; i++) {
+			repository.createAccount(new Account("Id-" + i, new BigDecimal(1000)));
+		}
+		// Few stripes so that distinct accounts collide on the same stripe as well.
+		FundTransferService service = new FundTransferService(repository,
+				new LockingTransferExecutor(new AccountLockManager(8, 10_000)), Collections.emptyList());
+
+		AtomicLong succeeded = new AtomicLong();
+		AtomicLong rejected = new AtomicLong();
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		for (int t = 0; t < THREADS; t++) {
+			executor.execute(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+					int from = random.nextInt(ACCOUNTS);
+					int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+					try {
+						service.transferFund(FundTransfer.builder().accountFrom("Id-" + from).accountTo("Id-" + to)
+								.amount(BigDecimal.valueOf(1 + random.nextInt(100))).build());
+						succeeded.incrementAndGet();
+					} catch (InsufficientBalanceException e) {
+						rejected.incrementAndGet();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+
+		boolean finished = executor.awaitTermination(5, TimeUnit.MINUTES);
+		assertThat(ManagementFactory.getThreadMXBean().findDeadlockedThreads()).isNull();
+		assertThat(finished).isTrue();
+		assertThat(succeeded.get() + rejected.get()).isEqualTo((long) THREADS * TRANSFERS_PER_THREAD);
+
+		BigDecimal total = BigDecimal.ZERO;
+		for (int i = 0; i < ACCOUNTS; i++) {
+			Account account = repository.getAccount("Id-" + i);
+			assertThat(account.getBalance()).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+			total = total.add(account.getBalance());
+		}
+		assertThat(total).isEqualByComparingTo(new BigDecimal(1000 * ACCOUNTS));
+	}
+}
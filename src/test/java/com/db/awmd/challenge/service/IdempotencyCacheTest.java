@@ -0,0 +1,141 @@
+package com.db.awmd.challenge.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.exception.IdempotencyKeyConflictException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.TooManyRequestsException;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+import com.db.awmd.challenge.service.IdempotencyCache.Outcome;
+
+public class IdempotencyCacheTest {
+
+	@Test
+	public void remembersOutcomeOfClaimedKey() {
+		IdempotencyCache cache = new IdempotencyCache(64, 60);
+
+		assertThat(cache.claim("tx-1", 42)).isNull();
+		assertThat(cache.claim("tx-1", 42)).isSameAs(Outcome.IN_PROGRESS);
+		cache.complete("tx-1", Outcome.SUCCESS);
+
+		assertThat(cache.claim("tx-1", 42)).isSameAs(Outcome.SUCCESS);
+		assertThat(cache.claim("tx-1", 43)).isSameAs(Outcome.KEY_REUSED);
+	}
+
+	@Test
+	public void releasedKeyCanBeClaimedAgain() {
+		IdempotencyCache cache = new IdempotencyCache(64, 60);
+
+		assertThat(cache.claim("tx-1", 42)).isNull();
+		cache.release("tx-1");
+
+		assertThat(cache.claim("tx-1", 42)).isNull();
+	}
+
+	@Test
+	public void capacityIsBoundedByEvictingOldestCompletedEntries() {
+		IdempotencyCache cache = new IdempotencyCache(8, 60);
+		for (int i = 0; i < 1000; i++) {
+			assertThat(cache.claim("tx-" + i, i)).isNull();
+			cache.complete("tx-" + i, Outcome.SUCCESS);
+		}
+
+		assertThat(cache.claim("tx-999", 999)).isSameAs(Outcome.SUCCESS);
+		assertThat(cache.claim("tx-0", 0)).isNull();
+	}
+
+	@Test
+	public void transfersInProgressAreNeverEvicted() {
+		IdempotencyCache cache = new IdempotencyCache(8, 60);
+		for (int i = 0; i < 8; i++) {
+			assertThat(cache.claim("tx-" + i, i)).isNull();
+		}
+
+		Assertions.assertThrows(TooManyRequestsException.class, () -> cache.claim("tx-8", 8));
+		assertThat(cache.claim("tx-0", 0)).isSameAs(Outcome.IN_PROGRESS);
+		cache.complete("tx-0", Outcome.SUCCESS);
+		assertThat(cache.claim("tx-8", 8)).isNull();
+		assertThat(cache.claim("tx-1", 1)).isSameAs(Outcome.IN_PROGRESS);
+	}
+
+	@Test
+	public void concurrentRetriesTransferOnce() throws Exception {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		repository.createAccount(new Account("Id-1", new BigDecimal(1000)));
+		repository.createAccount(new Account("Id-2", new BigDecimal(1000)));
+		FundTransferService service = new FundTransferService(repository, (account, description) -> {
+		});
+		FundTransfer transfer = new FundTransfer("Id-1", "Id-2", new BigDecimal(600), "tx-1");
+
+		ExecutorService clients = Executors.newFixedThreadPool(8);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicInteger succeeded = new AtomicInteger();
+		for (int i = 0; i < 8; i++) {
+			clients.execute(() -> {
+				try {
+					start.await();
+					service.transferFund(transfer);
+					succeeded.incrementAndGet();
+				} catch (IdempotencyKeyConflictException | InterruptedException e) {
+					// A concurrent retry of the same transfer.
+				}
+			});
+		}
+		start.countDown();
+		clients.shutdown();
+		assertThat(clients.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+		assertThat(succeeded.get()).isPositive();
+		assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("400");
+		assertThat(service.transferFund(transfer)).isEqualTo("Success");
+		assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("1600");
+	}
+
+	@Test
+	public void retryOfRejectedTransferReplaysTheRejection() {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+		repository.createAccount(new Account("Id-2", new BigDecimal(0)));
+		FundTransferService service = new FundTransferService(repository, (account, description) -> {
+		});
+		FundTransfer transfer = new FundTransfer("Id-1", "Id-2", new BigDecimal(150), "tx-2");
+
+		Assertions.assertThrows(InsufficientBalanceException.class, () -> service.transferFund(transfer));
+		repository.getAccount("Id-1").creditUnits(10_000);
+
+		Assertions.assertThrows(InsufficientBalanceException.class, () -> service.transferFund(transfer));
+		assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("0");
+	}
+
+	@Test
+	public void retryAfterFailingListenerDoesNotTransferAgain() {
+		AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+		repository.createAccount(new Account("Id-1", new BigDecimal(100)));
+		repository.createAccount(new Account("Id-2", new BigDecimal(0)));
+		AtomicInteger notifications = new AtomicInteger();
+		FundTransferService service = new FundTransferService(repository, (account, description) -> {
+			if (notifications.getAndIncrement() == 0) {
+				throw new IllegalStateException("listener failed");
+			}
+		});
+		FundTransfer transfer = new FundTransfer("Id-1", "Id-2", new BigDecimal(60), "tx-3");
+
+		Assertions.assertThrows(IllegalStateException.class, () -> service.transferFund(transfer));
+		assertThat(service.transferFund(transfer)).isEqualTo("Success");
+
+		assertThat(repository.getAccount("Id-1").getBalance()).isEqualByComparingTo("40");
+		assertThat(repository.getAccount("Id-2").getBalance()).isEqualByComparingTo("60");
+	}
+}
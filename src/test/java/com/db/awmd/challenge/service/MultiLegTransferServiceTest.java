@@ -0,0 +1,132 @@
+package com.db.awmd.challenge.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
+import com.db.awmd.challenge.domain.MultiLegTransfer;
+import com.db.awmd.challenge.domain.TransferLeg;
+import com.db.awmd.challenge.engine.LockingTransferExecutor;
+import com.db.awmd.challenge.exception.IllegalOperationException;
+import com.db.awmd.challenge.exception.InsufficientBalanceException;
+import com.db.awmd.challenge.exception.InvalidAccountNumberException;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+public class MultiLegTransferServiceTest {
+
+	private AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+
+	private NotificationService notificationService = Mockito.mock(NotificationService.class);
+
+	private AccountLockManager lockManager = new AccountLockManager(8, 5_000);
+
+	private MultiLegTransferService multiLegTransferService = new MultiLegTransferService(repository, lockManager,
+			Collections.singletonList(LedgerListener.notifying(notificationService, repository)), 4);
+
+	@BeforeEach
+	public void createAccounts() {
+		repository.createAccount(Account.builder().accountId("001").balance(new BigDecimal(100)).build());
+		repository.createAccount(Account.builder().accountId("002").balance(BigDecimal.ZERO).build());
+		repository.createAccount(Account.builder().accountId("003").balance(BigDecimal.ZERO).build());
+	}
+
+	@Test
+	public void debitsOnceAndCreditsEveryLeg() {
+		multiLegTransferService.transfer(transfer("001", leg("002", 30), leg("003", 20), leg("002", 5)));
+
+		assertThat(repository.getAccount("001").getBalance()).isEqualByComparingTo("45");
+		assertThat(repository.getAccount("002").getBalance()).isEqualByComparingTo("35");
+		assertThat(repository.getAccount("003").getBalance()).isEqualByComparingTo("20");
+		// Both parties of every leg are notified.
+		verify(notificationService, times(6)).notifyAboutTransfer(any(Account.class), anyString());
+	}
+
+	@Test
+	public void insufficientTotalAppliesNoLeg() {
+		Assertions.assertThrows(InsufficientBalanceException.class,
+				() -> multiLegTransferService.transfer(transfer("001", leg("002", 60), leg("003", 41))));
+
+		assertThat(repository.getAccount("001").getBalance()).isEqualByComparingTo("100");
+		assertThat(repository.getAccount("002").getBalance()).isEqualByComparingTo("0");
+		verify(notificationService, never()).notifyAboutTransfer(any(Account.class), anyString());
+	}
+
+	@Test
+	public void invalidLegAppliesNoLeg() {
+		Assertions.assertThrows(InvalidAccountNumberException.class,
+				() -> multiLegTransferService.transfer(transfer("001", leg("002", 10), leg("004", 10))));
+		Assertions.assertThrows(InvalidAccountNumberException.class,
+				() -> multiLegTransferService.transfer(transfer("001", leg("002", 10), leg("001", 10))));
+		Assertions.assertThrows(IllegalOperationException.class,
+				() -> multiLegTransferService.transfer(transfer("001", leg("002", 10), leg("003", 0))));
+		Assertions.assertThrows(IllegalOperationException.class, () -> multiLegTransferService.transfer(
+				transfer("001", leg("002", 1), leg("002", 1), leg("002", 1), leg("002", 1), leg("002", 1))));
+
+		assertThat(repository.getAccount("001").getBalance()).isEqualByComparingTo("100");
+		assertThat(repository.getAccount("002").getBalance()).isEqualByComparingTo("0");
+	}
+
+	@Test
+	public void concurrentReverseTransfersNeitherDeadlockNorLoseMoney() throws Exception {
+		FundTransferService fundTransferService = new FundTransferService(repository,
+				new LockingTransferExecutor(lockManager), Collections.emptyList());
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<?> payroll = executor.submit(() -> {
+				for (int i = 0; i < 20_000; i++) {
+					try {
+						multiLegTransferService.transfer(transfer("001", leg("002", 1), leg("003", 1)));
+					} catch (InsufficientBalanceException e) {
+						// Refunds haven't caught up yet.
+					}
+				}
+			});
+			for (String accountFrom : Arrays.asList("002", "003")) {
+				executor.submit(() -> {
+					while (!payroll.isDone()) {
+						try {
+							fundTransferService.transferFund(new FundTransfer(accountFrom, "001", BigDecimal.ONE));
+						} catch (InsufficientBalanceException e) {
+							Thread.yield();
+						}
+					}
+				});
+			}
+			payroll.get(30, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdown();
+			assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+		}
+
+		long total = repository.getAccount("001").getBalanceUnits() + repository.getAccount("002").getBalanceUnits()
+				+ repository.getAccount("003").getBalanceUnits();
+		assertThat(total).isEqualTo(10_000);
+	}
+
+	private static MultiLegTransfer transfer(String accountFrom, TransferLeg... legs) {
+		return MultiLegTransfer.builder().accountFrom(accountFrom).legs(Arrays.asList(legs)).build();
+	}
+
+	private static TransferLeg leg(String accountTo, int amount) {
+		return TransferLeg.builder().accountTo(accountTo).amount(new BigDecimal(amount)).build();
+	}
+}
@@ -0,0 +1,179 @@
+package com.db.awmd.challenge.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.BackpressurePolicy;
+import com.db.awmd.challenge.domain.NotificationStats;
+import com.db.awmd.challenge.domain.TransferEvent;
+import com.db.awmd.challenge.metrics.TransferMetrics;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class NotificationDispatcherTest {
+
+	@TempDir
+	Path spillDirectory;
+
+	private final AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+
+	private final Map<String, String> delivered = new ConcurrentHashMap<>();
+
+	private final CountDownLatch released = new CountDownLatch(1);
+
+	private volatile boolean blocking;
+
+	private NotificationDispatcher dispatcher;
+
+	@BeforeEach
+	public void createAccounts() {
+		for (String accountId : new String[] { "001", "002", "003", "004" }) {
+			repository.createAccount(new Account(accountId, new BigDecimal(1000)));
+		}
+	}
+
+	@AfterEach
+	public void stopDispatcher() throws Exception {
+		released.countDown();
+		dispatcher.destroy();
+	}
+
+	@Test
+	public void notificationsOfOneBatchAreCoalescedPerAccount() throws Exception {
+		dispatcher = dispatcher(BackpressurePolicy.DROP, 16, 200);
+
+		dispatcher.onTransfer(event("001", "002", 10_000));
+		dispatcher.onTransfer(event("003", "001", 2_550));
+
+		awaitTrue(() -> delivered.size() == 3);
+		assertThat(delivered.get("001")).isEqualTo("100 transferred to 002. 25.5 amount received from 003.");
+		assertThat(delivered.get("002")).isEqualTo("100 amount received from 001.");
+		assertThat(delivered.get("003")).isEqualTo("25.5 transferred to 001.");
+		assertThat(dispatcher.getStats().getNotificationsSent()).isEqualTo(3);
+	}
+
+	@Test
+	public void metricsKeepReportingAfterGarbageCollection() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		dispatcher = new NotificationDispatcher((account, description) -> { }, repository, BackpressurePolicy.DROP,
+				16, 16, 1, spillDirectory.resolve("notifications.spill").toString(), new TransferMetrics(registry));
+		dispatcher.afterPropertiesSet();
+		dispatcher.onTransfer(event("001", "002", 10_000));
+		awaitTrue(() -> dispatcher.getStats().getNotificationsSent() == 2);
+
+		// Meters only hold their source weakly; nothing but the dispatcher may keep it alive.
+		System.gc();
+
+		assertThat(registry.get("notification.sent").functionCounter().count()).isEqualTo(2);
+		assertThat(registry.get("notification.queue.depth").gauge().value()).isZero();
+	}
+
+	@Test
+	public void dropPolicyDiscardsEventsWhileQueueIsFull() throws Exception {
+		dispatcher = dispatcher(BackpressurePolicy.DROP, 2, 1);
+		stallDispatcher();
+
+		dispatcher.onTransfer(event("002", "003", 100));
+		dispatcher.onTransfer(event("002", "003", 100));
+		dispatcher.onTransfer(event("002", "003", 100));
+
+		NotificationStats stats = dispatcher.getStats();
+		assertThat(stats.getQueueDepth()).isEqualTo(2);
+		assertThat(stats.getDropped()).isEqualTo(1);
+		released.countDown();
+		awaitTrue(() -> dispatcher.getStats().getDispatched() == 3);
+	}
+
+	@Test
+	public void spillPolicyDeliversOverflowAfterQueueDrained() throws Exception {
+		dispatcher = dispatcher(BackpressurePolicy.SPILL, 2, 1);
+		stallDispatcher();
+
+		dispatcher.onTransfer(event("002", "003", 100));
+		dispatcher.onTransfer(event("002", "003", 100));
+		dispatcher.onTransfer(event("003", "004", 100));
+
+		assertThat(dispatcher.getStats().getSpilled()).isEqualTo(1);
+		released.countDown();
+		awaitTrue(() -> dispatcher.getStats().getDispatched() == 4);
+		assertThat(delivered.get("004")).isEqualTo("1 amount received from 003.");
+		assertThat(dispatcher.getStats().getDropped()).isZero();
+	}
+
+	@Test
+	public void spillFileOfAnUnknownFormatIsMovedAsideInsteadOfReplayed() throws Exception {
+		Path spillFile = spillDirectory.resolve("notifications.spill");
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(spillFile))) {
+			// Record without the header, as written before the spill file was versioned.
+			out.writeUTF("002");
+			out.writeUTF("003");
+			out.writeLong(100);
+			out.writeLong(100);
+			out.writeLong(0);
+		}
+
+		dispatcher = dispatcher(BackpressurePolicy.SPILL, 16, 1);
+
+		assertThat(spillFile).doesNotExist();
+		assertThat(spillDirectory.resolve("notifications.spill.rejected")).exists();
+		dispatcher.onTransfer(event("003", "004", 100));
+		awaitTrue(() -> dispatcher.getStats().getDispatched() == 1);
+		assertThat(delivered).containsOnlyKeys("003", "004");
+	}
+
+	private NotificationDispatcher dispatcher(BackpressurePolicy policy, int capacity, long flushIntervalMillis) {
+		NotificationService notificationService = (account, description) -> {
+			if (blocking) {
+				blocking = false;
+				try {
+					released.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			delivered.put(account.getAccountId(), description);
+		};
+		NotificationDispatcher created = new NotificationDispatcher(notificationService, repository, policy, capacity,
+				16, flushIntervalMillis, spillDirectory.resolve("notifications.spill").toString());
+		created.afterPropertiesSet();
+		return created;
+	}
+
+	/**
+	 * Makes the dispatcher block on delivering its first event, so that further
+	 * events pile up in the queue.
+	 */
+	private void stallDispatcher() throws Exception {
+		blocking = true;
+		dispatcher.onTransfer(event("001", "002", 100));
+		awaitTrue(() -> !blocking);
+	}
+
+	private static TransferEvent event(String accountFrom, String accountTo, long amountUnits) {
+		return new TransferEvent(accountFrom, accountTo, amountUnits, System.currentTimeMillis());
+	}
+
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean()) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.sleep(5);
+		}
+	}
+}
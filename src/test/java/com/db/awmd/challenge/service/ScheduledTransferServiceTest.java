@@ -0,0 +1,105 @@
+package com.db.awmd.challenge.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.ScheduledTransfer;
+import com.db.awmd.challenge.exception.InvalidAccountNumberException;
+import com.db.awmd.challenge.exception.ScheduledTransferNotFoundException;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.repository.AccountsRepositoryInMemory;
+
+public class ScheduledTransferServiceTest {
+
+	private AccountsRepositoryInMemory repository = new AccountsRepositoryInMemory();
+
+	/** Batches of at most two transfers, so a sweep is split over the executor threads. */
+	private ScheduledTransferService scheduledTransferService = new ScheduledTransferService(
+			new BatchTransferService(repository, new AccountLockManager(), Collections.emptyList(), 2), repository,
+			10, 100);
+
+	@BeforeEach
+	public void createAccounts() {
+		repository.createAccount(Account.builder().accountId("001").balance(new BigDecimal(100)).build());
+		repository.createAccount(Account.builder().accountId("002").balance(BigDecimal.ZERO).build());
+		scheduledTransferService.afterPropertiesSet();
+	}
+
+	@AfterEach
+	public void stopScheduler() throws InterruptedException {
+		scheduledTransferService.destroy();
+	}
+
+	@Test
+	public void dueTransfersAreExecutedAndPendingOnesListed() throws InterruptedException {
+		long now = System.currentTimeMillis();
+		ScheduledTransfer soon = scheduledTransferService.schedule(transfer(30, now + 50));
+		ScheduledTransfer later = scheduledTransferService.schedule(transfer(20, now + TimeUnit.HOURS.toMillis(1)));
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		// Executed on another thread after leaving the pending transfers, so wait for the credit.
+		while (repository.getAccount("002").getBalance().signum() == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertThat(soon.getId()).isNotEqualTo(later.getId());
+		assertThat(repository.getAccount("001").getBalance()).isEqualByComparingTo("70");
+		assertThat(repository.getAccount("002").getBalance()).isEqualByComparingTo("30");
+		assertThat(scheduledTransferService.getPending("002")).extracting("id").containsExactly(later.getId());
+		assertThat(scheduledTransferService.getPending("003")).isEmpty();
+	}
+
+	@Test
+	public void cancelledTransfersAreNotExecuted() throws InterruptedException {
+		ScheduledTransfer transfer = scheduledTransferService.schedule(transfer(30, System.currentTimeMillis() + 100));
+
+		scheduledTransferService.cancel(transfer.getId());
+		Thread.sleep(300);
+
+		assertThat(repository.getAccount("001").getBalance()).isEqualByComparingTo("100");
+		assertThat(scheduledTransferService.getPending("001")).isEmpty();
+		Assertions.assertThrows(ScheduledTransferNotFoundException.class,
+				() -> scheduledTransferService.cancel(transfer.getId()));
+	}
+
+	@Test
+	public void invalidTransfersAreRejectedWhenScheduled() {
+		ScheduledTransfer transfer = transfer(30, System.currentTimeMillis());
+		transfer.setAccountTo("003");
+
+		Assertions.assertThrows(InvalidAccountNumberException.class, () -> scheduledTransferService.schedule(transfer));
+		assertThat(scheduledTransferService.getPendingCount()).isZero();
+	}
+
+	@Test
+	public void transfersComingDueTogetherAreAllExecuted() throws InterruptedException {
+		long executeAt = System.currentTimeMillis() + 50;
+		for (int i = 0; i < 7; i++) {
+			scheduledTransferService.schedule(transfer(10, executeAt));
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (repository.getAccount("002").getBalance().compareTo(new BigDecimal(70)) < 0
+				&& System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertThat(scheduledTransferService.getPendingCount()).isZero();
+		assertThat(repository.getAccount("001").getBalance()).isEqualByComparingTo("30");
+		assertThat(repository.getAccount("002").getBalance()).isEqualByComparingTo("70");
+	}
+
+	private static ScheduledTransfer transfer(int amount, long executeAt) {
+		return ScheduledTransfer.builder().accountFrom("001").accountTo("002").amount(new BigDecimal(amount))
+				.executeAt(executeAt).build();
+	}
+}
@@ -1,6 +1,7 @@
 package com.db.awmd.challenge.web;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
@@ -17,7 +18,9 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.domain.FundTransfer;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.FundTransferService;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -29,6 +32,9 @@ public class AccountsControllerTest {
 	@Autowired
 	private AccountsService accountsService;
 
+	@Autowired
+	private FundTransferService fundTransferService;
+
 	@BeforeEach
 	public void prepareMockMvc() {
 		// Reset the existing accounts before each test.
@@ -54,6 +60,13 @@ public class AccountsControllerTest {
 				.content("{\"accountId\":\"Id-123\",\"balance\":1000}")).andExpect(status().isBadRequest());
 	}
 
+	@Test
+	public void createAccountInvalidCurrency() throws Exception {
+		this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"accountId\":\"Id-123\",\"balance\":1000,\"currency\":\"EURO\"}"))
+				.andExpect(status().isBadRequest());
+	}
+
 	@Test
 	public void createAccountNoAccountId() throws Exception {
 		this.mockMvc.perform(post("/v1/accounts").contentType(MediaType.APPLICATION_JSON).content("{\"balance\":1000}"))
@@ -85,12 +98,91 @@ public class AccountsControllerTest {
 				.content("{\"accountId\":\"\",\"balance\":1000}")).andExpect(status().isBadRequest());
 	}
 
+	@Test
+	public void importAccountsFromNdjson() throws Exception {
+		accountsService.createAccount(new Account("Id-2", new BigDecimal(5)));
+
+		String[] lines = this.mockMvc
+				.perform(post("/v1/accounts/bulk").contentType(FundTransferController.APPLICATION_NDJSON_VALUE)
+						.content("{\"accountId\":\"Id-1\",\"balance\":100}\n" + "{\"accountId\":\"Id-2\",\"balance\":200}\n"
+								+ "\n" + "{\"accountId\":\"Id-3\",\"balance\":-1}\n" + "{\"accountId\":\"Id-4\"\n"
+								+ "{\"accountId\":\"Id-5\",\"balance\":12.5}\n" + "null\n"))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString().split("\n");
+
+		assertThat(lines).hasSize(5);
+		assertThat(lines[0])
+				.isEqualTo("{\"line\":4,\"accountId\":null,\"message\":\"Initial balance must be positive.\"}");
+		assertThat(lines[1]).startsWith("{\"line\":5,\"accountId\":null,\"message\":\"Invalid account: ");
+		assertThat(lines[2])
+				.isEqualTo("{\"line\":7,\"accountId\":null,\"message\":\"Invalid account: expected an object.\"}");
+		assertThat(lines[3])
+				.isEqualTo("{\"line\":2,\"accountId\":\"Id-2\",\"message\":\"Account id Id-2 already exists!\"}");
+		assertThat(lines[4]).isEqualTo("{\"created\":2,\"failed\":4}");
+
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("100");
+		assertThat(accountsService.getAccount("Id-2").getBalance()).isEqualByComparingTo("5");
+		assertThat(accountsService.getAccount("Id-3")).isNull();
+		assertThat(accountsService.getAccount("Id-5").getBalance()).isEqualByComparingTo("12.5");
+	}
+
+	@Test
+	public void importAccountsFromCsv() throws Exception {
+		this.mockMvc
+				.perform(post("/v1/accounts/bulk").contentType(AccountsController.TEXT_CSV_VALUE)
+						.content("accountId,balance\nId-1,10\nId-2,ten\nId-3, 30.25\nId-4,5, GBP\n"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(
+						"{\"line\":3,\"accountId\":null,\"message\":\"Balance is not a number.\"}\n"
+								+ "{\"created\":3,\"failed\":1}\n"));
+
+		assertThat(accountsService.getAccount("Id-1").getBalance()).isEqualByComparingTo("10");
+		assertThat(accountsService.getAccount("Id-3").getBalance()).isEqualByComparingTo("30.25");
+		assertThat(accountsService.getAccount("Id-4").getCurrency()).isEqualTo("GBP");
+	}
+
 	@Test
 	public void getAccount() throws Exception {
 		String uniqueAccountId = "Id-" + System.currentTimeMillis();
-		Account account = new Account(uniqueAccountId, new BigDecimal("123.45"));
+		Account account = new Account(uniqueAccountId, new BigDecimal("123.45"), "usd");
 		this.accountsService.createAccount(account);
 		this.mockMvc.perform(get("/v1/accounts/" + uniqueAccountId)).andExpect(status().isOk())
-				.andExpect(content().string("{\"accountId\":\"" + uniqueAccountId + "\",\"balance\":123.45}"));
+				.andExpect(content().string("{\"accountId\":\"" + uniqueAccountId
+						+ "\",\"currency\":\"USD\",\"balance\":123.45,\"version\":0}"));
+	}
+
+	@Test
+	public void getManyAccounts() throws Exception {
+		this.accountsService.createAccount(new Account("Id-1", new BigDecimal("10")));
+		this.accountsService.createAccount(new Account("Id-2", new BigDecimal("20")));
+		this.accountsService.getAccount("Id-2").creditUnits(150);
+
+		this.mockMvc.perform(get("/v1/accounts").param("ids", "Id-2,Id-unknown,Id-1")).andExpect(status().isOk())
+				.andExpect(content().string("[{\"accountId\":\"Id-2\",\"currency\":\"EUR\",\"balance\":21.5,\"version\":1},"
+						+ "{\"accountId\":\"Id-1\",\"currency\":\"EUR\",\"balance\":10,\"version\":0}]"));
+	}
+
+	@Test
+	public void getTransactionsPagesWithCursor() throws Exception {
+		String accountId = "Id-" + System.nanoTime();
+		this.accountsService.createAccount(new Account(accountId, new BigDecimal(1000)));
+		this.accountsService.createAccount(new Account(accountId + "-to", new BigDecimal(0)));
+		for (int i = 1; i <= 3; i++) {
+			this.fundTransferService.transferFund(FundTransfer.builder().accountFrom(accountId)
+					.accountTo(accountId + "-to").amount(new BigDecimal(i)).build());
+		}
+
+		this.mockMvc.perform(get("/v1/accounts/" + accountId + "/transactions").param("limit", "2"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("\"amount\":-3}")))
+				.andExpect(content().string(containsString("\"amount\":-2}")))
+				.andExpect(content().string(containsString("\"nextCursor\":\"1\"")));
+		this.mockMvc.perform(get("/v1/accounts/" + accountId + "/transactions").param("limit", "2").param("cursor", "1"))
+				.andExpect(status().isOk()).andExpect(content().string(containsString("\"amount\":-1}")))
+				.andExpect(content().string(containsString("\"nextCursor\":null")));
+	}
+
+	@Test
+	public void getTransactionsOfUnknownAccount() throws Exception {
+		this.mockMvc.perform(get("/v1/accounts/Id-unknown/transactions")).andExpect(status().isBadRequest());
 	}
 }
@@ -0,0 +1,118 @@
+package com.db.awmd.challenge.web;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.lock.AccountLockManager;
+import com.db.awmd.challenge.lock.AccountLockManager.AccountLocks;
+import com.db.awmd.challenge.service.AccountsService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Serves more transfers at once than the container has worker threads. Four
+ * workers are configured, and four times as many transfers out of one account are
+ * kept waiting for its lock; in the blocking mode they would take every worker
+ * and leave reads of other accounts queued behind them.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = { "web.execution-mode=async",
+		"web.async.threads=32", "server.tomcat.threads.max=4", "server.tomcat.threads.min-spare=4",
+		"transfer.lock.timeout-ms=30000", "admission.min-in-flight=64" })
+public class AsyncTransferLoadTest {
+
+	private static final int WORKERS = 4;
+
+	private static final int TRANSFERS = 4 * WORKERS;
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private AccountsService accountsService;
+
+	@Autowired
+	private AccountLockManager lockManager;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+	@Test
+	public void transfersWaitingForAHotAccountDontHoldTheWorkers() throws Exception {
+		accountsService.createAccount(new Account("Id-hot", new BigDecimal(1000)));
+		accountsService.createAccount(new Account("Id-cold", new BigDecimal(5)));
+		for (int i = 0; i < TRANSFERS; i++) {
+			accountsService.createAccount(new Account("Id-sink-" + i, BigDecimal.ZERO));
+		}
+
+		List<CompletableFuture<HttpResponse<String>>> transfers = new ArrayList<>();
+		AccountLocks locks = lockManager.lockAll(Collections.singletonList("Id-hot"));
+		try {
+			for (int i = 0; i < TRANSFERS; i++) {
+				transfers.add(client.sendAsync(transfer("Id-hot", "Id-sink-" + i, "1"),
+						HttpResponse.BodyHandlers.ofString()));
+			}
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (meterRegistry.get("transfer.requests.active").gauge().value() < TRANSFERS
+					&& System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(meterRegistry.get("transfer.requests.active").gauge().value()).isEqualTo(TRANSFERS);
+
+			HttpResponse<String> read = client.send(HttpRequest.newBuilder(uri("/v1/accounts/Id-cold"))
+					.timeout(Duration.ofSeconds(5)).build(), HttpResponse.BodyHandlers.ofString());
+			assertThat(read.statusCode()).isEqualTo(200);
+			assertThat(transfers).noneMatch(CompletableFuture::isDone);
+		} finally {
+			locks.close();
+		}
+
+		for (CompletableFuture<HttpResponse<String>> transfer : transfers) {
+			assertThat(transfer.get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+		}
+		assertThat(accountsService.getAccount("Id-hot").getBalance()).isEqualByComparingTo("984");
+	}
+
+	@Test
+	public void rejectionsOfAsyncTransfersReachTheClient() throws Exception {
+		accountsService.createAccount(new Account("Id-poor", BigDecimal.ONE));
+		accountsService.createAccount(new Account("Id-rich", BigDecimal.ZERO));
+
+		HttpResponse<String> response = client.send(transfer("Id-poor", "Id-rich", "2"),
+				HttpResponse.BodyHandlers.ofString());
+
+		assertThat(response.statusCode()).isEqualTo(400);
+		assertThat(response.body()).contains("lack of funds");
+		assertThat(accountsService.getAccount("Id-poor").getBalance()).isEqualByComparingTo("1");
+	}
+
+	private HttpRequest transfer(String accountFrom, String accountTo, String amount) {
+		return HttpRequest.newBuilder(uri("/v1/transfer")).header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString("{\"accountFrom\":\"" + accountFrom + "\",\"accountTo\":\""
+						+ accountTo + "\",\"amount\":" + amount + "}"))
+				.build();
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://localhost:" + port + path);
+	}
+}
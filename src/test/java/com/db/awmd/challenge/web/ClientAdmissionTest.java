@@ -0,0 +1,45 @@
+package com.db.awmd.challenge.web;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.service.AccountsService;
+
+@SpringBootTest(properties = { "admission.client.rate=1", "admission.client.burst=2" })
+@AutoConfigureMockMvc
+public class ClientAdmissionTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private AccountsService accountsService;
+
+	@Test
+	public void clientsCantPickTheIdentityTheyAreLimitedUnder() throws Exception {
+		accountsService.createAccount(new Account("Id-client-1", new BigDecimal(100)));
+		accountsService.createAccount(new Account("Id-client-2", BigDecimal.ZERO));
+
+		for (int i = 0; i < 3; i++) {
+			this.mockMvc
+					.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+							.header(FundTransferController.CLIENT_ID_HEADER, "client-" + i)
+							.content("{ \"accountFrom\": \"Id-client-1\",\"accountTo\": \"Id-client-2\",\"amount\":1}"))
+					.andExpect(i < 2 ? status().isOk() : status().isTooManyRequests())
+					.andExpect(content().string(
+							containsString(i < 2 ? "successfully" : "Too many transfer requests from this client")));
+		}
+	}
+}
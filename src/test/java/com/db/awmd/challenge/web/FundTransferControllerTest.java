@@ -1,9 +1,13 @@
 package com.db.awmd.challenge.web;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.math.BigDecimal;
@@ -11,16 +15,22 @@ import java.math.BigDecimal;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import com.db.awmd.challenge.admission.AdmissionControl;
 import com.db.awmd.challenge.domain.Account;
+import com.db.awmd.challenge.exception.TooManyRequestsException;
 import com.db.awmd.challenge.service.AccountsService;
+import com.db.awmd.challenge.service.BatchTransferService;
 
-@SpringBootTest
+// Account buckets refill at one token per second, see transfersBeyondTheAccountRateAreRejected.
+@SpringBootTest(properties = "admission.account.rate=1")
 @AutoConfigureMockMvc
+@AutoConfigureMetrics
 public class FundTransferControllerTest {
 	@Autowired
 	private MockMvc mockMvc;
@@ -28,6 +38,9 @@ public class FundTransferControllerTest {
 	@Autowired
 	private AccountsService accountsService;
 
+	@Autowired
+	private AdmissionControl admissionControl;
+
 	@BeforeEach
 	public void prepareMockMvc() {
 		// Reset the existing accounts before each test.
@@ -51,6 +64,23 @@ public class FundTransferControllerTest {
 		assertThat(accountTo.getBalance()).isEqualByComparingTo("1200");
 	}
 
+	@Test
+	public void transferFundTestSuccessInCurrencyWithoutExchangeRates() throws Exception {
+		// The shipped configuration has no exchange rates to the currency of the velocity limits.
+		accountsService.createAccount(
+				Account.builder().accountId("001").balance(new BigDecimal(1000)).currency("USD").build());
+		accountsService.createAccount(
+				Account.builder().accountId("002").balance(new BigDecimal(1000)).currency("USD").build());
+
+		this.mockMvc
+				.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+						.content("{ \"accountFrom\": \"001\",\"accountTo\": \"002\",\"amount\":200}"))
+				.andExpect(status().isOk());
+
+		assertThat(accountsService.getAccount("001").getBalance()).isEqualByComparingTo("800");
+		assertThat(accountsService.getAccount("002").getBalance()).isEqualByComparingTo("1200");
+	}
+
 	@Test
 	public void transferFundTestForTransferNegativeAmount() throws Exception {
 		accountsService.createAccount(Account.builder().accountId("001").balance(new BigDecimal(1000)).build());
@@ -163,4 +193,218 @@ public class FundTransferControllerTest {
 		assertThat(accountTo.getBalance()).isEqualByComparingTo("1000");
 	}
 
+	@Test
+	public void transferBatchTestBestEffort() throws Exception {
+		accountsService.createAccount(Account.builder().accountId("001").balance(new BigDecimal(1000)).build());
+		accountsService.createAccount(Account.builder().accountId("002").balance(new BigDecimal(1000)).build());
+
+		this.mockMvc
+				.perform(post("/v1/transfer/batch").contentType(MediaType.APPLICATION_JSON)
+						.content("[{ \"accountFrom\": \"001\",\"accountTo\": \"002\",\"amount\":200},"
+								+ "{ \"accountFrom\": \"002\",\"accountTo\": \"003\",\"amount\":200}]"))
+				.andExpect(status().isOk()).andExpect(content().string(containsString("\"succeeded\":1")))
+				.andExpect(content().string(containsString("003 account doesn't exist")));
+
+		assertThat(accountsService.getAccount("001").getBalance()).isEqualByComparingTo("800");
+		assertThat(accountsService.getAccount("002").getBalance()).isEqualByComparingTo("1200");
+	}
+
+	@Test
+	public void transferBatchTestNdjsonAllOrNothing() throws Exception {
+		accountsService.createAccount(Account.builder().accountId("001").balance(new BigDecimal(1000)).build());
+		accountsService.createAccount(Account.builder().accountId("002").balance(new BigDecimal(1000)).build());
+
+		this.mockMvc
+				.perform(post("/v1/transfer/batch").param("mode", "ALL_OR_NOTHING")
+						.contentType(FundTransferController.APPLICATION_NDJSON_VALUE)
+						.content("{ \"accountFrom\": \"001\",\"accountTo\": \"002\",\"amount\":200}\n"
+								+ "{ \"accountFrom\": \"001\",\"accountTo\": \"002\",\"amount\":900}\n"))
+				.andExpect(status().isBadRequest()).andExpect(content().string(containsString("NOT_EXECUTED")));
+
+		assertThat(accountsService.getAccount("001").getBalance()).isEqualByComparingTo("1000");
+		assertThat(accountsService.getAccount("002").getBalance()).isEqualByComparingTo("1000");
+	}
+
+	@Test
+	public void transferBatchTestNdjsonStopsReadingBeyondTheBatchLimit() throws Exception {
+		accountsService.createAccount(Account.builder().accountId("001").balance(new BigDecimal(1000)).build());
+		accountsService.createAccount(Account.builder().accountId("002").balance(new BigDecimal(1000)).build());
+		StringBuilder lines = new StringBuilder();
+		for (int i = 0; i <= BatchTransferService.DEFAULT_MAX_BATCH_SIZE; i++) {
+			lines.append("{ \"accountFrom\": \"001\",\"accountTo\": \"002\",\"amount\":0.01}\n");
+		}
+
+		this.mockMvc
+				.perform(post("/v1/transfer/batch").contentType(FundTransferController.APPLICATION_NDJSON_VALUE)
+						.content(lines.toString()))
+				.andExpect(status().isBadRequest()).andExpect(content().string(containsString("at most 10000")));
+
+		assertThat(accountsService.getAccount("001").getBalance()).isEqualByComparingTo("1000");
+	}
+
+	@Test
+	public void transferMultiLegTestAppliesAllLegs() throws Exception {
+		accountsService.createAccount(Account.builder().accountId("001").balance(new BigDecimal(1000)).build());
+		accountsService.createAccount(Account.builder().accountId("002").balance(new BigDecimal(1000)).build());
+		accountsService.createAccount(Account.builder().accountId("003").balance(new BigDecimal(1000)).build());
+
+		this.mockMvc
+				.perform(post("/v1/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+						.content("{ \"accountFrom\": \"001\",\"legs\": [{ \"accountTo\": \"002\",\"amount\":200},"
+								+ "{ \"accountTo\": \"003\",\"amount\":300}]}"))
+				.andExpect(status().isOk());
+
+		this.mockMvc
+				.perform(post("/v1/transfer/multi-leg").contentType(MediaType.APPLICATION_JSON)
+						.content("{ \"accountFrom\": \"001\",\"legs\": [{ \"accountTo\": \"002\",\"amount\":200},"
+								+ "{ \"accountTo\": \"003\",\"amount\":301}]}"))
+				.andExpect(status().isBadRequest());
+
+		assertThat(accountsService.getAccount("001").getBalance()).isEqualByComparingTo("500");
+		assertThat(accountsService.getAccount("002").getBalance()).isEqualByComparingTo("1200");
+		assertThat(accountsService.getAccount("003").getBalance()).isEqualByComparingTo("1300");
+	}
+
+	@Test
+	public void scheduledTransferTestIsListedUntilCancelled() throws Exception {
+		accountsService.createAccount(Account.builder().accountId("001").balance(new BigDecimal(1000)).build());
+		accountsService.createAccount(Account.builder().accountId("002").balance(new BigDecimal(1000)).build());
+		long executeAt = System.currentTimeMillis() + 3_600_000;
+
+		String created = this.mockMvc
+				.perform(post("/v1/transfer/scheduled").contentType(MediaType.APPLICATION_JSON)
+						.content("{ \"accountFrom\": \"001\",\"accountTo\": \"002\",\"amount\":200,\"executeAt\":"
+								+ executeAt + "}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getContentAsString();
+		String id = created.replaceAll(".*\"id\":(\\d+).*", "$1");
+
+		this.mockMvc.perform(get("/v1/transfer/scheduled").param("accountId", "001")).andExpect(status().isOk())
+				.andExpect(content().string(containsString("\"executeAt\":" + executeAt)));
+		this.mockMvc.perform(delete("/v1/transfer/scheduled/" + id)).andExpect(status().isNoContent());
+		this.mockMvc.perform(delete("/v1/transfer/scheduled/" + id)).andExpect(status().isNotFound());
+		this.mockMvc.perform(get("/v1/transfer/scheduled").param("accountId", "001")).andExpect(status().isOk())
+				.andExpect(content().string("[]"));
+	}
+
+	@Test
+	public void transferFundTestRetryWithIdempotencyKeyTransfersOnce() throws Exception {
+		accountsService.createAccount(Account.builder().accountId("001").balance(new BigDecimal(1000)).build());
+		accountsService.createAccount(Account.builder().accountId("002").balance(new BigDecimal(1000)).build());
+		String idempotencyKey = "retry-" + System.nanoTime();
+
+		for (int attempt = 0; attempt < 2; attempt++) {
+			this.mockMvc
+					.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+							.header(FundTransferController.IDEMPOTENCY_KEY_HEADER, idempotencyKey)
+							.content("{ \"accountFrom\": \"001\",\"accountTo\": \"002\",\"amount\":200}"))
+					.andExpect(status().isOk());
+		}
+		this.mockMvc
+				.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+						.header(FundTransferController.IDEMPOTENCY_KEY_HEADER, idempotencyKey)
+						.content("{ \"accountFrom\": \"001\",\"accountTo\": \"002\",\"amount\":300}"))
+				.andExpect(status().isConflict());
+
+		assertThat(accountsService.getAccount("001").getBalance()).isEqualByComparingTo("800");
+		assertThat(accountsService.getAccount("002").getBalance()).isEqualByComparingTo("1200");
+	}
+
+
+	@Test
+	public void transferOutcomesAreExportedToPrometheus() throws Exception {
+		accountsService.createAccount(Account.builder().accountId("001").balance(new BigDecimal(1000)).build());
+		accountsService.createAccount(Account.builder().accountId("002").balance(new BigDecimal(1000)).build());
+
+		this.mockMvc.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+				.content("{ \"accountFrom\": \"001\",\"accountTo\": \"002\",\"amount\":2000}"))
+				.andExpect(status().isBadRequest());
+
+		this.mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk())
+				.andExpect(content().string(containsString("transfer_latency_seconds_count{outcome=\"insufficient_balance\",}")))
+				.andExpect(content().string(containsString("transfer_lock_wait_seconds{quantile=\"0.99\",}")));
+	}
+
+	@Test
+	public void transfersBeyondTheAccountRateAreRejected() throws Exception {
+		accountsService.createAccount(Account.builder().accountId("Id-rate").balance(new BigDecimal(10_000)).build());
+		accountsService.createAccount(Account.builder().accountId("Id-sink").balance(BigDecimal.ZERO).build());
+		// Use up the burst of the account without a request each. At a realistic rate
+		// the bucket would refill a token before the request below arrives.
+		assertThrows(TooManyRequestsException.class, () -> {
+			while (true) {
+				admissionControl.release(admissionControl.admit(null, "Id-rate"));
+			}
+		});
+
+		this.mockMvc
+				.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+						.content("{ \"accountFrom\": \"Id-rate\",\"accountTo\": \"Id-sink\",\"amount\":1}"))
+				.andExpect(status().isTooManyRequests()).andExpect(header().string("Retry-After", "1"))
+				.andExpect(content().string(containsString("Too many transfers from this account")));
+		// Other accounts of the same client are unaffected.
+		this.mockMvc
+				.perform(post("/v1/transfer").contentType(MediaType.APPLICATION_JSON)
+						.content("{ \"accountFrom\": \"Id-sink\",\"accountTo\": \"Id-rate\",\"amount\":1}"))
+				.andExpect(status().isBadRequest());
+		assertThat(accountsService.getAccount("Id-rate").getBalance()).isEqualByComparingTo("10000");
+	}
+
+	@Test
+	public void batchesWithMoreTransfersOutOfAnAccountThanItsBurstAreInvalid() throws Exception {
+		accountsService.createAccount(Account.builder().accountId("Id-batch").balance(new BigDecimal(10_000)).build());
+		accountsService.createAccount(Account.builder().accountId("Id-batch-sink").balance(BigDecimal.ZERO).build());
+		// One more transfer out of the account than its burst of 500, in a single batch.
+		StringBuilder lines = new StringBuilder();
+		for (int i = 0; i <= 500; i++) {
+			lines.append("{ \"accountFrom\": \"Id-batch\",\"accountTo\": \"Id-batch-sink\",\"amount\":0.01}\n");
+		}
+
+		this.mockMvc
+				.perform(post("/v1/transfer/batch").contentType(FundTransferController.APPLICATION_NDJSON_VALUE)
+						.content(lines.toString()))
+				.andExpect(status().isBadRequest())
+				.andExpect(content().string(containsString("at most 500 transfers from one account")));
+		assertThat(accountsService.getAccount("Id-batch").getBalance()).isEqualByComparingTo("10000");
+
+		// The rejected batch took no tokens: a full burst still goes through.
+		this.mockMvc
+				.perform(post("/v1/transfer/batch").contentType(FundTransferController.APPLICATION_NDJSON_VALUE)
+						.content(lines.substring(lines.indexOf("\n") + 1)))
+				.andExpect(status().isOk()).andExpect(content().string(containsString("\"succeeded\":500")));
+		assertThat(accountsService.getAccount("Id-batch").getBalance()).isEqualByComparingTo("9995");
+	}
+
+	@Test
+	public void batchesRejectedForOneAccountChargeNoOther() throws Exception {
+		accountsService.createAccount(Account.builder().accountId("Id-payer").balance(new BigDecimal(10_000)).build());
+		accountsService.createAccount(Account.builder().accountId("Id-busy").balance(new BigDecimal(10_000)).build());
+		accountsService.createAccount(Account.builder().accountId("Id-payee").balance(BigDecimal.ZERO).build());
+		assertThrows(TooManyRequestsException.class, () -> {
+			while (true) {
+				admissionControl.release(admissionControl.admit(null, "Id-busy"));
+			}
+		});
+		StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			lines.append("{ \"accountFrom\": \"Id-payer\",\"accountTo\": \"Id-payee\",\"amount\":0.01}\n");
+		}
+		String payroll = lines.toString();
+		// More than the busy account's bucket refills while the test runs.
+		for (int i = 0; i < 3; i++) {
+			lines.append("{ \"accountFrom\": \"Id-busy\",\"accountTo\": \"Id-payee\",\"amount\":0.01}\n");
+		}
+
+		this.mockMvc
+				.perform(post("/v1/transfer/batch").contentType(FundTransferController.APPLICATION_NDJSON_VALUE)
+						.content(lines.toString()))
+				.andExpect(status().isTooManyRequests());
+
+		// Whichever account was charged first, the payer's burst is still whole.
+		this.mockMvc
+				.perform(post("/v1/transfer/batch").contentType(FundTransferController.APPLICATION_NDJSON_VALUE)
+						.content(payroll))
+				.andExpect(status().isOk()).andExpect(content().string(containsString("\"succeeded\":500")));
+		assertThat(accountsService.getAccount("Id-busy").getBalance()).isEqualByComparingTo("10000");
+	}
+
 }